@@ -0,0 +1,65 @@
+package com.ecommerce.clientmicrocommerce.config;
+
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mesures des publisher confirms : latence entre l'envoi et la confirmation du broker, nacks.
+ * Alimenté par le RabbitTemplate (post-processeur de CorrelationData et ConfirmCallback).
+ */
+@Component
+public class PublisherConfirmMetrics {
+
+    // Borne de sécurité si des confirmations ne revenaient jamais
+    private static final int MAX_IN_FLIGHT = 100_000;
+
+    private final Map<CorrelationData, Long> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder nacked = new LongAdder();
+    private final LongAdder confirmLatencyNanos = new LongAdder();
+    private final AtomicLong maxConfirmLatencyNanos = new AtomicLong();
+
+    public void onPublish(CorrelationData correlationData) {
+        published.increment();
+        if (inFlight.size() < MAX_IN_FLIGHT) {
+            inFlight.put(correlationData, System.nanoTime());
+        }
+    }
+
+    public void onConfirm(CorrelationData correlationData, boolean ack, String cause) {
+        Long sentAt = correlationData != null ? inFlight.remove(correlationData) : null;
+        if (sentAt != null) {
+            long latency = System.nanoTime() - sentAt;
+            confirmLatencyNanos.add(latency);
+            maxConfirmLatencyNanos.accumulateAndGet(latency, Math::max);
+        }
+        if (ack) {
+            acked.increment();
+        } else {
+            nacked.increment();
+            System.err.println("❌ Publication refusée par le broker (nack): " + cause);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long confirmed = acked.sum() + nacked.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("published", published.sum());
+        stats.put("acked", acked.sum());
+        stats.put("nacked", nacked.sum());
+        stats.put("inFlight", inFlight.size());
+        stats.put("avgConfirmLatencyMs", confirmed > 0
+            ? TimeUnit.NANOSECONDS.toMicros(confirmLatencyNanos.sum() / confirmed) / 1000.0 : 0.0);
+        stats.put("maxConfirmLatencyMs", TimeUnit.NANOSECONDS.toMicros(maxConfirmLatencyNanos.get()) / 1000.0);
+        return stats;
+    }
+}
@@ -1,18 +1,30 @@
 package com.ecommerce.clientmicrocommerce.config;
 
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.batch.SimpleBatchingStrategy;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.BatchingRabbitTemplate;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 @Configuration
 public class RabbitMQConfig {
 
     // Queue pour les requêtes de clients
     public static final String CLIENT_QUERY_QUEUE = "client.query.queue";
-    public static final String CLIENT_RESPONSE_QUEUE = "client.response.queue";
+    // Les réponses partent sur la queue reply_to de l'émetteur : la queue partagée client.response.queue
+    // n'est plus déclarée ni liée (voir LegacyResponseDrain côté command-service)
+    
+    // Routing key des événements de modification des clients (consommés par command-service)
+    public static final String CLIENT_CHANGED_ROUTING_KEY = "client.changed";
     
     // Exchange pour la communication entre services
     public static final String MICROSERVICE_EXCHANGE = "microservice.exchange";
@@ -27,36 +39,107 @@ public class RabbitMQConfig {
         return QueueBuilder.durable(CLIENT_QUERY_QUEUE).build();
     }
 
+    /**
+     * Queue exclusive par instance : chaque index de recherche reçoit toutes les écritures de clients
+     */
     @Bean
-    public Queue clientResponseQueue() {
-        return QueueBuilder.durable(CLIENT_RESPONSE_QUEUE).build();
+    public Queue clientSearchEventsQueue() {
+        return new AnonymousQueue();
     }
 
     @Bean
-    public Binding clientQueryBinding() {
+    public Binding clientSearchEventsBinding() {
         return BindingBuilder
-                .bind(clientQueryQueue())
+                .bind(clientSearchEventsQueue())
                 .to(microserviceExchange())
-                .with("client.query");
+                .with(CLIENT_CHANGED_ROUTING_KEY);
     }
 
+    /**
+     * Queue exclusive par instance : invalidation du cache des emails
+     */
     @Bean
-    public Binding clientResponseBinding() {
+    public Queue clientEmailEventsQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding clientEmailEventsBinding() {
         return BindingBuilder
-                .bind(clientResponseQueue())
+                .bind(clientEmailEventsQueue())
                 .to(microserviceExchange())
-                .with("client.response");
+                .with(CLIENT_CHANGED_ROUTING_KEY);
     }
 
     @Bean
-    public Jackson2JsonMessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public Binding clientQueryBinding() {
+        return BindingBuilder
+                .bind(clientQueryQueue())
+                .to(microserviceExchange())
+                .with("client.query");
     }
 
+    /**
+     * Convertisseur négocié par content-type : les messages reçus sont décodés selon leur en-tête
+     * (JSON ou CBOR), les messages envoyés sont encodés avec le codec choisi par messaging.codec.
+     * Les deux formats restent lisibles pendant un déploiement progressif.
+     */
     @Bean
-    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
+    public MessageConverter messageConverter(@Value("${messaging.codec:json}") String codec) {
+        Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter();
+        CborMessageConverter cbor = new CborMessageConverter();
+        ContentTypeDelegatingMessageConverter converter =
+            new ContentTypeDelegatingMessageConverter("cbor".equalsIgnoreCase(codec) ? cbor : json);
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, json);
+        converter.addDelegate(CborMessageConverter.CONTENT_TYPE_CBOR, cbor);
+        return converter;
+    }
+
+    /**
+     * Template principal : connexion dédiée aux publications (les envois depuis les listeners ne prennent
+     * plus de canaux à la connexion des consommateurs) et publisher confirms asynchrones corrélés
+     */
+    @Bean
+    @Primary
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter,
+                                         PublisherConfirmMetrics confirmMetrics) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
-        template.setMessageConverter(messageConverter());
+        configurePublisher(template, messageConverter, confirmMetrics);
+        return template;
+    }
+
+    /**
+     * Template des événements "client.changed" : micro-batching optionnel (messaging.publisher.batch-window-ms > 0),
+     * les événements d'une même fenêtre partent en un seul message AMQP, dé-batché par le conteneur consommateur
+     */
+    @Bean
+    public RabbitTemplate eventRabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter,
+                                              PublisherConfirmMetrics confirmMetrics,
+                                              @Value("${messaging.publisher.batch-window-ms:0}") long batchWindowMs,
+                                              @Value("${messaging.publisher.batch-size:100}") int batchSize) {
+        if (batchWindowMs <= 0) {
+            return rabbitTemplate(connectionFactory, messageConverter, confirmMetrics);
+        }
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("publisher-batch-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        BatchingRabbitTemplate template = new BatchingRabbitTemplate(connectionFactory,
+                new SimpleBatchingStrategy(batchSize, 64 * 1024, batchWindowMs), scheduler);
+        configurePublisher(template, messageConverter, confirmMetrics);
         return template;
     }
+
+    private void configurePublisher(RabbitTemplate template, MessageConverter messageConverter,
+                                    PublisherConfirmMetrics confirmMetrics) {
+        template.setMessageConverter(messageConverter);
+        template.setUsePublisherConnection(true);
+        // Chaque envoi porte une CorrelationData : le ConfirmCallback mesure la latence de confirmation et les nacks
+        template.setCorrelationDataPostProcessor((message, correlationData) -> {
+            CorrelationData correlation = correlationData != null ? correlationData : new CorrelationData();
+            confirmMetrics.onPublish(correlation);
+            return correlation;
+        });
+        template.setConfirmCallback(confirmMetrics::onConfirm);
+    }
 } 
\ No newline at end of file
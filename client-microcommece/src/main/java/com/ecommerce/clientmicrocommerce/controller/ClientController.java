@@ -1,29 +1,75 @@
 package com.ecommerce.clientmicrocommerce.controller;
 
+import com.ecommerce.clientmicrocommerce.dao.BulkInsertResult;
 import com.ecommerce.clientmicrocommerce.dao.ClientDao;
+import com.ecommerce.clientmicrocommerce.dao.KeysetPage;
 import com.ecommerce.clientmicrocommerce.model.Client;
+import com.ecommerce.clientmicrocommerce.service.BulkIngestService;
+import com.ecommerce.clientmicrocommerce.service.ClientCountService;
+import com.ecommerce.clientmicrocommerce.service.ClientEventPublisher;
+import com.ecommerce.clientmicrocommerce.service.NdjsonExporter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
 @RestController
 @RequestMapping("/api")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = KeysetPage.NEXT_CURSOR_HEADER)
 public class ClientController {
     
     private final ClientDao clientDao;
+    private final ClientEventPublisher clientEventPublisher;
+    private final ClientCountService clientCountService;
+    private final NdjsonExporter ndjsonExporter;
+    private final BulkIngestService bulkIngestService;
     
-    public ClientController(ClientDao clientDao) {
+    public ClientController(ClientDao clientDao, ClientEventPublisher clientEventPublisher,
+                            ClientCountService clientCountService, NdjsonExporter ndjsonExporter,
+                            BulkIngestService bulkIngestService) {
         this.clientDao = clientDao;
+        this.clientEventPublisher = clientEventPublisher;
+        this.clientCountService = clientCountService;
+        this.ndjsonExporter = ndjsonExporter;
+        this.bulkIngestService = bulkIngestService;
     }
     
+    /**
+     * Liste paginée par clé : size (plafonné) et cursor, repris de l'en-tête X-Next-Cursor de la page précédente
+     */
     @GetMapping("/clients")
-    public List<Client> listeClients() {
-        return clientDao.findAll();
+    public ResponseEntity<?> listeClients(@RequestParam(required = false) String cursor,
+                                           @RequestParam(required = false) Integer size) {
+        KeysetPage<Client> page;
+        try {
+            page = clientDao.findPage(cursor, size);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Curseur invalide");
+            error.put("cursor", cursor);
+            return ResponseEntity.badRequest().body(error);
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(KeysetPage.NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.items());
+    }
+
+    /**
+     * Export NDJSON de tous les clients, en flux ; gzip=true pour un .ndjson.gz
+     */
+    @GetMapping("/clients/export")
+    public void exporterClients(@RequestParam(defaultValue = "false") boolean gzip,
+                                HttpServletResponse response) throws IOException {
+        ndjsonExporter.export(clientDao.streamAll(), "clients", gzip, response);
     }
 
     @GetMapping("/clients/{id}")
@@ -54,15 +100,19 @@ public class ClientController {
             return ResponseEntity.badRequest().body(error);
         }
         
-        if (clientDao.existsByEmail(client.getEmail())) {
+        // Réinitialiser l'ID pour forcer la création d'un nouveau client
+        client.setId(null);
+        Client savedClient;
+        try {
+            // Doublon détecté par l'index unique sur email, sans requête préalable
+            savedClient = clientDao.save(client);
+        } catch (DuplicateKeyException e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", "Un client avec cet email existe déjà");
             return ResponseEntity.badRequest().body(error);
         }
-        
-        // Réinitialiser l'ID pour forcer la création d'un nouveau client
-        client.setId(null);
-        Client savedClient = clientDao.save(client);
+        // Les index de recherche des autres instances relisent le nouveau client
+        clientEventPublisher.publishUpdated(savedClient.getId());
         return ResponseEntity.status(HttpStatus.CREATED).body(savedClient);
     }
     
@@ -89,16 +139,16 @@ public class ClientController {
             return ResponseEntity.badRequest().body(error);
         }
         
-        // Vérifier si l'email existe déjà pour un autre client
-        Client clientWithEmail = clientDao.findByEmail(client.getEmail());
-        if (clientWithEmail != null && !clientWithEmail.getId().equals(id)) {
+        client.setId(id);
+        Client updatedClient;
+        try {
+            updatedClient = clientDao.save(client);
+        } catch (DuplicateKeyException e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", "Un autre client avec cet email existe déjà");
             return ResponseEntity.badRequest().body(error);
         }
-        
-        client.setId(id);
-        Client updatedClient = clientDao.save(client);
+        clientEventPublisher.publishUpdated(id);
         return ResponseEntity.ok(updatedClient);
     }
     
@@ -107,6 +157,7 @@ public class ClientController {
         Client existingClient = clientDao.findById(id);
         if (existingClient != null) {
             clientDao.deleteById(id);
+            clientEventPublisher.publishDeleted(id);
             Map<String, String> response = new HashMap<>();
             response.put("message", "Client supprimé avec succès");
             response.put("id", id);
@@ -137,13 +188,7 @@ public class ClientController {
             existingClient.setPrenom((String) updates.get("prenom"));
         }
         if (updates.containsKey("email")) {
-            String newEmail = (String) updates.get("email");
-            if (clientDao.existsByEmail(newEmail) && !existingClient.getEmail().equals(newEmail)) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Un client avec cet email existe déjà");
-                return ResponseEntity.badRequest().body(error);
-            }
-            existingClient.setEmail(newEmail);
+            existingClient.setEmail((String) updates.get("email"));
         }
         if (updates.containsKey("telephone")) {
             existingClient.setTelephone((String) updates.get("telephone"));
@@ -161,37 +206,65 @@ public class ClientController {
             existingClient.setPays((String) updates.get("pays"));
         }
         
-        Client updatedClient = clientDao.save(existingClient);
+        Client updatedClient;
+        try {
+            updatedClient = clientDao.save(existingClient);
+        } catch (DuplicateKeyException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Un client avec cet email existe déjà");
+            return ResponseEntity.badRequest().body(error);
+        }
+        clientEventPublisher.publishUpdated(id);
         return ResponseEntity.ok(updatedClient);
     }
     
+    /**
+     * Import en masse : tableau JSON lu en flux et créé par lots non ordonnés ; la réponse est un résumé
+     * (reçus, insérés, en échec, premières erreurs avec leur position dans le tableau), sans écho des clients
+     */
     @PostMapping("/clients/bulk")
-    public ResponseEntity<Map<String, Object>> ajouterPlusieursClients(@RequestBody List<Client> clients) {
-        Map<String, Object> response = new HashMap<>();
+    public ResponseEntity<?> ajouterPlusieursClients(HttpServletRequest request) throws IOException {
+        BulkIngestService.Summary summary;
         try {
-            List<Client> savedClients = clients.stream()
-                    .map(client -> {
-                        client.setId(null); // Force creation
-                        return clientDao.save(client);
-                    })
-                    .toList();
-            
-            response.put("message", "Clients ajoutés avec succès");
-            response.put("count", savedClients.size());
-            response.put("clients", savedClients);
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
-        } catch (Exception e) {
-            response.put("error", "Erreur lors de l'ajout des clients");
-            response.put("message", e.getMessage());
-            return ResponseEntity.badRequest().body(response);
+            summary = bulkIngestService.ingest(request.getInputStream(), Client.class,
+                    ClientController::validerClient,
+                    chunk -> {
+                        BulkInsertResult<Client> result = clientDao.insertAll(chunk);
+                        result.inserted().forEach(client -> clientEventPublisher.publishUpdated(client.getId()));
+                        return result;
+                    });
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+        if (summary.error() != null || (summary.inserted() == 0 && summary.failed() > 0)) {
+            return ResponseEntity.badRequest().body(summary);
+        }
+        return ResponseEntity.status(summary.failed() == 0 ? HttpStatus.CREATED : HttpStatus.OK).body(summary);
+    }
+    
+    /**
+     * Règles de POST /clients pour un élément d'import : message d'erreur, ou null si le client est valide
+     */
+    private static String validerClient(Client client) {
+        if (client.getNom() == null || client.getNom().trim().isEmpty()) {
+            return "Le nom du client est obligatoire";
+        }
+        if (client.getEmail() == null || client.getEmail().trim().isEmpty()) {
+            return "L'email du client est obligatoire";
         }
+        return null;
     }
     
     @DeleteMapping("/clients")
     public ResponseEntity<Map<String, String>> supprimerTousLesClients() {
         try {
             List<Client> allClients = clientDao.findAll();
-            allClients.forEach(client -> clientDao.deleteById(client.getId()));
+            allClients.forEach(client -> {
+                clientDao.deleteById(client.getId());
+                clientEventPublisher.publishDeleted(client.getId());
+            });
             
             Map<String, String> response = new HashMap<>();
             response.put("message", "Tous les clients ont été supprimés");
@@ -205,54 +278,60 @@ public class ClientController {
         }
     }
     
+    /**
+     * consistency=exact (countDocuments, défaut) ou approximate (compteur en mémoire, sur demande) ;
+     * avec ville/pays, comptage exact sur les index de ces champs
+     */
     @GetMapping("/clients/count")
-    public ResponseEntity<Map<String, Object>> compterClients() {
-        List<Client> clients = clientDao.findAll();
+    public ResponseEntity<Map<String, Object>> compterClients(@RequestParam(defaultValue = ClientCountService.EXACT) String consistency,
+                                                              @RequestParam(required = false) String ville,
+                                                              @RequestParam(required = false) String pays) {
         Map<String, Object> response = new HashMap<>();
-        response.put("count", clients.size());
+        if (!ClientCountService.isValidConsistency(consistency)) {
+            response.put("error", "consistency doit valoir exact ou approximate");
+            return ResponseEntity.badRequest().body(response);
+        }
+        if (ville != null || pays != null) {
+            response.put("count", clientCountService.countByLocation(ville, pays));
+            response.put("consistency", ClientCountService.EXACT);
+        } else {
+            response.put("count", clientCountService.count(consistency));
+            response.put("consistency", consistency);
+        }
         response.put("message", "Nombre total de clients");
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * Recherche par sous-chaîne de nom/prénom et d'email (sans casse), ville et pays exacts ;
+     * paginée par clé comme /clients (size plafonné, cursor repris de l'en-tête X-Next-Cursor)
+     */
     @GetMapping("/clients/search")
-    public ResponseEntity<List<Client>> rechercherClients(@RequestParam(required = false) String nom, 
-                                                          @RequestParam(required = false) String email,
-                                                          @RequestParam(required = false) String ville,
-                                                          @RequestParam(required = false) String pays) {
-        List<Client> clients = clientDao.findAll();
-        
-        // Filtrage par nom
-        if (nom != null && !nom.isEmpty()) {
-            clients = clients.stream()
-                    .filter(c -> c.getNom().toLowerCase().contains(nom.toLowerCase()) || 
-                               c.getPrenom().toLowerCase().contains(nom.toLowerCase()))
-                    .toList();
-        }
-        
-        // Filtrage par email
-        if (email != null && !email.isEmpty()) {
-            clients = clients.stream()
-                    .filter(c -> c.getEmail().toLowerCase().contains(email.toLowerCase()))
-                    .toList();
-        }
-        
-        // Filtrage par ville
-        if (ville != null && !ville.isEmpty()) {
-            clients = clients.stream()
-                    .filter(c -> c.getVille().toLowerCase().contains(ville.toLowerCase()))
-                    .toList();
+    public ResponseEntity<?> rechercherClients(@RequestParam(required = false) String nom, 
+                                               @RequestParam(required = false) String email,
+                                               @RequestParam(required = false) String ville,
+                                               @RequestParam(required = false) String pays,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(required = false) Integer size) {
+        KeysetPage<Client> page;
+        try {
+            page = clientDao.search(nom, email, ville, pays, cursor, size);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Curseur invalide");
+            error.put("cursor", cursor);
+            return ResponseEntity.badRequest().body(error);
         }
-        
-        // Filtrage par pays
-        if (pays != null && !pays.isEmpty()) {
-            clients = clients.stream()
-                    .filter(c -> c.getPays().toLowerCase().contains(pays.toLowerCase()))
-                    .toList();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(KeysetPage.NEXT_CURSOR_HEADER, page.nextCursor());
         }
-        
-        return ResponseEntity.ok(clients);
+        return response.body(page.items());
     }
     
+    /**
+     * Servi par le cache des emails pour les adresses déjà lues
+     */
     @GetMapping("/clients/email/{email}")
     public ResponseEntity<?> rechercherParEmail(@PathVariable String email) {
         Client client = clientDao.findByEmail(email);
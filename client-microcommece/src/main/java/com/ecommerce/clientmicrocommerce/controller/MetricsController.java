@@ -0,0 +1,41 @@
+package com.ecommerce.clientmicrocommerce.controller;
+
+import com.ecommerce.clientmicrocommerce.config.PublisherConfirmMetrics;
+import com.ecommerce.clientmicrocommerce.service.ClientEmailLookup;
+import com.ecommerce.clientmicrocommerce.service.ClientSearchIndex;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/metrics")
+@CrossOrigin(origins = "*")
+public class MetricsController {
+
+    private final PublisherConfirmMetrics publisherConfirmMetrics;
+    private final ClientSearchIndex clientSearchIndex;
+    private final ClientEmailLookup clientEmailLookup;
+
+    public MetricsController(PublisherConfirmMetrics publisherConfirmMetrics, ClientSearchIndex clientSearchIndex,
+                             ClientEmailLookup clientEmailLookup) {
+        this.publisherConfirmMetrics = publisherConfirmMetrics;
+        this.clientSearchIndex = clientSearchIndex;
+        this.clientEmailLookup = clientEmailLookup;
+    }
+
+    @GetMapping("/publisher")
+    public ResponseEntity<Map<String, Object>> publications() {
+        return ResponseEntity.ok(publisherConfirmMetrics.getStats());
+    }
+
+    @GetMapping("/client-search")
+    public ResponseEntity<Map<String, Object>> indexRecherche() {
+        return ResponseEntity.ok(clientSearchIndex.getStats());
+    }
+
+    @GetMapping("/email-cache")
+    public ResponseEntity<Map<String, Object>> cacheEmails() {
+        return ResponseEntity.ok(clientEmailLookup.getStats());
+    }
+}
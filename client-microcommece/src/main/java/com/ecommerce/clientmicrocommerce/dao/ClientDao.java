@@ -3,18 +3,47 @@ package com.ecommerce.clientmicrocommerce.dao;
 import com.ecommerce.clientmicrocommerce.model.Client;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface ClientDao {
     
     List<Client> findAll();
+
+    /**
+     * Page triée par _id croissant, après le curseur donné (null pour la première page)
+     */
+    KeysetPage<Client> findPage(String cursor, Integer size);
+
+    /**
+     * Flux de tous les clients, lu au fil d'un curseur Mongo ; à fermer
+     */
+    Stream<Client> streamAll();
+    
+    /**
+     * Recherche paginée par clé (_id croissant) : index en mémoire s'il est chargé, sinon requête Mongo
+     * (regex sur nom/prénom/email, égalité indexée sur ville/pays, limite côté serveur)
+     */
+    KeysetPage<Client> search(String nom, String email, String ville, String pays, String cursor, Integer size);
     
     Client findById(String id);
     
+    /**
+     * @throws org.springframework.dao.DuplicateKeyException si l'email appartient déjà à un autre client
+     */
     Client save(Client client);
     
+    /**
+     * Création d'un lot en une seule écriture Mongo non ordonnée : chaque client reçoit un nouvel id,
+     * un email en double est refusé pour ce client seul (position dans le lot → message)
+     */
+    BulkInsertResult<Client> insertAll(List<Client> clients);
+    
     void deleteById(String id);
     
     // Custom methods
+    /**
+     * Servi par le cache des emails ; lecture sur l'index unique email sinon
+     */
     Client findByEmail(String email);
     
     List<Client> findByNom(String nom);
@@ -2,18 +2,66 @@ package com.ecommerce.clientmicrocommerce.dao;
 
 import com.ecommerce.clientmicrocommerce.model.Client;
 import com.ecommerce.clientmicrocommerce.repository.ClientRepository;
+import com.ecommerce.clientmicrocommerce.service.ClientCountService;
+import com.ecommerce.clientmicrocommerce.service.ClientEmailLookup;
+import com.ecommerce.clientmicrocommerce.service.ClientSearchIndex;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Repository;
 
 import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Repository
 public class ClientDaoImpl implements ClientDao {
     
+    private static final int DUPLICATE_KEY = 11000;
+    private static final String DUPLICATE_EMAIL = "Un client avec cet email existe déjà";
+    
     @Autowired
     private ClientRepository clientRepository;
     
+    @Autowired
+    private ClientCountService clientCountService;
+    
+    @Autowired
+    private ClientSearchIndex clientSearchIndex;
+    
+    @Autowired
+    private ClientEmailLookup clientEmailLookup;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Value("${export.cursor-batch-size:1000}")
+    private int exportBatchSize;
+    
+    @Value("${pagination.default-page-size:100}")
+    private int defaultPageSize;
+    
+    @Value("${pagination.max-page-size:1000}")
+    private int maxPageSize;
+    
     // Initialisation des données de test dans MongoDB
     @PostConstruct
     public void initData() {
@@ -37,6 +85,86 @@ public class ClientDaoImpl implements ClientDao {
         return clientRepository.findAll();
     }
     
+    @Override
+    public KeysetPage<Client> findPage(String cursor, Integer size) {
+        Pageable pageable = PageRequest.of(0, pageSize(size), Sort.by(Sort.Direction.ASC, "id"));
+        Slice<Client> slice = cursor == null || cursor.isEmpty()
+                ? clientRepository.findAllBy(pageable)
+                : clientRepository.findPageAfter(lastId(cursor), pageable);
+        List<Client> items = slice.getContent();
+        String nextCursor = slice.hasNext() ? KeysetPage.encodeCursor(items.get(items.size() - 1).getId()) : null;
+        return new KeysetPage<>(items, nextCursor);
+    }
+    
+    @Override
+    public Stream<Client> streamAll() {
+        return mongoTemplate.stream(new Query().cursorBatchSize(exportBatchSize), Client.class);
+    }
+    
+    @Override
+    public KeysetPage<Client> search(String nom, String email, String ville, String pays, String cursor, Integer size) {
+        int limit = pageSize(size);
+        ObjectId afterId = cursor == null || cursor.isEmpty() ? null : lastId(cursor);
+        // Un élément de plus que la page : indique s'il reste une page suivante
+        List<Client> items = clientSearchIndex.isReady()
+                ? searchIndex(nom, email, ville, pays, afterId, limit + 1)
+                : searchMongo(nom, email, ville, pays, afterId, limit + 1);
+        if (items.size() <= limit) {
+            return new KeysetPage<>(items, null);
+        }
+        items = items.subList(0, limit);
+        return new KeysetPage<>(items, KeysetPage.encodeCursor(items.get(limit - 1).getId()));
+    }
+    
+    private List<Client> searchIndex(String nom, String email, String ville, String pays, ObjectId afterId, int limit) {
+        List<String> ids = clientSearchIndex.search(nom, email, ville, pays,
+                afterId != null ? afterId.toHexString() : null, limit);
+        Map<String, Client> clientsById = new HashMap<>();
+        clientRepository.findAllById(ids).forEach(client -> clientsById.put(client.getId(), client));
+        return ids.stream()
+                .map(clientsById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+    
+    private List<Client> searchMongo(String nom, String email, String ville, String pays, ObjectId afterId, int limit) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (afterId != null) {
+            criteria.add(Criteria.where("_id").gt(afterId));
+        }
+        // Égalités sur ville et pays : servies par leurs index
+        if (ville != null && !ville.isEmpty()) {
+            criteria.add(Criteria.where("ville").is(ville));
+        }
+        if (pays != null && !pays.isEmpty()) {
+            criteria.add(Criteria.where("pays").is(pays));
+        }
+        if (nom != null && !nom.isEmpty()) {
+            String pattern = Pattern.quote(nom);
+            criteria.add(new Criteria().orOperator(
+                    Criteria.where("nom").regex(pattern, "i"),
+                    Criteria.where("prenom").regex(pattern, "i")));
+        }
+        if (email != null && !email.isEmpty()) {
+            criteria.add(Criteria.where("email").regex(Pattern.quote(email), "i"));
+        }
+        Query query = criteria.isEmpty() ? new Query() : new Query(new Criteria().andOperator(criteria));
+        query.with(Sort.by(Sort.Direction.ASC, "_id")).limit(limit);
+        return mongoTemplate.find(query, Client.class);
+    }
+    
+    private ObjectId lastId(String cursor) {
+        String id = KeysetPage.decodeCursor(cursor, 1)[0];
+        if (!ObjectId.isValid(id)) {
+            throw new IllegalArgumentException("Curseur invalide");
+        }
+        return new ObjectId(id);
+    }
+    
+    private int pageSize(Integer size) {
+        return size == null || size <= 0 ? defaultPageSize : Math.min(size, maxPageSize);
+    }
+    
     @Override
     public Client findById(String id) {
         return clientRepository.findById(id).orElse(null);
@@ -44,17 +172,89 @@ public class ClientDaoImpl implements ClientDao {
     
     @Override
     public Client save(Client client) {
-        return clientRepository.save(client);
+        boolean inserted = client.getId() == null;
+        if (!clientEmailLookup.isUniqueIndexReady()) {
+            // Sans index unique (doublons existants), vérification préalable : sujette aux courses
+            Client clientWithEmail = findByEmail(client.getEmail());
+            if (clientWithEmail != null && !clientWithEmail.getId().equals(client.getId())) {
+                throw new DuplicateKeyException("Email déjà utilisé: " + client.getEmail());
+            }
+        }
+        // Email en double : DuplicateKeyException levée par l'index unique
+        Client savedClient = clientRepository.save(client);
+        clientEmailLookup.invalidate(savedClient.getId(), savedClient.getEmail());
+        if (inserted) {
+            clientCountService.inserted();
+        }
+        clientSearchIndex.upsert(savedClient, System.currentTimeMillis());
+        return savedClient;
+    }
+    
+    @Override
+    public BulkInsertResult<Client> insertAll(List<Client> clients) {
+        Map<Integer, String> errors = new HashMap<>();
+        if (!clientEmailLookup.isUniqueIndexReady()) {
+            // Sans index unique : emails déjà en base (une requête par lot) et doublons à l'intérieur du lot
+            Set<String> emails = new HashSet<>();
+            clients.forEach(client -> emails.add(client.getEmail()));
+            Query existing = new Query(Criteria.where("email").in(emails));
+            existing.fields().include("email");
+            Set<String> taken = new HashSet<>();
+            mongoTemplate.find(existing, Client.class).forEach(client -> taken.add(client.getEmail()));
+            for (int i = 0; i < clients.size(); i++) {
+                if (!taken.add(clients.get(i).getEmail())) {
+                    errors.put(i, DUPLICATE_EMAIL);
+                }
+            }
+        }
+        // Identifiants attribués ici : les clients insérés sont connus sans relecture
+        List<Client> candidates = new ArrayList<>(clients.size());
+        List<Integer> positions = new ArrayList<>(clients.size());
+        for (int i = 0; i < clients.size(); i++) {
+            if (!errors.containsKey(i)) {
+                clients.get(i).setId(new ObjectId().toHexString());
+                candidates.add(clients.get(i));
+                positions.add(i);
+            }
+        }
+        Set<Integer> rejected = new HashSet<>();
+        if (!candidates.isEmpty()) {
+            try {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Client.class).insert(candidates).execute();
+            } catch (BulkOperationException e) {
+                // Email en double : refusé par l'index unique
+                for (BulkWriteError error : e.getErrors()) {
+                    rejected.add(error.getIndex());
+                    errors.put(positions.get(error.getIndex()), error.getCode() == DUPLICATE_KEY
+                            ? DUPLICATE_EMAIL : error.getMessage());
+                }
+            }
+        }
+        List<Client> inserted = new ArrayList<>(candidates.size() - rejected.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            if (!rejected.contains(i)) {
+                inserted.add(candidates.get(i));
+            }
+        }
+        // Pas d'invalidation du cache des emails : il ne garde que des clients existants, jamais un email inconnu
+        if (!inserted.isEmpty()) {
+            clientCountService.inserted(inserted.size());
+            clientSearchIndex.upsertAll(inserted, System.currentTimeMillis());
+        }
+        return new BulkInsertResult<>(inserted, errors);
     }
     
     @Override
     public void deleteById(String id) {
         clientRepository.deleteById(id);
+        clientCountService.deleted();
+        clientSearchIndex.remove(id, System.currentTimeMillis());
+        clientEmailLookup.invalidate(id, null);
     }
     
     @Override
     public Client findByEmail(String email) {
-        return clientRepository.findByEmail(email).orElse(null);
+        return clientEmailLookup.find(email, () -> clientRepository.findByEmail(email).orElse(null));
     }
     
     @Override
@@ -64,6 +264,6 @@ public class ClientDaoImpl implements ClientDao {
     
     @Override
     public boolean existsByEmail(String email) {
-        return clientRepository.existsByEmail(email);
+        return findByEmail(email) != null;
     }
 } 
\ No newline at end of file
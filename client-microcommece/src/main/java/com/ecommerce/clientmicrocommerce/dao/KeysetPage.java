@@ -0,0 +1,34 @@
+package com.ecommerce.clientmicrocommerce.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Page d'un parcours par clé (keyset) : les éléments et le curseur opaque de la page suivante
+ * (null en fin de parcours). Le curseur encode les clés de tri du dernier élément renvoyé.
+ */
+public record KeysetPage<T>(List<T> items, String nextCursor) {
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final String SEPARATOR = "|";
+
+    public static String encodeCursor(String... keys) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.join(SEPARATOR, keys).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Décode un curseur produit par encodeCursor ; IllegalArgumentException s'il est invalide
+     */
+    public static String[] decodeCursor(String cursor, int keyCount) {
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        String[] keys = decoded.split(Pattern.quote(SEPARATOR), -1);
+        if (keys.length != keyCount) {
+            throw new IllegalArgumentException("Curseur invalide");
+        }
+        return keys;
+    }
+}
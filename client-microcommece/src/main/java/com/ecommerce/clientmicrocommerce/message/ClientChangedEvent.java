@@ -0,0 +1,7 @@
+package com.ecommerce.clientmicrocommerce.message;
+
+/**
+ * Événement "client.changed" (mise à jour ou suppression d'un client)
+ */
+public record ClientChangedEvent(String eventType, String clientId, long timestamp, String service) {
+}
@@ -0,0 +1,15 @@
+package com.ecommerce.clientmicrocommerce.message;
+
+import com.ecommerce.clientmicrocommerce.model.Client;
+
+/**
+ * Vue d'un client transportée dans les messages
+ */
+public record ClientData(String id, String nom, String prenom, String email, String telephone,
+                         String adresse, String ville, String codePostal, String pays) {
+
+    public static ClientData from(Client client) {
+        return new ClientData(client.getId(), client.getNom(), client.getPrenom(), client.getEmail(),
+                client.getTelephone(), client.getAdresse(), client.getVille(), client.getCodePostal(), client.getPays());
+    }
+}
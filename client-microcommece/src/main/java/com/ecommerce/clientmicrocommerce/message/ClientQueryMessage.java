@@ -0,0 +1,7 @@
+package com.ecommerce.clientmicrocommerce.message;
+
+/**
+ * Requête "client.query" : un client (clientId) ou l'action GET_ALL_CLIENTS
+ */
+public record ClientQueryMessage(String correlationId, String clientId, String action, String service) {
+}
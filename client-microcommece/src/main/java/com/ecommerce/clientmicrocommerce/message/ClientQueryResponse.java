@@ -0,0 +1,31 @@
+package com.ecommerce.clientmicrocommerce.message;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Réponse "client.response" ; seuls les champs renseignés sont sérialisés
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ClientQueryResponse(String correlationId,
+                                  String service,
+                                  String status,
+                                  String message,
+                                  ClientData client,
+                                  List<ClientData> clients) {
+
+    private static final String SERVICE = "client-service";
+
+    public static ClientQueryResponse found(String correlationId, ClientData client) {
+        return new ClientQueryResponse(correlationId, SERVICE, "SUCCESS", null, client, null);
+    }
+
+    public static ClientQueryResponse all(String correlationId, List<ClientData> clients) {
+        return new ClientQueryResponse(correlationId, SERVICE, "SUCCESS", null, null, clients);
+    }
+
+    public static ClientQueryResponse failure(String correlationId, String status, String message) {
+        return new ClientQueryResponse(correlationId, SERVICE, status, message, null, null);
+    }
+}
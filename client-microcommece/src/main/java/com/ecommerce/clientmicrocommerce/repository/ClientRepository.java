@@ -1,7 +1,11 @@
 package com.ecommerce.clientmicrocommerce.repository;
 
 import com.ecommerce.clientmicrocommerce.model.Client;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -22,4 +26,10 @@ public interface ClientRepository extends MongoRepository<Client, String> {
     List<Client> findByVille(String ville);
     List<Client> findByPays(String pays);
     boolean existsByEmail(String email);
-} 
\ No newline at end of file
+    
+    // Parcours par clé sur _id (sans skip) : première page, puis pages suivant le dernier _id renvoyé
+    Slice<Client> findAllBy(Pageable pageable);
+    
+    @Query("{ '_id': { '$gt': ?0 } }")
+    Slice<Client> findPageAfter(ObjectId lastId, Pageable pageable);
+}
@@ -0,0 +1,120 @@
+package com.ecommerce.clientmicrocommerce.service;
+
+import com.ecommerce.clientmicrocommerce.model.Client;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Comptage des clients sans charger la collection.
+ *
+ * - exact (défaut des endpoints) : countDocuments, calculé par Mongo (aucun document désérialisé)
+ * - approximate (sur demande) : compteur en mémoire tenu par ClientDaoImpl (save/delete), recalé périodiquement
+ *   sur estimatedDocumentCount (métadonnées de la collection) pour intégrer les écritures des autres instances
+ *
+ * Les comptages filtrés (ville, pays) sont toujours exacts, via les index sur ces champs.
+ */
+@Service
+public class ClientCountService {
+
+    public static final String EXACT = "exact";
+    public static final String APPROXIMATE = "approximate";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${count.resync-interval-ms:60000}")
+    private long resyncIntervalMs;
+
+    private final AtomicLong localCount = new AtomicLong();
+    private volatile boolean synced;
+
+    private ScheduledExecutorService resync;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        mongoTemplate.indexOps(Client.class).createIndex(new Index("ville", Sort.Direction.ASC));
+        mongoTemplate.indexOps(Client.class).createIndex(new Index("pays", Sort.Direction.ASC));
+
+        resync = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "client-count");
+            thread.setDaemon(true);
+            return thread;
+        });
+        resync.scheduleWithFixedDelay(this::resync, 0, resyncIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (resync != null) {
+            resync.shutdown();
+        }
+    }
+
+    public static boolean isValidConsistency(String consistency) {
+        return EXACT.equals(consistency) || APPROXIMATE.equals(consistency);
+    }
+
+    public long count(String consistency) {
+        if (EXACT.equals(consistency)) {
+            return collection().countDocuments();
+        }
+        return synced ? Math.max(0, localCount.get()) : collection().estimatedDocumentCount();
+    }
+
+    /**
+     * Nombre de clients d'une ville et/ou d'un pays (égalité exacte)
+     */
+    public long countByLocation(String ville, String pays) {
+        List<Bson> filters = new ArrayList<>();
+        if (ville != null && !ville.isEmpty()) {
+            filters.add(Filters.eq("ville", ville));
+        }
+        if (pays != null && !pays.isEmpty()) {
+            filters.add(Filters.eq("pays", pays));
+        }
+        return filters.isEmpty() ? collection().countDocuments() : collection().countDocuments(Filters.and(filters));
+    }
+
+    public void inserted() {
+        localCount.incrementAndGet();
+    }
+
+    public void inserted(int count) {
+        localCount.addAndGet(count);
+    }
+
+    public void deleted() {
+        localCount.decrementAndGet();
+    }
+
+    private void resync() {
+        try {
+            localCount.set(collection().estimatedDocumentCount());
+            synced = true;
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors du recalage du compteur de clients: " + e.getMessage());
+        }
+    }
+
+    private MongoCollection<Document> collection() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Client.class));
+    }
+}
@@ -0,0 +1,148 @@
+package com.ecommerce.clientmicrocommerce.service;
+
+import com.ecommerce.clientmicrocommerce.message.ClientChangedEvent;
+import com.ecommerce.clientmicrocommerce.model.Client;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Recherche de clients par email :
+ * - index unique sur email, créé au démarrage : les doublons sont refusés par Mongo (DuplicateKeyException),
+ *   sans requête de vérification préalable ni course entre deux créations simultanées ;
+ * - cache borné email → client (éviction W-TinyLFU, TTL), invalidé par les écritures de ClientDaoImpl
+ *   et par les événements client.changed des autres instances.
+ *
+ * Si l'index ne peut pas être créé (doublons déjà présents), uniqueIndexReady reste faux
+ * et ClientDaoImpl revient à la vérification préalable.
+ */
+@Component
+public class ClientEmailLookup {
+
+    public static final String EMAIL_INDEX = "email_unique";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${client.email-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${client.email-cache.ttl-ms:300000}")
+    private long ttlMs;
+
+    private Cache<String, Client> clientsByEmail;
+
+    // Instant de la dernière invalidation par email et par clientId, pour ignorer les lectures lancées avant
+    private Cache<String, Long> invalidatedAt;
+
+    private volatile boolean uniqueIndexReady;
+    private volatile String uniqueIndexError;
+
+    @PostConstruct
+    public void init() {
+        clientsByEmail = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+        invalidatedAt = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureUniqueIndex() {
+        try {
+            mongoTemplate.indexOps(Client.class).createIndex(
+                    new Index("email", Sort.Direction.ASC).unique().named(EMAIL_INDEX));
+            uniqueIndexReady = true;
+            uniqueIndexError = null;
+        } catch (Exception e) {
+            uniqueIndexError = e.getMessage();
+            System.err.println("❌ Index unique sur email impossible (doublons existants ?): " + e.getMessage());
+        }
+    }
+
+    public boolean isUniqueIndexReady() {
+        return uniqueIndexReady;
+    }
+
+    /**
+     * Client de cet email : depuis le cache, sinon chargé (requête sur l'index email) puis mis en cache.
+     * Les emails inconnus ne sont pas mis en cache : un client créé par une autre instance est vu tout de suite.
+     */
+    public Client find(String email, Supplier<Client> loader) {
+        if (email == null) {
+            return null;
+        }
+        Client cached = clientsByEmail.getIfPresent(email);
+        if (cached != null) {
+            return cached;
+        }
+        long readStartedAt = System.currentTimeMillis();
+        Client client = loader.get();
+        if (client != null && notInvalidatedSince(email, readStartedAt) && notInvalidatedSince(client.getId(), readStartedAt)) {
+            clientsByEmail.put(email, client);
+        }
+        return client;
+    }
+
+    /**
+     * Après une écriture : retire l'ancienne entrée du client (email éventuellement changé) et son nouvel email
+     */
+    public void invalidate(String clientId, String email) {
+        long now = System.currentTimeMillis();
+        if (clientId != null) {
+            invalidatedAt.put(clientId, now);
+            clientsByEmail.asMap().values().removeIf(client -> clientId.equals(client.getId()));
+        }
+        if (email != null) {
+            invalidatedAt.put(email, now);
+            clientsByEmail.invalidate(email);
+        }
+    }
+
+    /**
+     * Écoute les événements client.changed (une queue exclusive par instance)
+     */
+    @RabbitListener(queues = "#{clientEmailEventsQueue.name}")
+    public void handleClientChanged(ClientChangedEvent event) {
+        if (event.clientId() != null) {
+            invalidate(event.clientId(), null);
+        }
+    }
+
+    private boolean notInvalidatedSince(String key, long readStartedAt) {
+        Long invalidation = invalidatedAt.getIfPresent(key);
+        return invalidation == null || invalidation < readStartedAt;
+    }
+
+    public Map<String, Object> getStats() {
+        CacheStats stats = clientsByEmail.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("uniqueIndexReady", uniqueIndexReady);
+        result.put("uniqueIndexError", uniqueIndexError);
+        result.put("size", clientsByEmail.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+}
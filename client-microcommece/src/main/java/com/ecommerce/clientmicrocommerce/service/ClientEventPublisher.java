@@ -0,0 +1,46 @@
+package com.ecommerce.clientmicrocommerce.service;
+
+import com.ecommerce.clientmicrocommerce.config.RabbitMQConfig;
+import com.ecommerce.clientmicrocommerce.message.ClientChangedEvent;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+/**
+ * Publie les événements "client.changed" pour invalider les caches clients des autres services
+ */
+@Service
+public class ClientEventPublisher {
+
+    public static final String CLIENT_UPDATED = "CLIENT_UPDATED";
+    public static final String CLIENT_DELETED = "CLIENT_DELETED";
+
+    // Template des événements : micro-batching si messaging.publisher.batch-window-ms > 0
+    @Autowired
+    @Qualifier("eventRabbitTemplate")
+    private RabbitTemplate rabbitTemplate;
+
+    public void publishUpdated(String clientId) {
+        publish(CLIENT_UPDATED, clientId);
+    }
+
+    public void publishDeleted(String clientId) {
+        publish(CLIENT_DELETED, clientId);
+    }
+
+    private void publish(String eventType, String clientId) {
+        try {
+            ClientChangedEvent event = new ClientChangedEvent(eventType, clientId, System.currentTimeMillis(), "client-service");
+
+            rabbitTemplate.convertAndSend(
+                RabbitMQConfig.MICROSERVICE_EXCHANGE,
+                RabbitMQConfig.CLIENT_CHANGED_ROUTING_KEY,
+                event
+            );
+        } catch (Exception e) {
+            // Les caches consommateurs ont un TTL : un événement perdu ne laisse pas de donnée figée
+            System.err.println("❌ Erreur lors de la publication de client.changed: " + e.getMessage());
+        }
+    }
+}
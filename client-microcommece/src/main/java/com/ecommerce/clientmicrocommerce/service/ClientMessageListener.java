@@ -1,15 +1,20 @@
 package com.ecommerce.clientmicrocommerce.service;
 
+import com.ecommerce.clientmicrocommerce.message.ClientData;
+import com.ecommerce.clientmicrocommerce.message.ClientQueryMessage;
+import com.ecommerce.clientmicrocommerce.message.ClientQueryResponse;
 import com.ecommerce.clientmicrocommerce.model.Client;
 import com.ecommerce.clientmicrocommerce.repository.ClientRepository;
 import com.ecommerce.clientmicrocommerce.config.RabbitMQConfig;
+import org.springframework.amqp.core.Address;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -22,34 +27,36 @@ public class ClientMessageListener {
     private RabbitTemplate rabbitTemplate;
 
     @RabbitListener(queues = RabbitMQConfig.CLIENT_QUERY_QUEUE)
-    public void handleClientQuery(Map<String, Object> message) {
+    public void handleClientQuery(ClientQueryMessage message,
+                                  @Header(name = AmqpHeaders.REPLY_TO, required = false) String replyTo) {
         try {
-            String correlationId = (String) message.get("correlationId");
-            String clientId = (String) message.get("clientId");
-            String action = (String) message.get("action");
+            String correlationId = message.correlationId();
+            String clientId = message.clientId();
             
             System.out.println("👤 Client Service - Requête reçue pour client: " + clientId + " (ID: " + correlationId + ")");
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("correlationId", correlationId);
-            response.put("service", "client-service");
+            ClientQueryResponse response;
 
             // If clientId is provided, treat it as a GET_CLIENT request
             if (clientId != null && !clientId.trim().isEmpty()) {
-                handleGetClient(clientId, response);
-            } else if ("GET_ALL_CLIENTS".equals(action)) {
-                handleGetAllClients(response);
+                response = handleGetClient(correlationId, clientId);
+            } else if ("GET_ALL_CLIENTS".equals(message.action())) {
+                response = handleGetAllClients(correlationId);
             } else {
-                response.put("status", "ERROR");
-                response.put("message", "Client ID requis ou action non reconnue");
+                response = ClientQueryResponse.failure(correlationId, "ERROR", "Client ID requis ou action non reconnue");
             }
 
-            // Envoyer la réponse
-            rabbitTemplate.convertAndSend(
-                RabbitMQConfig.MICROSERVICE_EXCHANGE,
-                "client.response",
-                response
-            );
+            // Envoyer la réponse à la queue reply_to de l'instance émettrice, sinon sur la queue partagée
+            if (replyTo != null && !replyTo.isEmpty()) {
+                Address address = new Address(replyTo);
+                rabbitTemplate.convertAndSend(address.getExchangeName(), address.getRoutingKey(), response);
+            } else {
+                rabbitTemplate.convertAndSend(
+                    RabbitMQConfig.MICROSERVICE_EXCHANGE,
+                    "client.response",
+                    response
+                );
+            }
 
         } catch (Exception e) {
             System.err.println("❌ Erreur dans Client Service: " + e.getMessage());
@@ -57,45 +64,32 @@ public class ClientMessageListener {
         }
     }
 
-    private void handleGetClient(String clientId, Map<String, Object> response) {
+    private ClientQueryResponse handleGetClient(String correlationId, String clientId) {
         try {
             Optional<Client> clientOpt = clientRepository.findById(clientId);
             
             if (clientOpt.isPresent()) {
                 Client client = clientOpt.get();
-                response.put("status", "SUCCESS");
-                response.put("client", Map.of(
-                    "id", client.getId(),
-                    "nom", client.getNom(),
-                    "prenom", client.getPrenom(),
-                    "email", client.getEmail(),
-                    "telephone", client.getTelephone(),
-                    "adresse", client.getAdresse(),
-                    "ville", client.getVille(),
-                    "codePostal", client.getCodePostal(),
-                    "pays", client.getPays()
-                ));
                 System.out.println("✅ Client trouvé: " + client.getNom() + " " + client.getPrenom());
+                return ClientQueryResponse.found(correlationId, ClientData.from(client));
             } else {
-                response.put("status", "NOT_FOUND");
-                response.put("message", "Client non trouvé avec l'ID: " + clientId);
                 System.out.println("❌ Client non trouvé: " + clientId);
+                return ClientQueryResponse.failure(correlationId, "NOT_FOUND", "Client non trouvé avec l'ID: " + clientId);
             }
         } catch (Exception e) {
-            response.put("status", "ERROR");
-            response.put("message", "Erreur lors de la recherche du client: " + e.getMessage());
+            return ClientQueryResponse.failure(correlationId, "ERROR", "Erreur lors de la recherche du client: " + e.getMessage());
         }
     }
 
-    private void handleGetAllClients(Map<String, Object> response) {
+    private ClientQueryResponse handleGetAllClients(String correlationId) {
         try {
-            var clients = clientRepository.findAll();
-            response.put("status", "SUCCESS");
-            response.put("clients", clients);
+            List<ClientData> clients = clientRepository.findAll().stream()
+                    .map(ClientData::from)
+                    .toList();
             System.out.println("✅ " + clients.size() + " clients retournés");
+            return ClientQueryResponse.all(correlationId, clients);
         } catch (Exception e) {
-            response.put("status", "ERROR");
-            response.put("message", "Erreur lors de la récupération des clients: " + e.getMessage());
+            return ClientQueryResponse.failure(correlationId, "ERROR", "Erreur lors de la récupération des clients: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+}
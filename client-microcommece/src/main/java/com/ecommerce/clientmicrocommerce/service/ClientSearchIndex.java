@@ -0,0 +1,440 @@
+package com.ecommerce.clientmicrocommerce.service;
+
+import com.ecommerce.clientmicrocommerce.message.ClientChangedEvent;
+import com.ecommerce.clientmicrocommerce.model.Client;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Index de recherche des clients en mémoire, chemin rapide de /clients/search :
+ * - trigrammes de nom/prénom et de l'email (en minuscules) pour la recherche de sous-chaîne ;
+ * - listes exactes par ville et par pays.
+ *
+ * Tenu à jour par les écritures de ClientDaoImpl et par les événements client.changed (le client est
+ * relu dans Mongo, l'événement ne portant que son identifiant). Les résultats sont triés par _id
+ * (ordre des ObjectId, identique à l'ordre de leur forme hexadécimale) pour la pagination par clé.
+ */
+@Component
+public class ClientSearchIndex {
+
+    private static final int GRAM = 3;
+    private static final int MIN_COMPACTION_SIZE = 1024;
+    private static final int LOAD_BATCH_SIZE = 10_000;
+    // Séparateur entre nom et prénom : aucun trigramme de requête ne le contient
+    private static final char FIELD_SEPARATOR = '\u0000';
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private String[] ids = new String[1024];
+    private String[] noms = new String[1024];
+    private String[] prenoms = new String[1024];
+    private String[] emails = new String[1024];
+    private String[] villes = new String[1024];
+    private String[] pays = new String[1024];
+    private final BitSet deleted = new BitSet();
+    private int documentCount;
+    private int deletedCount;
+
+    private final Map<String, Integer> documentById = new HashMap<>();
+    // Version (horodatage) de la dernière écriture appliquée par client, suppressions comprises
+    private final Map<String, Long> versionById = new HashMap<>();
+
+    private final Map<Long, IntList> nameGrams = new HashMap<>();
+    private final Map<Long, IntList> emailGrams = new HashMap<>();
+    private final Map<String, IntList> byVille = new HashMap<>();
+    private final Map<String, IntList> byPays = new HashMap<>();
+
+    private volatile boolean ready;
+
+    /**
+     * Chargement initial en tâche de fond ; les recherches passent par Mongo tant qu'il n'est pas terminé
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread loader = new Thread(this::load, "client-search-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void load() {
+        // Les écritures postérieures au début du chargement l'emportent sur les documents lus
+        long loadVersion = System.currentTimeMillis();
+        Query query = new Query().cursorBatchSize(LOAD_BATCH_SIZE);
+        query.fields().include("nom").include("prenom").include("email").include("ville").include("pays");
+        long count = 0;
+        try (Stream<Client> clients = mongoTemplate.stream(query, Client.class)) {
+            List<Client> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+            for (Client client : (Iterable<Client>) clients::iterator) {
+                batch.add(client);
+                if (batch.size() == LOAD_BATCH_SIZE) {
+                    count += batch.size();
+                    upsertAll(batch, loadVersion);
+                    batch.clear();
+                }
+            }
+            count += batch.size();
+            upsertAll(batch, loadVersion);
+            ready = true;
+            System.out.println("🔎 Index de recherche clients chargé: " + count + " clients");
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors du chargement de l'index de recherche clients: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Écoute les événements client.changed (une queue exclusive par instance)
+     */
+    @RabbitListener(queues = "#{clientSearchEventsQueue.name}")
+    public void handleClientChanged(ClientChangedEvent event) {
+        Client client = ClientEventPublisher.CLIENT_DELETED.equals(event.eventType())
+                ? null
+                : mongoTemplate.findById(event.clientId(), Client.class);
+        if (client != null) {
+            upsert(client, event.timestamp());
+        } else {
+            remove(event.clientId(), event.timestamp());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void upsert(Client client, long version) {
+        lock.writeLock().lock();
+        try {
+            if (replace(client, version)) {
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void upsertAll(List<Client> clients, long version) {
+        lock.writeLock().lock();
+        try {
+            for (Client client : clients) {
+                replace(client, version);
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String clientId, long version) {
+        lock.writeLock().lock();
+        try {
+            Long current = versionById.get(clientId);
+            if (current != null && version < current) {
+                return;
+            }
+            versionById.put(clientId, version);
+            Integer document = documentById.remove(clientId);
+            if (document != null) {
+                markDeleted(document);
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Identifiants des clients dont le nom ou le prénom contient nom, l'email contient email (sans casse),
+     * et dont la ville et le pays sont ceux demandés (égalité exacte) ; filtres facultatifs.
+     * Au plus limit identifiants, croissants, strictement après afterId (null pour la première page).
+     */
+    public List<String> search(String nom, String email, String ville, String paysFilter, String afterId, int limit) {
+        String nameQuery = normalize(nom);
+        String emailQuery = normalize(email);
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            // Listes de candidats disponibles ; la plus courte sert de base à l'intersection
+            List<IntList> lists = new ArrayList<>();
+            if (!addGramLists(nameQuery, nameGrams, lists) || !addGramLists(emailQuery, emailGrams, lists)
+                    || !addExactList(ville, byVille, lists) || !addExactList(paysFilter, byPays, lists)) {
+                return List.of();
+            }
+
+            int[] candidates;
+            int size;
+            if (lists.isEmpty()) {
+                candidates = null;
+                size = documentCount;
+            } else {
+                lists.sort(Comparator.comparingInt(list -> list.size));
+                candidates = Arrays.copyOf(lists.get(0).values, lists.get(0).size);
+                size = candidates.length;
+                for (int l = 1; l < lists.size() && size > 0; l++) {
+                    size = intersect(candidates, size, lists.get(l));
+                }
+            }
+
+            // Les limit plus petits identifiants après le curseur : le plus grand en tête du tas
+            PriorityQueue<String> page = new PriorityQueue<>(Math.min(limit, 1024) + 1, Collections.reverseOrder());
+            for (int i = 0; i < size; i++) {
+                int document = candidates != null ? candidates[i] : i;
+                if (deleted.get(document) || (afterId != null && ids[document].compareTo(afterId) <= 0)) {
+                    continue;
+                }
+                if (!matches(document, nameQuery, emailQuery, ville, paysFilter)) {
+                    continue;
+                }
+                if (page.size() < limit) {
+                    page.add(ids[document]);
+                } else if (ids[document].compareTo(page.peek()) < 0) {
+                    page.poll();
+                    page.add(ids[document]);
+                }
+            }
+            List<String> result = new ArrayList<>(page);
+            Collections.sort(result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("ready", ready);
+            stats.put("clients", documentById.size());
+            stats.put("documents", documentCount);
+            stats.put("deletedDocuments", deletedCount);
+            stats.put("nameTrigrams", nameGrams.size());
+            stats.put("emailTrigrams", emailGrams.size());
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ===== Lecture =====
+
+    private boolean matches(int document, String nameQuery, String emailQuery, String ville, String paysFilter) {
+        return (nameQuery.isEmpty() || noms[document].contains(nameQuery) || prenoms[document].contains(nameQuery))
+                && (emailQuery.isEmpty() || emails[document].contains(emailQuery))
+                && (ville == null || ville.isEmpty() || ville.equals(villes[document]))
+                && (paysFilter == null || paysFilter.isEmpty() || paysFilter.equals(pays[document]));
+    }
+
+    /**
+     * Ajoute les listes des trigrammes de la requête ; false si l'un d'eux n'existe pas (aucun résultat)
+     */
+    private static boolean addGramLists(String query, Map<Long, IntList> grams, List<IntList> lists) {
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            IntList list = grams.get(gram(query, i));
+            if (list == null) {
+                return false;
+            }
+            lists.add(list);
+        }
+        return true;
+    }
+
+    private static boolean addExactList(String value, Map<String, IntList> values, List<IntList> lists) {
+        if (value == null || value.isEmpty()) {
+            return true;
+        }
+        IntList list = values.get(value);
+        if (list == null) {
+            return false;
+        }
+        lists.add(list);
+        return true;
+    }
+
+    /**
+     * Intersection en place de result[0..size) avec une liste triée ; retourne la nouvelle taille
+     */
+    private static int intersect(int[] result, int size, IntList list) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < size && j < list.size; i++) {
+            int document = result[i];
+            while (j < list.size && list.values[j] < document) {
+                j++;
+            }
+            if (j < list.size && list.values[j] == document) {
+                result[kept++] = document;
+            }
+        }
+        return kept;
+    }
+
+    // ===== Écriture (sous verrou exclusif) =====
+
+    /**
+     * Remplace le document d'un client ; retourne false si l'écriture est ignorée (plus ancienne ou sans changement)
+     */
+    private boolean replace(Client client, long version) {
+        String clientId = client.getId();
+        if (clientId == null) {
+            return false;
+        }
+        Long current = versionById.get(clientId);
+        if (current != null && version < current) {
+            return false;
+        }
+        versionById.put(clientId, version);
+        String nom = normalize(client.getNom());
+        String prenom = normalize(client.getPrenom());
+        String email = normalize(client.getEmail());
+        Integer document = documentById.get(clientId);
+        if (document != null) {
+            if (noms[document].equals(nom) && prenoms[document].equals(prenom) && emails[document].equals(email)
+                    && Objects.equals(villes[document], client.getVille())
+                    && Objects.equals(pays[document], client.getPays())) {
+                return false;
+            }
+            markDeleted(document);
+        }
+        documentById.put(clientId, append(clientId, nom, prenom, email, client.getVille(), client.getPays()));
+        return true;
+    }
+
+    private int append(String clientId, String nom, String prenom, String email, String ville, String paysValue) {
+        if (documentCount == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            noms = Arrays.copyOf(noms, capacity);
+            prenoms = Arrays.copyOf(prenoms, capacity);
+            emails = Arrays.copyOf(emails, capacity);
+            villes = Arrays.copyOf(villes, capacity);
+            pays = Arrays.copyOf(pays, capacity);
+        }
+        int document = documentCount++;
+        ids[document] = clientId;
+        noms[document] = nom;
+        prenoms[document] = prenom;
+        emails[document] = email;
+        villes[document] = ville;
+        pays[document] = paysValue;
+
+        // Les numéros de documents croissent : chaque liste reste triée
+        addGrams(nom + FIELD_SEPARATOR + prenom, document, nameGrams);
+        addGrams(email, document, emailGrams);
+        if (ville != null) {
+            byVille.computeIfAbsent(ville, key -> new IntList()).add(document);
+        }
+        if (paysValue != null) {
+            byPays.computeIfAbsent(paysValue, key -> new IntList()).add(document);
+        }
+        return document;
+    }
+
+    private static void addGrams(String value, int document, Map<Long, IntList> grams) {
+        for (int i = 0; i + GRAM <= value.length(); i++) {
+            IntList list = grams.computeIfAbsent(gram(value, i), key -> new IntList());
+            if (list.size == 0 || list.values[list.size - 1] != document) {
+                list.add(document);
+            }
+        }
+    }
+
+    private void markDeleted(int document) {
+        deleted.set(document);
+        deletedCount++;
+    }
+
+    /**
+     * Reconstruit l'index avec les seuls documents vivants, dans leur ordre d'origine
+     */
+    private void compactIfNeeded() {
+        if (documentCount < MIN_COMPACTION_SIZE || deletedCount * 4 < documentCount) {
+            return;
+        }
+        String[] oldIds = ids;
+        String[] oldNoms = noms;
+        String[] oldPrenoms = prenoms;
+        String[] oldEmails = emails;
+        String[] oldVilles = villes;
+        String[] oldPays = pays;
+        int oldCount = documentCount;
+        BitSet oldDeleted = (BitSet) deleted.clone();
+
+        int capacity = Math.max(1024, Integer.highestOneBit(Math.max(1, oldCount - deletedCount)) * 2);
+        ids = new String[capacity];
+        noms = new String[capacity];
+        prenoms = new String[capacity];
+        emails = new String[capacity];
+        villes = new String[capacity];
+        pays = new String[capacity];
+        documentCount = 0;
+        deletedCount = 0;
+        deleted.clear();
+        nameGrams.clear();
+        emailGrams.clear();
+        byVille.clear();
+        byPays.clear();
+        documentById.clear();
+
+        for (int document = 0; document < oldCount; document++) {
+            if (!oldDeleted.get(document)) {
+                documentById.put(oldIds[document], append(oldIds[document], oldNoms[document], oldPrenoms[document],
+                        oldEmails[document], oldVilles[document], oldPays[document]));
+            }
+        }
+    }
+
+    private static String normalize(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static long gram(String value, int offset) {
+        return ((long) value.charAt(offset) << 32) | ((long) value.charAt(offset + 1) << 16) | value.charAt(offset + 2);
+    }
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
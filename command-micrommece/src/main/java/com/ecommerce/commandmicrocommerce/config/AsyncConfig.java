@@ -0,0 +1,45 @@
+package com.ecommerce.commandmicrocommerce.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+
+@Configuration
+public class AsyncConfig {
+
+    /**
+     * Exécuteur des continuations de l'orchestrateur (construction et sauvegarde des commandes
+     * une fois les réponses RabbitMQ reçues), pour ne bloquer ni Tomcat ni les listeners AMQP
+     */
+    @Bean
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public Executor orchestratorExecutor(@Value("${orchestrator.executor.core-size:8}") int coreSize,
+                                         @Value("${orchestrator.executor.max-size:32}") int maxSize,
+                                         @Value("${orchestrator.executor.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("orchestrator-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Variante virtual threads (profil "virtual-threads", Java 21) : un thread virtuel par continuation,
+     * les appels Mongo bloquants ne monopolisent plus de thread porteur
+     */
+    @Bean(name = "orchestratorExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public Executor virtualOrchestratorExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("orchestrator-vt-");
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+}
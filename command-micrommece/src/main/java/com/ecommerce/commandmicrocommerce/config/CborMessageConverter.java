@@ -0,0 +1,53 @@
+package com.ecommerce.commandmicrocommerce.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Convertisseur Jackson en CBOR (JSON binaire) : mêmes mappings que le JSON, charge utile plus compacte
+ * et encodage/décodage moins coûteux. Les messages portent le content-type "application/cbor".
+ *
+ * Le type cible est celui du paramètre du listener (type inféré) ; à défaut, le message est lu en Map.
+ * L'en-tête __TypeId__ n'est pas utilisé : les services ne partagent pas leurs classes de messages.
+ */
+public class CborMessageConverter extends AbstractMessageConverter {
+
+    public static final String CONTENT_TYPE_CBOR = "application/cbor";
+
+    // Comme le convertisseur JSON, les champs inconnus sont ignorés (messages Map enrichis côté émetteur)
+    private final ObjectMapper mapper = CBORMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties) {
+        try {
+            byte[] body = mapper.writeValueAsBytes(object);
+            messageProperties.setContentType(CONTENT_TYPE_CBOR);
+            messageProperties.setContentLength(body.length);
+            return new Message(body, messageProperties);
+        } catch (IOException e) {
+            throw new MessageConversionException("Encodage CBOR impossible", e);
+        }
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        Type inferredType = message.getMessageProperties().getInferredArgumentType();
+        JavaType targetType = mapper.constructType(inferredType != null ? inferredType : Object.class);
+        try {
+            return mapper.readValue(message.getBody(), targetType);
+        } catch (IOException e) {
+            throw new MessageConversionException("Décodage CBOR impossible", e);
+        }
+    }
+}
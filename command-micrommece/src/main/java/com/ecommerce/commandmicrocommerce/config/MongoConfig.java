@@ -0,0 +1,32 @@
+package com.ecommerce.commandmicrocommerce.config;
+
+import com.ecommerce.commandmicrocommerce.service.SlowQueryLogger;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.MongoTransactionManager;
+
+@Configuration
+public class MongoConfig {
+
+    /**
+     * Transactions Mongo pour écrire la commande et ses messages d'outbox ensemble.
+     * Nécessite un replica set (un seul nœud suffit, cas du docker-compose). outbox.transactions.enabled=false
+     * retire ce bean pour un mongod standalone : les deux écritures sont alors successives.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "outbox.transactions.enabled", havingValue = "true", matchIfMissing = true)
+    public MongoTransactionManager transactionManager(MongoDatabaseFactory databaseFactory) {
+        return new MongoTransactionManager(databaseFactory);
+    }
+
+    /**
+     * Écouteur des commandes du driver : durée de chaque requête, plan des requêtes lentes
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer slowQueryListener(SlowQueryLogger slowQueryLogger) {
+        return settings -> settings.addCommandListener(slowQueryLogger);
+    }
+}
@@ -27,9 +27,6 @@ public class QueueInitializer implements CommandLineRunner {
     @Autowired
     private Queue stockUpdateQueue;
 
-    @Autowired
-    private Queue stockResponseQueue;
-
     @Override
     public void run(String... args) throws Exception {
         System.out.println("🚀 Initialisation des queues Command et Stock...");
@@ -42,7 +39,6 @@ public class QueueInitializer implements CommandLineRunner {
         
         // Déclarer explicitement toutes les queues Stock
         rabbitAdmin.declareQueue(stockUpdateQueue);
-        rabbitAdmin.declareQueue(stockResponseQueue);
         
         System.out.println("✅ Queues créées avec succès !");
         System.out.println("   📦 Queues Command:");
@@ -52,6 +48,5 @@ public class QueueInitializer implements CommandLineRunner {
         System.out.println("   - " + RabbitMQConfig.COMMAND_RESPONSE_QUEUE);
         System.out.println("   📦 Queues Stock:");
         System.out.println("   - " + RabbitMQConfig.STOCK_UPDATE_QUEUE);
-        System.out.println("   - " + RabbitMQConfig.STOCK_RESPONSE_QUEUE);
     }
 } 
\ No newline at end of file
@@ -2,10 +2,16 @@ package com.ecommerce.commandmicrocommerce.config;
 
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 @Configuration
 public class RabbitMQConfig {
@@ -17,7 +23,8 @@ public class RabbitMQConfig {
     public static final String PRODUCT_QUERY_QUEUE = "product.query.queue";
     public static final String CLIENT_QUERY_QUEUE = "client.query.queue";
     
-    // Queues pour recevoir des réponses des autres services
+    // Queues partagées des réponses sans reply_to : déclarées et liées seulement pendant une migration,
+    // avec LegacyResponseDrain (orchestrator.legacy-response-drain.enabled) ; sinon ces réponses sont perdues
     public static final String PRODUCT_RESPONSE_QUEUE = "product.response.queue";
     public static final String CLIENT_RESPONSE_QUEUE = "client.response.queue";
 
@@ -29,6 +36,9 @@ public class RabbitMQConfig {
     // Queue pour les événements de commandes (notifications)
     public static final String COMMAND_EVENTS_QUEUE = "command.events.queue";
     
+    // Queue durable des statistiques de commandes, partagée par les instances (compteurs tenus dans Mongo)
+    public static final String COMMAND_STATISTICS_QUEUE = "command.statistics.queue";
+    
     // Queue pour les mises à jour de statut
     public static final String COMMAND_STATUS_QUEUE = "command.status.queue";
     
@@ -38,11 +48,18 @@ public class RabbitMQConfig {
     // ===== NOUVELLES QUEUES POUR LA GESTION DU STOCK =====
     
     // Queue pour envoyer des mises à jour de stock
-    public static final String STOCK_UPDATE_QUEUE = "stock.update.queue";
+    // Queue du routeur stock.update de Product Service (même déclaration : single-active-consumer)
+    public static final String STOCK_UPDATE_QUEUE = "stock.update.router.queue";
     
     // Queue pour recevoir des réponses de mise à jour de stock
     public static final String STOCK_RESPONSE_QUEUE = "stock.response.queue";
 
+    // Routing key des événements catalogue publiés par product-service
+    public static final String PRODUCT_CHANGED_ROUTING_KEY = "product.changed";
+
+    // Routing key des événements clients publiés par client-service
+    public static final String CLIENT_CHANGED_ROUTING_KEY = "client.changed";
+
     @Bean
     public DirectExchange microserviceExchange() {
         return new DirectExchange(MICROSERVICE_EXCHANGE);
@@ -61,11 +78,13 @@ public class RabbitMQConfig {
     }
 
     @Bean
+    @ConditionalOnProperty(name = "orchestrator.legacy-response-drain.enabled", havingValue = "true")
     public Queue productResponseQueue() {
         return QueueBuilder.durable(PRODUCT_RESPONSE_QUEUE).build();
     }
 
     @Bean
+    @ConditionalOnProperty(name = "orchestrator.legacy-response-drain.enabled", havingValue = "true")
     public Queue clientResponseQueue() {
         return QueueBuilder.durable(CLIENT_RESPONSE_QUEUE).build();
     }
@@ -96,14 +115,76 @@ public class RabbitMQConfig {
     
     @Bean
     public Queue stockUpdateQueue() {
-        return QueueBuilder.durable(STOCK_UPDATE_QUEUE).build();
+        return QueueBuilder.durable(STOCK_UPDATE_QUEUE).singleActiveConsumer().build();
     }
     
     @Bean
+    @ConditionalOnProperty(name = "orchestrator.legacy-response-drain.enabled", havingValue = "true")
     public Queue stockResponseQueue() {
         return QueueBuilder.durable(STOCK_RESPONSE_QUEUE).build();
     }
 
+    // ===== QUEUE DE RÉPONSES (une queue exclusive par instance) =====
+
+    /**
+     * Queue de réponse propre à l'instance, indiquée dans la propriété reply_to des requêtes :
+     * la réponse revient toujours à l'instance qui détient le future en attente.
+     * Aucun binding : les réponses passent par l'exchange par défaut.
+     */
+    @Bean
+    public Queue replyQueue() {
+        return new AnonymousQueue(new Base64UrlNamingStrategy("command.reply."));
+    }
+
+    // ===== QUEUE D'ÉVÉNEMENTS PRODUIT (une queue exclusive par instance) =====
+
+    @Bean
+    public Queue productEventsQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding productEventsBinding() {
+        return BindingBuilder
+                .bind(productEventsQueue())
+                .to(microserviceExchange())
+                .with(PRODUCT_CHANGED_ROUTING_KEY);
+    }
+
+    // ===== QUEUE D'ÉVÉNEMENTS CLIENT (une queue exclusive par instance) =====
+
+    @Bean
+    public Queue clientEventsQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding clientEventsBinding() {
+        return BindingBuilder
+                .bind(clientEventsQueue())
+                .to(microserviceExchange())
+                .with(CLIENT_CHANGED_ROUTING_KEY);
+    }
+
+    // ===== QUEUE DES STATISTIQUES DE COMMANDES (durable, partagée) =====
+
+    /**
+     * Les command.events sont conservés pendant qu'aucune instance ne tourne ; chaque événement est appliqué
+     * une fois aux compteurs Mongo par l'une des instances (command.events.queue reste celle des consommateurs externes)
+     */
+    @Bean
+    public Queue commandStatisticsQueue() {
+        return QueueBuilder.durable(COMMAND_STATISTICS_QUEUE).build();
+    }
+
+    @Bean
+    public Binding commandStatisticsBinding() {
+        return BindingBuilder
+                .bind(commandStatisticsQueue())
+                .to(microserviceExchange())
+                .with("command.events");
+    }
+
     // ===== BINDINGS EXISTANTS =====
 
     @Bean
@@ -123,6 +204,7 @@ public class RabbitMQConfig {
     }
 
     @Bean
+    @ConditionalOnProperty(name = "orchestrator.legacy-response-drain.enabled", havingValue = "true")
     public Binding productResponseBinding() {
         return BindingBuilder
                 .bind(productResponseQueue())
@@ -131,6 +213,7 @@ public class RabbitMQConfig {
     }
 
     @Bean
+    @ConditionalOnProperty(name = "orchestrator.legacy-response-drain.enabled", havingValue = "true")
     public Binding clientResponseBinding() {
         return BindingBuilder
                 .bind(clientResponseQueue())
@@ -183,6 +266,7 @@ public class RabbitMQConfig {
     }
     
     @Bean
+    @ConditionalOnProperty(name = "orchestrator.legacy-response-drain.enabled", havingValue = "true")
     public Binding stockResponseBinding() {
         return BindingBuilder
                 .bind(stockResponseQueue())
@@ -190,18 +274,48 @@ public class RabbitMQConfig {
                 .with("stock.response");
     }
 
+    /**
+     * Convertisseur négocié par content-type : les messages reçus sont décodés selon leur en-tête
+     * (JSON ou CBOR), les messages envoyés sont encodés avec le codec choisi par messaging.codec.
+     * Les deux formats restent lisibles pendant un déploiement progressif.
+     */
     @Bean
-    public Jackson2JsonMessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public MessageConverter messageConverter(@Value("${messaging.codec:json}") String codec) {
+        Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter();
+        CborMessageConverter cbor = new CborMessageConverter();
+        ContentTypeDelegatingMessageConverter converter =
+            new ContentTypeDelegatingMessageConverter("cbor".equalsIgnoreCase(codec) ? cbor : json);
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, json);
+        converter.addDelegate(CborMessageConverter.CONTENT_TYPE_CBOR, cbor);
+        return converter;
     }
 
+    /**
+     * Template principal : connexion dédiée aux publications (les envois depuis les listeners ne prennent
+     * plus de canaux à la connexion des consommateurs) et publisher confirms asynchrones corrélés
+     */
     @Bean
-    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
+    @Primary
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter,
+                                         PublisherConfirmMetrics confirmMetrics) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
-        template.setMessageConverter(messageConverter());
+        configurePublisher(template, messageConverter, confirmMetrics);
         return template;
     }
 
+    private void configurePublisher(RabbitTemplate template, MessageConverter messageConverter,
+                                    PublisherConfirmMetrics confirmMetrics) {
+        template.setMessageConverter(messageConverter);
+        template.setUsePublisherConnection(true);
+        // Chaque envoi porte une CorrelationData : le ConfirmCallback mesure la latence de confirmation et les nacks
+        template.setCorrelationDataPostProcessor((message, correlationData) -> {
+            CorrelationData correlation = correlationData != null ? correlationData : new CorrelationData();
+            confirmMetrics.onPublish(correlation);
+            return correlation;
+        });
+        template.setConfirmCallback(confirmMetrics::onConfirm);
+    }
+
     @Bean
     public org.springframework.amqp.rabbit.core.RabbitAdmin rabbitAdmin(ConnectionFactory connectionFactory) {
         return new org.springframework.amqp.rabbit.core.RabbitAdmin(connectionFactory);
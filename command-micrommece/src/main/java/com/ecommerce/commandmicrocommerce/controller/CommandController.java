@@ -1,37 +1,89 @@
 package com.ecommerce.commandmicrocommerce.controller;
 
 import com.ecommerce.commandmicrocommerce.dao.CommandDao;
+import com.ecommerce.commandmicrocommerce.dao.KeysetPage;
 import com.ecommerce.commandmicrocommerce.model.Command;
 import com.ecommerce.commandmicrocommerce.model.CommandItem;
+import com.ecommerce.commandmicrocommerce.service.CommandCountService;
+import com.ecommerce.commandmicrocommerce.service.CommandStatistics;
+import com.ecommerce.commandmicrocommerce.service.CommandWriteService;
 import com.ecommerce.commandmicrocommerce.service.MicroserviceOrchestrator;
+import com.ecommerce.commandmicrocommerce.service.NdjsonExporter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = KeysetPage.NEXT_CURSOR_HEADER)
 public class CommandController {
     
+    // Attente maximale de la réponse de réservation, au-delà la commande est créée sans confirmation
+    private static final long RESERVATION_TIMEOUT_MS = 3_000;
+    
     private final CommandDao commandDao;
     
     @Autowired
     private MicroserviceOrchestrator orchestrator;
     
+    @Autowired
+    private CommandWriteService commandWriteService;
+    
+    @Autowired
+    private CommandStatistics commandStatistics;
+    
+    @Autowired
+    private CommandCountService commandCountService;
+    
+    @Autowired
+    private NdjsonExporter ndjsonExporter;
+    
+    @Autowired
+    @Qualifier("orchestratorExecutor")
+    private Executor orchestratorExecutor;
+    
     public CommandController(CommandDao commandDao) {
         this.commandDao = commandDao;
     }
     
+    /**
+     * Liste paginée par clé (plus récentes d'abord) : size (plafonné) et cursor,
+     * repris de l'en-tête X-Next-Cursor de la page précédente
+     */
     @GetMapping("/commands")
-    public List<Command> listeCommands() {
-        return commandDao.findAll();
+    public ResponseEntity<?> listeCommands(@RequestParam(required = false) String cursor,
+                                           @RequestParam(required = false) Integer size) {
+        return pageResponse(cursor, () -> commandDao.findPage(cursor, size));
+    }
+
+    /**
+     * Export NDJSON des commandes en flux, filtrable par statut et par période (from inclus, to exclu,
+     * dates ISO) ; gzip=true pour un .ndjson.gz
+     */
+    @GetMapping("/commands/export")
+    public void exporterCommands(@RequestParam(required = false) String status,
+                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                 @RequestParam(defaultValue = "false") boolean gzip,
+                                 HttpServletResponse response) throws IOException {
+        ndjsonExporter.export(commandDao.streamByStatusAndDate(status, from, to), "commands", gzip, response);
     }
 
     @GetMapping("/commands/{id}")
@@ -48,7 +100,7 @@ public class CommandController {
     }
     
     @PostMapping("/commands")
-    public ResponseEntity<?> ajouterCommand(@RequestBody Map<String, Object> commandRequest) {
+    public CompletableFuture<ResponseEntity<?>> ajouterCommand(@RequestBody Map<String, Object> commandRequest) {
         try {
             System.out.println("🛒 Nouvelle commande reçue...");
             
@@ -57,7 +109,7 @@ public class CommandController {
             if (clientId == null || clientId.trim().isEmpty()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "L'ID du client est obligatoire");
-                return ResponseEntity.badRequest().body(error);
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(error));
             }
             
             @SuppressWarnings("unchecked")
@@ -65,176 +117,205 @@ public class CommandController {
             if (itemsRequest == null || itemsRequest.isEmpty()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "La commande doit contenir au moins un article");
-                return ResponseEntity.badRequest().body(error);
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(error));
             }
             
             // 1. Récupérer les informations du client via RabbitMQ
             System.out.println("👤 Récupération des infos client: " + clientId);
             CompletableFuture<Map<String, Object>> clientFuture = orchestrator.getClientInfo(clientId);
             
-            // 2. Récupérer les informations des produits via RabbitMQ
-            List<CompletableFuture<Map<String, Object>>> productFutures = new ArrayList<>();
+            // 2. Récupérer les informations des produits via RabbitMQ (requête groupée si plusieurs articles)
+            List<String> productIds = new ArrayList<>();
             for (Map<String, Object> itemRequest : itemsRequest) {
                 String productId = (String) itemRequest.get("productId");
                 if (productId != null) {
-                    System.out.println("📦 Récupération des infos produit: " + productId);
-                    productFutures.add(orchestrator.getProductInfo(productId));
+                    productIds.add(productId);
                 }
             }
+            System.out.println("📦 Récupération des infos produits: " + productIds);
+            CompletableFuture<List<Map<String, Object>>> productsFuture = orchestrator.getProductsInfo(productIds);
             
             // 3. Attendre toutes les réponses
-            CompletableFuture<Void> allFutures = CompletableFuture.allOf(
-                CompletableFuture.allOf(productFutures.toArray(new CompletableFuture[0])),
-                clientFuture
-            );
+            CompletableFuture<Void> allFutures = CompletableFuture.allOf(productsFuture, clientFuture);
             
-            // 4. Traiter les résultats
-            return allFutures.thenApply(v -> {
-                try {
-                    // Récupérer les données du client
-                    Map<String, Object> clientResponse = clientFuture.get();
-                    String clientStatus = (String) clientResponse.get("status");
-                    
-                    if (!"SUCCESS".equals(clientStatus)) {
+            // 4. Traiter les résultats sur l'exécuteur de l'orchestrateur : le thread Tomcat est libéré dès maintenant
+            return allFutures
+                    .thenComposeAsync(v -> creerCommand(commandRequest, clientId, itemsRequest,
+                            clientFuture.join(), productsFuture.join()), orchestratorExecutor)
+                    .exceptionally(e -> {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        System.err.println("❌ Erreur dans ajouterCommand: " + cause.getMessage());
                         Map<String, String> error = new HashMap<>();
-                        error.put("error", "Client non trouvé: " + clientId);
-                        error.put("details", (String) clientResponse.get("message"));
-                        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
-                    }
-                    
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> clientData = (Map<String, Object>) clientResponse.get("client");
-                    
-                    // Créer les items avec les données des produits
-                    List<CommandItem> commandItems = new ArrayList<>();
-                    for (int i = 0; i < itemsRequest.size(); i++) {
-                        Map<String, Object> itemRequest = itemsRequest.get(i);
-                        Map<String, Object> productResponse = productFutures.get(i).get();
-                        
-                        String productStatus = (String) productResponse.get("status");
-                        if (!"SUCCESS".equals(productStatus)) {
-                            Map<String, String> error = new HashMap<>();
-                            error.put("error", "Produit non trouvé: " + itemRequest.get("productId"));
-                            error.put("details", (String) productResponse.get("message"));
-                            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
-                        }
-                        
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> productData = (Map<String, Object>) productResponse.get("product");
-                        
-                        // Créer l'item de commande
-                        CommandItem item = new CommandItem();
-                        item.setProductId((String) productData.get("id"));
-                        item.setProductName((String) productData.get("nom"));
-                        item.setQuantity((Integer) itemRequest.get("quantity"));
-                        item.setUnitPrice(((Number) productData.get("prix")).doubleValue());
-                        
-                        commandItems.add(item);
-                    }
-                    
-                    // ===== VÉRIFICATION ET MISE À JOUR DU STOCK =====
-                    
-                    // 1. Vérifier d'abord la disponibilité du stock pour tous les produits
-                    boolean stockSuffisant = true;
-                    String stockErrorMessage = "";
-                    
-                    for (int i = 0; i < itemsRequest.size(); i++) {
-                        Map<String, Object> itemRequest = itemsRequest.get(i);
-                        Map<String, Object> productResponse = productFutures.get(i).get();
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> productData = (Map<String, Object>) productResponse.get("product");
-                        
-                        String productName = (String) productData.get("nom");
-                        int currentStock = ((Number) productData.get("stock")).intValue();
-                        int requestedQuantity = (Integer) itemRequest.get("quantity");
-                        
-                        if (currentStock < requestedQuantity) {
-                            stockSuffisant = false;
-                            stockErrorMessage = "Stock insuffisant pour " + productName + 
-                                               " (disponible: " + currentStock + ", demandé: " + requestedQuantity + ")";
-                            System.out.println("❌ " + stockErrorMessage);
-                            break;
-                        }
-                    }
-                    
-                    if (!stockSuffisant) {
-                        Map<String, String> error = new HashMap<>();
-                        error.put("error", "Stock insuffisant");
-                        error.put("details", stockErrorMessage);
-                        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
-                    }
+                        error.put("error", "Erreur lors du traitement de la commande");
+                        error.put("details", cause.getMessage());
+                        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+                    });
+            
+        } catch (Exception e) {
+            System.err.println("❌ Erreur dans ajouterCommand: " + e.getMessage());
+            e.printStackTrace();
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erreur lors du traitement de la commande");
+            error.put("details", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error));
+        }
+    }
+    
+    /**
+     * Construit et sauvegarde la commande à partir des réponses client/produits,
+     * puis attend les confirmations de stock sans bloquer de thread
+     */
+    private CompletableFuture<ResponseEntity<?>> creerCommand(Map<String, Object> commandRequest,
+                                                             String clientId,
+                                                             List<Map<String, Object>> itemsRequest,
+                                                             Map<String, Object> clientResponse,
+                                                             List<Map<String, Object>> productResponses) {
+        try {
+            // Récupérer les données du client
+            String clientStatus = (String) clientResponse.get("status");
+            
+            if (!"SUCCESS".equals(clientStatus)) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", "Client non trouvé: " + clientId);
+                error.put("details", (String) clientResponse.get("message"));
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND).body(error));
+            }
+            
+            @SuppressWarnings("unchecked")
+            Map<String, Object> clientData = (Map<String, Object>) clientResponse.get("client");
+            
+            // Créer les items avec les données des produits
+            List<CommandItem> commandItems = new ArrayList<>();
+            for (int i = 0; i < itemsRequest.size(); i++) {
+                Map<String, Object> itemRequest = itemsRequest.get(i);
+                Map<String, Object> productResponse = productResponses.get(i);
+                
+                String productStatus = (String) productResponse.get("status");
+                if (!"SUCCESS".equals(productStatus)) {
+                    Map<String, String> error = new HashMap<>();
+                    error.put("error", "Produit non trouvé: " + itemRequest.get("productId"));
+                    error.put("details", (String) productResponse.get("message"));
+                    return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND).body(error));
+                }
+                
+                @SuppressWarnings("unchecked")
+                Map<String, Object> productData = (Map<String, Object>) productResponse.get("product");
+                
+                // Créer l'item de commande
+                CommandItem item = new CommandItem();
+                item.setProductId((String) productData.get("id"));
+                item.setProductName((String) productData.get("nom"));
+                item.setQuantity((Integer) itemRequest.get("quantity"));
+                item.setUnitPrice(((Number) productData.get("prix")).doubleValue());
+                
+                commandItems.add(item);
+            }
+            
+            // ===== VÉRIFICATION ET MISE À JOUR DU STOCK =====
+            
+            // 1. Pré-vérification sur les stocks lus à l'instant dans product-service ; un stock servi par le cache
+            //    peut être périmé : la réservation (tout-ou-rien côté produit) reste le seul contrôle qui fait foi
+            boolean stockSuffisant = true;
+            String stockErrorMessage = "";
+            
+            for (int i = 0; i < itemsRequest.size(); i++) {
+                Map<String, Object> itemRequest = itemsRequest.get(i);
+                Map<String, Object> productResponse = productResponses.get(i);
+                if (MicroserviceOrchestrator.isFromCache(productResponse)) {
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                Map<String, Object> productData = (Map<String, Object>) productResponse.get("product");
+                
+                String productName = (String) productData.get("nom");
+                int currentStock = ((Number) productData.get("stock")).intValue();
+                int requestedQuantity = (Integer) itemRequest.get("quantity");
+                
+                if (currentStock < requestedQuantity) {
+                    stockSuffisant = false;
+                    stockErrorMessage = "Stock insuffisant pour " + productName + 
+                                       " (disponible: " + currentStock + ", demandé: " + requestedQuantity + ")";
+                    System.out.println("❌ " + stockErrorMessage);
+                    break;
+                }
+            }
+            
+            if (!stockSuffisant) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", "Stock insuffisant");
+                error.put("details", stockErrorMessage);
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.CONFLICT).body(error));
+            }
 
-                    // Créer la commande
-                    Command command = new Command();
-                    command.setClientId(clientId);
-                    command.setClientName((String) clientData.get("nom") + " " + (String) clientData.get("prenom"));
-                    command.setClientEmail((String) clientData.get("email"));
-                    command.setItems(commandItems);
-                    command.setShippingAddress((String) commandRequest.get("shippingAddress"));
-                    command.setPaymentMethod((String) commandRequest.get("paymentMethod"));
-                    command.setNotes((String) commandRequest.get("notes"));
-                    
-                    // 2. Si le stock est suffisant, sauvegarder la commande D'ABORD
-                    Command savedCommand = commandDao.save(command);
-                    System.out.println("✅ Commande sauvegardée: " + savedCommand.getId());
+            // Créer la commande
+            Command command = new Command();
+            command.setClientId(clientId);
+            command.setClientName((String) clientData.get("nom") + " " + (String) clientData.get("prenom"));
+            command.setClientEmail((String) clientData.get("email"));
+            command.setItems(commandItems);
+            command.setShippingAddress((String) commandRequest.get("shippingAddress"));
+            command.setPaymentMethod((String) commandRequest.get("paymentMethod"));
+            command.setNotes((String) commandRequest.get("notes"));
+            
+            // 2. Enregistrer la réservation en attente avant toute écriture (refus immédiat si saturé)
+            String reservationId = UUID.randomUUID().toString();
+            CompletableFuture<Map<String, Object>> reservationFuture = orchestrator.registerStockReservation(reservationId, RESERVATION_TIMEOUT_MS);
+            if (reservationFuture.isCompletedExceptionally()) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", "Service momentanément saturé, réessayez plus tard");
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(error));
+            }
 
-                    // 3. Ensuite, réduire le stock via RabbitMQ pour chaque produit
-                    List<CompletableFuture<Map<String, Object>>> stockUpdateFutures = new ArrayList<>();
-                    
-                    for (CommandItem item : commandItems) {
-                        CompletableFuture<Map<String, Object>> stockUpdateFuture = sendStockUpdate(
-                            item.getProductId(), 
-                            "REDUCE", 
-                            item.getQuantity(),
-                            savedCommand.getId()
-                        );
-                        stockUpdateFutures.add(stockUpdateFuture);
-                        
-                        System.out.println("📦 Mise à jour stock envoyée - Produit: " + item.getProductName() + 
-                                         ", Quantité: -" + item.getQuantity());
-                    }
+            // 3. Sauvegarder la commande, sa demande de réservation de stock et COMMAND_CREATED en une seule
+            //    transaction, le message "stock.reserve" et l'événement sont publiés par le relais de l'outbox
+            Command savedCommand = commandWriteService.saveWithStockReservation(command, reservationId,
+                    "Nouvelle commande créée via l'API");
+            System.out.println("✅ Commande sauvegardée: " + savedCommand.getId());
 
-                    // 4. Attendre les confirmations de mise à jour de stock (optionnel avec timeout court)
-                    try {
-                        CompletableFuture<Void> allStockUpdates = CompletableFuture.allOf(
-                            stockUpdateFutures.toArray(new CompletableFuture[0])
-                        );
-                        
-                        // Attendre maximum 3 secondes pour les mises à jour de stock
-                        allStockUpdates.get(3, java.util.concurrent.TimeUnit.SECONDS);
-                        
-                        System.out.println("✅ Tous les stocks mis à jour avec succès");
+            // 4. Attendre la confirmation de réservation (3 secondes maximum, expirée par le registre, sans bloquer)
+            //    Le stock des snapshots en cache n'est qu'indicatif : c'est la réservation qui fait foi
+            return reservationFuture
+                    .<ResponseEntity<?>>handleAsync((reservation, e) -> {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        if (cause == null) {
+                            if (!"SUCCESS".equals(reservation.get("status"))) {
+                                // Réservation tout-ou-rien : aucun stock n'a été retiré
+                                String details = orchestrator.reservationFailureMessage(reservation);
+                                String previousStatus = savedCommand.getStatus();
+                                savedCommand.setStatus("STOCK_ERROR");
+                                savedCommand.setNotes("ERREUR STOCK: Stock insuffisant pour certains produits");
+                                commandWriteService.saveWithEvent(savedCommand, "STATUS_UPDATED", "Stock insuffisant",
+                                        previousStatus, savedCommand.getTotalAmount());
+                                System.out.println("❌ Réservation refusée: " + details);
+                                
+                                Map<String, Object> error = new HashMap<>();
+                                error.put("error", "Stock insuffisant");
+                                error.put("details", details);
+                                error.put("lines", reservation.get("lines"));
+                                error.put("command", savedCommand);
+                                return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+                            }
+                            System.out.println("✅ Tous les stocks mis à jour avec succès");
+                        } else if (cause instanceof TimeoutException) {
+                            System.out.println("⚠️ Timeout lors de la mise à jour du stock - la commande est créée mais le stock pourrait ne pas être à jour");
+                        } else {
+                            System.err.println("❌ Erreur lors de la vérification des mises à jour de stock: " + cause.getMessage());
+                        }
+                        // Réponse enrichie
+                        Map<String, Object> response = new HashMap<>();
+                        response.put("command", savedCommand);
+                        response.put("client", clientData);
+                        response.put("message", "Commande créée avec succès avec les données des microservices");
                         
-                    } catch (java.util.concurrent.TimeoutException e) {
-                        System.out.println("⚠️ Timeout lors de la mise à jour du stock - la commande est créée mais le stock pourrait ne pas être à jour");
-                    } catch (Exception e) {
-                        System.err.println("❌ Erreur lors de la vérification des mises à jour de stock: " + e.getMessage());
-                    }
-                    
-                    // Réponse enrichie
-                    Map<String, Object> response = new HashMap<>();
-                    response.put("command", savedCommand);
-                    response.put("client", clientData);
-                    response.put("message", "Commande créée avec succès avec les données des microservices");
-                    
-                    return ResponseEntity.status(HttpStatus.CREATED).body(response);
-                    
-                } catch (Exception e) {
-                    System.err.println("❌ Erreur lors de la création de la commande: " + e.getMessage());
-                    Map<String, String> error = new HashMap<>();
-                    error.put("error", "Erreur lors de la création de la commande");
-                    error.put("details", e.getMessage());
-                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
-                }
-            }).join();
+                        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+                    }, orchestratorExecutor);
             
         } catch (Exception e) {
-            System.err.println("❌ Erreur dans ajouterCommand: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("❌ Erreur lors de la création de la commande: " + e.getMessage());
             Map<String, String> error = new HashMap<>();
-            error.put("error", "Erreur lors du traitement de la commande");
+            error.put("error", "Erreur lors de la création de la commande");
             error.put("details", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error));
         }
     }
     
@@ -249,7 +330,8 @@ public class CommandController {
         }
         
         command.setId(id);
-        Command updatedCommand = commandDao.save(command);
+        Command updatedCommand = commandWriteService.saveWithEvent(command, "COMMAND_UPDATED", "Commande modifiée",
+                existingCommand.getStatus(), existingCommand.getTotalAmount());
         return ResponseEntity.ok(updatedCommand);
     }
     
@@ -257,7 +339,7 @@ public class CommandController {
     public ResponseEntity<Map<String, String>> supprimerCommand(@PathVariable String id) {
         Command existingCommand = commandDao.findById(id);
         if (existingCommand != null) {
-            commandDao.deleteById(id);
+            commandWriteService.deleteWithEvent(existingCommand);
             Map<String, String> response = new HashMap<>();
             response.put("message", "Commande supprimée avec succès");
             response.put("id", id);
@@ -287,82 +369,87 @@ public class CommandController {
             return ResponseEntity.badRequest().body(error);
         }
         
+        String previousStatus = existingCommand.getStatus();
         existingCommand.setStatus(newStatus);
-        Command updatedCommand = commandDao.save(existingCommand);
+        Command updatedCommand = commandWriteService.saveWithEvent(existingCommand, "STATUS_UPDATED", "Statut changé à " + newStatus,
+                previousStatus, existingCommand.getTotalAmount());
         return ResponseEntity.ok(updatedCommand);
     }
     
     @GetMapping("/commands/client/{clientId}")
-    public ResponseEntity<List<Command>> commandsParClient(@PathVariable String clientId) {
-        List<Command> commands = commandDao.findByClientId(clientId);
-        return ResponseEntity.ok(commands);
+    public ResponseEntity<?> commandsParClient(@PathVariable String clientId,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(required = false) Integer size) {
+        return pageResponse(cursor, () -> commandDao.findByClientId(clientId, cursor, size));
     }
     
     @GetMapping("/commands/status/{status}")
-    public ResponseEntity<List<Command>> commandsParStatut(@PathVariable String status) {
-        List<Command> commands = commandDao.findByStatus(status);
-        return ResponseEntity.ok(commands);
+    public ResponseEntity<?> commandsParStatut(@PathVariable String status,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(required = false) Integer size) {
+        return pageResponse(cursor, () -> commandDao.findByStatus(status, cursor, size));
     }
     
+    private ResponseEntity<?> pageResponse(String cursor, Supplier<KeysetPage<Command>> query) {
+        KeysetPage<Command> page;
+        try {
+            page = query.get();
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Curseur invalide");
+            error.put("cursor", cursor);
+            return ResponseEntity.badRequest().body(error);
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(KeysetPage.NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.items());
+    }
+    
+    /**
+     * consistency=exact (countDocuments, défaut) ou approximate (compteurs en mémoire, sur demande) ;
+     * filtrable par statut et/ou client (index sur ces champs)
+     */
     @GetMapping("/commands/count")
-    public ResponseEntity<Map<String, Object>> compterCommands() {
-        List<Command> commands = commandDao.findAll();
+    public ResponseEntity<Map<String, Object>> compterCommands(@RequestParam(defaultValue = CommandCountService.EXACT) String consistency,
+                                                               @RequestParam(required = false) String status,
+                                                               @RequestParam(required = false) String clientId) {
         Map<String, Object> response = new HashMap<>();
-        response.put("count", commands.size());
+        if (!CommandCountService.isValidConsistency(consistency)) {
+            response.put("error", "consistency doit valoir exact ou approximate");
+            return ResponseEntity.badRequest().body(response);
+        }
+        if (status != null || clientId != null) {
+            CommandCountService.Count count = commandCountService.countBy(status, clientId, consistency);
+            response.put("count", count.value());
+            response.put("consistency", count.consistency());
+        } else {
+            response.put("count", commandCountService.count(consistency));
+            response.put("consistency", consistency);
+        }
         response.put("message", "Nombre total de commandes");
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * Statistiques matérialisées (compteurs tenus à jour par les événements), sans lecture de la collection
+     */
     @GetMapping("/commands/statistics")
     public ResponseEntity<Map<String, Object>> statistiques() {
-        List<Command> allCommands = commandDao.findAll();
-        
         Map<String, Object> stats = new HashMap<>();
-        stats.put("totalCommands", allCommands.size());
-        
-        // Compter par statut
-        Map<String, Long> statusCount = new HashMap<>();
-        allCommands.stream()
-                .collect(java.util.stream.Collectors.groupingBy(Command::getStatus, java.util.stream.Collectors.counting()))
-                .forEach(statusCount::put);
-        stats.put("byStatus", statusCount);
-        
-        // Calculer le montant total
-        double totalAmount = allCommands.stream()
-                .mapToDouble(Command::getTotalAmount)
-                .sum();
-        stats.put("totalAmount", totalAmount);
-        
+        stats.put("totalCommands", commandStatistics.getTotalCommands());
+        stats.put("byStatus", commandStatistics.countsByStatus());
+        stats.put("totalAmount", commandStatistics.getTotalAmount());
         return ResponseEntity.ok(stats);
     }
-
+    
     /**
-     * Envoie une mise à jour de stock via RabbitMQ
+     * Reconstruit les statistiques par agrégation Mongo (après une modification directe de la base)
      */
-    private CompletableFuture<Map<String, Object>> sendStockUpdate(String productId, String operation, int quantity, String commandId) {
-        String correlationId = java.util.UUID.randomUUID().toString();
-        
-        Map<String, Object> stockUpdateMessage = new HashMap<>();
-        stockUpdateMessage.put("correlationId", correlationId);
-        stockUpdateMessage.put("productId", productId);
-        stockUpdateMessage.put("operation", operation);
-        stockUpdateMessage.put("quantity", quantity);
-        stockUpdateMessage.put("commandId", commandId);
-        stockUpdateMessage.put("service", "command-service");
-        stockUpdateMessage.put("timestamp", System.currentTimeMillis());
-        
-        // Créer un CompletableFuture pour la réponse
-        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
-        orchestrator.registerStockUpdateRequest(correlationId, future);
-        
-        // Envoyer le message via l'orchestrateur
-        orchestrator.sendStockUpdateMessage(stockUpdateMessage);
-        
-        System.out.println("📤 Mise à jour stock envoyée - Produit: " + productId + 
-                          ", Opération: " + operation + 
-                          ", Quantité: " + quantity + 
-                          ", Correlation: " + correlationId);
-        
-        return future;
+    @PostMapping("/commands/statistics/rebuild")
+    public ResponseEntity<Map<String, Object>> reconstruireStatistiques() {
+        commandStatistics.rebuild();
+        return statistiques();
     }
-} 
\ No newline at end of file
+}
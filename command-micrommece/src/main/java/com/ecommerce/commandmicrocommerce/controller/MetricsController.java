@@ -0,0 +1,96 @@
+package com.ecommerce.commandmicrocommerce.controller;
+
+import com.ecommerce.commandmicrocommerce.config.PublisherConfirmMetrics;
+import com.ecommerce.commandmicrocommerce.service.ClientInfoCache;
+import com.ecommerce.commandmicrocommerce.service.CommandIndexManager;
+import com.ecommerce.commandmicrocommerce.service.CommandStatistics;
+import com.ecommerce.commandmicrocommerce.service.OutboxRelay;
+import com.ecommerce.commandmicrocommerce.service.PendingRequestRegistry;
+import com.ecommerce.commandmicrocommerce.service.ProductSnapshotCache;
+import com.ecommerce.commandmicrocommerce.service.SlowQueryLogger;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/metrics")
+@CrossOrigin(origins = "*")
+public class MetricsController {
+
+    private final PendingRequestRegistry pendingRequestRegistry;
+    private final ProductSnapshotCache productSnapshotCache;
+    private final ClientInfoCache clientInfoCache;
+    private final OutboxRelay outboxRelay;
+    private final PublisherConfirmMetrics publisherConfirmMetrics;
+    private final CommandStatistics commandStatistics;
+    private final CommandIndexManager commandIndexManager;
+    private final SlowQueryLogger slowQueryLogger;
+
+    public MetricsController(PendingRequestRegistry pendingRequestRegistry,
+                             ProductSnapshotCache productSnapshotCache,
+                             ClientInfoCache clientInfoCache,
+                             OutboxRelay outboxRelay,
+                             PublisherConfirmMetrics publisherConfirmMetrics,
+                             CommandStatistics commandStatistics,
+                             CommandIndexManager commandIndexManager,
+                             SlowQueryLogger slowQueryLogger) {
+        this.pendingRequestRegistry = pendingRequestRegistry;
+        this.productSnapshotCache = productSnapshotCache;
+        this.clientInfoCache = clientInfoCache;
+        this.outboxRelay = outboxRelay;
+        this.publisherConfirmMetrics = publisherConfirmMetrics;
+        this.commandStatistics = commandStatistics;
+        this.commandIndexManager = commandIndexManager;
+        this.slowQueryLogger = slowQueryLogger;
+    }
+
+    @GetMapping("/pending-requests")
+    public ResponseEntity<Map<String, Object>> requetesEnAttente() {
+        return ResponseEntity.ok(pendingRequestRegistry.getStats());
+    }
+
+    @GetMapping("/product-cache")
+    public ResponseEntity<Map<String, Object>> cacheProduits() {
+        return ResponseEntity.ok(productSnapshotCache.getStats());
+    }
+
+    @GetMapping("/client-cache")
+    public ResponseEntity<Map<String, Object>> cacheClients() {
+        return ResponseEntity.ok(clientInfoCache.getStats());
+    }
+
+    @GetMapping("/outbox")
+    public ResponseEntity<Map<String, Object>> outbox() {
+        return ResponseEntity.ok(outboxRelay.getStats());
+    }
+
+    @GetMapping("/publisher")
+    public ResponseEntity<Map<String, Object>> publications() {
+        return ResponseEntity.ok(publisherConfirmMetrics.getStats());
+    }
+
+    @GetMapping("/command-statistics")
+    public ResponseEntity<Map<String, Object>> statistiquesCommandes() {
+        return ResponseEntity.ok(commandStatistics.getStats());
+    }
+
+    @GetMapping("/indexes")
+    public ResponseEntity<Map<String, Object>> index() {
+        return ResponseEntity.ok(commandIndexManager.getIndexReport());
+    }
+
+    /**
+     * Plan d'exécution de chaque requête du repository : index utilisé, clés et documents examinés
+     */
+    @GetMapping("/query-plans")
+    public ResponseEntity<List<Map<String, Object>>> plansDeRequetes() {
+        return ResponseEntity.ok(commandIndexManager.explainRepositoryQueries());
+    }
+
+    @GetMapping("/slow-queries")
+    public ResponseEntity<Map<String, Object>> requetesLentes() {
+        return ResponseEntity.ok(slowQueryLogger.getStats());
+    }
+}
@@ -2,7 +2,9 @@ package com.ecommerce.commandmicrocommerce.dao;
 
 import com.ecommerce.commandmicrocommerce.model.Command;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface CommandDao {
     
@@ -11,6 +13,11 @@ public interface CommandDao {
     Command save(Command command);
     void deleteById(String id);
     
-    List<Command> findByClientId(String clientId);
-    List<Command> findByStatus(String status);
+    // Pages triées par orderDate décroissante, après le curseur donné (null pour la première page)
+    KeysetPage<Command> findPage(String cursor, Integer size);
+    KeysetPage<Command> findByClientId(String clientId, String cursor, Integer size);
+    KeysetPage<Command> findByStatus(String status, String cursor, Integer size);
+    
+    // Flux des commandes (statut et période de orderDate facultatifs), lu au fil d'un curseur Mongo ; à fermer
+    Stream<Command> streamByStatusAndDate(String status, LocalDateTime from, LocalDateTime to);
 } 
\ No newline at end of file
@@ -3,13 +3,25 @@ package com.ecommerce.commandmicrocommerce.dao;
 import com.ecommerce.commandmicrocommerce.model.Command;
 import com.ecommerce.commandmicrocommerce.model.CommandItem;
 import com.ecommerce.commandmicrocommerce.repository.CommandRepository;
+import com.ecommerce.commandmicrocommerce.service.CommandCountService;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Repository;
 
 import jakarta.annotation.PostConstruct;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public class CommandDaoImpl implements CommandDao {
@@ -17,6 +29,21 @@ public class CommandDaoImpl implements CommandDao {
     @Autowired
     private CommandRepository commandRepository;
     
+    @Autowired
+    private CommandCountService commandCountService;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Value("${export.cursor-batch-size:1000}")
+    private int exportBatchSize;
+    
+    @Value("${pagination.default-page-size:100}")
+    private int defaultPageSize;
+    
+    @Value("${pagination.max-page-size:1000}")
+    private int maxPageSize;
+    
     @PostConstruct
     public void initData() {
         if (commandRepository.count() == 0) {
@@ -81,21 +108,98 @@ public class CommandDaoImpl implements CommandDao {
     @Override
     public Command save(Command command) {
         command.calculateTotalAmount(); // Recalculer le total avant sauvegarde
-        return commandRepository.save(command);
+        boolean inserted = command.getId() == null;
+        Command savedCommand = commandRepository.save(command);
+        if (inserted) {
+            commandCountService.inserted();
+        }
+        return savedCommand;
     }
     
     @Override
     public void deleteById(String id) {
         commandRepository.deleteById(id);
+        commandCountService.deleted();
+    }
+    
+    @Override
+    public KeysetPage<Command> findPage(String cursor, Integer size) {
+        Pageable pageable = pageable(size);
+        if (cursor == null || cursor.isEmpty()) {
+            return toPage(commandRepository.findAllBy(pageable));
+        }
+        Position position = position(cursor);
+        return toPage(commandRepository.findPageAfter(position.orderDate(), position.id(), pageable));
+    }
+    
+    @Override
+    public KeysetPage<Command> findByClientId(String clientId, String cursor, Integer size) {
+        Pageable pageable = pageable(size);
+        if (cursor == null || cursor.isEmpty()) {
+            return toPage(commandRepository.findByClientId(clientId, pageable));
+        }
+        Position position = position(cursor);
+        return toPage(commandRepository.findByClientIdPageAfter(clientId, position.orderDate(), position.id(), pageable));
     }
     
     @Override
-    public List<Command> findByClientId(String clientId) {
-        return commandRepository.findByClientId(clientId);
+    public KeysetPage<Command> findByStatus(String status, String cursor, Integer size) {
+        Pageable pageable = pageable(size);
+        if (cursor == null || cursor.isEmpty()) {
+            return toPage(commandRepository.findByStatus(status, pageable));
+        }
+        Position position = position(cursor);
+        return toPage(commandRepository.findByStatusPageAfter(status, position.orderDate(), position.id(), pageable));
     }
     
     @Override
-    public List<Command> findByStatus(String status) {
-        return commandRepository.findByStatus(status);
+    public Stream<Command> streamByStatusAndDate(String status, LocalDateTime from, LocalDateTime to) {
+        Query query = new Query();
+        if (status != null && !status.isEmpty()) {
+            query.addCriteria(Criteria.where("status").is(status));
+        }
+        if (from != null || to != null) {
+            Criteria orderDate = Criteria.where("orderDate");
+            if (from != null) {
+                orderDate = orderDate.gte(from);
+            }
+            if (to != null) {
+                orderDate = orderDate.lt(to);
+            }
+            query.addCriteria(orderDate);
+        }
+        query.cursorBatchSize(exportBatchSize);
+        return mongoTemplate.stream(query, Command.class);
+    }
+    
+    // Clés de tri de la dernière commande d'une page
+    private record Position(LocalDateTime orderDate, ObjectId id) {
+    }
+    
+    private Pageable pageable(Integer size) {
+        int pageSize = size == null || size <= 0 ? defaultPageSize : Math.min(size, maxPageSize);
+        return PageRequest.of(0, pageSize, Sort.by(Sort.Direction.DESC, "orderDate", "id"));
+    }
+    
+    private KeysetPage<Command> toPage(Slice<Command> slice) {
+        List<Command> items = slice.getContent();
+        String nextCursor = null;
+        if (slice.hasNext()) {
+            Command last = items.get(items.size() - 1);
+            nextCursor = KeysetPage.encodeCursor(String.valueOf(last.getOrderDate()), last.getId());
+        }
+        return new KeysetPage<>(items, nextCursor);
+    }
+    
+    private Position position(String cursor) {
+        String[] keys = KeysetPage.decodeCursor(cursor, 2);
+        if (!ObjectId.isValid(keys[1])) {
+            throw new IllegalArgumentException("Curseur invalide");
+        }
+        try {
+            return new Position(LocalDateTime.parse(keys[0]), new ObjectId(keys[1]));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Curseur invalide", e);
+        }
     }
 } 
\ No newline at end of file
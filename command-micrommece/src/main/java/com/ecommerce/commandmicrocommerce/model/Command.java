@@ -1,12 +1,24 @@
 package com.ecommerce.commandmicrocommerce.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
+/**
+ * Index déclarés, créés au démarrage par CommandIndexManager : ils suivent le tri des pages
+ * (orderDate puis _id décroissants) après l'égalité sur le client ou le statut
+ */
 @Document(collection = "commands")
+@CompoundIndexes({
+    @CompoundIndex(name = "clientId_orderDate", def = "{ 'clientId': 1, 'orderDate': -1, '_id': -1 }"),
+    @CompoundIndex(name = "status_orderDate", def = "{ 'status': 1, 'orderDate': -1, '_id': -1 }"),
+    @CompoundIndex(name = "orderDate", def = "{ 'orderDate': -1, '_id': -1 }"),
+    @CompoundIndex(name = "clientEmail", def = "{ 'clientEmail': 1 }")
+})
 public class Command {
     
     @Id
@@ -0,0 +1,74 @@
+package com.ecommerce.commandmicrocommerce.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compteurs de commandes partagés par les instances (document unique), incrémentés par CommandStatistics
+ * pour chaque command.events appliqué. rebuiltAt vaut 0 tant qu'ils n'ont pas été initialisés par agrégation.
+ */
+@Document(collection = "command_statistics")
+public class CommandStatisticsSummary {
+
+    public static final String GLOBAL = "global";
+
+    @Id
+    private String id = GLOBAL;
+    private long totalCommands;
+    private Map<String, Long> byStatus = new HashMap<>();
+    private long totalAmountCents;
+    // Horodatage (ms) de la dernière modification et de la dernière reconstruction par agrégation
+    private long updatedAt;
+    private long rebuiltAt;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public long getTotalCommands() {
+        return totalCommands;
+    }
+
+    public void setTotalCommands(long totalCommands) {
+        this.totalCommands = totalCommands;
+    }
+
+    public Map<String, Long> getByStatus() {
+        return byStatus;
+    }
+
+    public void setByStatus(Map<String, Long> byStatus) {
+        this.byStatus = byStatus;
+    }
+
+    public long getTotalAmountCents() {
+        return totalAmountCents;
+    }
+
+    public void setTotalAmountCents(long totalAmountCents) {
+        this.totalAmountCents = totalAmountCents;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public long getRebuiltAt() {
+        return rebuiltAt;
+    }
+
+    public void setRebuiltAt(long rebuiltAt) {
+        this.rebuiltAt = rebuiltAt;
+    }
+}
@@ -0,0 +1,121 @@
+package com.ecommerce.commandmicrocommerce.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Message RabbitMQ en attente de publication, écrit dans la même transaction que la commande
+ * puis publié (et supprimé) par OutboxRelay après confirmation du broker
+ */
+@Document(collection = "outbox")
+public class OutboxMessage {
+
+    @Id
+    private String id;
+    private String exchange;
+    private String routingKey;
+    private Map<String, Object> payload;
+    // Queue de réponse de l'instance émettrice (propriété AMQP reply_to), null pour les événements
+    private String replyTo;
+    private LocalDateTime createdAt;
+    // Réservation par un relais (une passe d'une instance) jusqu'à lockedUntil : un seul relais publie le message
+    private String lockedBy;
+    private LocalDateTime lockedUntil;
+    // Échecs de publication et date du prochain essai (attente croissante)
+    private int attempts;
+    private LocalDateTime nextAttemptAt;
+
+    public OutboxMessage() {
+    }
+
+    public OutboxMessage(String exchange, String routingKey, Map<String, Object> payload, String replyTo) {
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.payload = payload;
+        this.replyTo = replyTo;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public void setExchange(String exchange) {
+        this.exchange = exchange;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public void setRoutingKey(String routingKey) {
+        this.routingKey = routingKey;
+    }
+
+    public Map<String, Object> getPayload() {
+        return payload;
+    }
+
+    public void setPayload(Map<String, Object> payload) {
+        this.payload = payload;
+    }
+
+    public String getReplyTo() {
+        return replyTo;
+    }
+
+    public void setReplyTo(String replyTo) {
+        this.replyTo = replyTo;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getLockedBy() {
+        return lockedBy;
+    }
+
+    public void setLockedBy(String lockedBy) {
+        this.lockedBy = lockedBy;
+    }
+
+    public LocalDateTime getLockedUntil() {
+        return lockedUntil;
+    }
+
+    public void setLockedUntil(LocalDateTime lockedUntil) {
+        this.lockedUntil = lockedUntil;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+}
@@ -0,0 +1,89 @@
+package com.ecommerce.commandmicrocommerce.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copie locale (lecture seule) d'un produit du catalogue, alimentée par les événements product.changed
+ */
+public class ProductSnapshot {
+
+    private final String id;
+    private final String nom;
+    private final int prix;
+    private final int stock;
+    private final long version;
+    private final long loadedAt;
+
+    public ProductSnapshot(String id, String nom, int prix, int stock, long version) {
+        this.id = id;
+        this.nom = nom;
+        this.prix = prix;
+        this.stock = stock;
+        this.version = version;
+        this.loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Construit un snapshot à partir des données produit d'une réponse product.query ; la version est
+     * la révision du document lu (0 si product-service ne la transmet pas : tout événement le remplace)
+     */
+    public static ProductSnapshot fromProductData(Map<String, Object> productData) {
+        Number revision = (Number) productData.get("revision");
+        return new ProductSnapshot(
+            (String) productData.get("id"),
+            (String) productData.get("nom"),
+            ((Number) productData.get("prix")).intValue(),
+            ((Number) productData.get("stock")).intValue(),
+            revision != null ? revision.longValue() : 0
+        );
+    }
+
+    /**
+     * Même format que le champ "product" d'une réponse product.query
+     */
+    public Map<String, Object> toProductData() {
+        Map<String, Object> productData = new HashMap<>();
+        productData.put("id", id);
+        productData.put("nom", nom);
+        productData.put("prix", prix);
+        productData.put("stock", stock);
+        productData.put("inStock", stock > 0);
+        return productData;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getNom() {
+        return nom;
+    }
+
+    public int getPrix() {
+        return prix;
+    }
+
+    public int getStock() {
+        return stock;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductSnapshot{" +
+                "id='" + id + '\'' +
+                ", nom='" + nom + '\'' +
+                ", prix=" + prix +
+                ", stock=" + stock +
+                ", version=" + version +
+                '}';
+    }
+}
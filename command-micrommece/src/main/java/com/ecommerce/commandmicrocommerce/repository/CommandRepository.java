@@ -1,15 +1,33 @@
 package com.ecommerce.commandmicrocommerce.repository;
 
 import com.ecommerce.commandmicrocommerce.model.Command;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface CommandRepository extends MongoRepository<Command, String> {
     
-    List<Command> findByClientId(String clientId);
-    List<Command> findByStatus(String status);
     List<Command> findByClientEmail(String clientEmail);
-} 
\ No newline at end of file
+    
+    // Parcours par clé sur (orderDate, _id) décroissants, sans skip : première page,
+    // puis pages suivant la dernière commande renvoyée (à date égale, départage par _id)
+    Slice<Command> findAllBy(Pageable pageable);
+    Slice<Command> findByClientId(String clientId, Pageable pageable);
+    Slice<Command> findByStatus(String status, Pageable pageable);
+    
+    @Query("{ '$or': [ { 'orderDate': { '$lt': ?0 } }, { 'orderDate': ?0, '_id': { '$lt': ?1 } } ] }")
+    Slice<Command> findPageAfter(LocalDateTime orderDate, ObjectId lastId, Pageable pageable);
+    
+    @Query("{ 'clientId': ?0, '$or': [ { 'orderDate': { '$lt': ?1 } }, { 'orderDate': ?1, '_id': { '$lt': ?2 } } ] }")
+    Slice<Command> findByClientIdPageAfter(String clientId, LocalDateTime orderDate, ObjectId lastId, Pageable pageable);
+    
+    @Query("{ 'status': ?0, '$or': [ { 'orderDate': { '$lt': ?1 } }, { 'orderDate': ?1, '_id': { '$lt': ?2 } } ] }")
+    Slice<Command> findByStatusPageAfter(String status, LocalDateTime orderDate, ObjectId lastId, Pageable pageable);
+} 
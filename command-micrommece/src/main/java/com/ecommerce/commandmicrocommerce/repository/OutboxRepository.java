@@ -0,0 +1,9 @@
+package com.ecommerce.commandmicrocommerce.repository;
+
+import com.ecommerce.commandmicrocommerce.model.OutboxMessage;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface OutboxRepository extends MongoRepository<OutboxMessage, String> {
+}
@@ -0,0 +1,89 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Near-cache des informations clients (clientId → champ "client" d'une réponse client.query).
+ * Borné (éviction W-TinyLFU), expiré par TTL et invalidé par les événements client.changed.
+ */
+@Component
+public class ClientInfoCache {
+
+    @Value("${client-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${client-cache.ttl-ms:300000}")
+    private long ttlMs;
+
+    private Cache<String, Map<String, Object>> clients;
+
+    // Instant de la dernière invalidation par client, pour ignorer les lectures lancées avant celle-ci
+    private Cache<String, Long> invalidatedAt;
+
+    @PostConstruct
+    public void init() {
+        clients = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+        invalidatedAt = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+    }
+
+    public Map<String, Object> get(String clientId) {
+        return clients.getIfPresent(clientId);
+    }
+
+    /**
+     * Met en cache les données lues, sauf si le client a été invalidé depuis le début de la lecture
+     */
+    public void put(String clientId, Map<String, Object> clientData, long readStartedAt) {
+        Long invalidation = invalidatedAt.getIfPresent(clientId);
+        if (invalidation == null || invalidation < readStartedAt) {
+            clients.put(clientId, clientData);
+        }
+    }
+
+    public void invalidate(String clientId) {
+        invalidatedAt.put(clientId, System.currentTimeMillis());
+        clients.invalidate(clientId);
+    }
+
+    /**
+     * Écoute les événements client.changed (une queue exclusive par instance)
+     */
+    @RabbitListener(queues = "#{clientEventsQueue.name}")
+    public void handleClientChanged(Map<String, Object> event) {
+        String clientId = (String) event.get("clientId");
+        if (clientId != null) {
+            invalidate(clientId);
+            System.out.println("🔄 Client invalidé dans le cache: " + clientId + " (" + event.get("eventType") + ")");
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        CacheStats stats = clients.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", clients.estimatedSize());
+        result.put("maxSize", maxSize);
+        result.put("ttlMs", ttlMs);
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.ecommerce.commandmicrocommerce.model.Command;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Comptage des commandes sans charger la collection.
+ *
+ * - exact (défaut des endpoints) : countDocuments, calculé par Mongo (aucun document désérialisé)
+ * - approximate (sur demande) : compteur en mémoire tenu par CommandDaoImpl (save/delete), recalé périodiquement
+ *   sur estimatedDocumentCount (métadonnées de la collection) pour intégrer les écritures des autres instances
+ *
+ * Par statut, le mode approximate lit les compteurs de CommandStatistics ; les comptages filtrés
+ * exacts (statut, client) passent par les index composés déclarés sur Command (préfixe statut ou client).
+ */
+@Service
+public class CommandCountService {
+
+    public static final String EXACT = "exact";
+    public static final String APPROXIMATE = "approximate";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CommandStatistics commandStatistics;
+
+    @Value("${count.resync-interval-ms:60000}")
+    private long resyncIntervalMs;
+
+    private final AtomicLong localCount = new AtomicLong();
+    private volatile boolean synced;
+
+    private ScheduledExecutorService resync;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        resync = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "command-count");
+            thread.setDaemon(true);
+            return thread;
+        });
+        resync.scheduleWithFixedDelay(this::resync, 0, resyncIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (resync != null) {
+            resync.shutdown();
+        }
+    }
+
+    public static boolean isValidConsistency(String consistency) {
+        return EXACT.equals(consistency) || APPROXIMATE.equals(consistency);
+    }
+
+    public long count(String consistency) {
+        if (EXACT.equals(consistency)) {
+            return collection().countDocuments();
+        }
+        return synced ? Math.max(0, localCount.get()) : collection().estimatedDocumentCount();
+    }
+
+    /**
+     * Nombre de commandes d'un statut et/ou d'un client, avec la cohérence réellement appliquée :
+     * seul le comptage par statut seul a une version approximate, les autres sont toujours exacts
+     */
+    public Count countBy(String status, String clientId, String consistency) {
+        boolean byStatus = status != null && !status.isEmpty();
+        boolean byClient = clientId != null && !clientId.isEmpty();
+        if (byStatus && !byClient && APPROXIMATE.equals(consistency)) {
+            return new Count(commandStatistics.countsByStatus().getOrDefault(status, 0L), APPROXIMATE);
+        }
+        List<Bson> filters = new ArrayList<>();
+        if (byStatus) {
+            filters.add(Filters.eq("status", status));
+        }
+        if (byClient) {
+            filters.add(Filters.eq("clientId", clientId));
+        }
+        long count = filters.isEmpty() ? collection().countDocuments() : collection().countDocuments(Filters.and(filters));
+        return new Count(count, EXACT);
+    }
+
+    public void inserted() {
+        localCount.incrementAndGet();
+    }
+
+    public void deleted() {
+        localCount.decrementAndGet();
+    }
+
+    private void resync() {
+        try {
+            localCount.set(collection().estimatedDocumentCount());
+            synced = true;
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors du recalage du compteur de commandes: " + e.getMessage());
+        }
+    }
+
+    public record Count(long value, String consistency) {
+    }
+
+    private MongoCollection<Document> collection() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Command.class));
+    }
+}
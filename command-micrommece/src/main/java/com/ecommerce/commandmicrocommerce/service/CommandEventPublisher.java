@@ -0,0 +1,53 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.ecommerce.commandmicrocommerce.model.Command;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Publie les événements "command.events" via l'outbox (jamais directement sur RabbitMQ).
+ * Appelé dans la transaction de la commande (CommandWriteService).
+ */
+@Service
+public class CommandEventPublisher {
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private CommandStatistics commandStatistics;
+
+    public void publish(String eventType, Command command, String description) {
+        publish(eventType, command, description, null, null);
+    }
+
+    /**
+     * Événement de modification : le statut et le montant d'avant permettent aux consommateurs
+     * (dont CommandStatistics) d'appliquer le changement sans relire la commande
+     */
+    public void publish(String eventType, Command command, String description, String previousStatus, Double previousAmount) {
+        Map<String, Object> event = new HashMap<>();
+        // Identifiant stable d'un événement : les republications de l'outbox gardent le même
+        event.put("eventId", UUID.randomUUID().toString());
+        event.put("eventType", eventType);
+        event.put("commandId", command.getId());
+        event.put("clientId", command.getClientId());
+        event.put("status", command.getStatus());
+        event.put("totalAmount", command.getTotalAmount());
+        event.put("description", description);
+        if (previousStatus != null) {
+            event.put("previousStatus", previousStatus);
+            event.put("previousAmount", previousAmount);
+        }
+        event.put("timestamp", System.currentTimeMillis());
+
+        outboxService.enqueue("command.events", event);
+        commandStatistics.eventPublished(event);
+
+        System.out.println("📢 Événement ajouté à l'outbox: " + eventType + " pour commande " + command.getId());
+    }
+}
@@ -0,0 +1,362 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.ecommerce.commandmicrocommerce.model.Command;
+import com.mongodb.ExplainVerbosity;
+import com.mongodb.client.MongoCollection;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Index de la collection commands : les index déclarés sur Command (@CompoundIndex) sont comparés
+ * aux index existants au démarrage, en tâche de fond (l'application répond pendant la construction) :
+ * - index déclaré absent : créé ;
+ * - index existant sous le même nom avec d'autres clés (dérive) : supprimé puis recréé ;
+ * - index non déclaré dont les clés sont un préfixe d'un index déclaré (redondant) : signalé, supprimé
+ *   seulement si indexes.drop-redundant=true ; les autres index non déclarés sont signalés.
+ * Un index unique, partiel ou TTL n'est jamais supprimé (il porte une contrainte ou une expiration,
+ * pas seulement un chemin d'accès) : sa dérive ou sa redondance est seulement signalée.
+ *
+ * Le rapport d'explain exécute les requêtes du repository sur des valeurs réelles et indique
+ * l'index retenu par le planificateur, avec les clés et documents examinés.
+ */
+@Component
+public class CommandIndexManager {
+
+    private static final String ID_INDEX = "_id_";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${indexes.drop-redundant:false}")
+    private boolean dropRedundant;
+
+    private final Map<String, String> lastActions = new LinkedHashMap<>();
+    private volatile long lastReconcileAt;
+    private volatile long lastReconcileMs;
+    private volatile String lastError;
+
+    private ExecutorService builder;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        builder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "command-indexes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        builder.execute(this::reconcile);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (builder != null) {
+            builder.shutdownNow();
+        }
+    }
+
+    /**
+     * Aligne les index de la collection sur les index déclarés
+     */
+    public synchronized void reconcile() {
+        long startedAt = System.currentTimeMillis();
+        Map<String, String> actions = new LinkedHashMap<>();
+        try {
+            IndexOperations indexOps = mongoTemplate.indexOps(Command.class);
+            Map<String, Document> existingIndexes = existingIndexes();
+            Map<String, Document> existing = indexKeys(existingIndexes);
+
+            List<IndexDefinition> declared = declaredIndexes();
+            // Index existants correspondant à un index déclaré (même nom, ou mêmes clés sous un autre nom)
+            Set<String> matched = new HashSet<>();
+            for (IndexDefinition definition : declared) {
+                String name = definition.getIndexOptions().getString("name");
+                Document keys = definition.getIndexKeys();
+                Document current = existing.get(name);
+                matched.add(name);
+                if (current == null) {
+                    String sameKeys = findByKeys(existing, keys);
+                    if (sameKeys != null) {
+                        matched.add(sameKeys);
+                        actions.put(name, "présent sous le nom " + sameKeys);
+                        continue;
+                    }
+                    long indexStartedAt = System.currentTimeMillis();
+                    indexOps.createIndex(definition);
+                    actions.put(name, "créé en " + (System.currentTimeMillis() - indexStartedAt) + " ms");
+                } else if (!sameKeys(current, keys) && protectedOption(existingIndexes.get(name)) != null) {
+                    String protectedBy = protectedOption(existingIndexes.get(name));
+                    System.out.println("⚠️ Dérive de l'index " + name + ": " + current.toJson() + " au lieu de " + keys.toJson()
+                            + ", index " + protectedBy + " conservé");
+                    actions.put(name, "dérive (" + current.toJson() + "), index " + protectedBy + " conservé");
+                } else if (!sameKeys(current, keys)) {
+                    System.out.println("⚠️ Dérive de l'index " + name + ": " + current.toJson() + " au lieu de " + keys.toJson());
+                    indexOps.dropIndex(name);
+                    indexOps.createIndex(definition);
+                    actions.put(name, "recréé (dérive: " + current.toJson() + ")");
+                } else {
+                    actions.put(name, "présent");
+                }
+            }
+
+            for (Map.Entry<String, Document> index : existing.entrySet()) {
+                String name = index.getKey();
+                if (ID_INDEX.equals(name) || matched.contains(name)) {
+                    continue;
+                }
+                String coveredBy = coveringIndex(declared, index.getValue());
+                String protectedBy = protectedOption(existingIndexes.get(name));
+                if (coveredBy != null && protectedBy != null) {
+                    actions.put(name, "redondant (préfixe de " + coveredBy + "), index " + protectedBy + " conservé");
+                } else if (coveredBy != null && dropRedundant) {
+                    indexOps.dropIndex(name);
+                    actions.put(name, "supprimé (préfixe de " + coveredBy + ")");
+                } else if (coveredBy != null) {
+                    actions.put(name, "redondant (préfixe de " + coveredBy + "), conservé");
+                } else {
+                    actions.put(name, "non déclaré");
+                }
+            }
+            lastError = null;
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            System.err.println("❌ Erreur lors de la construction des index de commands: " + e.getMessage());
+        }
+        synchronized (lastActions) {
+            lastActions.clear();
+            lastActions.putAll(actions);
+        }
+        lastReconcileAt = startedAt;
+        lastReconcileMs = System.currentTimeMillis() - startedAt;
+        System.out.println("🗂️ Index de commands vérifiés en " + lastReconcileMs + " ms: " + actions);
+    }
+
+    public Map<String, Object> getIndexReport() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        Map<String, Object> declared = new LinkedHashMap<>();
+        for (IndexDefinition definition : declaredIndexes()) {
+            declared.put(definition.getIndexOptions().getString("name"), definition.getIndexKeys());
+        }
+        report.put("declared", declared);
+        report.put("existing", existingIndexKeys());
+        synchronized (lastActions) {
+            report.put("lastActions", new LinkedHashMap<>(lastActions));
+        }
+        report.put("lastReconcileAt", lastReconcileAt);
+        report.put("lastReconcileMs", lastReconcileMs);
+        report.put("lastError", lastError);
+        return report;
+    }
+
+    /**
+     * Explain (executionStats) de chaque requête de CommandRepository / CommandDao, avec les valeurs
+     * de la commande la plus récente (un client, un statut et un email réels)
+     */
+    public List<Map<String, Object>> explainRepositoryQueries() {
+        MongoCollection<Document> collection = collection();
+        Document sample = collection.find().sort(new Document("orderDate", -1)).limit(1).first();
+        Object clientId = sample != null && sample.get("clientId") != null ? sample.get("clientId") : "";
+        Object status = sample != null && sample.get("status") != null ? sample.get("status") : "PENDING";
+        Object clientEmail = sample != null && sample.get("clientEmail") != null ? sample.get("clientEmail") : "";
+        Object orderDate = sample != null && sample.get("orderDate") != null ? sample.get("orderDate") : new Date();
+        Object lastId = sample != null ? sample.get("_id") : new ObjectId();
+        Date monthAgo = Date.from(LocalDateTime.now().minusMonths(1).atZone(ZoneId.systemDefault()).toInstant());
+
+        Document pageSort = new Document("orderDate", -1).append("_id", -1);
+        Document after = new Document("$or", List.of(
+                new Document("orderDate", new Document("$lt", orderDate)),
+                new Document("orderDate", orderDate).append("_id", new Document("$lt", lastId))));
+
+        List<Map<String, Object>> report = new ArrayList<>();
+        report.add(explain("findByClientEmail", new Document("clientEmail", clientEmail), null, 0));
+        report.add(explain("findAllBy (page)", new Document(), pageSort, 101));
+        report.add(explain("findPageAfter", after, pageSort, 101));
+        report.add(explain("findByClientId (page)", new Document("clientId", clientId), pageSort, 101));
+        report.add(explain("findByClientIdPageAfter", new Document("clientId", clientId).append("$or", after.get("$or")), pageSort, 101));
+        report.add(explain("findByStatus (page)", new Document("status", status), pageSort, 101));
+        report.add(explain("findByStatusPageAfter", new Document("status", status).append("$or", after.get("$or")), pageSort, 101));
+        report.add(explain("streamByStatusAndDate (export)",
+                new Document("status", status).append("orderDate", new Document("$gte", monthAgo)), null, 0));
+        return report;
+    }
+
+    private Map<String, Object> explain(String name, Document filter, Document sort, int limit) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("query", name);
+        entry.put("filter", filter.toJson());
+        if (sort != null) {
+            entry.put("sort", sort.toJson());
+        }
+        try {
+            var find = collection().find(filter);
+            if (sort != null) {
+                find = find.sort(sort);
+            }
+            if (limit > 0) {
+                find = find.limit(limit);
+            }
+            Document explain = find.explain(ExplainVerbosity.EXECUTION_STATS);
+            entry.putAll(planSummary(explain));
+            Document stats = explain.get("executionStats", Document.class);
+            if (stats != null) {
+                entry.put("nReturned", stats.get("nReturned"));
+                entry.put("keysExamined", stats.get("totalKeysExamined"));
+                entry.put("docsExamined", stats.get("totalDocsExamined"));
+                entry.put("executionTimeMillis", stats.get("executionTimeMillis"));
+            }
+        } catch (Exception e) {
+            entry.put("error", e.getMessage());
+        }
+        return entry;
+    }
+
+    /**
+     * Étapes du plan retenu (de la racine aux feuilles) et index utilisés ; COLLSCAN si aucun
+     */
+    public static Map<String, Object> planSummary(Document explain) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        Document planner = explain.get("queryPlanner", Document.class);
+        Document plan = planner != null ? planner.get("winningPlan", Document.class) : null;
+        if (plan != null && plan.get("queryPlan") instanceof Document queryPlan) {
+            // Moteur SBE (Mongo 7+) : le plan logique est sous queryPlan
+            plan = queryPlan;
+        }
+        List<String> stages = new ArrayList<>();
+        List<String> indexes = new ArrayList<>();
+        collectStages(plan, stages, indexes);
+        summary.put("stages", stages);
+        summary.put("indexes", indexes);
+        summary.put("collectionScan", stages.contains("COLLSCAN"));
+        return summary;
+    }
+
+    private static void collectStages(Document stage, List<String> stages, List<String> indexes) {
+        if (stage == null) {
+            return;
+        }
+        stages.add(stage.getString("stage"));
+        if (stage.getString("indexName") != null && !indexes.contains(stage.getString("indexName"))) {
+            indexes.add(stage.getString("indexName"));
+        }
+        collectStages(stage.get("inputStage", Document.class), stages, indexes);
+        List<?> inputs = stage.get("inputStages", List.class);
+        if (inputs != null) {
+            for (Object input : inputs) {
+                collectStages((Document) input, stages, indexes);
+            }
+        }
+    }
+
+    private List<IndexDefinition> declaredIndexes() {
+        List<IndexDefinition> definitions = new ArrayList<>();
+        new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext())
+                .resolveIndexFor(Command.class)
+                .forEach(definitions::add);
+        return definitions;
+    }
+
+    private Map<String, Document> existingIndexKeys() {
+        return indexKeys(existingIndexes());
+    }
+
+    /**
+     * Index existants par nom, avec leurs options (unique, partialFilterExpression, expireAfterSeconds...)
+     */
+    private Map<String, Document> existingIndexes() {
+        Map<String, Document> indexes = new LinkedHashMap<>();
+        for (Document index : collection().listIndexes()) {
+            indexes.put(index.getString("name"), index);
+        }
+        return indexes;
+    }
+
+    private static Map<String, Document> indexKeys(Map<String, Document> indexes) {
+        Map<String, Document> keys = new LinkedHashMap<>();
+        indexes.forEach((name, index) -> keys.put(name, index.get("key", Document.class)));
+        return keys;
+    }
+
+    /**
+     * Option qui interdit la suppression automatique de l'index (unique, partiel, TTL), ou null
+     */
+    static String protectedOption(Document index) {
+        if (index == null) {
+            return null;
+        }
+        if (Boolean.TRUE.equals(index.get("unique"))) {
+            return "unique";
+        }
+        if (index.containsKey("partialFilterExpression")) {
+            return "partiel";
+        }
+        if (index.containsKey("expireAfterSeconds")) {
+            return "TTL";
+        }
+        return null;
+    }
+
+    private static String findByKeys(Map<String, Document> existing, Document keys) {
+        for (Map.Entry<String, Document> index : existing.entrySet()) {
+            if (sameKeys(index.getValue(), keys)) {
+                return index.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Nom d'un index déclaré dont les premières clés sont exactement celles de l'index donné
+     */
+    private static String coveringIndex(List<IndexDefinition> declared, Document keys) {
+        for (IndexDefinition definition : declared) {
+            List<Map.Entry<String, Integer>> declaredKeys = keyList(definition.getIndexKeys());
+            List<Map.Entry<String, Integer>> indexKeys = keyList(keys);
+            if (indexKeys.size() < declaredKeys.size() && declaredKeys.subList(0, indexKeys.size()).equals(indexKeys)) {
+                return definition.getIndexOptions().getString("name");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * L'ordre des clés compte : deux Document égaux au sens de Map ne suffisent pas
+     */
+    private static boolean sameKeys(Document left, Document right) {
+        return keyList(left).equals(keyList(right));
+    }
+
+    private static List<Map.Entry<String, Integer>> keyList(Document keys) {
+        List<Map.Entry<String, Integer>> list = new ArrayList<>();
+        for (Map.Entry<String, Object> key : keys.entrySet()) {
+            // Les directions reviennent en Integer ou en Double selon le client qui a créé l'index
+            int direction = key.getValue() instanceof Number number ? number.intValue() : 0;
+            list.add(Map.entry(key.getKey(), direction));
+        }
+        return list;
+    }
+
+    private MongoCollection<Document> collection() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Command.class));
+    }
+}
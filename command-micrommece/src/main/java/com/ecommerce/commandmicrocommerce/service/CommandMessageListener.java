@@ -7,17 +7,25 @@ import com.ecommerce.commandmicrocommerce.model.CommandItem;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class CommandMessageListener {
 
+    // Attente maximale de la réponse de réservation pour une commande reçue par RabbitMQ
+    private static final long RESERVATION_TIMEOUT_MS = 5_000;
+
     @Autowired
     private CommandDao commandDao;
 
@@ -27,6 +35,13 @@ public class CommandMessageListener {
     @Autowired
     private MicroserviceOrchestrator orchestrator;
 
+    @Autowired
+    private CommandWriteService commandWriteService;
+
+    @Autowired
+    @Qualifier("orchestratorExecutor")
+    private Executor orchestratorExecutor;
+
     /**
      * Écoute les demandes de création de commandes via RabbitMQ
      */
@@ -93,15 +108,15 @@ public class CommandMessageListener {
             // Mettre à jour le statut
             Command existingCommand = commandDao.findById(commandId);
             if (existingCommand != null) {
+                String previousStatus = existingCommand.getStatus();
                 existingCommand.setStatus(newStatus);
-                Command updatedCommand = commandDao.save(existingCommand);
+                // Statut et événement écrits ensemble
+                Command updatedCommand = commandWriteService.saveWithEvent(existingCommand, "STATUS_UPDATED", "Statut changé à " + newStatus,
+                        previousStatus, existingCommand.getTotalAmount());
                 
                 response.put("status", "SUCCESS");
                 response.put("command", updatedCommand);
                 response.put("message", "Statut mis à jour avec succès");
-
-                // Publier un événement de changement de statut
-                publishCommandEvent("STATUS_UPDATED", updatedCommand, "Statut changé à " + newStatus);
                 
                 System.out.println("✅ Statut mis à jour: " + commandId + " → " + newStatus);
             } else {
@@ -118,7 +133,8 @@ public class CommandMessageListener {
     }
 
     /**
-     * Traite la création de commande de manière asynchrone
+     * Traite la création de commande de manière asynchrone.
+     * Aucune attente bloquante : les continuations s'exécutent sur l'exécuteur de l'orchestrateur.
      */
     private void processCommandAsync(Map<String, Object> commandRequest, Map<String, Object> response) {
         String clientId = (String) commandRequest.get("clientId");
@@ -128,162 +144,162 @@ public class CommandMessageListener {
         // 1. Récupérer les informations du client via RabbitMQ
         CompletableFuture<Map<String, Object>> clientFuture = orchestrator.getClientInfo(clientId);
 
-        // 2. Récupérer les informations des produits via RabbitMQ
-        List<CompletableFuture<Map<String, Object>>> productFutures = new ArrayList<>();
+        // 2. Récupérer les informations des produits via RabbitMQ (requête groupée si plusieurs articles)
+        List<String> productIds = new ArrayList<>();
         for (Map<String, Object> itemRequest : itemsRequest) {
             String productId = (String) itemRequest.get("productId");
             if (productId != null) {
-                productFutures.add(orchestrator.getProductInfo(productId));
+                productIds.add(productId);
             }
         }
+        CompletableFuture<List<Map<String, Object>>> productsFuture = orchestrator.getProductsInfo(productIds);
 
         // 3. Attendre toutes les réponses et traiter
-        CompletableFuture<Void> allFutures = CompletableFuture.allOf(
-            CompletableFuture.allOf(productFutures.toArray(new CompletableFuture[0])),
-            clientFuture
-        );
+        CompletableFuture<Void> allFutures = CompletableFuture.allOf(productsFuture, clientFuture);
+
+        allFutures
+            .thenComposeAsync(v -> createCommand(commandRequest, response, clientId, itemsRequest,
+                    clientFuture.join(), productsFuture.join()), orchestratorExecutor)
+            .exceptionally(e -> {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                System.err.println("❌ Erreur lors de la création de la commande: " + cause.getMessage());
+                response.put("status", "ERROR");
+                response.put("message", "Erreur lors de la création: " + cause.getMessage());
+                sendCommandResponse(response);
+                return null;
+            });
+    }
 
-        allFutures.thenApply(v -> {
-            try {
-                // Récupérer les données du client
-                Map<String, Object> clientResponse = clientFuture.get();
-                String clientStatus = (String) clientResponse.get("status");
-
-                if (!"SUCCESS".equals(clientStatus)) {
-                    response.put("status", "ERROR");
-                    response.put("message", "Client non trouvé: " + clientId);
-                    sendCommandResponse(response);
-                    return null;
-                }
+    /**
+     * Construit et sauvegarde la commande, puis traite les confirmations de stock en continuation
+     */
+    private CompletableFuture<Void> createCommand(Map<String, Object> commandRequest,
+                                                  Map<String, Object> response,
+                                                  String clientId,
+                                                  List<Map<String, Object>> itemsRequest,
+                                                  Map<String, Object> clientResponse,
+                                                  List<Map<String, Object>> productResponses) {
+        // Récupérer les données du client
+        String clientStatus = (String) clientResponse.get("status");
+
+        if (!"SUCCESS".equals(clientStatus)) {
+            response.put("status", "ERROR");
+            response.put("message", "Client non trouvé: " + clientId);
+            sendCommandResponse(response);
+            return CompletableFuture.completedFuture(null);
+        }
 
-                @SuppressWarnings("unchecked")
-                Map<String, Object> clientData = (Map<String, Object>) clientResponse.get("client");
-
-                // Créer les items avec les données des produits
-                List<CommandItem> commandItems = new ArrayList<>();
-                for (int i = 0; i < itemsRequest.size(); i++) {
-                    Map<String, Object> itemRequest = itemsRequest.get(i);
-                    Map<String, Object> productResponse = productFutures.get(i).get();
-
-                    String productStatus = (String) productResponse.get("status");
-                    if (!"SUCCESS".equals(productStatus)) {
-                        response.put("status", "ERROR");
-                        response.put("message", "Produit non trouvé: " + itemRequest.get("productId"));
-                        sendCommandResponse(response);
-                        return null;
-                    }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> clientData = (Map<String, Object>) clientResponse.get("client");
 
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> productData = (Map<String, Object>) productResponse.get("product");
+        // Créer les items avec les données des produits
+        List<CommandItem> commandItems = new ArrayList<>();
+        for (int i = 0; i < itemsRequest.size(); i++) {
+            Map<String, Object> itemRequest = itemsRequest.get(i);
+            Map<String, Object> productResponse = productResponses.get(i);
 
-                    // Créer l'item de commande
-                    CommandItem item = new CommandItem();
-                    item.setProductId((String) productData.get("id"));
-                    item.setProductName((String) productData.get("nom"));
-                    item.setQuantity((Integer) itemRequest.get("quantity"));
-                    item.setUnitPrice(((Number) productData.get("prix")).doubleValue());
+            String productStatus = (String) productResponse.get("status");
+            if (!"SUCCESS".equals(productStatus)) {
+                response.put("status", "ERROR");
+                response.put("message", "Produit non trouvé: " + itemRequest.get("productId"));
+                sendCommandResponse(response);
+                return CompletableFuture.completedFuture(null);
+            }
 
-                    commandItems.add(item);
-                }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> productData = (Map<String, Object>) productResponse.get("product");
 
-                // Créer la commande
-                Command command = new Command();
-                command.setClientId(clientId);
-                command.setClientName((String) clientData.get("nom") + " " + (String) clientData.get("prenom"));
-                command.setClientEmail((String) clientData.get("email"));
-                command.setItems(commandItems);
-                command.setShippingAddress((String) commandRequest.get("shippingAddress"));
-                command.setPaymentMethod((String) commandRequest.get("paymentMethod"));
-                command.setNotes((String) commandRequest.get("notes"));
-
-                // ===== NOUVEAU: VÉRIFICATION ET MISE À JOUR DU STOCK =====
-                
-                // 1. Vérifier d'abord la disponibilité du stock pour tous les produits
-                boolean stockSuffisant = true;
-                
-                for (int i = 0; i < itemsRequest.size(); i++) {
-                    Map<String, Object> itemRequest = itemsRequest.get(i);
-                    Map<String, Object> productResponse = productFutures.get(i).get();
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> productData = (Map<String, Object>) productResponse.get("product");
-                    
-                    String productName = (String) productData.get("nom");
-                    int currentStock = ((Number) productData.get("stock")).intValue();
-                    int requestedQuantity = (Integer) itemRequest.get("quantity");
-                    
-                    if (currentStock < requestedQuantity) {
-                        stockSuffisant = false;
-                        System.out.println("❌ Commande rejetée - Stock insuffisant: " + productName + 
-                                           ": Stock insuffisant (disponible: " + currentStock + ", demandé: " + requestedQuantity + ").");
-                    }
-                }
-                
-                if (!stockSuffisant) {
-                    response.put("status", "INSUFFICIENT_STOCK");
-                    response.put("message", "Stock insuffisant pour certains produits");
-                    sendCommandResponse(response);
-                    return null;
-                }
+            // Créer l'item de commande
+            CommandItem item = new CommandItem();
+            item.setProductId((String) productData.get("id"));
+            item.setProductName((String) productData.get("nom"));
+            item.setQuantity((Integer) itemRequest.get("quantity"));
+            item.setUnitPrice(((Number) productData.get("prix")).doubleValue());
 
-                // 2. Si le stock est suffisant, sauvegarder la commande D'ABORD
-                Command savedCommand = commandDao.save(command);
-                System.out.println("✅ Commande sauvegardée: " + savedCommand.getId());
+            commandItems.add(item);
+        }
 
-                // 3. Ensuite, réduire le stock via RabbitMQ pour chaque produit
-                List<CompletableFuture<Map<String, Object>>> stockUpdateFutures = new ArrayList<>();
-                
-                for (CommandItem item : commandItems) {
-                    CompletableFuture<Map<String, Object>> stockUpdateFuture = sendStockUpdate(
-                        item.getProductId(), 
-                        "REDUCE", 
-                        item.getQuantity(),
-                        savedCommand.getId()
-                    );
-                    stockUpdateFutures.add(stockUpdateFuture);
-                    
-                    System.out.println("📦 Mise à jour stock envoyée - Produit: " + item.getProductName() + 
-                                     ", Quantité: -" + item.getQuantity());
-                }
+        // Créer la commande
+        Command command = new Command();
+        command.setClientId(clientId);
+        command.setClientName((String) clientData.get("nom") + " " + (String) clientData.get("prenom"));
+        command.setClientEmail((String) clientData.get("email"));
+        command.setItems(commandItems);
+        command.setShippingAddress((String) commandRequest.get("shippingAddress"));
+        command.setPaymentMethod((String) commandRequest.get("paymentMethod"));
+        command.setNotes((String) commandRequest.get("notes"));
+
+        // ===== NOUVEAU: VÉRIFICATION ET MISE À JOUR DU STOCK =====
+        
+        // 1. Pré-vérification sur les stocks lus à l'instant dans product-service ; un stock servi par le cache
+        //    peut être périmé : la réservation (tout-ou-rien côté produit) reste le seul contrôle qui fait foi
+        boolean stockSuffisant = true;
+        
+        for (int i = 0; i < itemsRequest.size(); i++) {
+            Map<String, Object> itemRequest = itemsRequest.get(i);
+            Map<String, Object> productResponse = productResponses.get(i);
+            if (MicroserviceOrchestrator.isFromCache(productResponse)) {
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> productData = (Map<String, Object>) productResponse.get("product");
+            
+            String productName = (String) productData.get("nom");
+            int currentStock = ((Number) productData.get("stock")).intValue();
+            int requestedQuantity = (Integer) itemRequest.get("quantity");
+            
+            if (currentStock < requestedQuantity) {
+                stockSuffisant = false;
+                System.out.println("❌ Commande rejetée - Stock insuffisant: " + productName + 
+                                   ": Stock insuffisant (disponible: " + currentStock + ", demandé: " + requestedQuantity + ").");
+            }
+        }
+        
+        if (!stockSuffisant) {
+            response.put("status", "INSUFFICIENT_STOCK");
+            response.put("message", "Stock insuffisant pour certains produits");
+            sendCommandResponse(response);
+            return CompletableFuture.completedFuture(null);
+        }
 
-                // 4. Attendre les confirmations de mise à jour de stock (optionnel)
-                try {
-                    CompletableFuture<Void> allStockUpdates = CompletableFuture.allOf(
-                        stockUpdateFutures.toArray(new CompletableFuture[0])
-                    );
-                    
-                    // Attendre maximum 5 secondes pour les mises à jour de stock
-                    allStockUpdates.get(5, java.util.concurrent.TimeUnit.SECONDS);
-                    
-                    // Vérifier les résultats des mises à jour
-                    boolean stockUpdateSuccess = true;
-                    
-                    for (int i = 0; i < stockUpdateFutures.size(); i++) {
-                        Map<String, Object> stockResponse = stockUpdateFutures.get(i).get();
-                        String stockStatus = (String) stockResponse.get("status");
-                        
-                        if (!"SUCCESS".equals(stockStatus)) {
-                            stockUpdateSuccess = false;
-                            CommandItem item = commandItems.get(i);
-                            System.out.println("⚠️ Problèmes lors de la mise à jour du stock: " + item.getProductName() + 
-                                               ": " + stockResponse.get("message"));
-                        }
-                    }
-                    
-                    if (!stockUpdateSuccess) {
-                        // Marquer la commande comme ayant des problèmes de stock
+        // 2. Enregistrer la réservation en attente avant toute écriture (refus immédiat si saturé)
+        String reservationId = UUID.randomUUID().toString();
+        CompletableFuture<Map<String, Object>> reservationFuture = orchestrator.registerStockReservation(reservationId, RESERVATION_TIMEOUT_MS);
+        if (reservationFuture.isCompletedExceptionally()) {
+            response.put("status", "ERROR");
+            response.put("message", "Service momentanément saturé, réessayez plus tard");
+            sendCommandResponse(response);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // 3. Sauvegarder la commande, sa demande de réservation de stock et COMMAND_CREATED en une seule
+        //    transaction, le message "stock.reserve" et l'événement sont publiés par le relais de l'outbox
+        Command savedCommand = commandWriteService.saveWithStockReservation(command, reservationId,
+                "Nouvelle commande créée via RabbitMQ avec mise à jour du stock");
+        System.out.println("✅ Commande sauvegardée: " + savedCommand.getId());
+
+        // 4. Traiter la confirmation de réservation (5 secondes maximum, expirée par le registre, sans bloquer)
+        return reservationFuture
+            .handleAsync((reservation, e) -> {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (cause == null) {
+                    if (!"SUCCESS".equals(reservation.get("status"))) {
+                        // Réservation tout-ou-rien : aucun stock n'a été retiré
+                        String previousStatus = savedCommand.getStatus();
                         savedCommand.setStatus("STOCK_ERROR");
                         savedCommand.setNotes("ERREUR STOCK: Stock insuffisant pour certains produits");
-                        commandDao.save(savedCommand);
+                        commandWriteService.saveWithEvent(savedCommand, "STATUS_UPDATED", "Stock insuffisant",
+                                previousStatus, savedCommand.getTotalAmount());
                         
-                        System.out.println("⚠️ Problèmes lors de la mise à jour du stock");
+                        System.out.println("⚠️ Problèmes lors de la mise à jour du stock: " +
+                                           orchestrator.reservationFailureMessage(reservation));
                     } else {
                         System.out.println("✅ Tous les stocks mis à jour avec succès");
                     }
-                    
-                } catch (java.util.concurrent.TimeoutException e) {
+                } else if (cause instanceof TimeoutException) {
                     System.out.println("⚠️ Timeout lors de la mise à jour du stock - la commande est créée mais le stock pourrait ne pas être à jour");
-                } catch (Exception e) {
-                    System.err.println("❌ Erreur lors de la vérification des mises à jour de stock: " + e.getMessage());
+                } else {
+                    System.err.println("❌ Erreur lors de la vérification des mises à jour de stock: " + cause.getMessage());
                 }
 
                 response.put("status", "SUCCESS");
@@ -291,23 +307,11 @@ public class CommandMessageListener {
                 response.put("client", clientData);
                 response.put("message", "Commande créée avec succès via RabbitMQ - Stock mis à jour");
 
-                // Publier un événement de création
-                publishCommandEvent("COMMAND_CREATED", savedCommand, "Nouvelle commande créée via RabbitMQ avec mise à jour du stock");
-
                 sendCommandResponse(response);
 
                 System.out.println("✅ Commande créée via RabbitMQ: " + savedCommand.getId());
-
                 return null;
-
-            } catch (Exception e) {
-                System.err.println("❌ Erreur lors de la création de la commande: " + e.getMessage());
-                response.put("status", "ERROR");
-                response.put("message", "Erreur lors de la création: " + e.getMessage());
-                sendCommandResponse(response);
-                return null;
-            }
-        });
+            }, orchestratorExecutor);
     }
 
     /**
@@ -320,65 +324,4 @@ public class CommandMessageListener {
             response
         );
     }
-
-    /**
-     * Publie un événement de commande
-     */
-    private void publishCommandEvent(String eventType, Command command, String description) {
-        try {
-            Map<String, Object> event = new HashMap<>();
-            event.put("eventType", eventType);
-            event.put("commandId", command.getId());
-            event.put("clientId", command.getClientId());
-            event.put("status", command.getStatus());
-            event.put("totalAmount", command.getTotalAmount());
-            event.put("description", description);
-            event.put("timestamp", System.currentTimeMillis());
-
-            rabbitTemplate.convertAndSend(
-                RabbitMQConfig.MICROSERVICE_EXCHANGE,
-                "command.events",
-                event
-            );
-
-            System.out.println("📢 Événement publié: " + eventType + " pour commande " + command.getId());
-
-        } catch (Exception e) {
-            System.err.println("❌ Erreur lors de la publication de l'événement: " + e.getMessage());
-        }
-    }
-
-    /**
-     * Envoie une mise à jour de stock via RabbitMQ
-     */
-    private CompletableFuture<Map<String, Object>> sendStockUpdate(String productId, String operation, int quantity, String commandId) {
-        String correlationId = java.util.UUID.randomUUID().toString();
-        
-        Map<String, Object> stockUpdateMessage = new HashMap<>();
-        stockUpdateMessage.put("correlationId", correlationId);
-        stockUpdateMessage.put("productId", productId);
-        stockUpdateMessage.put("operation", operation);
-        stockUpdateMessage.put("quantity", quantity);
-        stockUpdateMessage.put("commandId", commandId);
-        stockUpdateMessage.put("service", "command-service");
-        stockUpdateMessage.put("timestamp", System.currentTimeMillis());
-        
-        // Créer un CompletableFuture pour la réponse
-        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
-        orchestrator.registerStockUpdateRequest(correlationId, future);
-        
-        // Envoyer le message
-        rabbitTemplate.convertAndSend(
-            RabbitMQConfig.MICROSERVICE_EXCHANGE,
-            "stock.update",
-            stockUpdateMessage
-        );
-        
-        System.out.println("📤 Mise à jour stock envoyée - Produit: " + productId + 
-                          ", Opération: " + operation + 
-                          ", Quantité: " + quantity + 
-                          ", Correlation: " + correlationId);
-        
-        return future;
-    }
-} 
\ No newline at end of file
+}
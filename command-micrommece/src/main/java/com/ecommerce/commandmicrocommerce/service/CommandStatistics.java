@@ -0,0 +1,314 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.ecommerce.commandmicrocommerce.config.RabbitMQConfig;
+import com.ecommerce.commandmicrocommerce.model.Command;
+import com.ecommerce.commandmicrocommerce.model.CommandStatisticsSummary;
+import org.bson.Document;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistiques de commandes matérialisées : nombre par statut et montant total, dans un document
+ * command_statistics partagé par les instances, sans relire la collection commands à chaque requête.
+ * Les compteurs sont dans Mongo plutôt qu'en LongAdder par instance : toutes les instances consomment
+ * la même queue, et un delta gardé en mémoire jusqu'à la prochaine sauvegarde serait perdu à l'arrêt
+ * alors que son message est déjà acquitté.
+ *
+ * Les command.events arrivent par une queue durable commune (command.statistics.queue) : les événements
+ * publiés pendant qu'aucune instance ne tourne sont appliqués au redémarrage. La livraison étant "au moins
+ * une fois" (republications de l'outbox), chaque événement laisse une marque dans command_statistics_events
+ * (commandId + type, et eventId pour les modifications) dans la même transaction que son $inc : un doublon
+ * est ignoré. Les deltas (statut et montant d'avant fournis par l'événement) s'additionnent dans n'importe quel ordre.
+ *
+ * Au premier démarrage, ou sur POST /api/commands/statistics/rebuild, les compteurs sont reconstruits
+ * par une agrégation Mongo ($group par statut). Chaque événement est aussi inscrit dans
+ * command_statistics_pending, dans la transaction de la commande, jusqu'à son application : la reconstruction
+ * lit ces événements dans le même instantané que l'agrégation et les marque appliqués, puisqu'elle les compte déjà.
+ */
+@Component
+public class CommandStatistics {
+
+    private static final String UNKNOWN_STATUS = "UNKNOWN";
+    private static final String APPLIED_EVENTS = "command_statistics_events";
+    private static final String PENDING_EVENTS = "command_statistics_pending";
+    private static final int REBUILD_ATTEMPTS = 3;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // Absent seulement avec outbox.transactions.enabled=false (mongod standalone) : les écritures sont alors successives
+    @Autowired
+    private ObjectProvider<MongoTransactionManager> transactionManager;
+
+    @Value("${command-stats.dedup-retention-ms:604800000}")
+    private long dedupRetentionMs;
+
+    @Value("${command-stats.cache-ms:500}")
+    private long cacheMs;
+
+    private TransactionTemplate transactionTemplate;
+
+    // Dernière lecture du document partagé, réutilisée pendant cacheMs
+    private volatile CommandStatisticsSummary cached;
+    private volatile long cachedAt;
+
+    private final LongAdder eventsApplied = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder eventsIgnored = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    /**
+     * Initialisation une fois l'application prête (après les données d'initialisation de CommandDaoImpl)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        mongoTemplate.indexOps(APPLIED_EVENTS).createIndex(new Index("appliedAt", Sort.Direction.ASC)
+                .expire(Duration.ofMillis(dedupRetentionMs)));
+        MongoTransactionManager manager = transactionManager.getIfAvailable();
+        transactionTemplate = manager != null ? new TransactionTemplate(manager) : null;
+
+        CommandStatisticsSummary summary = mongoTemplate.findById(CommandStatisticsSummary.GLOBAL, CommandStatisticsSummary.class);
+        if (summary == null || summary.getRebuiltAt() == 0) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Reconstruction à froid par agrégation côté Mongo : une ligne par statut, jamais les commandes elles-mêmes.
+     * Dans une transaction : un événement appliqué entre-temps entre en conflit avec l'écriture du résumé,
+     * la reconstruction est alors recommencée sur un nouvel instantané.
+     */
+    public void rebuild() {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (transactionTemplate != null) {
+                    transactionTemplate.executeWithoutResult(status -> rebuildOnce());
+                } else {
+                    rebuildOnce();
+                }
+                return;
+            } catch (DataAccessException e) {
+                if (attempt == REBUILD_ATTEMPTS) {
+                    throw e;
+                }
+                System.out.println("⚠️ Reconstruction des statistiques en conflit, nouvel essai: " + e.getMessage());
+            }
+        }
+    }
+
+    private void rebuildOnce() {
+        long startedAt = System.currentTimeMillis();
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.group("status").count().as("count").sum("totalAmount").as("totalAmount"));
+        Map<String, Long> byStatus = new HashMap<>();
+        long total = 0;
+        double amount = 0;
+        for (Document group : mongoTemplate.aggregate(aggregation, Command.class, Document.class)) {
+            String status = group.getString("_id");
+            long count = ((Number) group.get("count")).longValue();
+            byStatus.put(status != null ? status : UNKNOWN_STATUS, count);
+            total += count;
+            Number groupAmount = (Number) group.get("totalAmount");
+            amount += groupAmount != null ? groupAmount.doubleValue() : 0;
+        }
+        CommandStatisticsSummary summary = new CommandStatisticsSummary();
+        summary.setByStatus(byStatus);
+        summary.setTotalCommands(total);
+        summary.setTotalAmountCents(toCents(amount));
+        summary.setUpdatedAt(startedAt);
+        summary.setRebuiltAt(startedAt);
+        mongoTemplate.save(summary);
+
+        // Événements écrits avant l'instantané mais pas encore appliqués : déjà comptés par l'agrégation
+        List<Document> pending = mongoTemplate.findAll(Document.class, PENDING_EVENTS);
+        for (Document event : pending) {
+            mongoTemplate.upsert(Query.query(Criteria.where("_id").is(event.get("_id"))),
+                    new Update().setOnInsert("appliedAt", new Date()), APPLIED_EVENTS);
+        }
+        mongoTemplate.remove(new Query(), PENDING_EVENTS);
+
+        cached = summary;
+        cachedAt = System.currentTimeMillis();
+        rebuilds.increment();
+        System.out.println("📊 Statistiques de commandes reconstruites par agrégation: " + byStatus
+                + " (" + pending.size() + " événements en vol marqués appliqués)");
+    }
+
+    /**
+     * Inscrit un événement qui vient d'être écrit dans l'outbox, dans la transaction de la commande
+     */
+    public void eventPublished(Map<String, Object> event) {
+        if (delta(event) != null) {
+            mongoTemplate.insert(new Document("_id", eventKey(event)), PENDING_EVENTS);
+        }
+    }
+
+    /**
+     * Écoute les événements de commandes (queue durable partagée : un événement est traité par une instance)
+     */
+    @RabbitListener(queues = RabbitMQConfig.COMMAND_STATISTICS_QUEUE)
+    public void handleCommandEvent(Map<String, Object> event) {
+        Update delta = delta(event);
+        if (delta == null) {
+            eventsIgnored.increment();
+            return;
+        }
+        String key = eventKey(event);
+        try {
+            if (transactionTemplate != null) {
+                transactionTemplate.executeWithoutResult(status -> applyOnce(key, delta));
+            } else {
+                applyOnce(key, delta);
+            }
+            eventsApplied.increment();
+        } catch (DuplicateKeyException e) {
+            duplicates.increment();
+        }
+    }
+
+    /**
+     * Marque l'événement (DuplicateKeyException s'il a déjà été appliqué), incrémente les compteurs
+     * et le retire des événements en attente, en une transaction
+     */
+    private void applyOnce(String key, Update delta) {
+        mongoTemplate.insert(new Document("_id", key).append("appliedAt", new Date()), APPLIED_EVENTS);
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(CommandStatisticsSummary.GLOBAL)),
+                delta.set("updatedAt", System.currentTimeMillis()), CommandStatisticsSummary.class);
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(key)), PENDING_EVENTS);
+    }
+
+    /**
+     * Clé de déduplication : une création ou une suppression par commande ; pour une modification,
+     * l'identifiant de l'événement (ou, pour les anciens émetteurs, son horodatage et son statut)
+     */
+    static String eventKey(Map<String, Object> event) {
+        String eventType = (String) event.get("eventType");
+        String commandId = String.valueOf(event.get("commandId"));
+        if ("COMMAND_CREATED".equals(eventType) || "COMMAND_DELETED".equals(eventType)) {
+            return commandId + ":" + eventType;
+        }
+        Object eventId = event.get("eventId");
+        return commandId + ":" + eventType + ":"
+                + (eventId != null ? eventId : event.get("timestamp") + ":" + event.get("status"));
+    }
+
+    /**
+     * Delta des compteurs porté par l'événement, ou null s'il ne peut pas être compté
+     */
+    static Update delta(Map<String, Object> event) {
+        String eventType = (String) event.get("eventType");
+        if (eventType == null || event.get("commandId") == null) {
+            return null;
+        }
+        String status = statusOf(event.get("status"));
+        long amount = toCents(event.get("totalAmount"));
+        Update update = new Update();
+        switch (eventType) {
+            case "COMMAND_CREATED" -> update.inc("totalCommands", 1).inc("byStatus." + status, 1)
+                    .inc("totalAmountCents", amount);
+            case "COMMAND_DELETED" -> update.inc("totalCommands", -1).inc("byStatus." + status, -1)
+                    .inc("totalAmountCents", -amount);
+            case "STATUS_UPDATED", "COMMAND_UPDATED" -> {
+                // Sans l'état précédent (anciens émetteurs), le changement ne peut pas être compté
+                Object previousStatus = event.get("previousStatus");
+                if (previousStatus == null) {
+                    return null;
+                }
+                String previous = statusOf(previousStatus);
+                if (!previous.equals(status)) {
+                    update.inc("byStatus." + previous, -1).inc("byStatus." + status, 1);
+                }
+                Object previousAmount = event.get("previousAmount");
+                if (previousAmount != null && amount != toCents(previousAmount)) {
+                    update.inc("totalAmountCents", amount - toCents(previousAmount));
+                }
+            }
+            default -> {
+                return null;
+            }
+        }
+        return update;
+    }
+
+    /**
+     * Compteurs partagés, relus au plus toutes les command-stats.cache-ms
+     */
+    public CommandStatisticsSummary summary() {
+        CommandStatisticsSummary summary = cached;
+        long now = System.currentTimeMillis();
+        if (summary == null || now - cachedAt >= cacheMs) {
+            summary = mongoTemplate.findById(CommandStatisticsSummary.GLOBAL, CommandStatisticsSummary.class);
+            if (summary == null) {
+                summary = new CommandStatisticsSummary();
+            }
+            cached = summary;
+            cachedAt = now;
+        }
+        return summary;
+    }
+
+    public long getTotalCommands() {
+        return summary().getTotalCommands();
+    }
+
+    public Map<String, Long> countsByStatus() {
+        Map<String, Long> counts = new HashMap<>();
+        summary().getByStatus().forEach((status, count) -> {
+            if (count != null && count != 0) {
+                counts.put(status, count);
+            }
+        });
+        return counts;
+    }
+
+    public double getTotalAmount() {
+        return summary().getTotalAmountCents() / 100.0;
+    }
+
+    public Map<String, Object> getStats() {
+        CommandStatisticsSummary summary = summary();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rebuiltAt", summary.getRebuiltAt());
+        stats.put("updatedAt", summary.getUpdatedAt());
+        stats.put("transactional", transactionTemplate != null);
+        stats.put("eventsApplied", eventsApplied.sum());
+        stats.put("duplicates", duplicates.sum());
+        stats.put("eventsIgnored", eventsIgnored.sum());
+        stats.put("rebuilds", rebuilds.sum());
+        stats.put("dedupRetentionHours", TimeUnit.MILLISECONDS.toHours(dedupRetentionMs));
+        return stats;
+    }
+
+    private static String statusOf(Object status) {
+        return status != null ? status.toString() : UNKNOWN_STATUS;
+    }
+
+    private static long toCents(Object amount) {
+        return amount instanceof Number number ? Math.round(number.doubleValue() * 100) : 0;
+    }
+}
@@ -0,0 +1,67 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.ecommerce.commandmicrocommerce.dao.CommandDao;
+import com.ecommerce.commandmicrocommerce.model.Command;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Écritures d'une commande accompagnées de leurs messages sortants : la commande et l'outbox
+ * sont écrites dans la même transaction Mongo, la publication est faite ensuite par OutboxRelay
+ */
+@Service
+public class CommandWriteService {
+
+    @Autowired
+    private CommandDao commandDao;
+
+    @Autowired
+    private MicroserviceOrchestrator orchestrator;
+
+    @Autowired
+    private CommandEventPublisher commandEventPublisher;
+
+    /**
+     * Sauvegarde la commande, sa demande de réservation de stock (requête déjà enregistrée sous correlationId)
+     * et son événement COMMAND_CREATED : aucun arrêt ne peut laisser une commande sans événement de création.
+     * L'issue de la réservation (STOCK_ERROR) est publiée ensuite comme changement de statut.
+     */
+    @Transactional
+    public Command saveWithStockReservation(Command command, String correlationId, String description) {
+        Command savedCommand = commandDao.save(command);
+        orchestrator.enqueueStockReservation(correlationId, savedCommand.getId(), savedCommand.getItems());
+        commandEventPublisher.publish("COMMAND_CREATED", savedCommand, description);
+        return savedCommand;
+    }
+
+    /**
+     * Sauvegarde la commande et l'événement qui décrit la modification
+     */
+    @Transactional
+    public Command saveWithEvent(Command command, String eventType, String description) {
+        Command savedCommand = commandDao.save(command);
+        commandEventPublisher.publish(eventType, savedCommand, description);
+        return savedCommand;
+    }
+
+    /**
+     * Sauvegarde une commande existante et l'événement de modification, avec son statut et son montant d'avant
+     */
+    @Transactional
+    public Command saveWithEvent(Command command, String eventType, String description,
+                                 String previousStatus, double previousAmount) {
+        Command savedCommand = commandDao.save(command);
+        commandEventPublisher.publish(eventType, savedCommand, description, previousStatus, previousAmount);
+        return savedCommand;
+    }
+
+    /**
+     * Supprime la commande et publie COMMAND_DELETED (statut et montant de la commande supprimée)
+     */
+    @Transactional
+    public void deleteWithEvent(Command command) {
+        commandDao.deleteById(command.getId());
+        commandEventPublisher.publish("COMMAND_DELETED", command, "Commande supprimée");
+    }
+}
@@ -0,0 +1,40 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.ecommerce.commandmicrocommerce.config.RabbitMQConfig;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Vidage des queues de réponse partagées (client.response.queue, product.response.queue, stock.response.queue),
+ * alimentées seulement par les émetteurs antérieurs à reply_to. Ces queues et leurs bindings ne sont déclarés
+ * qu'avec ce vidage : hors migration, une réponse sans reply_to n'est routée nulle part au lieu de s'accumuler.
+ *
+ * Désactivé par défaut : avec plusieurs instances, une réponse y arrive sur une instance qui n'attend rien
+ * et serait comptée comme orpheline. À activer sur une seule instance, le temps d'une migration.
+ */
+@Component
+@ConditionalOnProperty(name = "orchestrator.legacy-response-drain.enabled", havingValue = "true", matchIfMissing = false)
+public class LegacyResponseDrain {
+
+    @Autowired
+    private PendingRequestRegistry pendingRequests;
+
+    @RabbitListener(queues = {
+            RabbitMQConfig.CLIENT_RESPONSE_QUEUE,
+            RabbitMQConfig.PRODUCT_RESPONSE_QUEUE,
+            RabbitMQConfig.STOCK_RESPONSE_QUEUE
+    })
+    public void handleLegacyResponse(Map<String, Object> response) {
+        String correlationId = (String) response.get("correlationId");
+        System.out.println("📥 Réponse reçue sur une queue partagée (" + response.get("service")
+                + ") - Correlation ID: " + correlationId);
+
+        if (!pendingRequests.complete(correlationId, response)) {
+            System.out.println("⚠️ Aucune requête en attente pour cette réponse");
+        }
+    }
+}
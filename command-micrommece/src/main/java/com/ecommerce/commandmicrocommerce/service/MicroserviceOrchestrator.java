@@ -1,56 +1,96 @@
 package com.ecommerce.commandmicrocommerce.service;
 
 import com.ecommerce.commandmicrocommerce.config.RabbitMQConfig;
+import com.ecommerce.commandmicrocommerce.model.CommandItem;
+import com.ecommerce.commandmicrocommerce.model.ProductSnapshot;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 
 @Service
 public class MicroserviceOrchestrator {
 
+    // Valeur du champ "service" d'une réponse produit servie par ProductSnapshotCache
+    public static final String CACHE_SERVICE = "command-service-cache";
+
     @Autowired
     private RabbitTemplate rabbitTemplate;
 
-    // Store pour les réponses asynchrones avec correlation IDs
-    private final Map<String, CompletableFuture<Map<String, Object>>> pendingRequests = new ConcurrentHashMap<>();
-    
-    // ===== NOUVEAU: Store pour les requêtes de mise à jour de stock =====
-    private final Map<String, CompletableFuture<Map<String, Object>>> pendingStockRequests = new ConcurrentHashMap<>();
+    // Registre borné des réponses asynchrones (correlation IDs), avec expiration
+    @Autowired
+    private PendingRequestRegistry pendingRequests;
+
+    // Snapshots produits alimentés par product.changed
+    @Autowired
+    private ProductSnapshotCache productCache;
+
+    // Near-cache client invalidé par client.changed
+    @Autowired
+    private ClientInfoCache clientCache;
+
+    // Messages de stock publiés via l'outbox, après le commit de la commande
+    @Autowired
+    private OutboxService outboxService;
+
+    // Queue de réponse exclusive de cette instance (reply_to des requêtes)
+    @Value("#{replyQueue.name}")
+    private String replyQueueName;
 
     /**
      * Récupère les informations d'un client
      */
     public CompletableFuture<Map<String, Object>> getClientInfo(String clientId) {
+        // Near-cache : les informations client changent rarement entre deux commandes
+        Map<String, Object> cachedClient = clientCache.get(clientId);
+        if (cachedClient != null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "SUCCESS");
+            response.put("service", "command-service-cache");
+            response.put("client", cachedClient);
+            System.out.println("⚡ Client servi depuis le cache: " + clientId);
+            return CompletableFuture.completedFuture(response);
+        }
+
         String correlationId = UUID.randomUUID().toString();
+        long readStartedAt = System.currentTimeMillis();
         
         Map<String, Object> message = new HashMap<>();
         message.put("correlationId", correlationId);
         message.put("clientId", clientId);
         message.put("service", "command-service");
         
-        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
-        pendingRequests.put(correlationId, future);
+        CompletableFuture<Map<String, Object>> future = pendingRequests.register(correlationId, "client");
+        if (future.isDone()) {
+            return future;
+        }
         
         rabbitTemplate.convertAndSend(
             RabbitMQConfig.MICROSERVICE_EXCHANGE,
             "client.query",
-            message
+            message,
+            this::withReplyTo
         );
         
         System.out.println("📤 Requête client envoyée - ID: " + clientId + ", Correlation: " + correlationId);
         
-        // Timeout après 10 secondes
-        future.orTimeout(10, TimeUnit.SECONDS);
-        
-        return future;
+        return future.thenApply(response -> {
+            if ("SUCCESS".equals(response.get("status")) && response.get("client") instanceof Map) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> clientData = (Map<String, Object>) response.get("client");
+                clientCache.put(clientId, clientData, readStartedAt);
+            }
+            return response;
+        });
     }
 
     /**
@@ -64,99 +104,220 @@ public class MicroserviceOrchestrator {
         message.put("productId", productId);
         message.put("service", "command-service");
         
-        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
-        pendingRequests.put(correlationId, future);
+        CompletableFuture<Map<String, Object>> future = pendingRequests.register(correlationId, "product");
+        if (future.isDone()) {
+            return future;
+        }
         
         rabbitTemplate.convertAndSend(
             RabbitMQConfig.MICROSERVICE_EXCHANGE,
             "product.query",
-            message
+            message,
+            this::withReplyTo
         );
         
         System.out.println("📤 Requête produit envoyée - ID: " + productId + ", Correlation: " + correlationId);
         
-        // Timeout après 10 secondes
-        future.orTimeout(10, TimeUnit.SECONDS);
-        
         return future;
     }
 
-    // ===== NOUVEAU: GESTION DES MISES À JOUR DE STOCK =====
+    /**
+     * Réponse servie par le cache local : son stock peut être en retard sur product-service
+     * (événements reçus dans le désordre), il ne sert donc pas à refuser une commande
+     */
+    public static boolean isFromCache(Map<String, Object> productResponse) {
+        return CACHE_SERVICE.equals(productResponse.get("service"));
+    }
 
     /**
-     * Enregistre une requête de mise à jour de stock
+     * Récupère les informations de plusieurs produits, dans l'ordre des IDs demandés.
+     * Les produits présents dans le cache local sont servis sans requête ; les autres sont
+     * lus via product.query (une seule requête groupée au-delà d'un produit) puis mis en cache.
      */
-    public void registerStockUpdateRequest(String correlationId, CompletableFuture<Map<String, Object>> future) {
-        pendingStockRequests.put(correlationId, future);
-        
-        // Timeout après 10 secondes
-        future.orTimeout(10, TimeUnit.SECONDS);
+    public CompletableFuture<List<Map<String, Object>>> getProductsInfo(List<String> productIds) {
+        Map<String, Map<String, Object>> responsesById = new HashMap<>();
+        List<String> missingIds = new ArrayList<>();
+        for (String productId : productIds) {
+            if (responsesById.containsKey(productId) || missingIds.contains(productId)) {
+                continue;
+            }
+            ProductSnapshot snapshot = productCache.get(productId);
+            if (snapshot != null) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("status", "SUCCESS");
+                response.put("service", CACHE_SERVICE);
+                response.put("product", snapshot.toProductData());
+                responsesById.put(productId, response);
+            } else {
+                missingIds.add(productId);
+            }
+        }
+
+        if (missingIds.isEmpty()) {
+            System.out.println("⚡ Produits servis depuis le cache: " + productIds);
+            return CompletableFuture.completedFuture(orderedResponses(productIds, responsesById));
+        }
+
+        CompletableFuture<List<Map<String, Object>>> fetched = missingIds.size() == 1
+            ? getProductInfo(missingIds.get(0)).thenApply(List::of)
+            : queryProducts(missingIds);
+
+        return fetched.thenApply(responses -> {
+            for (int i = 0; i < missingIds.size(); i++) {
+                Map<String, Object> response = responses.get(i);
+                if ("SUCCESS".equals(response.get("status"))) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> productData = (Map<String, Object>) response.get("product");
+                    // Versionné par la révision du document : une lecture plus ancienne qu'un événement déjà reçu est ignorée
+                    productCache.putIfNewer(ProductSnapshot.fromProductData(productData));
+                }
+                responsesById.put(missingIds.get(i), response);
+            }
+            return orderedResponses(productIds, responsesById);
+        });
+    }
+
+    private List<Map<String, Object>> orderedResponses(List<String> productIds, Map<String, Map<String, Object>> responsesById) {
+        List<Map<String, Object>> responses = new ArrayList<>();
+        for (String productId : productIds) {
+            responses.add(responsesById.get(productId));
+        }
+        return responses;
     }
 
     /**
-     * Envoie un message de mise à jour de stock
+     * Envoie une requête product.query groupée (champ "productIds")
      */
-    public void sendStockUpdateMessage(Map<String, Object> stockUpdateMessage) {
+    private CompletableFuture<List<Map<String, Object>>> queryProducts(List<String> productIds) {
+        String correlationId = UUID.randomUUID().toString();
+
+        Map<String, Object> message = new HashMap<>();
+        message.put("correlationId", correlationId);
+        message.put("productIds", productIds);
+        message.put("service", "command-service");
+
+        CompletableFuture<Map<String, Object>> future = pendingRequests.register(correlationId, "products");
+        if (future.isDone()) {
+            return future.thenApply(response -> splitBatchResponse(productIds, response));
+        }
+
         rabbitTemplate.convertAndSend(
             RabbitMQConfig.MICROSERVICE_EXCHANGE,
-            "stock.update",
-            stockUpdateMessage
+            "product.query",
+            message,
+            this::withReplyTo
         );
+
+        System.out.println("📤 Requête produits groupée envoyée - " + productIds.size() + " IDs, Correlation: " + correlationId);
+
+        return future.thenApply(response -> splitBatchResponse(productIds, response));
     }
 
     /**
-     * Écoute les réponses du Client Service
+     * Transforme une réponse groupée en réponses unitaires (même format que getProductInfo)
      */
-    @RabbitListener(queues = RabbitMQConfig.CLIENT_RESPONSE_QUEUE)
-    public void handleClientResponse(Map<String, Object> response) {
-        String correlationId = (String) response.get("correlationId");
-        System.out.println("📥 Réponse client reçue - Correlation ID: " + correlationId);
-        
-        CompletableFuture<Map<String, Object>> future = pendingRequests.remove(correlationId);
-        if (future != null) {
-            future.complete(response);
-            System.out.println("✅ Réponse client traitée avec succès");
-        } else {
-            System.out.println("⚠️ Aucune requête en attente pour cette réponse client");
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> splitBatchResponse(List<String> productIds, Map<String, Object> response) {
+        Map<String, Map<String, Object>> productsById = new HashMap<>();
+        List<Map<String, Object>> products = (List<Map<String, Object>>) response.get("products");
+        if (products != null) {
+            for (Map<String, Object> product : products) {
+                productsById.put((String) product.get("id"), product);
+            }
         }
+
+        List<Map<String, Object>> responses = new ArrayList<>();
+        for (String productId : productIds) {
+            Map<String, Object> single = new HashMap<>();
+            single.put("correlationId", response.get("correlationId"));
+            single.put("service", response.get("service"));
+
+            Map<String, Object> product = productsById.get(productId);
+            if (!"SUCCESS".equals(response.get("status"))) {
+                single.put("status", response.get("status"));
+                single.put("message", response.get("message"));
+            } else if (product != null) {
+                single.put("status", "SUCCESS");
+                single.put("product", product);
+            } else {
+                single.put("status", "NOT_FOUND");
+                single.put("message", "Produit non trouvé: " + productId);
+            }
+            responses.add(single);
+        }
+        return responses;
     }
 
+    // ===== NOUVEAU: GESTION DES MISES À JOUR DE STOCK =====
+
     /**
-     * Écoute les réponses du Product Service
+     * Enregistre une réservation de stock en attente de réponse, avant l'écriture de la commande.
+     * Sans réponse après timeoutMs, le registre fait échouer le future (TimeoutException).
+     * Si le registre est plein, le future retourné est déjà en échec et rien ne doit être écrit.
      */
-    @RabbitListener(queues = RabbitMQConfig.PRODUCT_RESPONSE_QUEUE)
-    public void handleProductResponse(Map<String, Object> response) {
-        String correlationId = (String) response.get("correlationId");
-        System.out.println("📥 Réponse produit reçue - Correlation ID: " + correlationId);
-        
-        CompletableFuture<Map<String, Object>> future = pendingRequests.remove(correlationId);
-        if (future != null) {
-            future.complete(response);
-            System.out.println("✅ Réponse produit traitée avec succès");
-        } else {
-            System.out.println("⚠️ Aucune requête en attente pour cette réponse produit");
+    public CompletableFuture<Map<String, Object>> registerStockReservation(String correlationId, long timeoutMs) {
+        return pendingRequests.register(correlationId, "stock", timeoutMs);
+    }
+
+    /**
+     * Écrit dans l'outbox le message "stock.reserve" portant toutes les lignes de la commande.
+     * Le Product Service applique les lignes en tout-ou-rien et répond avec un résultat par ligne.
+     */
+    public void enqueueStockReservation(String correlationId, String commandId, List<CommandItem> items) {
+        List<Map<String, Object>> lines = new ArrayList<>();
+        for (CommandItem item : items) {
+            Map<String, Object> line = new HashMap<>();
+            line.put("productId", item.getProductId());
+            line.put("quantity", item.getQuantity());
+            lines.add(line);
         }
+
+        Map<String, Object> message = new HashMap<>();
+        message.put("correlationId", correlationId);
+        message.put("commandId", commandId);
+        message.put("lines", lines);
+        message.put("service", "command-service");
+        message.put("timestamp", System.currentTimeMillis());
+
+        outboxService.enqueue("stock.reserve", message, replyQueueName);
+
+        System.out.println("📝 Réservation de stock ajoutée à l'outbox - Commande: " + commandId +
+                          ", Lignes: " + lines.size() +
+                          ", Correlation: " + correlationId);
     }
 
     /**
-     * ===== NOUVEAU: Écoute les réponses de mise à jour de stock =====
+     * Message d'erreur d'une réservation refusée : celui de la première ligne en échec
      */
-    @RabbitListener(queues = RabbitMQConfig.STOCK_RESPONSE_QUEUE)
-    public void handleStockUpdateResponse(Map<String, Object> response) {
+    @SuppressWarnings("unchecked")
+    public String reservationFailureMessage(Map<String, Object> response) {
+        List<Map<String, Object>> lines = (List<Map<String, Object>>) response.get("lines");
+        if (lines != null) {
+            for (Map<String, Object> line : lines) {
+                String status = (String) line.get("status");
+                if (!"SUCCESS".equals(status) && !"RELEASED".equals(status)) {
+                    return (String) line.get("message");
+                }
+            }
+        }
+        return (String) response.get("message");
+    }
+
+    private Message withReplyTo(Message message) {
+        message.getMessageProperties().setReplyTo(replyQueueName);
+        return message;
+    }
+
+    /**
+     * Écoute les réponses adressées à cette instance (client, produit et stock) via reply_to
+     */
+    @RabbitListener(queues = "#{replyQueue.name}")
+    public void handleReply(Map<String, Object> response) {
         String correlationId = (String) response.get("correlationId");
-        String productId = (String) response.get("productId");
-        String status = (String) response.get("status");
-        
-        System.out.println("📥 Réponse mise à jour stock reçue - Produit: " + productId + 
-                          ", Status: " + status + 
-                          ", Correlation ID: " + correlationId);
-        
-        CompletableFuture<Map<String, Object>> future = pendingStockRequests.remove(correlationId);
-        if (future != null) {
-            future.complete(response);
-            System.out.println("✅ Réponse mise à jour stock traitée avec succès");
-        } else {
-            System.out.println("⚠️ Aucune requête de stock en attente pour cette réponse");
+        System.out.println("📥 Réponse reçue (" + response.get("service") + ") - Correlation ID: " + correlationId);
+
+        if (!pendingRequests.complete(correlationId, response)) {
+            System.out.println("⚠️ Aucune requête en attente pour cette réponse");
         }
     }
-} 
\ No newline at end of file
+}
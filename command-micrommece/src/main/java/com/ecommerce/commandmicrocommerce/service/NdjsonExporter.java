@@ -0,0 +1,73 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Export NDJSON en flux : un document JSON par ligne, écrit au fil du curseur Mongo.
+ * Aucun document n'est retenu après son écriture (mémoire constante quelle que soit la collection) ;
+ * avec gzip, la réponse est un fichier .ndjson.gz.
+ */
+@Component
+public class NdjsonExporter {
+
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String GZIP = "application/gzip";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Écrit les documents dans la réponse puis ferme le flux (et donc le curseur) ; retourne le nombre de lignes
+     */
+    public long export(Stream<?> documents, String name, boolean gzip, HttpServletResponse response) throws IOException {
+        response.setContentType(gzip ? GZIP : NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"" + name + (gzip ? ".ndjson.gz" : ".ndjson") + "\"");
+
+        // Pas de flush après chaque document : le tampon est vidé quand il est plein
+        ObjectWriter writer = objectMapper.writer()
+                .without(SerializationFeature.INDENT_OUTPUT)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long count = 0;
+        try (Stream<?> stream = documents) {
+            OutputStream out = response.getOutputStream();
+            GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+            OutputStream buffered = new BufferedOutputStream(compressed != null ? compressed : out, BUFFER_SIZE);
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(buffered);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Séparateur de lignes écrit explicitement (pas d'espace entre les documents)
+            generator.setRootValueSeparator(null);
+
+            Iterator<?> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                writer.writeValue(generator, iterator.next());
+                generator.writeRaw('\n');
+                count++;
+            }
+            generator.flush();
+            buffered.flush();
+            if (compressed != null) {
+                compressed.finish();
+            }
+        }
+        System.out.println("📤 Export " + name + " terminé: " + count + " documents");
+        return count;
+    }
+}
@@ -0,0 +1,260 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.ecommerce.commandmicrocommerce.model.OutboxMessage;
+import com.ecommerce.commandmicrocommerce.repository.OutboxRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Relais de l'outbox : un thread par instance publie les messages par lots, attend les confirmations
+ * du broker (publisher confirms) puis supprime les messages confirmés.
+ *
+ * Toutes les instances de command-service lisent la même collection : chaque lot est d'abord réservé
+ * (lockedBy / lockedUntil, mise à jour conditionnelle) pour qu'un message ne soit publié que par un relais.
+ * Une réservation expirée (instance arrêtée en cours de lot) est reprise par un autre relais.
+ *
+ * Un message non confirmé est remis en attente avec un délai croissant (outbox.relay.retry-*) sans bloquer
+ * les suivants : la livraison est "au moins une fois", sans ordre garanti entre messages, et les consommateurs
+ * tolèrent les doublons (réservation de stock idempotente par commande, statistiques dédupliquées par commande).
+ */
+@Component
+public class OutboxRelay {
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Value("${outbox.relay.batch-size:100}")
+    private int batchSize;
+
+    @Value("${outbox.relay.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${outbox.relay.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+
+    @Value("${outbox.relay.lock-ms:30000}")
+    private long lockMs;
+
+    @Value("${outbox.relay.retry-base-ms:1000}")
+    private long retryBaseMs;
+
+    @Value("${outbox.relay.retry-max-ms:60000}")
+    private long retryMaxMs;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder nacked = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private ScheduledExecutorService relay;
+
+    @PostConstruct
+    public void start() {
+        mongoTemplate.indexOps(OutboxMessage.class).createIndex(new Index("createdAt", Sort.Direction.ASC));
+        mongoTemplate.indexOps(OutboxMessage.class).createIndex(new Index("lockedBy", Sort.Direction.ASC).sparse());
+
+        relay = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Le balayage périodique rattrape les messages laissés par un échec ou un redémarrage
+        relay.scheduleWithFixedDelay(this::drain, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        relay.shutdown();
+    }
+
+    /**
+     * Demande un passage immédiat du relais (appelé après le commit d'une écriture dans l'outbox)
+     */
+    public void wakeUp() {
+        if (wakeUpPending.compareAndSet(false, true)) {
+            try {
+                relay.execute(() -> {
+                    wakeUpPending.set(false);
+                    drain();
+                });
+            } catch (Exception e) {
+                wakeUpPending.set(false);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("instanceId", instanceId);
+        stats.put("pending", outboxRepository.count());
+        stats.put("published", published.sum());
+        stats.put("nacked", nacked.sum());
+        stats.put("retried", retried.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+
+    private void drain() {
+        try {
+            List<OutboxMessage> batch;
+            do {
+                // Les messages en échec sont repoussés (nextAttemptAt) : la boucle ne les reprend pas dans ce passage
+                String claim = instanceId + ":" + UUID.randomUUID();
+                batch = claim(claim);
+                if (!batch.isEmpty()) {
+                    publishBatch(claim, batch);
+                }
+            } while (batch.size() == batchSize);
+        } catch (Exception e) {
+            failures.increment();
+            System.err.println("❌ Erreur du relais outbox: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Réserve au plus batchSize messages disponibles (non réservés ou réservation expirée, délai d'essai écoulé),
+     * les plus anciens d'abord. La réservation est conditionnelle : un message pris entre-temps par un autre
+     * relais ne correspond plus au filtre et n'est pas retourné.
+     */
+    private List<OutboxMessage> claim(String claim) {
+        LocalDateTime now = LocalDateTime.now();
+        Query candidates = new Query(available(now)).with(Sort.by(Sort.Direction.ASC, "createdAt")).limit(batchSize);
+        candidates.fields().include("_id");
+        List<String> ids = mongoTemplate.find(candidates, OutboxMessage.class).stream()
+                .map(OutboxMessage::getId)
+                .toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        mongoTemplate.updateMulti(
+                new Query(new Criteria().andOperator(Criteria.where("_id").in(ids), available(now))),
+                new Update().set("lockedBy", claim).set("lockedUntil", now.plusNanos(TimeUnit.MILLISECONDS.toNanos(lockMs))),
+                OutboxMessage.class);
+        return mongoTemplate.find(new Query(Criteria.where("lockedBy").is(claim))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt")), OutboxMessage.class);
+    }
+
+    private static Criteria available(LocalDateTime now) {
+        return new Criteria().andOperator(
+                new Criteria().orOperator(Criteria.where("lockedUntil").is(null), Criteria.where("lockedUntil").lt(now)),
+                new Criteria().orOperator(Criteria.where("nextAttemptAt").is(null), Criteria.where("nextAttemptAt").lte(now)));
+    }
+
+    /**
+     * Publie un lot réservé, supprime les messages confirmés et remet les autres en attente avec un délai
+     */
+    private void publishBatch(String claim, List<OutboxMessage> batch) throws Exception {
+        boolean confirms = rabbitTemplate.getConnectionFactory().isPublisherConfirms();
+
+        Map<String, OutboxMessage> failed = new LinkedHashMap<>();
+        List<CorrelationData> correlations = new ArrayList<>();
+        for (OutboxMessage message : batch) {
+            CorrelationData correlationData = new CorrelationData(message.getId());
+            try {
+                rabbitTemplate.convertAndSend(message.getExchange(), message.getRoutingKey(), message.getPayload(),
+                    amqpMessage -> withReplyTo(amqpMessage, message.getReplyTo()), correlationData);
+                correlations.add(correlationData);
+            } catch (Exception e) {
+                // Message impublicable (conversion, canal fermé...) : repoussé seul, les suivants partent
+                failed.put(message.getId(), message);
+                System.err.println("❌ Outbox: publication impossible du message " + message.getId() + ": " + e.getMessage());
+            }
+        }
+
+        // Sans publisher confirms, un envoi sans exception est considéré comme publié
+        List<String> confirmedIds = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        for (CorrelationData correlationData : correlations) {
+            if (!confirms) {
+                confirmedIds.add(correlationData.getId());
+                continue;
+            }
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            boolean acked;
+            try {
+                acked = correlationData.getFuture().get(remaining, TimeUnit.NANOSECONDS).isAck();
+            } catch (TimeoutException e) {
+                acked = false;
+            }
+            if (acked) {
+                confirmedIds.add(correlationData.getId());
+            } else {
+                nacked.increment();
+                batch.stream().filter(message -> message.getId().equals(correlationData.getId()))
+                        .findFirst().ifPresent(message -> failed.put(message.getId(), message));
+            }
+        }
+
+        // Suppression limitée à notre réservation : si elle a expiré, le message appartient à un autre relais
+        if (!confirmedIds.isEmpty()) {
+            mongoTemplate.remove(new Query(Criteria.where("_id").in(confirmedIds).and("lockedBy").is(claim)),
+                    OutboxMessage.class);
+            published.add(confirmedIds.size());
+        }
+
+        for (OutboxMessage message : failed.values()) {
+            release(claim, message);
+        }
+        if (!failed.isEmpty()) {
+            System.out.println("⚠️ Outbox: " + failed.size() + " messages non confirmés, nouvel essai différé");
+        }
+    }
+
+    /**
+     * Libère un message en échec avec un délai croissant avant le prochain essai
+     */
+    private void release(String claim, OutboxMessage message) {
+        int attempts = message.getAttempts() + 1;
+        long delayMs = Math.min(retryMaxMs, retryBaseMs << Math.min(attempts - 1, 20));
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(message.getId()).and("lockedBy").is(claim)),
+                new Update().set("attempts", attempts)
+                        .set("nextAttemptAt", LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(delayMs)))
+                        .unset("lockedBy")
+                        .unset("lockedUntil"),
+                OutboxMessage.class);
+        retried.increment();
+    }
+
+    private Message withReplyTo(Message amqpMessage, String replyTo) {
+        if (replyTo != null) {
+            amqpMessage.getMessageProperties().setReplyTo(replyTo);
+        }
+        return amqpMessage;
+    }
+}
@@ -0,0 +1,49 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.ecommerce.commandmicrocommerce.config.RabbitMQConfig;
+import com.ecommerce.commandmicrocommerce.model.OutboxMessage;
+import com.ecommerce.commandmicrocommerce.repository.OutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+
+/**
+ * Point d'entrée de l'outbox : les messages sont écrits dans la collection "outbox"
+ * (dans la transaction courante s'il y en a une) au lieu d'être publiés directement
+ */
+@Service
+public class OutboxService {
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    public void enqueue(String routingKey, Map<String, Object> payload) {
+        enqueue(routingKey, payload, null);
+    }
+
+    /**
+     * Variante requête/réponse : la réponse sera adressée à la queue replyTo de l'instance émettrice,
+     * quelle que soit l'instance dont le relais publie le message
+     */
+    public void enqueue(String routingKey, Map<String, Object> payload, String replyTo) {
+        outboxRepository.save(new OutboxMessage(RabbitMQConfig.MICROSERVICE_EXCHANGE, routingKey, payload, replyTo));
+
+        // Réveiller le relais dès que le message est visible, sans attendre le prochain balayage
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    outboxRelay.wakeUp();
+                }
+            });
+        } else {
+            outboxRelay.wakeUp();
+        }
+    }
+}
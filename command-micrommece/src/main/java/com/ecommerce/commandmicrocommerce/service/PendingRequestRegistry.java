@@ -0,0 +1,185 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registre borné des requêtes RabbitMQ en attente de réponse (correlationId → future).
+ *
+ * Un seul thread de balayage retire les entrées expirées et fait échouer leur future,
+ * ce qui évite la fuite mémoire des réponses perdues. C'est le seul chemin d'expiration : les appelants
+ * reçoivent une copie du future, un orTimeout ou une annulation de leur côté ne retire pas l'entrée,
+ * et une réponse arrivée après l'expiration est bien comptée comme tardive. Au-delà de la capacité
+ * maximale, les nouvelles requêtes échouent immédiatement au lieu de faire grossir la map.
+ */
+@Component
+public class PendingRequestRegistry {
+
+    @Value("${orchestrator.pending.max-size:10000}")
+    private int maxPending;
+
+    @Value("${orchestrator.pending.timeout-ms:10000}")
+    private long timeoutMs;
+
+    @Value("${orchestrator.pending.sweep-interval-ms:100}")
+    private long sweepIntervalMs;
+
+    // Durée pendant laquelle un correlationId expiré est mémorisé pour reconnaître les réponses tardives
+    @Value("${orchestrator.pending.tombstone-ttl-ms:60000}")
+    private long tombstoneTtlMs;
+
+    private final Map<String, PendingRequest> pending = new ConcurrentHashMap<>();
+    private final Map<String, Long> expiredTombstones = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder lateReplies = new LongAdder();
+    private final LongAdder orphanReplies = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void start() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pending-request-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+        pending.values().forEach(request -> request.future.cancel(false));
+        pending.clear();
+    }
+
+    /**
+     * Enregistre une requête en attente avec le timeout par défaut
+     */
+    public CompletableFuture<Map<String, Object>> register(String correlationId, String type) {
+        return register(correlationId, type, timeoutMs);
+    }
+
+    /**
+     * Enregistre une requête en attente, expirée par le balayage après requestTimeoutMs (TimeoutException).
+     * Si le registre est plein, le future retourné est déjà en échec (RejectedExecutionException).
+     */
+    public CompletableFuture<Map<String, Object>> register(String correlationId, String type, long requestTimeoutMs) {
+        if (size.incrementAndGet() > maxPending) {
+            size.decrementAndGet();
+            rejections.increment();
+            System.out.println("🚫 Registre des requêtes plein (" + maxPending + ") - requête " + type + " rejetée");
+            return CompletableFuture.failedFuture(
+                new RejectedExecutionException("Trop de requêtes en attente (" + maxPending + ")"));
+        }
+
+        PendingRequest request = new PendingRequest(type, requestTimeoutMs,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeoutMs));
+        pending.put(correlationId, request);
+
+        // Copie : ce que l'appelant fait de son future (orTimeout, cancel) ne touche pas l'entrée
+        return request.future.copy();
+    }
+
+    /**
+     * Complète la requête correspondant à la réponse reçue.
+     * Retourne false pour une réponse tardive (requête expirée) ou orpheline (inconnue).
+     */
+    public boolean complete(String correlationId, Map<String, Object> response) {
+        PendingRequest request = correlationId != null ? pending.get(correlationId) : null;
+        if (request != null && release(correlationId, request)) {
+            hits.increment();
+            request.future.complete(response);
+            return true;
+        }
+
+        if (correlationId != null && expiredTombstones.remove(correlationId) != null) {
+            lateReplies.increment();
+        } else {
+            orphanReplies.increment();
+        }
+        return false;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", size.get());
+        stats.put("capacity", maxPending);
+        stats.put("hits", hits.sum());
+        stats.put("lateReplies", lateReplies.sum());
+        stats.put("orphanReplies", orphanReplies.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("rejections", rejections.sum());
+        return stats;
+    }
+
+    /**
+     * Retire une entrée ; seul l'appel qui la retire effectivement décrémente la taille
+     */
+    private boolean release(String correlationId, PendingRequest request) {
+        if (pending.remove(correlationId, request)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void sweep() {
+        try {
+            long now = System.nanoTime();
+            for (Map.Entry<String, PendingRequest> entry : pending.entrySet()) {
+                PendingRequest request = entry.getValue();
+                if (now - request.deadline >= 0 && release(entry.getKey(), request)) {
+                    expirations.increment();
+                    if (expiredTombstones.size() < maxPending) {
+                        expiredTombstones.put(entry.getKey(), now);
+                    }
+                    request.future.completeExceptionally(new TimeoutException(
+                        "Pas de réponse " + request.type + " après " + request.timeoutMs + " ms"));
+                }
+            }
+
+            long tombstoneTtlNanos = TimeUnit.MILLISECONDS.toNanos(tombstoneTtlMs);
+            Iterator<Map.Entry<String, Long>> tombstones = expiredTombstones.entrySet().iterator();
+            while (tombstones.hasNext()) {
+                if (now - tombstones.next().getValue() >= tombstoneTtlNanos) {
+                    tombstones.remove();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors du balayage des requêtes en attente: " + e.getMessage());
+        }
+    }
+
+    private static final class PendingRequest {
+        private final String type;
+        private final long timeoutMs;
+        private final long deadline;
+        private final CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+
+        private PendingRequest(String type, long timeoutMs, long deadline) {
+            this.type = type;
+            this.timeoutMs = timeoutMs;
+            this.deadline = deadline;
+        }
+    }
+}
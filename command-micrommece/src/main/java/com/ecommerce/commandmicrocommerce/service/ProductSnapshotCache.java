@@ -0,0 +1,119 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.ecommerce.commandmicrocommerce.model.ProductSnapshot;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache local et versionné des produits, alimenté par les événements product.changed.
+ * La version est la révision du document produit (incrémentée par chaque écriture dans product-service),
+ * elle ne dépend donc pas des horloges des instances ; une suppression porte la version maximale.
+ *
+ * Les snapshots servent à construire les commandes sans requête product.query ; le stock
+ * qu'ils portent n'est qu'indicatif, la réservation reste contrôlée par product-service.
+ */
+@Component
+public class ProductSnapshotCache {
+
+    @Value("${product-cache.max-size:50000}")
+    private int maxSize;
+
+    // Filet de sécurité si des événements sont perdus : au-delà, l'entrée est relue via product.query
+    @Value("${product-cache.max-age-ms:300000}")
+    private long maxAgeMs;
+
+    private final Map<String, ProductSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    // Version des suppressions, pour qu'une lecture en vol ne réinsère pas un produit supprimé
+    private final Map<String, Long> deletedVersions = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder events = new LongAdder();
+    private final LongAdder staleEvents = new LongAdder();
+
+    /**
+     * Retourne le snapshot s'il est présent et assez récent, sinon null
+     */
+    public ProductSnapshot get(String productId) {
+        ProductSnapshot snapshot = snapshots.get(productId);
+        if (snapshot != null && System.currentTimeMillis() - snapshot.getLoadedAt() < maxAgeMs) {
+            hits.increment();
+            return snapshot;
+        }
+        if (snapshot != null) {
+            snapshots.remove(productId, snapshot);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Insère le snapshot sauf si une version plus récente (ou une suppression plus récente) est connue
+     */
+    public boolean putIfNewer(ProductSnapshot snapshot) {
+        Long deletedVersion = deletedVersions.get(snapshot.getId());
+        if (deletedVersion != null && deletedVersion > snapshot.getVersion()) {
+            return false;
+        }
+        if (snapshots.size() >= maxSize && !snapshots.containsKey(snapshot.getId())) {
+            return false;
+        }
+        ProductSnapshot current = snapshots.merge(snapshot.getId(), snapshot,
+            (existing, candidate) -> candidate.getVersion() >= existing.getVersion() ? candidate : existing);
+        return current == snapshot;
+    }
+
+    public void evict(String productId, long version) {
+        deletedVersions.merge(productId, version, Math::max);
+        snapshots.computeIfPresent(productId, (id, existing) -> existing.getVersion() <= version ? null : existing);
+    }
+
+    /**
+     * Écoute les événements product.changed (une queue exclusive par instance)
+     */
+    @RabbitListener(queues = "#{productEventsQueue.name}")
+    public void handleProductChanged(Map<String, Object> event) {
+        String eventType = (String) event.get("eventType");
+        String productId = (String) event.get("productId");
+        if (productId == null || event.get("version") == null) {
+            return;
+        }
+        long version = ((Number) event.get("version")).longValue();
+        events.increment();
+
+        if ("PRODUCT_DELETED".equals(eventType)) {
+            evict(productId, version);
+            System.out.println("🗑️ Produit retiré du cache: " + productId);
+            return;
+        }
+
+        ProductSnapshot snapshot = new ProductSnapshot(
+            productId,
+            (String) event.get("nom"),
+            ((Number) event.get("prix")).intValue(),
+            ((Number) event.get("stock")).intValue(),
+            version
+        );
+        if (!putIfNewer(snapshot)) {
+            staleEvents.increment();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", snapshots.size());
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("events", events.sum());
+        stats.put("staleEvents", staleEvents.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,174 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Journal des requêtes Mongo lentes : écouteur de commandes du driver (enregistré par MongoConfig).
+ * Une commande find/aggregate/count/distinct plus longue que mongo.slow-query-ms est rejouée en
+ * explain (queryPlanner, sans exécution) sur un thread dédié, et son plan est journalisé :
+ * étapes, index retenu ou COLLSCAN. Une même forme de requête (collection, champs filtrés, tri)
+ * n'est expliquée qu'une fois par mongo.slow-query.explain-interval-ms.
+ */
+@Component
+public class SlowQueryLogger implements CommandListener {
+
+    private static final Set<String> EXPLAINABLE = Set.of("find", "aggregate", "count", "distinct");
+    // Champs de session et de transaction ajoutés par le driver, refusés dans une commande explain
+    private static final Set<String> SESSION_FIELDS = Set.of("lsid", "txnNumber", "autocommit", "startTransaction");
+    private static final int RECENT_SIZE = 50;
+
+    private final ObjectProvider<MongoTemplate> mongoTemplate;
+    private final long thresholdMs;
+    private final long explainIntervalMs;
+
+    // Commandes en cours, par requestId (copie : le document du driver n'est valide que pendant l'appel)
+    private final Map<Integer, BsonDocument> started = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastExplainByShape = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> recent = new ArrayDeque<>();
+    private final ThreadPoolExecutor explainer;
+
+    private final LongAdder slowQueries = new LongAdder();
+    private final LongAdder collectionScans = new LongAdder();
+    private final LongAdder explainsSkipped = new LongAdder();
+
+    public SlowQueryLogger(ObjectProvider<MongoTemplate> mongoTemplate,
+                           @Value("${mongo.slow-query-ms:100}") long thresholdMs,
+                           @Value("${mongo.slow-query.explain-interval-ms:60000}") long explainIntervalMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.thresholdMs = thresholdMs;
+        this.explainIntervalMs = explainIntervalMs;
+        // File bornée : en rafale de requêtes lentes, les explain en trop sont abandonnés
+        this.explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(100),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "slow-query-explain");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, executor) -> explainsSkipped.increment());
+    }
+
+    @PreDestroy
+    public void stop() {
+        explainer.shutdownNow();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (thresholdMs > 0 && EXPLAINABLE.contains(event.getCommandName())) {
+            started.put(event.getRequestId(), event.getCommand().clone());
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        BsonDocument command = started.remove(event.getRequestId());
+        long elapsedMs = event.getElapsedTime(TimeUnit.MILLISECONDS);
+        if (command == null || elapsedMs < thresholdMs) {
+            return;
+        }
+        slowQueries.increment();
+        String shape = shape(event.getCommandName(), command);
+        long now = System.currentTimeMillis();
+        Long last = lastExplainByShape.get(shape);
+        if (last != null && now - last < explainIntervalMs) {
+            return;
+        }
+        lastExplainByShape.put(shape, now);
+        explainer.execute(() -> explain(event.getCommandName(), command, shape, elapsedMs));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        started.remove(event.getRequestId());
+    }
+
+    private void explain(String commandName, BsonDocument command, String shape, long elapsedMs) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("at", System.currentTimeMillis());
+        entry.put("elapsedMs", elapsedMs);
+        entry.put("shape", shape);
+        try {
+            BsonDocument explained = new BsonDocument();
+            command.forEach((key, value) -> {
+                if (!key.startsWith("$") && !SESSION_FIELDS.contains(key)) {
+                    explained.put(key, value);
+                }
+            });
+            Document result = mongoTemplate.getObject().getDb().runCommand(
+                    new BsonDocument("explain", explained).append("verbosity", new BsonString("queryPlanner")));
+            Map<String, Object> plan = CommandIndexManager.planSummary(result);
+            entry.putAll(plan);
+            if (Boolean.TRUE.equals(plan.get("collectionScan"))) {
+                collectionScans.increment();
+            }
+            System.out.println("🐢 Requête lente (" + elapsedMs + " ms) " + shape + " → " + plan.get("stages")
+                    + (((List<?>) plan.get("indexes")).isEmpty() ? "" : " index " + plan.get("indexes")));
+        } catch (Exception e) {
+            entry.put("error", e.getMessage());
+            System.err.println("❌ Explain impossible pour " + commandName + ": " + e.getMessage());
+        }
+        synchronized (recent) {
+            if (recent.size() == RECENT_SIZE) {
+                recent.removeFirst();
+            }
+            recent.addLast(entry);
+        }
+    }
+
+    /**
+     * Forme d'une requête : commande, collection, champs filtrés et tri, sans les valeurs
+     */
+    private static String shape(String commandName, BsonDocument command) {
+        String collection = command.isString(commandName) ? command.getString(commandName).getValue() : "?";
+        StringBuilder shape = new StringBuilder(commandName).append(' ').append(collection);
+        if (command.isDocument("filter")) {
+            shape.append(" filter").append(command.getDocument("filter").keySet());
+        } else if (command.isDocument("query")) {
+            shape.append(" filter").append(command.getDocument("query").keySet());
+        } else if (command.isArray("pipeline")) {
+            List<String> stages = new ArrayList<>();
+            command.getArray("pipeline").forEach(stage -> stages.addAll(stage.asDocument().keySet()));
+            shape.append(" pipeline").append(stages);
+        }
+        if (command.isDocument("sort")) {
+            shape.append(" sort").append(command.getDocument("sort").keySet());
+        }
+        return shape.toString();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("thresholdMs", thresholdMs);
+        stats.put("slowQueries", slowQueries.sum());
+        stats.put("collectionScans", collectionScans.sum());
+        stats.put("explainsSkipped", explainsSkipped.sum());
+        synchronized (recent) {
+            stats.put("recent", new ArrayList<>(recent));
+        }
+        return stats;
+    }
+}
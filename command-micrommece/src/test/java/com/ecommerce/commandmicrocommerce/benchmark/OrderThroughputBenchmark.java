@@ -0,0 +1,153 @@
+package com.ecommerce.commandmicrocommerce.benchmark;
+
+import com.ecommerce.commandmicrocommerce.controller.CommandController;
+import com.ecommerce.commandmicrocommerce.dao.CommandDao;
+import com.ecommerce.commandmicrocommerce.model.Command;
+import com.ecommerce.commandmicrocommerce.service.CommandWriteService;
+import com.ecommerce.commandmicrocommerce.service.MicroserviceOrchestrator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Commandes traitées par thread servlet : avant (le thread attend la commande complète, comme l'ancien join)
+ * contre après (POST /api/commands rend un CompletableFuture, le thread est libéré dès l'envoi des requêtes).
+ * Client, produits et réservation répondent après brokerLatencyMillis, comme un aller-retour RabbitMQ ;
+ * les 8 threads du benchmark jouent le pool Tomcat. En mode non bloquant, les commandes en vol sont
+ * bornées par maxInFlight (connexions ouvertes). Commandes par thread = débit / 8.
+ *
+ * Lancement : mvn test-compile puis
+ * java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)"
+ *      com.ecommerce.commandmicrocommerce.benchmark.OrderThroughputBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class OrderThroughputBenchmark {
+
+    @Param({"true", "false"})
+    private boolean blocking;
+
+    @Param({"5"})
+    private long brokerLatencyMillis;
+
+    @Param({"1000"})
+    private int maxInFlight;
+
+    private final PrintStream out = System.out;
+
+    private ScheduledExecutorService broker;
+    private ExecutorService orchestratorExecutor;
+    private Semaphore inFlight;
+    private CommandController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        broker = Executors.newScheduledThreadPool(2);
+        // Même taille que orchestrator.executor.core-size
+        orchestratorExecutor = Executors.newFixedThreadPool(8);
+        inFlight = new Semaphore(maxInFlight);
+
+        // stubOnly : les appels ne sont pas mémorisés pour vérification
+        MicroserviceOrchestrator orchestrator = mock(MicroserviceOrchestrator.class, withSettings().stubOnly());
+        CommandWriteService commandWriteService = mock(CommandWriteService.class, withSettings().stubOnly());
+
+        Map<String, Object> client = Map.of("nom", "Dupont", "prenom", "Jean", "email", "jean@example.com");
+        Map<String, Object> product = Map.of("id", "p1", "nom", "Produit p1", "prix", 25, "stock", 1_000_000);
+        when(orchestrator.getClientInfo(anyString()))
+                .thenAnswer(invocation -> reply(Map.of("status", "SUCCESS", "client", client)));
+        when(orchestrator.getProductsInfo(anyList()))
+                .thenAnswer(invocation -> reply(List.of(Map.of("status", "SUCCESS", "service", "product-service", "product", product))));
+        when(orchestrator.registerStockReservation(anyString(), anyLong()))
+                .thenAnswer(invocation -> reply(Map.of("status", "SUCCESS")));
+        when(commandWriteService.saveWithStockReservation(any(Command.class), anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        controller = new CommandController(mock(CommandDao.class, withSettings().stubOnly()));
+        ReflectionTestUtils.setField(controller, "orchestrator", orchestrator);
+        ReflectionTestUtils.setField(controller, "commandWriteService", commandWriteService);
+        ReflectionTestUtils.setField(controller, "orchestratorExecutor", orchestratorExecutor);
+
+        // Journaux du contrôleur coupés pendant la mesure
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        inFlight.tryAcquire(maxInFlight, 10, TimeUnit.SECONDS);
+        broker.shutdownNow();
+        orchestratorExecutor.shutdownNow();
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public Object order() throws InterruptedException {
+        if (blocking) {
+            return controller.ajouterCommand(request()).join();
+        }
+        inFlight.acquire();
+        CompletableFuture<ResponseEntity<?>> response = controller.ajouterCommand(request());
+        response.whenComplete((entity, e) -> inFlight.release());
+        return response;
+    }
+
+    private <T> CompletableFuture<T> reply(T value) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        broker.schedule(() -> future.complete(value), brokerLatencyMillis, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    private static Map<String, Object> request() {
+        Map<String, Object> request = new HashMap<>();
+        request.put("clientId", "client-1");
+        request.put("items", List.of(Map.of("productId", "p1", "quantity", 1)));
+        request.put("shippingAddress", "1 rue de la Paix");
+        return request;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(OrderThroughputBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,152 @@
+package com.ecommerce.commandmicrocommerce.controller;
+
+import com.ecommerce.commandmicrocommerce.dao.CommandDao;
+import com.ecommerce.commandmicrocommerce.model.Command;
+import com.ecommerce.commandmicrocommerce.service.CommandWriteService;
+import com.ecommerce.commandmicrocommerce.service.MicroserviceOrchestrator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Création de commande : attente non bloquante de la réservation (délai du registre), STOCK_ERROR sur refus,
+ * corrélation entre la requête enregistrée et le message de l'outbox (services simulés)
+ */
+class CommandControllerReservationTests {
+
+    private final CommandDao commandDao = mock(CommandDao.class);
+    private final MicroserviceOrchestrator orchestrator = mock(MicroserviceOrchestrator.class);
+    private final CommandWriteService commandWriteService = mock(CommandWriteService.class);
+    private final CompletableFuture<Map<String, Object>> reservation = new CompletableFuture<>();
+
+    private CommandController controller;
+
+    @BeforeEach
+    void setUp() {
+        controller = new CommandController(commandDao);
+        ReflectionTestUtils.setField(controller, "orchestrator", orchestrator);
+        ReflectionTestUtils.setField(controller, "commandWriteService", commandWriteService);
+        ReflectionTestUtils.setField(controller, "orchestratorExecutor", (Executor) Runnable::run);
+
+        Map<String, Object> client = Map.of("nom", "Dupont", "prenom", "Jean", "email", "jean@example.com");
+        when(orchestrator.getClientInfo("client-1"))
+                .thenReturn(CompletableFuture.completedFuture(Map.of("status", "SUCCESS", "client", client)));
+        when(orchestrator.registerStockReservation(anyString(), anyLong())).thenReturn(reservation);
+        when(commandWriteService.saveWithStockReservation(any(Command.class), anyString(), anyString())).thenAnswer(invocation -> {
+            Command command = invocation.getArgument(0);
+            command.setId("cmd-1");
+            return command;
+        });
+    }
+
+    @Test
+    void successfulReservationCreatesTheCommand() throws Exception {
+        stubProduct("product-service", 10);
+
+        CompletableFuture<ResponseEntity<?>> response = controller.ajouterCommand(request(2));
+        assertFalse(response.isDone());
+        reservation.complete(Map.of("status", "SUCCESS"));
+
+        assertEquals(HttpStatus.CREATED, response.get(1, TimeUnit.SECONDS).getStatusCode());
+        // COMMAND_CREATED part avec la commande : rien d'autre à écrire après la réservation
+        verify(commandWriteService, never()).saveWithEvent(any(Command.class), anyString(), anyString(), any(), anyDouble());
+    }
+
+    @Test
+    void reservationIsCorrelatedWithTheOutboxMessage() {
+        stubProduct("product-service", 10);
+
+        controller.ajouterCommand(request(2));
+
+        ArgumentCaptor<String> registered = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> enqueued = ArgumentCaptor.forClass(String.class);
+        verify(orchestrator).registerStockReservation(registered.capture(), anyLong());
+        verify(commandWriteService).saveWithStockReservation(any(Command.class), enqueued.capture(), anyString());
+        assertEquals(registered.getValue(), enqueued.getValue());
+    }
+
+    @Test
+    void refusedReservationMarksTheCommandStockError() throws Exception {
+        stubProduct("product-service", 10);
+        Map<String, Object> refusal = Map.of("status", "INSUFFICIENT_STOCK",
+                "lines", List.of(Map.of("productId", "p1", "status", "INSUFFICIENT_STOCK")));
+        when(orchestrator.reservationFailureMessage(refusal)).thenReturn("Stock insuffisant pour Produit p1");
+
+        CompletableFuture<ResponseEntity<?>> response = controller.ajouterCommand(request(2));
+        reservation.complete(refusal);
+
+        ResponseEntity<?> entity = response.get(1, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.CONFLICT, entity.getStatusCode());
+        Command command = (Command) ((Map<?, ?>) entity.getBody()).get("command");
+        assertEquals("STOCK_ERROR", command.getStatus());
+        // Création déjà publiée avec la commande : le refus est un changement de statut PENDING → STOCK_ERROR
+        verify(commandWriteService).saveWithEvent(any(Command.class), eq("STATUS_UPDATED"), anyString(), eq("PENDING"), anyDouble());
+    }
+
+    @Test
+    void missingReservationReplyExpiresThroughTheRegistry() throws Exception {
+        stubProduct("product-service", 10);
+
+        CompletableFuture<ResponseEntity<?>> response = controller.ajouterCommand(request(2));
+        assertFalse(response.isDone());
+        // Le délai de 3 s est confié au registre : seul son balayage fait expirer la réservation
+        verify(orchestrator).registerStockReservation(anyString(), eq(3_000L));
+        reservation.completeExceptionally(new TimeoutException("Pas de réponse stock après 3000 ms"));
+
+        // La commande reste créée, le stock sera confirmé (ou non) plus tard
+        assertEquals(HttpStatus.CREATED, response.get(1, TimeUnit.SECONDS).getStatusCode());
+        verify(commandWriteService).saveWithStockReservation(any(Command.class), anyString(), anyString());
+    }
+
+    @Test
+    void freshStockIsPreCheckedButCachedStockIsNot() throws Exception {
+        stubProduct("product-service", 1);
+        assertEquals(HttpStatus.CONFLICT, controller.ajouterCommand(request(2)).get(1, TimeUnit.SECONDS).getStatusCode());
+        verify(orchestrator, never()).registerStockReservation(anyString(), anyLong());
+
+        // Snapshot du cache peut-être périmé : la réservation décide
+        stubProduct(MicroserviceOrchestrator.CACHE_SERVICE, 1);
+        CompletableFuture<ResponseEntity<?>> response = controller.ajouterCommand(request(2));
+        reservation.complete(Map.of("status", "SUCCESS"));
+        assertEquals(HttpStatus.CREATED, response.get(1, TimeUnit.SECONDS).getStatusCode());
+    }
+
+    private void stubProduct(String service, int stock) {
+        Map<String, Object> product = Map.of("id", "p1", "nom", "Produit p1", "prix", 25, "stock", stock);
+        Map<String, Object> response = Map.of("status", "SUCCESS", "service", service, "product", product);
+        when(orchestrator.getProductsInfo(anyList()))
+                .thenReturn(CompletableFuture.completedFuture(List.of(response)));
+    }
+
+    private static Map<String, Object> request(int quantity) {
+        Map<String, Object> request = new HashMap<>();
+        request.put("clientId", "client-1");
+        request.put("items", List.of(Map.of("productId", "p1", "quantity", quantity)));
+        request.put("shippingAddress", "1 rue de la Paix");
+        return request;
+    }
+}
@@ -0,0 +1,61 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.ecommerce.commandmicrocommerce.model.Command;
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Comptages filtrés : la cohérence renvoyée est celle réellement appliquée, pas celle demandée
+ */
+class CommandCountServiceTests {
+
+    private final CommandCountService countService = new CommandCountService();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        when(mongoTemplate.getCollectionName(Command.class)).thenReturn("commands");
+        when(mongoTemplate.getCollection("commands")).thenReturn(collection);
+        when(collection.countDocuments(any(Bson.class))).thenReturn(7L);
+
+        CommandStatistics commandStatistics = mock(CommandStatistics.class);
+        when(commandStatistics.countsByStatus()).thenReturn(Map.of("PENDING", 3L));
+
+        ReflectionTestUtils.setField(countService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(countService, "commandStatistics", commandStatistics);
+    }
+
+    @Test
+    void approximateStatusCountUsesTheStatistics() {
+        assertEquals(new CommandCountService.Count(3L, CommandCountService.APPROXIMATE),
+                countService.countBy("PENDING", null, CommandCountService.APPROXIMATE));
+    }
+
+    @Test
+    void clientCountIsAlwaysExact() {
+        assertEquals(new CommandCountService.Count(7L, CommandCountService.EXACT),
+                countService.countBy("PENDING", "client-1", CommandCountService.APPROXIMATE));
+        assertEquals(new CommandCountService.Count(7L, CommandCountService.EXACT),
+                countService.countBy(null, "client-1", CommandCountService.APPROXIMATE));
+    }
+
+    @Test
+    void exactStatusCountIsReportedExact() {
+        assertEquals(new CommandCountService.Count(7L, CommandCountService.EXACT),
+                countService.countBy("PENDING", null, CommandCountService.EXACT));
+    }
+}
@@ -0,0 +1,27 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Index protégés : un index unique, partiel ou TTL n'est jamais supprimé par la réconciliation
+ */
+class CommandIndexManagerTests {
+
+    @Test
+    void uniquePartialAndTtlIndexesAreProtected() {
+        Document keys = new Document("status", 1);
+
+        assertNull(CommandIndexManager.protectedOption(new Document("name", "status_1").append("key", keys)));
+        assertNull(CommandIndexManager.protectedOption(new Document("name", "status_1").append("key", keys).append("unique", false)));
+        assertEquals("unique", CommandIndexManager.protectedOption(
+                new Document("name", "status_1").append("key", keys).append("unique", true)));
+        assertEquals("partiel", CommandIndexManager.protectedOption(new Document("name", "status_1").append("key", keys)
+                .append("partialFilterExpression", new Document("status", "PENDING"))));
+        assertEquals("TTL", CommandIndexManager.protectedOption(
+                new Document("name", "orderDate_1").append("key", new Document("orderDate", 1)).append("expireAfterSeconds", 3600)));
+    }
+}
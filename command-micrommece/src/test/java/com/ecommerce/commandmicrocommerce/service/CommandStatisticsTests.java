@@ -0,0 +1,84 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import com.ecommerce.commandmicrocommerce.model.Command;
+import com.ecommerce.commandmicrocommerce.model.CommandStatisticsSummary;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Statistiques : les événements en vol déjà comptés par une reconstruction ne sont pas appliqués une seconde fois
+ */
+class CommandStatisticsTests {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final CommandStatistics statistics = new CommandStatistics();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(statistics, "mongoTemplate", mongoTemplate);
+    }
+
+    @Test
+    void publishedEventIsPendingUntilApplied() {
+        Map<String, Object> event = created("cmd-1");
+
+        statistics.eventPublished(event);
+        statistics.handleCommandEvent(event);
+
+        ArgumentCaptor<Document> pending = ArgumentCaptor.forClass(Document.class);
+        verify(mongoTemplate).insert(pending.capture(), eq("command_statistics_pending"));
+        assertEquals("cmd-1:COMMAND_CREATED", pending.getValue().get("_id"));
+        verify(mongoTemplate).remove(any(Query.class), eq("command_statistics_pending"));
+        verify(mongoTemplate).upsert(any(Query.class), any(Update.class), eq(CommandStatisticsSummary.class));
+    }
+
+    @Test
+    void rebuildMarksPendingEventsAsApplied() {
+        Document group = new Document("_id", "PENDING").append("count", 2).append("totalAmount", 30.0);
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Command.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(group), new Document()));
+        when(mongoTemplate.findAll(Document.class, "command_statistics_pending"))
+                .thenReturn(List.of(new Document("_id", "cmd-1:COMMAND_CREATED")));
+
+        statistics.rebuild();
+
+        ArgumentCaptor<CommandStatisticsSummary> summary = ArgumentCaptor.forClass(CommandStatisticsSummary.class);
+        verify(mongoTemplate).save(summary.capture());
+        assertEquals(2, summary.getValue().getTotalCommands());
+        assertEquals(3000, summary.getValue().getTotalAmountCents());
+        // Marque posée pour l'événement en vol, retiré des événements en attente
+        verify(mongoTemplate).upsert(any(Query.class), any(Update.class), eq("command_statistics_events"));
+        verify(mongoTemplate).remove(any(Query.class), eq("command_statistics_pending"));
+    }
+
+    @Test
+    void uncountableEventIsNotPending() {
+        statistics.eventPublished(Map.of("eventType", "COMMAND_UPDATED", "commandId", "cmd-1", "status", "PENDING"));
+
+        verify(mongoTemplate, never()).insert(any(Document.class), eq("command_statistics_pending"));
+    }
+
+    private static Map<String, Object> created(String commandId) {
+        return Map.of("eventId", "e-" + commandId, "eventType", "COMMAND_CREATED", "commandId", commandId,
+                "status", "PENDING", "totalAmount", 15.0);
+    }
+}
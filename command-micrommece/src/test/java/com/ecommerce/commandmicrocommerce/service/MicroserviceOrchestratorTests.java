@@ -0,0 +1,122 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Orchestrateur : les réponses reçues sur la queue reply_to sont rattachées à leur requête par correlationId
+ * (RabbitMQ simulé, registre réel)
+ */
+class MicroserviceOrchestratorTests {
+
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final PendingRequestRegistry pendingRequests = new PendingRequestRegistry();
+    private final MicroserviceOrchestrator orchestrator = new MicroserviceOrchestrator();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(pendingRequests, "maxPending", 100);
+        ReflectionTestUtils.setField(pendingRequests, "timeoutMs", 10_000L);
+        ReflectionTestUtils.setField(pendingRequests, "sweepIntervalMs", 10L);
+        ReflectionTestUtils.setField(pendingRequests, "tombstoneTtlMs", 60_000L);
+        pendingRequests.start();
+
+        ReflectionTestUtils.setField(orchestrator, "rabbitTemplate", rabbitTemplate);
+        ReflectionTestUtils.setField(orchestrator, "pendingRequests", pendingRequests);
+        ReflectionTestUtils.setField(orchestrator, "replyQueueName", "command.reply.test");
+    }
+
+    @AfterEach
+    void stop() {
+        pendingRequests.stop();
+    }
+
+    @Test
+    void replyIsMatchedToItsRequestByCorrelationId() throws Exception {
+        CompletableFuture<Map<String, Object>> first = orchestrator.getProductInfo("p1");
+        CompletableFuture<Map<String, Object>> second = orchestrator.getProductInfo("p2");
+        List<Map<String, Object>> sent = sentMessages(2);
+
+        // Réponses dans l'ordre inverse des requêtes
+        orchestrator.handleReply(reply(sent.get(1), "p2"));
+        orchestrator.handleReply(reply(sent.get(0), "p1"));
+
+        assertEquals("p1", product(first.get(1, TimeUnit.SECONDS)).get("id"));
+        assertEquals("p2", product(second.get(1, TimeUnit.SECONDS)).get("id"));
+    }
+
+    @Test
+    void replyWithAnUnknownCorrelationIdIsIgnored() {
+        CompletableFuture<Map<String, Object>> pending = orchestrator.getProductInfo("p1");
+        sentMessages(1);
+
+        orchestrator.handleReply(new HashMap<>(Map.of("correlationId", "autre-instance", "status", "SUCCESS")));
+
+        assertFalse(pending.isDone());
+        assertEquals(1L, pendingRequests.getStats().get("orphanReplies"));
+    }
+
+    @Test
+    void stockReservationFailureMessageComesFromTheFirstFailedLine() {
+        Map<String, Object> response = Map.of("status", "INSUFFICIENT_STOCK", "message", "Réservation impossible",
+                "lines", List.of(
+                        Map.of("productId", "p1", "status", "RELEASED", "message", "Réservation annulée"),
+                        Map.of("productId", "p2", "status", "INSUFFICIENT_STOCK", "message", "Stock insuffisant pour p2")));
+
+        assertEquals("Stock insuffisant pour p2", orchestrator.reservationFailureMessage(response));
+        assertEquals("Réservation impossible",
+                orchestrator.reservationFailureMessage(Map.of("status", "ERROR", "message", "Réservation impossible")));
+    }
+
+    @Test
+    void registeredReservationIsCompletedByItsReply() throws Exception {
+        CompletableFuture<Map<String, Object>> reservation = orchestrator.registerStockReservation("reservation-1", 10_000L);
+
+        orchestrator.handleReply(new HashMap<>(Map.of("correlationId", "reservation-1", "status", "SUCCESS")));
+
+        assertTrue(reservation.isDone());
+        assertEquals("SUCCESS", reservation.get().get("status"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> sentMessages(int count) {
+        ArgumentCaptor<Object> messages = ArgumentCaptor.forClass(Object.class);
+        verify(rabbitTemplate, times(count)).convertAndSend(any(String.class), eq("product.query"),
+                messages.capture(), any(MessagePostProcessor.class));
+        return messages.getAllValues().stream().map(message -> (Map<String, Object>) message).toList();
+    }
+
+    private static Map<String, Object> reply(Map<String, Object> request, String productId) {
+        Map<String, Object> reply = new HashMap<>();
+        reply.put("correlationId", request.get("correlationId"));
+        reply.put("status", "SUCCESS");
+        reply.put("service", "product-service");
+        reply.put("product", Map.of("id", productId, "nom", "Produit " + productId, "prix", 10, "stock", 5));
+        return reply;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> product(Map<String, Object> response) {
+        return (Map<String, Object>) response.get("product");
+    }
+}
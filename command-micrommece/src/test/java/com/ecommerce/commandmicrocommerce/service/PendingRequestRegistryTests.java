@@ -0,0 +1,128 @@
+package com.ecommerce.commandmicrocommerce.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Registre des requêtes en attente : corrélation des réponses, expiration, réponses tardives et capacité
+ */
+class PendingRequestRegistryTests {
+
+    private final PendingRequestRegistry registry = registry(3, 100);
+
+    @AfterEach
+    void stop() {
+        registry.stop();
+    }
+
+    @Test
+    void replyCompletesOnlyTheMatchingRequest() throws Exception {
+        CompletableFuture<Map<String, Object>> first = registry.register("c-1", "product");
+        CompletableFuture<Map<String, Object>> second = registry.register("c-2", "product");
+
+        assertTrue(registry.complete("c-2", Map.of("correlationId", "c-2", "status", "SUCCESS")));
+
+        assertEquals("SUCCESS", second.get(1, TimeUnit.SECONDS).get("status"));
+        assertFalse(first.isDone());
+        assertEquals(1, registry.getStats().get("pending"));
+
+        // Une deuxième réponse pour la même requête, ou une réponse inconnue, n'est pas rattachée
+        assertFalse(registry.complete("c-2", Map.of("status", "SUCCESS")));
+        assertFalse(registry.complete("inconnu", Map.of("status", "SUCCESS")));
+        assertEquals(2L, registry.getStats().get("orphanReplies"));
+    }
+
+    @Test
+    void expiredRequestFailsWithTimeoutAndLateReplyIsCounted() {
+        CompletableFuture<Map<String, Object>> future = registry.register("c-1", "stock");
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, error.getCause());
+        assertEquals(0, registry.getStats().get("pending"));
+
+        assertFalse(registry.complete("c-1", Map.of("status", "SUCCESS")));
+        assertEquals(1L, registry.getStats().get("expirations"));
+        assertEquals(1L, registry.getStats().get("lateReplies"));
+        assertEquals(0L, registry.getStats().get("orphanReplies"));
+    }
+
+    @Test
+    void requestsBeyondCapacityFailImmediately() throws Exception {
+        PendingRequestRegistry small = registry(2, 10_000);
+        try {
+            small.register("c-1", "client");
+            small.register("c-2", "client");
+
+            CompletableFuture<Map<String, Object>> rejected = small.register("c-3", "client");
+            assertTrue(rejected.isCompletedExceptionally());
+            ExecutionException error = assertThrows(ExecutionException.class, rejected::get);
+            assertInstanceOf(RejectedExecutionException.class, error.getCause());
+
+            // Une réponse libère une place
+            small.complete("c-1", Map.of("status", "SUCCESS"));
+            assertFalse(small.register("c-4", "client").isDone());
+            assertEquals(1L, small.getStats().get("rejections"));
+        } finally {
+            small.stop();
+        }
+    }
+
+    @Test
+    void callerSideTimeoutDoesNotExpireTheEntry() throws Exception {
+        CompletableFuture<Map<String, Object>> abandoned = registry.register("c-1", "product", 10_000);
+        CompletableFuture<Map<String, Object>> cancelled = registry.register("c-2", "product", 10_000);
+
+        // orTimeout ou annulation côté appelant : l'entrée reste jusqu'à sa réponse ou au balayage
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> abandoned.orTimeout(10, TimeUnit.MILLISECONDS).get(1, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, error.getCause());
+        cancelled.cancel(false);
+        assertEquals(2, registry.getStats().get("pending"));
+
+        assertTrue(registry.complete("c-1", Map.of("status", "SUCCESS")));
+        assertTrue(registry.complete("c-2", Map.of("status", "SUCCESS")));
+        assertEquals(0L, registry.getStats().get("orphanReplies"));
+    }
+
+    @Test
+    void perRequestTimeoutIsEnforcedByTheSweeper() {
+        PendingRequestRegistry slow = registry(3, 10_000);
+        try {
+            CompletableFuture<Map<String, Object>> future = slow.register("c-1", "stock", 100);
+
+            ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, error.getCause());
+
+            // Réponse après l'expiration : tardive, pas orpheline
+            assertFalse(slow.complete("c-1", Map.of("status", "SUCCESS")));
+            assertEquals(1L, slow.getStats().get("lateReplies"));
+            assertEquals(0L, slow.getStats().get("orphanReplies"));
+        } finally {
+            slow.stop();
+        }
+    }
+
+    private static PendingRequestRegistry registry(int maxPending, long timeoutMs) {
+        PendingRequestRegistry registry = new PendingRequestRegistry();
+        ReflectionTestUtils.setField(registry, "maxPending", maxPending);
+        ReflectionTestUtils.setField(registry, "timeoutMs", timeoutMs);
+        ReflectionTestUtils.setField(registry, "sweepIntervalMs", 10L);
+        ReflectionTestUtils.setField(registry, "tombstoneTtlMs", 60_000L);
+        registry.start();
+        return registry;
+    }
+}
@@ -0,0 +1,42 @@
+package com.ecommerce.microcommerce.config;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Retire la liaison "stock.update" de l'ancienne queue stock.update.queue, consommée sans
+ * single-active-consumer : sans cela elle recevrait une copie de chaque message, que plus personne ne lit.
+ * Les messages qui y restent ne sont pas rejoués (plusieurs instances les prendraient dans le désordre) :
+ * ils sont seulement signalés, à vider avant de supprimer la queue.
+ */
+@Component
+public class LegacyStockQueueUnbinder implements CommandLineRunner {
+
+    @Autowired
+    private AmqpAdmin amqpAdmin;
+
+    @Override
+    public void run(String... args) {
+        try {
+            QueueInformation legacy = amqpAdmin.getQueueInfo(RabbitMQConfig.STOCK_UPDATE_QUEUE);
+            if (legacy == null) {
+                return;
+            }
+            amqpAdmin.removeBinding(new Binding(RabbitMQConfig.STOCK_UPDATE_QUEUE, Binding.DestinationType.QUEUE,
+                    RabbitMQConfig.MICROSERVICE_EXCHANGE, "stock.update", null));
+            System.out.println("🔀 stock.update routé vers " + RabbitMQConfig.STOCK_UPDATE_ROUTER_QUEUE
+                    + " (ancienne queue " + RabbitMQConfig.STOCK_UPDATE_QUEUE + " déliée)");
+            if (legacy.getMessageCount() > 0) {
+                System.err.println("⚠️ " + legacy.getMessageCount() + " messages restent dans "
+                        + RabbitMQConfig.STOCK_UPDATE_QUEUE + " : à vider avant de supprimer la queue");
+            }
+        } catch (AmqpException e) {
+            System.err.println("❌ Impossible de délier " + RabbitMQConfig.STOCK_UPDATE_QUEUE + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,22 +1,47 @@
 package com.ecommerce.microcommerce.config;
 
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.batch.SimpleBatchingStrategy;
+import org.springframework.amqp.rabbit.config.DirectRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.BatchingRabbitTemplate;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
 public class RabbitMQConfig {
 
     // Queue pour les requêtes de produits
     public static final String PRODUCT_QUERY_QUEUE = "product.query.queue";
-    public static final String PRODUCT_RESPONSE_QUEUE = "product.response.queue";
+    // Les réponses partent sur la queue reply_to de l'émetteur : les queues partagées product.response.queue
+    // et stock.response.queue ne sont plus déclarées ni liées (voir LegacyResponseDrain côté command-service)
     
     // ===== NOUVELLES QUEUES POUR LA GESTION DU STOCK =====
+    // Préfixe des partitions ; l'ancienne queue de ce nom (sans single-active-consumer) n'est plus liée à "stock.update"
     public static final String STOCK_UPDATE_QUEUE = "stock.update.queue";
-    public static final String STOCK_RESPONSE_QUEUE = "stock.response.queue";
+    
+    // Queue du routeur "stock.update" : un seul consommateur actif, pour garder l'ordre d'arrivée par produit
+    public static final String STOCK_UPDATE_ROUTER_QUEUE = "stock.update.router.queue";
+    
+    // Conteneur des partitions stock.update (queues stock.update.queue.<p>, routing keys stock.update.<p>)
+    public static final String STOCK_PARTITION_LISTENER_ID = "stockPartitions";
+    
+    // Réservation de toutes les lignes d'une commande en un seul message
+    public static final String STOCK_RESERVE_QUEUE = "stock.reserve.queue";
+    
+    // Routing key des événements de modification du catalogue (consommés par command-service)
+    public static final String PRODUCT_CHANGED_ROUTING_KEY = "product.changed";
     
     // Exchange pour la communication entre services
     public static final String MICROSERVICE_EXCHANGE = "microservice.exchange";
@@ -33,39 +58,105 @@ public class RabbitMQConfig {
         return QueueBuilder.durable(PRODUCT_QUERY_QUEUE).build();
     }
 
+    // ===== NOUVELLES QUEUES STOCK =====
+
+    /**
+     * Single-active-consumer : même avec plusieurs instances abonnées, un seul routeur à la fois
+     * transmet les messages aux partitions, dans l'ordre de la queue
+     */
     @Bean
-    public Queue productResponseQueue() {
-        return QueueBuilder.durable(PRODUCT_RESPONSE_QUEUE).build();
+    public Queue stockUpdateRouterQueue() {
+        return QueueBuilder.durable(STOCK_UPDATE_ROUTER_QUEUE).singleActiveConsumer().build();
     }
 
-    // ===== NOUVELLES QUEUES STOCK =====
+    @Bean
+    public Queue stockReserveQueue() {
+        return QueueBuilder.durable(STOCK_RESERVE_QUEUE).build();
+    }
 
+    // ===== PARTITIONS STOCK.UPDATE =====
+
+    /**
+     * Une queue par partition, en single-active-consumer : les mises à jour d'un même produit
+     * sont traitées dans l'ordre, par un seul consommateur à la fois, même si plusieurs instances y sont abonnées
+     */
     @Bean
-    public Queue stockUpdateQueue() {
-        return QueueBuilder.durable(STOCK_UPDATE_QUEUE).build();
+    public Declarables stockPartitionDeclarables(@Value("${stock.partitions:4}") int partitions) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            Queue queue = QueueBuilder.durable(stockPartitionQueue(partition)).singleActiveConsumer().build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(microserviceExchange()).with(stockPartitionRoutingKey(partition)));
+        }
+        return new Declarables(declarables);
     }
 
     @Bean
-    public Queue stockResponseQueue() {
-        return QueueBuilder.durable(STOCK_RESPONSE_QUEUE).build();
+    public String[] stockPartitionQueueNames(@Value("${stock.partitions:4}") int partitions) {
+        String[] names = new String[partitions];
+        for (int partition = 0; partition < partitions; partition++) {
+            names[partition] = stockPartitionQueue(partition);
+        }
+        return names;
     }
 
-    // ===== BINDINGS EXISTANTS =====
+    /**
+     * Conteneur "direct" pour les partitions : un consommateur par queue, chacun sur son propre thread,
+     * et des queues ajoutées ou retirées à chaud par StockPartitionCoordinator
+     */
+    @Bean
+    public DirectRabbitListenerContainerFactory stockPartitionContainerFactory(ConnectionFactory connectionFactory,
+                                                                             MessageConverter messageConverter) {
+        DirectRabbitListenerContainerFactory factory = new DirectRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter);
+        factory.setConsumersPerQueue(1);
+        factory.setAutoStartup(false);
+        return factory;
+    }
+
+    public static String stockPartitionQueue(int partition) {
+        return STOCK_UPDATE_QUEUE + "." + partition;
+    }
+
+    public static String stockPartitionRoutingKey(int partition) {
+        return "stock.update." + partition;
+    }
+
+    /**
+     * Partition d'un produit : String.hashCode est défini par la spécification Java, donc identique
+     * pour toutes les instances et tous les producteurs
+     */
+    public static int stockPartitionOf(String productId, int partitions) {
+        return productId == null ? 0 : Math.floorMod(productId.hashCode(), partitions);
+    }
+
+    // ===== INDEX DE RECHERCHE =====
 
+    /**
+     * Queue exclusive par instance : chaque index de recherche reçoit toutes les écritures du catalogue
+     */
     @Bean
-    public Binding productQueryBinding() {
+    public Queue productSearchEventsQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding productSearchEventsBinding() {
         return BindingBuilder
-                .bind(productQueryQueue())
+                .bind(productSearchEventsQueue())
                 .to(microserviceExchange())
-                .with("product.query");
+                .with(PRODUCT_CHANGED_ROUTING_KEY);
     }
 
+    // ===== BINDINGS EXISTANTS =====
+
     @Bean
-    public Binding productResponseBinding() {
+    public Binding productQueryBinding() {
         return BindingBuilder
-                .bind(productResponseQueue())
+                .bind(productQueryQueue())
                 .to(microserviceExchange())
-                .with("product.response");
+                .with("product.query");
     }
 
     // ===== NOUVEAUX BINDINGS STOCK =====
@@ -73,28 +164,80 @@ public class RabbitMQConfig {
     @Bean
     public Binding stockUpdateBinding() {
         return BindingBuilder
-                .bind(stockUpdateQueue())
+                .bind(stockUpdateRouterQueue())
                 .to(microserviceExchange())
                 .with("stock.update");
     }
 
     @Bean
-    public Binding stockResponseBinding() {
+    public Binding stockReserveBinding() {
         return BindingBuilder
-                .bind(stockResponseQueue())
+                .bind(stockReserveQueue())
                 .to(microserviceExchange())
-                .with("stock.response");
+                .with("stock.reserve");
     }
 
+    /**
+     * Convertisseur négocié par content-type : les messages reçus sont décodés selon leur en-tête
+     * (JSON ou CBOR), les messages envoyés sont encodés avec le codec choisi par messaging.codec.
+     * Les deux formats restent lisibles pendant un déploiement progressif.
+     */
     @Bean
-    public Jackson2JsonMessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public MessageConverter messageConverter(@Value("${messaging.codec:json}") String codec) {
+        Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter();
+        CborMessageConverter cbor = new CborMessageConverter();
+        ContentTypeDelegatingMessageConverter converter =
+            new ContentTypeDelegatingMessageConverter("cbor".equalsIgnoreCase(codec) ? cbor : json);
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, json);
+        converter.addDelegate(CborMessageConverter.CONTENT_TYPE_CBOR, cbor);
+        return converter;
     }
 
+    /**
+     * Template principal : connexion dédiée aux publications (les envois depuis les listeners ne prennent
+     * plus de canaux à la connexion des consommateurs) et publisher confirms asynchrones corrélés
+     */
     @Bean
-    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
+    @Primary
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter,
+                                         PublisherConfirmMetrics confirmMetrics) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
-        template.setMessageConverter(messageConverter());
+        configurePublisher(template, messageConverter, confirmMetrics);
         return template;
     }
+
+    /**
+     * Template des événements "product.changed" : micro-batching optionnel (messaging.publisher.batch-window-ms > 0),
+     * les événements d'une même fenêtre partent en un seul message AMQP, dé-batché par le conteneur consommateur
+     */
+    @Bean
+    public RabbitTemplate eventRabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter,
+                                              PublisherConfirmMetrics confirmMetrics,
+                                              @Value("${messaging.publisher.batch-window-ms:0}") long batchWindowMs,
+                                              @Value("${messaging.publisher.batch-size:100}") int batchSize) {
+        if (batchWindowMs <= 0) {
+            return rabbitTemplate(connectionFactory, messageConverter, confirmMetrics);
+        }
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("publisher-batch-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        BatchingRabbitTemplate template = new BatchingRabbitTemplate(connectionFactory,
+                new SimpleBatchingStrategy(batchSize, 64 * 1024, batchWindowMs), scheduler);
+        configurePublisher(template, messageConverter, confirmMetrics);
+        return template;
+    }
+
+    private void configurePublisher(RabbitTemplate template, MessageConverter messageConverter,
+                                    PublisherConfirmMetrics confirmMetrics) {
+        template.setMessageConverter(messageConverter);
+        template.setUsePublisherConnection(true);
+        // Chaque envoi porte une CorrelationData : le ConfirmCallback mesure la latence de confirmation et les nacks
+        template.setCorrelationDataPostProcessor((message, correlationData) -> {
+            CorrelationData correlation = correlationData != null ? correlationData : new CorrelationData();
+            confirmMetrics.onPublish(correlation);
+            return correlation;
+        });
+        template.setConfirmCallback(confirmMetrics::onConfirm);
+    }
 } 
\ No newline at end of file
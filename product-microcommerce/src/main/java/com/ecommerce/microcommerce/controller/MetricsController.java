@@ -0,0 +1,69 @@
+package com.ecommerce.microcommerce.controller;
+
+import com.ecommerce.microcommerce.config.PublisherConfirmMetrics;
+import com.ecommerce.microcommerce.service.InventoryEngine;
+import com.ecommerce.microcommerce.service.ProductSearchIndex;
+import com.ecommerce.microcommerce.service.StockIdempotencyStore;
+import com.ecommerce.microcommerce.service.StockMailbox;
+import com.ecommerce.microcommerce.service.StockPartitionCoordinator;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/metrics")
+@CrossOrigin(origins = "*")
+public class MetricsController {
+
+    private final PublisherConfirmMetrics publisherConfirmMetrics;
+    private final StockIdempotencyStore stockIdempotencyStore;
+    private final StockPartitionCoordinator stockPartitionCoordinator;
+    private final InventoryEngine inventoryEngine;
+    private final StockMailbox stockMailbox;
+    private final ProductSearchIndex productSearchIndex;
+
+    public MetricsController(PublisherConfirmMetrics publisherConfirmMetrics,
+                             StockIdempotencyStore stockIdempotencyStore,
+                             StockPartitionCoordinator stockPartitionCoordinator,
+                             InventoryEngine inventoryEngine,
+                             StockMailbox stockMailbox,
+                             ProductSearchIndex productSearchIndex) {
+        this.publisherConfirmMetrics = publisherConfirmMetrics;
+        this.stockIdempotencyStore = stockIdempotencyStore;
+        this.stockPartitionCoordinator = stockPartitionCoordinator;
+        this.inventoryEngine = inventoryEngine;
+        this.stockMailbox = stockMailbox;
+        this.productSearchIndex = productSearchIndex;
+    }
+
+    @GetMapping("/publisher")
+    public ResponseEntity<Map<String, Object>> publications() {
+        return ResponseEntity.ok(publisherConfirmMetrics.getStats());
+    }
+
+    @GetMapping("/stock-idempotency")
+    public ResponseEntity<Map<String, Object>> idempotenceStock() {
+        return ResponseEntity.ok(stockIdempotencyStore.getStats());
+    }
+
+    @GetMapping("/stock-partitions")
+    public ResponseEntity<Map<String, Object>> partitionsStock() {
+        return ResponseEntity.ok(stockPartitionCoordinator.getStats());
+    }
+
+    @GetMapping("/inventory")
+    public ResponseEntity<Map<String, Object>> inventaire() {
+        return ResponseEntity.ok(inventoryEngine.getStats());
+    }
+
+    @GetMapping("/stock-mailbox")
+    public ResponseEntity<Map<String, Object>> boitesAuxLettresStock() {
+        return ResponseEntity.ok(stockMailbox.getStats());
+    }
+
+    @GetMapping("/product-search")
+    public ResponseEntity<Map<String, Object>> indexRecherche() {
+        return ResponseEntity.ok(productSearchIndex.getStats());
+    }
+}
@@ -1,34 +1,97 @@
 package com.ecommerce.microcommerce.controller;
 
+import com.ecommerce.microcommerce.dao.BulkInsertResult;
 import com.ecommerce.microcommerce.dao.ProductDao;
+import com.ecommerce.microcommerce.dao.KeysetPage;
 import com.ecommerce.microcommerce.model.Product;
+import com.ecommerce.microcommerce.service.BulkIngestService;
+import com.ecommerce.microcommerce.service.InventoryEngine;
+import com.ecommerce.microcommerce.service.NdjsonExporter;
+import com.ecommerce.microcommerce.service.ProductCountService;
+import com.ecommerce.microcommerce.service.ProductEventPublisher;
+import com.ecommerce.microcommerce.service.ProductSearchIndex;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Objects;
 
 @RestController
 @RequestMapping("/api")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = KeysetPage.NEXT_CURSOR_HEADER)
 public class ProductController {
     
     private final ProductDao productDao;
+    private final ProductEventPublisher productEventPublisher;
+    private final InventoryEngine inventoryEngine;
+    private final ProductCountService productCountService;
+    private final NdjsonExporter ndjsonExporter;
+    private final ProductSearchIndex productSearchIndex;
+    private final BulkIngestService bulkIngestService;
     
-    public ProductController(ProductDao productDao) {
+    @Value("${search.default-limit:100}")
+    private int searchDefaultLimit;
+    
+    @Value("${search.max-results:1000}")
+    private int searchMaxResults;
+    
+    public ProductController(ProductDao productDao, ProductEventPublisher productEventPublisher,
+                             InventoryEngine inventoryEngine, ProductCountService productCountService,
+                             NdjsonExporter ndjsonExporter, ProductSearchIndex productSearchIndex,
+                             BulkIngestService bulkIngestService) {
         this.productDao = productDao;
+        this.productEventPublisher = productEventPublisher;
+        this.inventoryEngine = inventoryEngine;
+        this.productCountService = productCountService;
+        this.ndjsonExporter = ndjsonExporter;
+        this.productSearchIndex = productSearchIndex;
+        this.bulkIngestService = bulkIngestService;
     }
     
+    /**
+     * Liste paginée par clé : size (plafonné) et cursor, repris de l'en-tête X-Next-Cursor de la page précédente
+     */
     @GetMapping("/produits")
-    public List<Product> listeProduits() {
-        return productDao.findAll();
+    public ResponseEntity<?> listeProduits(@RequestParam(required = false) String cursor,
+                                           @RequestParam(required = false) Integer size) {
+        KeysetPage<Product> page;
+        try {
+            page = productDao.findPage(cursor, size);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Curseur invalide");
+            error.put("cursor", cursor);
+            return ResponseEntity.badRequest().body(error);
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(KeysetPage.NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.items());
+    }
+
+    /**
+     * Export NDJSON de tout le catalogue (ou d'une fourchette de prix), en flux ; gzip=true pour un .ndjson.gz
+     */
+    @GetMapping("/produits/export")
+    public void exporterProduits(@RequestParam(required = false) Integer prixMin,
+                                 @RequestParam(required = false) Integer prixMax,
+                                 @RequestParam(defaultValue = "false") boolean gzip,
+                                 HttpServletResponse response) throws IOException {
+        ndjsonExporter.export(productDao.streamByPrice(prixMin, prixMax), "produits", gzip, response);
     }
 
     @GetMapping("/produits/{id}")
     public ResponseEntity<?> afficherUnProduit(@PathVariable String id) {
-        Product product = productDao.findById(id);
+        // Stock courant du moteur (en avance sur Mongo avec le ledger)
+        Product product = inventoryEngine.findById(id).orElse(null);
         if (product != null) {
             return ResponseEntity.ok(product);
         } else {
@@ -64,19 +127,12 @@ public class ProductController {
         // Réinitialiser l'ID pour forcer la création d'un nouveau produit
         product.setId(null);
         Product savedProduct = productDao.save(product);
+        productEventPublisher.publishUpdated(savedProduct);
         return ResponseEntity.status(HttpStatus.CREATED).body(savedProduct);
     }
     
     @PutMapping("/produits/{id}")
     public ResponseEntity<?> modifierProduit(@PathVariable String id, @RequestBody Product product) {
-        Product existingProduct = productDao.findById(id);
-        if (existingProduct == null) {
-            Map<String, String> error = new HashMap<>();
-            error.put("error", "Produit non trouvé");
-            error.put("id", id);
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
-        }
-        
         // Validation
         if (product.getNom() == null || product.getNom().trim().isEmpty()) {
             Map<String, String> error = new HashMap<>();
@@ -97,9 +153,16 @@ public class ProductController {
             return ResponseEntity.badRequest().body(error);
         }
         
-        product.setId(id);
-        Product updatedProduct = productDao.save(product);
-        return ResponseEntity.ok(updatedProduct);
+        // Écriture ciblée des champs catalogue : ni le stock ni les marqueurs d'opérations ne sont réécrits
+        Product catalog = productDao.updateFields(id, product.getNom(), product.getPrix());
+        if (catalog == null) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Produit non trouvé");
+            error.put("id", id);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+        inventoryEngine.productSaved(catalog);
+        return appliquerStockEtPublier(id, product.getStock());
     }
     
     @DeleteMapping("/produits/{id}")
@@ -107,6 +170,8 @@ public class ProductController {
         Product existingProduct = productDao.findById(id);
         if (existingProduct != null) {
             productDao.deleteById(id);
+            inventoryEngine.productDeleted(id);
+            productEventPublisher.publishDeleted(id);
             Map<String, String> response = new HashMap<>();
             response.put("message", "Produit supprimé avec succès");
             response.put("id", id);
@@ -121,52 +186,107 @@ public class ProductController {
     
     @PatchMapping("/produits/{id}")
     public ResponseEntity<?> mettreAJourPartiellement(@PathVariable String id, @RequestBody Map<String, Object> updates) {
-        Product existingProduct = productDao.findById(id);
-        if (existingProduct == null) {
+        String nom = updates.containsKey("nom") ? (String) updates.get("nom") : null;
+        Integer prix = updates.containsKey("prix") ? ((Number) updates.get("prix")).intValue() : null;
+        Integer stock = updates.containsKey("stock") ? ((Number) updates.get("stock")).intValue() : null;
+        if (stock != null && stock < 0) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Le stock ne peut pas être négatif");
+            return ResponseEntity.badRequest().body(error);
+        }
+        
+        // Mise à jour partielle : seuls les champs fournis sont écrits, jamais le document entier
+        Product catalog = productDao.updateFields(id, nom, prix);
+        if (catalog == null) {
             Map<String, String> error = new HashMap<>();
             error.put("error", "Produit non trouvé");
             error.put("id", id);
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
         }
-        
-        // Mise à jour partielle
-        if (updates.containsKey("nom")) {
-            existingProduct.setNom((String) updates.get("nom"));
-        }
-        if (updates.containsKey("prix")) {
-            existingProduct.setPrix(((Number) updates.get("prix")).intValue());
-        }
-        if (updates.containsKey("stock")) {
-            int newStock = ((Number) updates.get("stock")).intValue();
-            if (newStock < 0) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Le stock ne peut pas être négatif");
-                return ResponseEntity.badRequest().body(error);
-            }
-            existingProduct.setStock(newStock);
+        inventoryEngine.productSaved(catalog);
+        return appliquerStockEtPublier(id, stock);
+    }
+    
+    /**
+     * Fin de PUT/PATCH : stock saisi appliqué s'il est fourni, puis produit courant (stock du moteur) publié et renvoyé
+     */
+    private ResponseEntity<?> appliquerStockEtPublier(String id, Integer stock) {
+        if (stock != null && !ajusterStock(id, stock)) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Stock modifié simultanément, réessayer");
+            error.put("id", id);
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
         }
-        
-        Product updatedProduct = productDao.save(existingProduct);
+        Product updatedProduct = inventoryEngine.findById(id).orElse(null);
+        if (updatedProduct == null) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Produit non trouvé");
+            error.put("id", id);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+        productEventPublisher.publishUpdated(updatedProduct);
         return ResponseEntity.ok(updatedProduct);
     }
     
+    /**
+     * Amène le stock à la valeur saisie par le $inc conditionnel des opérations de stock (stock final >= 0) :
+     * une réservation ou un décrément concurrent n'est pas écrasé, les marqueurs d'opérations sont conservés.
+     * Quelques essais si le stock baisse entre la lecture et l'écriture.
+     */
+    private boolean ajusterStock(String id, int stock) {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Product current = inventoryEngine.findById(id).orElse(null);
+            if (current == null) {
+                return false;
+            }
+            int delta = stock - current.getStock();
+            if (delta == 0 || inventoryEngine.applyStockDelta(id, delta, Math.max(0, -delta), List.of()) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Import en masse : tableau JSON lu en flux et inséré par lots non ordonnés ; la réponse est un résumé
+     * (reçus, insérés, en échec, premières erreurs avec leur position dans le tableau), sans écho des produits
+     */
     @PostMapping("/produits/bulk")
-    public ResponseEntity<Map<String, Object>> ajouterPlusieursProduits(@RequestBody List<Product> products) {
-        Map<String, Object> response = new HashMap<>();
+    public ResponseEntity<?> ajouterPlusieursProduits(HttpServletRequest request) throws IOException {
+        BulkIngestService.Summary summary;
         try {
-            List<Product> savedProducts = products.stream()
-                    .map(productDao::save)
-                    .toList();
-            
-            response.put("message", "Produits ajoutés avec succès");
-            response.put("count", savedProducts.size());
-            response.put("products", savedProducts);
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
-        } catch (Exception e) {
-            response.put("error", "Erreur lors de l'ajout des produits");
-            response.put("message", e.getMessage());
-            return ResponseEntity.badRequest().body(response);
+            summary = bulkIngestService.ingest(request.getInputStream(), Product.class,
+                    ProductController::validerProduit,
+                    chunk -> {
+                        BulkInsertResult<Product> result = productDao.insertAll(chunk);
+                        result.inserted().forEach(productEventPublisher::publishUpdated);
+                        return result;
+                    });
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
         }
+        if (summary.error() != null || (summary.inserted() == 0 && summary.failed() > 0)) {
+            return ResponseEntity.badRequest().body(summary);
+        }
+        return ResponseEntity.status(summary.failed() == 0 ? HttpStatus.CREATED : HttpStatus.OK).body(summary);
+    }
+    
+    /**
+     * Règles de POST /produits pour un élément d'import : message d'erreur, ou null si le produit est valide
+     */
+    private static String validerProduit(Product product) {
+        if (product.getNom() == null || product.getNom().trim().isEmpty()) {
+            return "Le nom du produit est obligatoire";
+        }
+        if (product.getPrix() < 0) {
+            return "Le prix ne peut pas être négatif";
+        }
+        if (product.getStock() < 0) {
+            return "Le stock ne peut pas être négatif";
+        }
+        return null;
     }
     
     @DeleteMapping("/produits")
@@ -174,7 +294,11 @@ public class ProductController {
         try {
             // Note: Cette méthode supprime TOUS les produits - à utiliser avec précaution!
             List<Product> allProducts = productDao.findAll();
-            allProducts.forEach(product -> productDao.deleteById(product.getId()));
+            allProducts.forEach(product -> {
+                productDao.deleteById(product.getId());
+                inventoryEngine.productDeleted(product.getId());
+                productEventPublisher.publishDeleted(product.getId());
+            });
             
             Map<String, String> response = new HashMap<>();
             response.put("message", "Tous les produits ont été supprimés");
@@ -188,42 +312,63 @@ public class ProductController {
         }
     }
     
+    /**
+     * consistency=exact (countDocuments, défaut) ou approximate (compteur en mémoire, sur demande) ;
+     * avec prixMin/prixMax, comptage exact sur l'index des prix
+     */
     @GetMapping("/produits/count")
-    public ResponseEntity<Map<String, Object>> compterProduits() {
-        List<Product> products = productDao.findAll();
+    public ResponseEntity<Map<String, Object>> compterProduits(@RequestParam(defaultValue = ProductCountService.EXACT) String consistency,
+                                                               @RequestParam(required = false) Integer prixMin,
+                                                               @RequestParam(required = false) Integer prixMax) {
         Map<String, Object> response = new HashMap<>();
-        response.put("count", products.size());
+        if (!ProductCountService.isValidConsistency(consistency)) {
+            response.put("error", "consistency doit valoir exact ou approximate");
+            return ResponseEntity.badRequest().body(response);
+        }
+        if (prixMin != null || prixMax != null) {
+            response.put("count", productCountService.countByPrice(prixMin, prixMax));
+            response.put("consistency", ProductCountService.EXACT);
+        } else {
+            response.put("count", productCountService.count(consistency));
+            response.put("consistency", consistency);
+        }
         response.put("message", "Nombre total de produits");
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * Recherche par sous-chaîne du nom (sans casse) et fourchette de prix, servie par l'index en mémoire ;
+     * sort = prix, -prix, nom ou -nom, limit plafonné par search.max-results
+     */
     @GetMapping("/produits/search")
-    public ResponseEntity<List<Product>> rechercherProduits(@RequestParam(required = false) String nom, 
-                                                            @RequestParam(required = false) Integer prixMin,
-                                                            @RequestParam(required = false) Integer prixMax) {
-        List<Product> products = productDao.findAll();
-        
-        // Filtrage par nom
-        if (nom != null && !nom.isEmpty()) {
-            products = products.stream()
-                    .filter(p -> p.getNom().toLowerCase().contains(nom.toLowerCase()))
-                    .toList();
-        }
-        
-        // Filtrage par prix minimum
-        if (prixMin != null) {
-            products = products.stream()
-                    .filter(p -> p.getPrix() >= prixMin)
-                    .toList();
+    public ResponseEntity<?> rechercherProduits(@RequestParam(required = false) String nom, 
+                                                @RequestParam(required = false) Integer prixMin,
+                                                @RequestParam(required = false) Integer prixMax,
+                                                @RequestParam(required = false) String sort,
+                                                @RequestParam(required = false) Integer limit) {
+        ProductSearchIndex.Order order;
+        try {
+            order = ProductSearchIndex.Order.parse(sort);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "sort doit valoir prix, -prix, nom ou -nom");
+            error.put("sort", sort);
+            return ResponseEntity.badRequest().body(error);
         }
+        int maxResults = limit == null || limit <= 0 ? searchDefaultLimit : Math.min(limit, searchMaxResults);
         
-        // Filtrage par prix maximum
-        if (prixMax != null) {
-            products = products.stream()
-                    .filter(p -> p.getPrix() <= prixMax)
-                    .toList();
+        if (!productSearchIndex.isReady()) {
+            return ResponseEntity.ok(productDao.search(nom, prixMin, prixMax, order, maxResults));
         }
         
+        // L'index donne les identifiants dans l'ordre ; les produits (stock courant) sont relus par le moteur
+        List<String> ids = productSearchIndex.search(nom, prixMin, prixMax, order, maxResults);
+        Map<String, Product> productsById = new HashMap<>();
+        inventoryEngine.findAllById(ids).forEach(product -> productsById.put(product.getId(), product));
+        List<Product> products = ids.stream()
+                .map(productsById::get)
+                .filter(Objects::nonNull)
+                .toList();
         return ResponseEntity.ok(products);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,11 @@
+package com.ecommerce.microcommerce.dao;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Résultat de l'insertion d'un lot : les documents insérés et, pour les autres,
+ * le message d'erreur indexé par leur position dans le lot.
+ */
+public record BulkInsertResult<T>(List<T> inserted, Map<Integer, String> errors) {
+}
@@ -1,15 +1,45 @@
 package com.ecommerce.microcommerce.dao;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 import com.ecommerce.microcommerce.model.Product;
+import com.ecommerce.microcommerce.service.ProductSearchIndex;
 
 public interface ProductDao {
     List<Product> findAll();
 
+    /**
+     * Page triée par _id croissant, après le curseur donné (null pour la première page)
+     */
+    KeysetPage<Product> findPage(String cursor, Integer size);
+
+    /**
+     * Flux des produits d'une fourchette de prix (bornes facultatives), lu au fil d'un curseur Mongo ; à fermer
+     */
+    Stream<Product> streamByPrice(Integer prixMin, Integer prixMax);
+
+    /**
+     * Recherche exécutée par Mongo (regex sur nom, fourchette de prix, tri et limite côté serveur) :
+     * utilisée tant que l'index de recherche en mémoire n'est pas chargé
+     */
+    List<Product> search(String nom, Integer prixMin, Integer prixMax, ProductSearchIndex.Order order, int limit);
+
     Product findById(String id);
 
     Product save(Product product);
+
+    /**
+     * Modifie seulement les champs catalogue fournis (null : inchangé) par une écriture ciblée ($set) :
+     * le stock et les marqueurs d'opérations ne sont pas touchés. Retourne le produit modifié, ou null s'il est absent.
+     */
+    Product updateFields(String id, String nom, Integer prix);
+
+    /**
+     * Insertion d'un lot en une seule écriture Mongo non ordonnée : un document refusé (id déjà pris...)
+     * n'empêche pas l'insertion des autres. Les produits sans id en reçoivent un avant l'écriture.
+     */
+    BulkInsertResult<Product> insertAll(List<Product> products);
     
     void deleteById(String id);
 }
\ No newline at end of file
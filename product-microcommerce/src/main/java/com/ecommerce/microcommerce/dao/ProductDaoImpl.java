@@ -2,18 +2,59 @@ package com.ecommerce.microcommerce.dao;
 
 import com.ecommerce.microcommerce.model.Product;
 import com.ecommerce.microcommerce.repository.ProductRepository;
+import com.ecommerce.microcommerce.service.ProductCountService;
+import com.ecommerce.microcommerce.service.ProductSearchIndex;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 
 import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Repository
 public class ProductDaoImpl implements ProductDao {
     
+    private static final int DUPLICATE_KEY = 11000;
+    
     @Autowired
     private ProductRepository productRepository;
     
+    @Autowired
+    private ProductCountService productCountService;
+    
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Value("${export.cursor-batch-size:1000}")
+    private int exportBatchSize;
+    
+    @Value("${pagination.default-page-size:100}")
+    private int defaultPageSize;
+    
+    @Value("${pagination.max-page-size:1000}")
+    private int maxPageSize;
+    
     // Initialisation des données de test dans MongoDB
     @PostConstruct
     public void initData() {
@@ -37,6 +78,72 @@ public class ProductDaoImpl implements ProductDao {
         return productRepository.findAll();
     }
     
+    @Override
+    public KeysetPage<Product> findPage(String cursor, Integer size) {
+        Pageable pageable = PageRequest.of(0, pageSize(size), Sort.by(Sort.Direction.ASC, "id"));
+        Slice<Product> slice = cursor == null || cursor.isEmpty()
+                ? productRepository.findAllBy(pageable)
+                : productRepository.findPageAfter(lastId(cursor), pageable);
+        List<Product> items = slice.getContent();
+        String nextCursor = slice.hasNext() ? KeysetPage.encodeCursor(items.get(items.size() - 1).getId()) : null;
+        return new KeysetPage<>(items, nextCursor);
+    }
+    
+    @Override
+    public Stream<Product> streamByPrice(Integer prixMin, Integer prixMax) {
+        Query query = new Query();
+        if (prixMin != null || prixMax != null) {
+            Criteria prix = Criteria.where("prix");
+            if (prixMin != null) {
+                prix = prix.gte(prixMin);
+            }
+            if (prixMax != null) {
+                prix = prix.lte(prixMax);
+            }
+            query.addCriteria(prix);
+        }
+        query.cursorBatchSize(exportBatchSize);
+        return mongoTemplate.stream(query, Product.class);
+    }
+    
+    @Override
+    public List<Product> search(String nom, Integer prixMin, Integer prixMax, ProductSearchIndex.Order order, int limit) {
+        Query query = new Query();
+        if (nom != null && !nom.isEmpty()) {
+            query.addCriteria(Criteria.where("nom").regex(Pattern.quote(nom), "i"));
+        }
+        if (prixMin != null || prixMax != null) {
+            Criteria prix = Criteria.where("prix");
+            if (prixMin != null) {
+                prix = prix.gte(prixMin);
+            }
+            if (prixMax != null) {
+                prix = prix.lte(prixMax);
+            }
+            query.addCriteria(prix);
+        }
+        switch (order) {
+            case PRIX_ASC -> query.with(Sort.by(Sort.Direction.ASC, "prix"));
+            case PRIX_DESC -> query.with(Sort.by(Sort.Direction.DESC, "prix"));
+            case NOM_ASC -> query.with(Sort.by(Sort.Direction.ASC, "nom"));
+            case NOM_DESC -> query.with(Sort.by(Sort.Direction.DESC, "nom"));
+            case NONE -> { }
+        }
+        return mongoTemplate.find(query.limit(limit), Product.class);
+    }
+    
+    private ObjectId lastId(String cursor) {
+        String id = KeysetPage.decodeCursor(cursor, 1)[0];
+        if (!ObjectId.isValid(id)) {
+            throw new IllegalArgumentException("Curseur invalide");
+        }
+        return new ObjectId(id);
+    }
+    
+    private int pageSize(Integer size) {
+        return size == null || size <= 0 ? defaultPageSize : Math.min(size, maxPageSize);
+    }
+    
     @Override
     public Product findById(String id) {
         return productRepository.findById(id).orElse(null);
@@ -44,11 +151,73 @@ public class ProductDaoImpl implements ProductDao {
     
     @Override
     public Product save(Product product) {
-        return productRepository.save(product);
+        boolean inserted = product.getId() == null;
+        Product savedProduct = productRepository.save(product);
+        if (inserted) {
+            productCountService.inserted();
+        }
+        productSearchIndex.upsert(savedProduct.getId(), savedProduct.getNom(), savedProduct.getPrix(), savedProduct.getRevision());
+        return savedProduct;
+    }
+    
+    @Override
+    public Product updateFields(String id, String nom, Integer prix) {
+        Update update = new Update();
+        if (nom != null) {
+            update.set("nom", nom);
+        }
+        if (prix != null) {
+            update.set("prix", prix);
+        }
+        if (update.getUpdateObject().isEmpty()) {
+            return findById(id);
+        }
+        Product updatedProduct = mongoTemplate.findAndModify(new Query(Criteria.where("_id").is(id)), update.inc("revision", 1),
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+        if (updatedProduct != null) {
+            productSearchIndex.upsert(updatedProduct.getId(), updatedProduct.getNom(), updatedProduct.getPrix(), updatedProduct.getRevision());
+        }
+        return updatedProduct;
+    }
+    
+    @Override
+    public BulkInsertResult<Product> insertAll(List<Product> products) {
+        // Identifiants attribués ici : les produits insérés sont connus sans relecture
+        for (Product product : products) {
+            if (product.getId() == null) {
+                product.setId(new ObjectId().toHexString());
+            }
+        }
+        Map<Integer, String> errors = new HashMap<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class).insert(products).execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                errors.put(error.getIndex(), error.getCode() == DUPLICATE_KEY
+                        ? "Un produit avec cet id existe déjà" : error.getMessage());
+            }
+        }
+        List<Product> inserted = products;
+        if (!errors.isEmpty()) {
+            inserted = new ArrayList<>(products.size() - errors.size());
+            for (int i = 0; i < products.size(); i++) {
+                if (!errors.containsKey(i)) {
+                    inserted.add(products.get(i));
+                }
+            }
+        }
+        if (!inserted.isEmpty()) {
+            productCountService.inserted(inserted.size());
+            productSearchIndex.upsertAll(inserted);
+        }
+        return new BulkInsertResult<>(inserted, errors);
     }
     
     @Override
     public void deleteById(String id) {
         productRepository.deleteById(id);
+        productCountService.deleted();
+        // Même version que l'événement PRODUCT_DELETED : aucune écriture antérieure ne fait réapparaître le produit
+        productSearchIndex.remove(id, Long.MAX_VALUE);
     }
 } 
\ No newline at end of file
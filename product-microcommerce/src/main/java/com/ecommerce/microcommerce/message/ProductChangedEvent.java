@@ -0,0 +1,11 @@
+package com.ecommerce.microcommerce.message;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Événement "product.changed" ; version = révision du document (ordre des événements pour les caches)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ProductChangedEvent(String eventType, String productId, String nom, Integer prix, Integer stock,
+                                  long version, String service) {
+}
@@ -0,0 +1,15 @@
+package com.ecommerce.microcommerce.message;
+
+import com.ecommerce.microcommerce.model.Product;
+
+/**
+ * Vue d'un produit transportée dans les messages (sans les champs internes du document) ;
+ * revision permet aux caches consommateurs d'ordonner cette lecture par rapport aux événements product.changed
+ */
+public record ProductData(String id, String nom, int prix, int stock, boolean inStock, long revision) {
+
+    public static ProductData from(Product product) {
+        return new ProductData(product.getId(), product.getNom(), product.getPrix(), product.getStock(), product.isInStock(),
+                product.getRevision());
+    }
+}
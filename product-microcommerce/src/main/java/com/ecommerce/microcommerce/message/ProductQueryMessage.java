@@ -0,0 +1,9 @@
+package com.ecommerce.microcommerce.message;
+
+import java.util.List;
+
+/**
+ * Requête "product.query" : un produit (productId) ou plusieurs en une fois (productIds)
+ */
+public record ProductQueryMessage(String correlationId, String productId, List<String> productIds, String service) {
+}
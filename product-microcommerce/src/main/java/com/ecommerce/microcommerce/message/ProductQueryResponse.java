@@ -0,0 +1,32 @@
+package com.ecommerce.microcommerce.message;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Réponse "product.response" ; seuls les champs renseignés sont sérialisés
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ProductQueryResponse(String correlationId,
+                                   String service,
+                                   String status,
+                                   String message,
+                                   ProductData product,
+                                   List<ProductData> products,
+                                   List<String> missingIds) {
+
+    private static final String SERVICE = "product-service";
+
+    public static ProductQueryResponse found(String correlationId, ProductData product) {
+        return new ProductQueryResponse(correlationId, SERVICE, "SUCCESS", null, product, null, null);
+    }
+
+    public static ProductQueryResponse batch(String correlationId, List<ProductData> products, List<String> missingIds) {
+        return new ProductQueryResponse(correlationId, SERVICE, "SUCCESS", null, null, products, missingIds);
+    }
+
+    public static ProductQueryResponse failure(String correlationId, String status, String message) {
+        return new ProductQueryResponse(correlationId, SERVICE, status, message, null, null, null);
+    }
+}
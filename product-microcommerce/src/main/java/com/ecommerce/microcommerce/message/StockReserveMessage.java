@@ -0,0 +1,12 @@
+package com.ecommerce.microcommerce.message;
+
+import java.util.List;
+
+/**
+ * Demande "stock.reserve" : toutes les lignes d'une commande, réservées en tout-ou-rien
+ */
+public record StockReserveMessage(String correlationId, String commandId, List<Line> lines) {
+
+    public record Line(String productId, Integer quantity) {
+    }
+}
@@ -0,0 +1,7 @@
+package com.ecommerce.microcommerce.message;
+
+/**
+ * Demande "stock.update" sur un produit : operation REDUCE, INCREASE ou SET
+ */
+public record StockUpdateMessage(String correlationId, String commandId, String productId, String operation, Integer quantity) {
+}
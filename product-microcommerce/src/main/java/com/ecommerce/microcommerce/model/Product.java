@@ -1,8 +1,11 @@
 package com.ecommerce.microcommerce.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.List;
+
 @Document(collection = "products")
 public class Product {
     @Id
@@ -11,6 +14,16 @@ public class Product {
     private int prix;
     private int stock; // Gestion du stock
 
+    // Identifiants des dernières opérations de stock appliquées (fenêtre bornée), écrits atomiquement
+    // avec le stock : ils rendent les messages redélivrés sans effet et permettent de compenser une réservation
+    @JsonIgnore
+    private List<String> appliedStockOps;
+
+    // Révision du document, incrémentée par chaque écriture (stock ou catalogue) : elle ordonne
+    // les événements product.changed pour les caches consommateurs, quel que soit l'hôte émetteur
+    @JsonIgnore
+    private long revision;
+
     // Constructeur par défaut
     public Product() {
     }
@@ -71,6 +84,22 @@ public class Product {
         this.stock = stock;
     }
 
+    public List<String> getAppliedStockOps() {
+        return appliedStockOps;
+    }
+
+    public void setAppliedStockOps(List<String> appliedStockOps) {
+        this.appliedStockOps = appliedStockOps;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
     // Méthodes utiles pour la gestion du stock
     public boolean isInStock() {
         return stock > 0;
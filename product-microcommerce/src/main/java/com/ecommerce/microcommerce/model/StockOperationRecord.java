@@ -0,0 +1,53 @@
+package com.ecommerce.microcommerce.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Résultat d'une opération de stock déjà traitée, rejoué tel quel si le même message est redélivré.
+ * La collection est purgée par un index TTL sur createdAt.
+ */
+@Document(collection = "stock_operations")
+public class StockOperationRecord {
+
+    @Id
+    private String id; // clé d'idempotence : commandId:productId:OPERATION
+    private Map<String, Object> response;
+    private LocalDateTime createdAt;
+
+    public StockOperationRecord() {
+    }
+
+    public StockOperationRecord(String id, Map<String, Object> response) {
+        this.id = id;
+        this.response = response;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Map<String, Object> getResponse() {
+        return response;
+    }
+
+    public void setResponse(Map<String, Object> response) {
+        this.response = response;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
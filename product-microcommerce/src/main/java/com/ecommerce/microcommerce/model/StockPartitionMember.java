@@ -0,0 +1,37 @@
+package com.ecommerce.microcommerce.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Instance product-service vivante, utilisée pour répartir les partitions stock.update.
+ * Les instances arrêtées brutalement sont purgées par un index TTL sur lastSeen.
+ */
+@Document(collection = "stock_partition_members")
+public class StockPartitionMember {
+
+    @Id
+    private String id; // identifiant de l'instance
+    private LocalDateTime lastSeen;
+
+    public StockPartitionMember() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public LocalDateTime getLastSeen() {
+        return lastSeen;
+    }
+
+    public void setLastSeen(LocalDateTime lastSeen) {
+        this.lastSeen = lastSeen;
+    }
+}
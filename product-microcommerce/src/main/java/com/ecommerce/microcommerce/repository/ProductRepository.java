@@ -1,13 +1,17 @@
 package com.ecommerce.microcommerce.repository;
 
 import com.ecommerce.microcommerce.model.Product;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
 
 @Repository
-public interface ProductRepository extends MongoRepository<Product, String> {
+public interface ProductRepository extends MongoRepository<Product, String>, ProductRepositoryCustom {
     
     // MongoRepository already provides:
     // - findAll()
@@ -17,4 +21,10 @@ public interface ProductRepository extends MongoRepository<Product, String> {
     
     // We can add custom queries here if needed
     Optional<Product> findByNom(String nom);
-} 
\ No newline at end of file
+    
+    // Parcours par clé sur _id (sans skip) : première page, puis pages suivant le dernier _id renvoyé
+    Slice<Product> findAllBy(Pageable pageable);
+    
+    @Query("{ '_id': { '$gt': ?0 } }")
+    Slice<Product> findPageAfter(ObjectId lastId, Pageable pageable);
+}
@@ -0,0 +1,55 @@
+package com.ecommerce.microcommerce.repository;
+
+import com.ecommerce.microcommerce.model.Product;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Opérations de stock atomiques (un seul findAndModify, sans lecture préalable)
+ */
+public interface ProductRepositoryCustom {
+
+    /**
+     * Décrémente le stock uniquement si stock >= quantity et si operationKey n'est pas déjà appliquée
+     * (marqueur enregistré dans la même écriture ; operationKey null = pas de contrôle).
+     * Retourne le produit mis à jour, ou null si le produit est absent, le stock insuffisant ou l'opération déjà appliquée.
+     */
+    Product reduceStockIfAvailable(String productId, int quantity, String operationKey);
+
+    /**
+     * Incrémente le stock si operationKey n'est pas déjà appliquée.
+     * Retourne le produit mis à jour, ou null si le produit est absent ou l'opération déjà appliquée.
+     */
+    Product increaseStock(String productId, int quantity, String operationKey);
+
+    /**
+     * Applique en une seule écriture le delta net de plusieurs opérations consécutives sur un produit,
+     * si stock >= requiredStock et si aucune des operationKeys n'est déjà appliquée ; les clés sont mémorisées.
+     * Retourne le produit mis à jour, ou null si la condition n'est pas remplie.
+     */
+    Product applyStockDelta(String productId, int delta, int requiredStock, List<String> operationKeys);
+
+    /**
+     * Fixe le stock. Retourne le produit AVANT modification (pour connaître l'ancien stock), ou null si absent.
+     */
+    Product setStock(String productId, int stock);
+
+    /**
+     * Applique toutes les lignes d'une réservation (productId → quantité) en un seul bulk ordonné.
+     * Chaque ligne décrémente le stock si stock >= quantité et si la réservation n'y est pas déjà
+     * appliquée, puis mémorise operationKey dans appliedStockOps. Retourne le nombre de lignes modifiées.
+     */
+    int reserveStock(String operationKey, Map<String, Integer> quantities);
+
+    /**
+     * Compense une réservation : ré-incrémente uniquement les lignes portant operationKey. Idempotent.
+     */
+    int releaseStock(String operationKey, Map<String, Integer> quantities);
+
+    /**
+     * Retire les marqueurs d'opérations terminées (productId → clés), en un seul bulk non ordonné.
+     * Le stock et la révision ne changent pas.
+     */
+    void forgetOperations(Map<String, List<String>> operationKeys);
+}
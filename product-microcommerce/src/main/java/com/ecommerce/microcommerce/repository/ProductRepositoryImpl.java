@@ -0,0 +1,115 @@
+package com.ecommerce.microcommerce.repository;
+
+import com.ecommerce.microcommerce.model.Product;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+import java.util.Map;
+
+public class ProductRepositoryImpl implements ProductRepositoryCustom {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // Plafond de marqueurs par produit : les marqueurs sont retirés une fois le résultat enregistré,
+    // le plafond ne borne que ceux laissés par un arrêt entre les deux écritures (les plus anciens partent d'abord)
+    @Value("${stock.applied-ops.window:1000}")
+    private int appliedOpsWindow;
+
+    @Override
+    public Product reduceStockIfAvailable(String productId, int quantity, String operationKey) {
+        // La condition stock >= quantity est évaluée par Mongo dans la même opération que le $inc
+        Criteria criteria = Criteria.where("_id").is(productId).and("stock").gte(quantity);
+        return mongoTemplate.findAndModify(guarded(criteria, operationKey), applied(stockUpdate(-quantity), operationKey),
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+    }
+
+    @Override
+    public Product increaseStock(String productId, int quantity, String operationKey) {
+        Criteria criteria = Criteria.where("_id").is(productId);
+        return mongoTemplate.findAndModify(guarded(criteria, operationKey), applied(stockUpdate(quantity), operationKey),
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+    }
+
+    @Override
+    public Product applyStockDelta(String productId, int delta, int requiredStock, List<String> operationKeys) {
+        Criteria criteria = Criteria.where("_id").is(productId).and("stock").gte(requiredStock);
+        Update update = stockUpdate(delta);
+        if (!operationKeys.isEmpty()) {
+            criteria = criteria.and("appliedStockOps").nin(operationKeys);
+            update.push("appliedStockOps").slice(-appliedOpsWindow).each(operationKeys.toArray());
+        }
+        return mongoTemplate.findAndModify(new Query(criteria), update,
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+    }
+
+    @Override
+    public Product setStock(String productId, int stock) {
+        Query query = new Query(Criteria.where("_id").is(productId));
+        return mongoTemplate.findAndModify(query, new Update().set("stock", stock).inc("revision", 1),
+                FindAndModifyOptions.options().returnNew(false), Product.class);
+    }
+
+    /**
+     * Modification du stock ; la révision du document avance dans la même écriture
+     */
+    private static Update stockUpdate(int delta) {
+        return new Update().inc("stock", delta).inc("revision", 1);
+    }
+
+    /**
+     * Exclut les produits sur lesquels l'opération est déjà appliquée
+     */
+    private Query guarded(Criteria criteria, String operationKey) {
+        return new Query(operationKey != null ? criteria.and("appliedStockOps").ne(operationKey) : criteria);
+    }
+
+    /**
+     * Enregistre le marqueur de l'opération dans la même écriture que le stock
+     */
+    private Update applied(Update update, String operationKey) {
+        if (operationKey != null) {
+            update.push("appliedStockOps").slice(-appliedOpsWindow).each(operationKey);
+        }
+        return update;
+    }
+
+    @Override
+    public int reserveStock(String operationKey, Map<String, Integer> quantities) {
+        // Bulk ordonné : un seul aller-retour Mongo pour toutes les lignes de la commande
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Product.class);
+        quantities.forEach((productId, quantity) -> {
+            Criteria criteria = Criteria.where("_id").is(productId).and("stock").gte(quantity);
+            bulk.updateOne(guarded(criteria, operationKey), applied(stockUpdate(-quantity), operationKey));
+        });
+        return bulk.execute().getModifiedCount();
+    }
+
+    @Override
+    public int releaseStock(String operationKey, Map<String, Integer> quantities) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Product.class);
+        quantities.forEach((productId, quantity) -> {
+            Query query = new Query(Criteria.where("_id").is(productId).and("appliedStockOps").is(operationKey));
+            bulk.updateOne(query, stockUpdate(quantity).pull("appliedStockOps", operationKey));
+        });
+        return bulk.execute().getModifiedCount();
+    }
+
+    @Override
+    public void forgetOperations(Map<String, List<String>> operationKeys) {
+        if (operationKeys.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        operationKeys.forEach((productId, keys) -> bulk.updateOne(new Query(Criteria.where("_id").is(productId)),
+                new Update().pullAll("appliedStockOps", keys.toArray())));
+        bulk.execute();
+    }
+}
@@ -0,0 +1,249 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.dao.BulkInsertResult;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Import en masse d'un tableau JSON : le corps de la requête est lu élément par élément (parseur
+ * Jackson en flux), découpé en lots de bulk.chunk-size écrits en parallèle (au plus bulk.parallelism
+ * lots en cours par requête). Seuls les lots en cours sont en mémoire, quelle que soit la taille du tableau.
+ *
+ * Un élément illisible ou refusé ne bloque pas les autres : il est compté en échec avec sa position
+ * dans le tableau. Le résumé ne garde que les bulk.max-reported-errors premières erreurs.
+ */
+@Component
+public class BulkIngestService {
+
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final int parallelism;
+    private final int maxReportedErrors;
+    private final ExecutorService writers;
+
+    public BulkIngestService(ObjectMapper objectMapper,
+                             @Value("${bulk.chunk-size:1000}") int chunkSize,
+                             @Value("${bulk.parallelism:4}") int parallelism,
+                             @Value("${bulk.max-reported-errors:20}") int maxReportedErrors) {
+        this.objectMapper = objectMapper;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.parallelism = Math.max(1, parallelism);
+        this.maxReportedErrors = maxReportedErrors;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "product-bulk-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        writers.shutdown();
+    }
+
+    /**
+     * Erreur d'un élément : sa position dans le tableau reçu et le message
+     */
+    public record ItemError(long index, String message) {
+    }
+
+    /**
+     * Résumé renvoyé au client : pas d'écho des documents, seulement les compteurs et les premières erreurs.
+     * error est renseigné si la lecture du corps s'est arrêtée (JSON invalide) ; les lots déjà lus sont écrits.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Summary(long received, long inserted, long failed, int chunks, List<ItemError> errors, String error) {
+    }
+
+    /**
+     * Lit le tableau JSON, valide chaque élément (validator : message d'erreur ou null) et confie les lots au writer,
+     * qui renvoie les erreurs par position dans le lot. Attend la fin de tous les lots avant de rendre le résumé.
+     *
+     * @throws IllegalArgumentException si le corps n'est pas un tableau JSON
+     */
+    public <T> Summary ingest(InputStream body, Class<T> type, Function<T, String> validator,
+                              Function<List<T>, BulkInsertResult<T>> writer) throws IOException {
+        long startedAt = System.currentTimeMillis();
+        Aggregate aggregate = new Aggregate();
+        Semaphore inFlight = new Semaphore(parallelism);
+        Deque<Future<ChunkOutcome>> pending = new ArrayDeque<>();
+
+        List<T> chunk = new ArrayList<>(chunkSize);
+        long[] positions = new long[chunkSize];
+        long index = 0;
+        String error = null;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            try {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new IllegalArgumentException("Tableau JSON attendu");
+                }
+                JsonToken token;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == null) {
+                        error = "Fin du corps inattendue après " + index + " éléments";
+                        break;
+                    }
+                    // Lecture de l'élément seul : une erreur de type n'interrompt pas le tableau
+                    JsonNode node = parser.readValueAsTree();
+                    String itemError;
+                    T item = null;
+                    try {
+                        item = objectMapper.treeToValue(node, type);
+                        itemError = item == null ? "Élément null" : validator.apply(item);
+                    } catch (JsonProcessingException e) {
+                        itemError = e.getOriginalMessage();
+                    }
+                    if (itemError != null) {
+                        aggregate.fail(index, itemError);
+                    } else {
+                        positions[chunk.size()] = index;
+                        chunk.add(item);
+                        if (chunk.size() == chunkSize) {
+                            submit(chunk, positions, writer, inFlight, pending, aggregate);
+                            chunk = new ArrayList<>(chunkSize);
+                            positions = new long[chunkSize];
+                        }
+                    }
+                    index++;
+                }
+            } catch (JsonProcessingException e) {
+                error = "JSON invalide après " + index + " éléments: " + e.getOriginalMessage();
+            }
+        } catch (IOException e) {
+            // Corps interrompu : les lots déjà confiés aux threads d'écriture vont au bout
+            drain(pending, aggregate, true);
+            throw e;
+        }
+
+        // Les éléments lus avant une erreur de syntaxe sont écrits comme les autres
+        if (!chunk.isEmpty()) {
+            submit(chunk, positions, writer, inFlight, pending, aggregate);
+        }
+        drain(pending, aggregate, true);
+
+        Summary summary = new Summary(index, aggregate.inserted, aggregate.failed, aggregate.chunks,
+                aggregate.reportedErrors(), error);
+        System.out.println("📦 Import en masse: " + summary.inserted() + " insérés, " + summary.failed()
+                + " en échec, " + summary.chunks() + " lots (" + (System.currentTimeMillis() - startedAt) + " ms)"
+                + (error != null ? " - " + error : ""));
+        return summary;
+    }
+
+    private <T> void submit(List<T> chunk, long[] positions, Function<List<T>, BulkInsertResult<T>> writer,
+                            Semaphore inFlight, Deque<Future<ChunkOutcome>> pending, Aggregate aggregate) throws IOException {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrompu");
+        }
+        aggregate.chunks++;
+        try {
+            pending.addLast(writers.submit(() -> {
+                try {
+                    return write(chunk, positions, writer);
+                } finally {
+                    inFlight.release();
+                }
+            }));
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        // Les lots terminés sont comptés au fil de l'eau : seuls les résumés des lots en cours restent en mémoire
+        drain(pending, aggregate, false);
+    }
+
+    private <T> ChunkOutcome write(List<T> chunk, long[] positions, Function<List<T>, BulkInsertResult<T>> writer) {
+        ChunkOutcome outcome = new ChunkOutcome();
+        try {
+            BulkInsertResult<T> result = writer.apply(chunk);
+            outcome.inserted = result.inserted().size();
+            result.errors().forEach((position, message) -> outcome.errors.put(positions[position], message));
+        } catch (RuntimeException e) {
+            // Lot entier refusé (Mongo indisponible...) : tous ses éléments sont en échec
+            System.err.println("❌ Échec d'écriture d'un lot de " + chunk.size() + " éléments: " + e.getMessage());
+            for (int i = 0; i < chunk.size(); i++) {
+                outcome.errors.put(positions[i], e.getMessage());
+            }
+        }
+        return outcome;
+    }
+
+    private void drain(Deque<Future<ChunkOutcome>> pending, Aggregate aggregate, boolean wait) throws IOException {
+        while (!pending.isEmpty() && (wait || pending.peekFirst().isDone())) {
+            try {
+                aggregate.add(pending.removeFirst().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Import interrompu");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private static final class ChunkOutcome {
+        private int inserted;
+        private final Map<Long, String> errors = new TreeMap<>();
+    }
+
+    /**
+     * Compteurs d'une requête, tenus par le thread qui lit le corps
+     */
+    private final class Aggregate {
+        private long inserted;
+        private long failed;
+        private int chunks;
+        // Les plus petites positions en échec, quel que soit l'ordre de fin des lots
+        private final TreeMap<Long, String> firstErrors = new TreeMap<>();
+
+        private void add(ChunkOutcome outcome) {
+            inserted += outcome.inserted;
+            outcome.errors.forEach(this::fail);
+        }
+
+        private void fail(long index, String message) {
+            failed++;
+            if (maxReportedErrors <= 0) {
+                return;
+            }
+            firstErrors.put(index, message);
+            if (firstErrors.size() > maxReportedErrors) {
+                firstErrors.pollLastEntry();
+            }
+        }
+
+        private List<ItemError> reportedErrors() {
+            List<ItemError> errors = new ArrayList<>(firstErrors.size());
+            firstErrors.forEach((index, message) -> errors.add(new ItemError(index, message)));
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.model.Product;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Moteur de stock utilisé par les listeners RabbitMQ, choisi par inventory.engine :
+ * "mongo" (défaut, chaque opération est une écriture conditionnelle Mongo) ou "ledger"
+ * (compteurs en mémoire, journal local et écriture différée dans Mongo).
+ *
+ * Les contrats des opérations sont ceux de ProductRepositoryCustom.
+ */
+public interface InventoryEngine {
+
+    Product reduceStockIfAvailable(String productId, int quantity, String operationKey);
+
+    Product increaseStock(String productId, int quantity, String operationKey);
+
+    Product applyStockDelta(String productId, int delta, int requiredStock, List<String> operationKeys);
+
+    /**
+     * Fixe le stock. Retourne le produit AVANT modification, ou null si absent.
+     */
+    Product setStock(String productId, int stock);
+
+    int reserveStock(String operationKey, Map<String, Integer> quantities);
+
+    int releaseStock(String operationKey, Map<String, Integer> quantities);
+
+    /**
+     * Appelé une fois le résultat de l'opération enregistré dans StockIdempotencyStore : les doublons sont
+     * alors rejoués depuis le registre, le marqueur de l'opération peut être retiré des produits
+     */
+    void operationCompleted(String operationKey, Collection<String> productIds);
+
+    /**
+     * Produit avec son stock courant et ses marqueurs d'opérations appliquées
+     */
+    Optional<Product> findById(String productId);
+
+    List<Product> findAllById(Collection<String> productIds);
+
+    /**
+     * Appelé après une modification du catalogue (nom, prix) hors moteur (API REST). Le stock du produit
+     * passé n'est pas pris en compte : les changements de stock passent par applyStockDelta.
+     */
+    void productSaved(Product product);
+
+    void productDeleted(String productId);
+
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,180 @@
+package com.ecommerce.microcommerce.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Journal local append-only du moteur "ledger" : une ligne par modification de stock
+ * (version, productId, stock après l'opération, opération, clé d'opération).
+ *
+ * Le stock écrit est absolu et versionné : rejouer une ligne déjà écrite dans Mongo est sans effet.
+ * Le fichier courant est scellé à chaque flush ; les fichiers scellés sont supprimés une fois
+ * leur contenu écrit dans la collection products.
+ *
+ * Une opération n'est acquittée qu'après sync() de sa ligne : les appelants concurrents partagent
+ * le même force() (commit groupé), une ligne acquittée survit à un arrêt brutal de la machine.
+ */
+public class InventoryLedgerLog implements AutoCloseable {
+
+    public static final char REDUCE = 'R';
+    public static final char INCREASE = 'I';
+    public static final char SET = 'S';
+    public static final char RELEASE = 'U';
+
+    private static final String PREFIX = "inventory-";
+    private static final String SUFFIX = ".log";
+
+    public record Entry(long version, String productId, int stock, char operation, String operationKey) {
+    }
+
+    private final Path directory;
+    private FileChannel current;
+    private long currentIndex;
+
+    // Numéro de la dernière ligne ajoutée, et de la dernière forcée sur disque (tous fichiers confondus)
+    private long appended;
+    private final AtomicLong durable = new AtomicLong();
+    private final Object syncLock = new Object();
+
+    public InventoryLedgerLog(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        long lastIndex = 0;
+        for (Path file : files()) {
+            lastIndex = Math.max(lastIndex, index(file));
+        }
+        open(lastIndex + 1);
+    }
+
+    /**
+     * Ajoute une ligne au fichier courant (écrite dans le cache du système) et retourne son numéro,
+     * à passer à sync() avant d'acquitter l'opération
+     */
+    public synchronized long append(Entry entry) throws IOException {
+        String line = entry.version() + "\t" + entry.productId() + "\t" + entry.stock() + "\t"
+                + entry.operation() + "\t" + (entry.operationKey() != null ? entry.operationKey() : "-") + "\n";
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            current.write(buffer);
+        }
+        return ++appended;
+    }
+
+    /**
+     * Attend que la ligne sequence soit sur disque. Un seul force() à la fois : il couvre toutes les lignes
+     * ajoutées avant lui, les appelants arrivés pendant ce temps n'en refont un que si leur ligne est plus récente.
+     */
+    public void sync(long sequence) throws IOException {
+        if (durable.get() >= sequence) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durable.get() >= sequence) {
+                return;
+            }
+            FileChannel channel;
+            long target;
+            synchronized (this) {
+                channel = current;
+                target = appended;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // Fichier scellé entre-temps : rotate() l'a forcé avant de le fermer
+                return;
+            }
+            durable.accumulateAndGet(target, Math::max);
+        }
+    }
+
+    /**
+     * Scelle le fichier courant et en ouvre un nouveau. Retourne tous les fichiers scellés
+     * (y compris ceux d'un flush précédent en échec), à supprimer après écriture dans Mongo.
+     */
+    public synchronized List<Path> rotate() throws IOException {
+        current.force(false);
+        durable.accumulateAndGet(appended, Math::max);
+        current.close();
+        open(currentIndex + 1);
+        return sealedFiles();
+    }
+
+    /**
+     * Fichiers scellés (antérieurs au fichier courant), dans l'ordre d'écriture
+     */
+    public synchronized List<Path> sealedFiles() throws IOException {
+        List<Path> sealed = new ArrayList<>();
+        for (Path file : files()) {
+            if (index(file) < currentIndex) {
+                sealed.add(file);
+            }
+        }
+        return sealed;
+    }
+
+    public void delete(List<Path> files) throws IOException {
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Relit un fichier ; une dernière ligne incomplète (arrêt pendant l'écriture) est ignorée
+     */
+    public static List<Entry> read(Path file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        int end = content.lastIndexOf('\n');
+        if (end < 0) {
+            return entries;
+        }
+        for (String line : content.substring(0, end).split("\n")) {
+            String[] fields = line.split("\t");
+            if (fields.length != 5 || fields[3].length() != 1) {
+                continue;
+            }
+            entries.add(new Entry(Long.parseLong(fields[0]), fields[1], Integer.parseInt(fields[2]),
+                    fields[3].charAt(0), "-".equals(fields[4]) ? null : fields[4]));
+        }
+        return entries;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        current.force(false);
+        durable.accumulateAndGet(appended, Math::max);
+        current.close();
+    }
+
+    private void open(long index) throws IOException {
+        currentIndex = index;
+        current = FileChannel.open(directory.resolve(PREFIX + index + SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.filter(file -> file.getFileName().toString().startsWith(PREFIX)
+                            && file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparingLong(InventoryLedgerLog::index))
+                    .toList();
+        }
+    }
+
+    private static long index(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
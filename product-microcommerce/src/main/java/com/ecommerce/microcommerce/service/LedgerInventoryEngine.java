@@ -0,0 +1,617 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.model.Product;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moteur "ledger" (inventory.engine=ledger) pour les ventes flash : le stock des produits sollicités
+ * est tenu en mémoire, chaque opération est un CAS sur un compteur suivi d'une ligne dans le journal local.
+ * Un thread écrit périodiquement les compteurs modifiés dans products (un bulk par passage) puis supprime
+ * les journaux correspondants ; au démarrage, les journaux restants sont rejoués sur l'état Mongo.
+ * Une opération n'est acquittée qu'une fois sa ligne forcée sur disque (commit groupé du journal).
+ *
+ * Les compteurs sont propres à l'instance : une seule instance tient le moteur, garantie par un bail
+ * dans "inventory_ledger_lease" (pris au démarrage, renouvelé par le thread d'écriture). Une deuxième
+ * instance ne démarre pas tant que le bail est tenu ; une instance qui perd son bail refuse toute
+ * opération de stock et n'écrit plus dans Mongo, jusqu'à son redémarrage. Ce moteur ne se combine donc
+ * pas avec la répartition des partitions stock.update entre plusieurs instances.
+ */
+@Service
+@ConditionalOnProperty(name = "inventory.engine", havingValue = "ledger")
+public class LedgerInventoryEngine implements InventoryEngine {
+
+    private static final long UNCHANGED = -1L;
+
+    // Condition de stock minimal neutre (incréments, compensations)
+    private static final int UNGUARDED = Integer.MIN_VALUE;
+
+    private static final String LEASE_COLLECTION = "inventory_ledger_lease";
+    private static final String LEASE_ID = "ledger";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${inventory.ledger.directory:data/inventory-ledger}")
+    private String directory;
+
+    @Value("${inventory.ledger.flush-interval-ms:100}")
+    private long flushIntervalMs;
+
+    @Value("${stock.applied-ops.window:1000}")
+    private int appliedOpsWindow;
+
+    @Value("${inventory.ledger.lease-ms:15000}")
+    private long leaseMs;
+
+    // Même hôte et même répertoire de journal : un redémarrage reprend son propre bail sans attendre
+    private String leaseOwner;
+    private volatile long leaseRenewedAt;
+    private volatile boolean fenced;
+
+    private final ConcurrentHashMap<String, StockCounter> counters = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedProducts = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    private InventoryLedgerLog log;
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void start() throws IOException, InterruptedException {
+        Path logDirectory = Paths.get(directory).toAbsolutePath();
+        leaseOwner = InetAddress.getLocalHost().getHostName() + ":" + logDirectory;
+        awaitLease();
+        log = new InventoryLedgerLog(logDirectory);
+        replay();
+        flush();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        flush();
+        log.close();
+        if (!fenced) {
+            // Bail rendu : une autre instance peut prendre le moteur sans attendre son expiration
+            mongoTemplate.remove(new Query(Criteria.where("_id").is(LEASE_ID).and("owner").is(leaseOwner)), LEASE_COLLECTION);
+        }
+    }
+
+    /**
+     * Prend le bail du moteur ; attend au plus une durée de bail qu'une instance arrêtée sans le rendre expire
+     */
+    private void awaitLease() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + leaseMs + flushIntervalMs;
+        while (!renewLease()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Moteur ledger déjà tenu par une autre instance (" + LEASE_COLLECTION
+                        + ") : ce moteur n'accepte qu'une instance product-service");
+            }
+            Thread.sleep(Math.min(1000, leaseMs / 3));
+        }
+        System.out.println("🔒 Bail du moteur ledger pris par " + leaseOwner);
+    }
+
+    /**
+     * Prolonge le bail s'il est à cette instance ou expiré ; false s'il est tenu par une autre instance
+     */
+    private boolean renewLease() {
+        long now = System.currentTimeMillis();
+        Query query = new Query(new Criteria().andOperator(Criteria.where("_id").is(LEASE_ID),
+                new Criteria().orOperator(Criteria.where("owner").is(leaseOwner), Criteria.where("expiresAt").lt(new Date(now)))));
+        Update update = new Update().set("owner", leaseOwner).set("expiresAt", new Date(now + leaseMs));
+        try {
+            mongoTemplate.upsert(query, update, LEASE_COLLECTION);
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+        leaseRenewedAt = now;
+        return true;
+    }
+
+    /**
+     * Refuse l'opération si le bail est perdu, ou n'a pas été renouvelé depuis plus d'une durée de bail
+     * (une autre instance a pu le prendre entre-temps)
+     */
+    private void checkLease() {
+        if (fenced || System.currentTimeMillis() - leaseRenewedAt >= leaseMs) {
+            throw new IllegalStateException("Moteur ledger sans bail : opérations de stock refusées");
+        }
+    }
+
+    @Override
+    public Product reduceStockIfAvailable(String productId, int quantity, String operationKey) {
+        checkLease();
+        StockCounter counter = counter(productId);
+        if (counter == null || !counter.claim(operationKey)) {
+            return null;
+        }
+        long state = counter.add(-quantity, quantity);
+        if (state == UNCHANGED) {
+            counter.unclaim(operationKey);
+            return null;
+        }
+        try {
+            record(counter, state, InventoryLedgerLog.REDUCE, operationKey);
+        } catch (IOException e) {
+            counter.add(quantity, UNGUARDED);
+            counter.unclaim(operationKey);
+            throw new UncheckedIOException("Journal d'inventaire indisponible", e);
+        }
+        counter.applied(operationKey);
+        return counter.toProduct(state, false);
+    }
+
+    @Override
+    public Product increaseStock(String productId, int quantity, String operationKey) {
+        checkLease();
+        StockCounter counter = counter(productId);
+        if (counter == null || !counter.claim(operationKey)) {
+            return null;
+        }
+        long state = counter.add(quantity, UNGUARDED);
+        try {
+            record(counter, state, InventoryLedgerLog.INCREASE, operationKey);
+        } catch (IOException e) {
+            counter.add(-quantity, UNGUARDED);
+            counter.unclaim(operationKey);
+            throw new UncheckedIOException("Journal d'inventaire indisponible", e);
+        }
+        counter.applied(operationKey);
+        return counter.toProduct(state, false);
+    }
+
+    @Override
+    public Product applyStockDelta(String productId, int delta, int requiredStock, List<String> operationKeys) {
+        checkLease();
+        StockCounter counter = counter(productId);
+        if (counter == null) {
+            return null;
+        }
+        List<String> claimed = new ArrayList<>();
+        for (String operationKey : operationKeys) {
+            if (!counter.claim(operationKey)) {
+                claimed.forEach(counter::unclaim);
+                return null;
+            }
+            claimed.add(operationKey);
+        }
+        long state = counter.add(delta, requiredStock);
+        if (state == UNCHANGED) {
+            claimed.forEach(counter::unclaim);
+            return null;
+        }
+        try {
+            // Une ligne par clé, toutes avec la même version : le rejeu restaure l'état et chaque marqueur.
+            // Un seul sync pour le lot, après la dernière ligne
+            char operation = delta < 0 ? InventoryLedgerLog.REDUCE : InventoryLedgerLog.INCREASE;
+            long sequence = operationKeys.isEmpty() ? append(counter, state, operation, null) : 0;
+            for (String operationKey : operationKeys) {
+                sequence = append(counter, state, operation, operationKey);
+            }
+            log.sync(sequence);
+        } catch (IOException e) {
+            counter.add(-delta, UNGUARDED);
+            claimed.forEach(counter::unclaim);
+            throw new UncheckedIOException("Journal d'inventaire indisponible", e);
+        }
+        operationKeys.forEach(counter::applied);
+        return counter.toProduct(state, false);
+    }
+
+    @Override
+    public Product setStock(String productId, int stock) {
+        checkLease();
+        StockCounter counter = counter(productId);
+        if (counter == null) {
+            return null;
+        }
+        long previous = counter.set(stock);
+        recordUnchecked(counter, pack(version(previous) + 1, stock), InventoryLedgerLog.SET, null);
+        return counter.toProduct(previous, false);
+    }
+
+    @Override
+    public int reserveStock(String operationKey, Map<String, Integer> quantities) {
+        // Même contrat que le bulk Mongo : toutes les lignes sont tentées, le listener compense en cas d'échec
+        int applied = 0;
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            if (reduceStockIfAvailable(line.getKey(), line.getValue(), operationKey) != null) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public int releaseStock(String operationKey, Map<String, Integer> quantities) {
+        checkLease();
+        int released = 0;
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            StockCounter counter = counter(line.getKey());
+            if (counter == null || !counter.release(operationKey)) {
+                continue;
+            }
+            long state = counter.add(line.getValue(), UNGUARDED);
+            recordUnchecked(counter, state, InventoryLedgerLog.RELEASE, operationKey);
+            released++;
+        }
+        return released;
+    }
+
+    @Override
+    public void operationCompleted(String operationKey, Collection<String> productIds) {
+        for (String productId : productIds) {
+            StockCounter counter = counters.get(productId);
+            // Même retrait que la compensation, sans toucher au stock ; le flush suivant l'écrit dans Mongo.
+            // Pas de ligne de journal : un marqueur rejoué après un arrêt reste borné par la fenêtre
+            if (counter != null && counter.release(operationKey)) {
+                dirty.add(productId);
+            }
+        }
+    }
+
+    @Override
+    public Optional<Product> findById(String productId) {
+        StockCounter counter = counter(productId);
+        return counter == null ? Optional.empty() : Optional.of(counter.toProduct(counter.state.get(), true));
+    }
+
+    @Override
+    public List<Product> findAllById(Collection<String> productIds) {
+        List<Product> products = new ArrayList<>();
+        for (String productId : productIds) {
+            findById(productId).ifPresent(products::add);
+        }
+        return products;
+    }
+
+    @Override
+    public void productSaved(Product product) {
+        StockCounter counter = counters.get(product.getId());
+        if (counter == null) {
+            return;
+        }
+        checkLease();
+        // Seuls nom et prix sont repris : le compteur reste la référence du stock. La version avance
+        // (ligne SET au même stock) pour que l'événement du changement de catalogue ne soit pas ignoré
+        counter.catalog = product;
+        recordUnchecked(counter, counter.add(0, UNGUARDED), InventoryLedgerLog.SET, null);
+    }
+
+    @Override
+    public void productDeleted(String productId) {
+        counters.remove(productId);
+        dirty.remove(productId);
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("engine", "ledger");
+        stats.put("leaseOwner", leaseOwner);
+        stats.put("fenced", fenced);
+        stats.put("products", counters.size());
+        stats.put("dirty", dirty.size());
+        stats.put("operations", operations.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("flushedProducts", flushedProducts.sum());
+        stats.put("flushFailures", flushFailures.sum());
+        return stats;
+    }
+
+    /**
+     * Ajoute la ligne et attend qu'elle soit sur disque : l'opération peut alors être acquittée
+     */
+    private void record(StockCounter counter, long state, char operation, String operationKey) throws IOException {
+        log.sync(append(counter, state, operation, operationKey));
+    }
+
+    /**
+     * Le produit est marqué à écrire avant l'ajout au journal : une ligne présente dans un fichier scellé
+     * correspond toujours à un produit inclus dans le flush qui supprimera ce fichier
+     */
+    private long append(StockCounter counter, long state, char operation, String operationKey) throws IOException {
+        dirty.add(counter.productId);
+        long sequence = log.append(new InventoryLedgerLog.Entry(version(state), counter.productId, stock(state), operation, operationKey));
+        operations.increment();
+        return sequence;
+    }
+
+    private void recordUnchecked(StockCounter counter, long state, char operation, String operationKey) {
+        try {
+            record(counter, state, operation, operationKey);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal d'inventaire indisponible", e);
+        }
+    }
+
+    private StockCounter counter(String productId) {
+        if (productId == null) {
+            return null;
+        }
+        StockCounter counter = counters.get(productId);
+        return counter != null ? counter : counters.computeIfAbsent(productId, this::load);
+    }
+
+    private StockCounter load(String productId) {
+        Document document = mongoTemplate.findById(productId, Document.class, mongoTemplate.getCollectionName(Product.class));
+        if (document == null) {
+            return null;
+        }
+        Number version = (Number) document.get("ledgerVersion");
+        return new StockCounter(mongoTemplate.getConverter().read(Product.class, document),
+                version != null ? version.longValue() : 0, appliedOpsWindow);
+    }
+
+    /**
+     * Reconstruit les compteurs depuis l'état Mongo et les journaux non encore écrits.
+     * Les lignes sont rejouées par version croissante ; celles déjà couvertes par Mongo sont ignorées.
+     */
+    private void replay() throws IOException {
+        List<Path> files = log.sealedFiles();
+        List<InventoryLedgerLog.Entry> entries = new ArrayList<>();
+        for (Path file : files) {
+            entries.addAll(InventoryLedgerLog.read(file));
+        }
+        entries.sort(Comparator.comparingLong(InventoryLedgerLog.Entry::version));
+
+        int replayed = 0;
+        for (InventoryLedgerLog.Entry entry : entries) {
+            StockCounter counter = counter(entry.productId());
+            if (counter == null || entry.version() <= counter.loadedVersion) {
+                continue;
+            }
+            counter.state.set(pack(entry.version(), entry.stock()));
+            if (entry.operationKey() != null) {
+                if (entry.operation() == InventoryLedgerLog.RELEASE) {
+                    counter.release(entry.operationKey());
+                } else {
+                    counter.applied(entry.operationKey());
+                }
+            }
+            dirty.add(entry.productId());
+            replayed++;
+        }
+        if (!files.isEmpty()) {
+            System.out.println("♻️ Journal d'inventaire rejoué: " + replayed + " opérations (" + files.size() + " fichiers)");
+        }
+    }
+
+    /**
+     * Écriture différée : scelle le journal, écrit les compteurs modifiés en un bulk, puis supprime les journaux scellés
+     */
+    private synchronized void flush() {
+        if (fenced) {
+            return;
+        }
+        try {
+            if (System.currentTimeMillis() - leaseRenewedAt >= leaseMs / 3 && !renewLease()) {
+                // Une autre instance a pris le bail : plus aucune écriture d'ici, le journal local reste sur disque
+                fenced = true;
+                System.err.println("❌ Bail du moteur ledger perdu : opérations de stock refusées jusqu'au redémarrage");
+                return;
+            }
+        } catch (Exception e) {
+            // Mongo indisponible : nouvel essai au prochain passage, les opérations s'arrêtent si le bail expire
+            System.err.println("❌ Renouvellement du bail du moteur ledger en échec: " + e.getMessage());
+            return;
+        }
+        if (dirty.isEmpty()) {
+            return;
+        }
+        try {
+            List<Path> sealed = log.rotate();
+
+            List<String> productIds = new ArrayList<>();
+            for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+                productIds.add(it.next());
+                it.remove();
+            }
+
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+            int pending = 0;
+            for (String productId : productIds) {
+                StockCounter counter = counters.get(productId);
+                if (counter == null) {
+                    continue;
+                }
+                long state = counter.state.get();
+                bulk.updateOne(new Query(Criteria.where("_id").is(productId)), new Update()
+                        .set("stock", stock(state))
+                        .set("ledgerVersion", version(state))
+                        .set("appliedStockOps", counter.appliedKeys()));
+                pending++;
+            }
+            if (pending > 0) {
+                try {
+                    bulk.execute();
+                } catch (Exception e) {
+                    dirty.addAll(productIds);
+                    throw e;
+                }
+            }
+
+            log.delete(sealed);
+            flushes.increment();
+            flushedProducts.add(pending);
+        } catch (Exception e) {
+            flushFailures.increment();
+            System.err.println("❌ Écriture différée de l'inventaire en échec: " + e.getMessage());
+        }
+    }
+
+    // État d'un compteur dans un seul long : version sur les 32 bits hauts, stock sur les 32 bits bas
+    private static long pack(long version, int stock) {
+        return (version << 32) | (stock & 0xFFFFFFFFL);
+    }
+
+    private static long version(long state) {
+        return state >>> 32;
+    }
+
+    private static int stock(long state) {
+        return (int) state;
+    }
+
+    /**
+     * Compteur d'un produit : stock et version modifiés ensemble par CAS, marqueurs des opérations en cours
+     * (retirés une fois le résultat enregistré, bornés par la fenêtre)
+     */
+    private static final class StockCounter {
+
+        final String productId;
+        final long loadedVersion;
+        final AtomicLong state;
+        volatile Product catalog;
+
+        // Clé → false pendant l'opération, true une fois appliquée
+        private final Map<String, Boolean> appliedOps = new ConcurrentHashMap<>();
+        private final Queue<String> appliedOrder = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger appliedCount = new AtomicInteger();
+        private final int window;
+
+        StockCounter(Product product, long version, int window) {
+            this.productId = product.getId();
+            this.loadedVersion = version;
+            this.state = new AtomicLong(pack(version, product.getStock()));
+            this.catalog = product;
+            this.window = window;
+            if (product.getAppliedStockOps() != null) {
+                product.getAppliedStockOps().forEach(this::applied);
+            }
+        }
+
+        /**
+         * Ajoute delta au stock si le stock courant est au moins requiredStock
+         */
+        long add(int delta, int requiredStock) {
+            while (true) {
+                long current = state.get();
+                int stock = stock(current);
+                if (stock < requiredStock) {
+                    return UNCHANGED;
+                }
+                long next = pack(version(current) + 1, stock + delta);
+                if (state.compareAndSet(current, next)) {
+                    return next;
+                }
+            }
+        }
+
+        /**
+         * Fixe le stock et retourne l'état précédent
+         */
+        long set(int stock) {
+            while (true) {
+                long current = state.get();
+                if (state.compareAndSet(current, pack(version(current) + 1, stock))) {
+                    return current;
+                }
+            }
+        }
+
+        boolean claim(String operationKey) {
+            return operationKey == null || appliedOps.putIfAbsent(operationKey, Boolean.FALSE) == null;
+        }
+
+        void unclaim(String operationKey) {
+            if (operationKey != null) {
+                appliedOps.remove(operationKey, Boolean.FALSE);
+            }
+        }
+
+        void applied(String operationKey) {
+            if (operationKey == null) {
+                return;
+            }
+            appliedOps.put(operationKey, Boolean.TRUE);
+            appliedOrder.add(operationKey);
+            if (appliedCount.incrementAndGet() > window) {
+                String oldest = appliedOrder.poll();
+                if (oldest != null) {
+                    appliedOps.remove(oldest, Boolean.TRUE);
+                    appliedCount.decrementAndGet();
+                }
+            }
+        }
+
+        boolean release(String operationKey) {
+            if (operationKey == null || !appliedOps.remove(operationKey, Boolean.TRUE)) {
+                return false;
+            }
+            if (appliedOrder.remove(operationKey)) {
+                appliedCount.decrementAndGet();
+            }
+            return true;
+        }
+
+        List<String> appliedKeys() {
+            List<String> keys = new ArrayList<>();
+            for (String key : appliedOrder) {
+                if (Boolean.TRUE.equals(appliedOps.get(key))) {
+                    keys.add(key);
+                }
+            }
+            return keys;
+        }
+
+        Product toProduct(long state, boolean withAppliedOps) {
+            Product product = new Product(productId, catalog.getNom(), catalog.getPrix(), stock(state));
+            // La version du compteur sert de révision : elle ordonne les événements product.changed
+            product.setRevision(version(state));
+            if (withAppliedOps) {
+                product.setAppliedStockOps(appliedKeys());
+            }
+            return product;
+        }
+    }
+}
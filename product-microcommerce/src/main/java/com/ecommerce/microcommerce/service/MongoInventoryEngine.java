@@ -0,0 +1,154 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.model.Product;
+import com.ecommerce.microcommerce.repository.ProductRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moteur par défaut : chaque opération est une écriture atomique conditionnelle dans la collection products.
+ * Les marqueurs des opérations terminées sont retirés par lots (un bulk par passage), hors chemin critique.
+ */
+@Service
+@ConditionalOnProperty(name = "inventory.engine", havingValue = "mongo", matchIfMissing = true)
+public class MongoInventoryEngine implements InventoryEngine {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Value("${stock.applied-ops.cleanup-interval-ms:200}")
+    private long cleanupIntervalMs;
+
+    // Opérations terminées en attente de retrait : {productId, operationKey}
+    private final Queue<String[]> completed = new ConcurrentLinkedQueue<>();
+    private final LongAdder forgottenMarkers = new LongAdder();
+    private final LongAdder cleanupFailures = new LongAdder();
+
+    private ScheduledExecutorService cleaner;
+
+    @PostConstruct
+    public void start() {
+        cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-ops-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner.scheduleWithFixedDelay(this::forgetCompleted, cleanupIntervalMs, cleanupIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        cleaner.shutdown();
+        cleaner.awaitTermination(5, TimeUnit.SECONDS);
+        forgetCompleted();
+    }
+
+    @Override
+    public Product reduceStockIfAvailable(String productId, int quantity, String operationKey) {
+        return productRepository.reduceStockIfAvailable(productId, quantity, operationKey);
+    }
+
+    @Override
+    public Product increaseStock(String productId, int quantity, String operationKey) {
+        return productRepository.increaseStock(productId, quantity, operationKey);
+    }
+
+    @Override
+    public Product applyStockDelta(String productId, int delta, int requiredStock, List<String> operationKeys) {
+        return productRepository.applyStockDelta(productId, delta, requiredStock, operationKeys);
+    }
+
+    @Override
+    public Product setStock(String productId, int stock) {
+        return productRepository.setStock(productId, stock);
+    }
+
+    @Override
+    public int reserveStock(String operationKey, Map<String, Integer> quantities) {
+        return productRepository.reserveStock(operationKey, quantities);
+    }
+
+    @Override
+    public int releaseStock(String operationKey, Map<String, Integer> quantities) {
+        return productRepository.releaseStock(operationKey, quantities);
+    }
+
+    @Override
+    public void operationCompleted(String operationKey, Collection<String> productIds) {
+        if (operationKey == null) {
+            return;
+        }
+        for (String productId : productIds) {
+            completed.add(new String[] { productId, operationKey });
+        }
+    }
+
+    /**
+     * Retire les marqueurs des opérations terminées depuis le dernier passage. En cas d'échec, les marqueurs
+     * restent dans les produits : sans effet sur le stock, ils sont bornés par stock.applied-ops.window.
+     */
+    void forgetCompleted() {
+        Map<String, List<String>> operationKeys = new HashMap<>();
+        String[] entry;
+        while ((entry = completed.poll()) != null) {
+            operationKeys.computeIfAbsent(entry[0], id -> new ArrayList<>()).add(entry[1]);
+        }
+        if (operationKeys.isEmpty()) {
+            return;
+        }
+        try {
+            productRepository.forgetOperations(operationKeys);
+            operationKeys.values().forEach(keys -> forgottenMarkers.add(keys.size()));
+        } catch (Exception e) {
+            cleanupFailures.increment();
+            System.err.println("❌ Retrait des marqueurs d'opérations impossible: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Optional<Product> findById(String productId) {
+        return productRepository.findById(productId);
+    }
+
+    @Override
+    public List<Product> findAllById(Collection<String> productIds) {
+        return productRepository.findAllById(productIds);
+    }
+
+    @Override
+    public void productSaved(Product product) {
+        // Le catalogue est lu directement dans Mongo : rien à synchroniser
+    }
+
+    @Override
+    public void productDeleted(String productId) {
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("engine", "mongo");
+        stats.put("pendingMarkerCleanups", completed.size());
+        stats.put("forgottenMarkers", forgottenMarkers.sum());
+        stats.put("cleanupFailures", cleanupFailures.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,51 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.config.RabbitMQConfig;
+import com.ecommerce.microcommerce.message.ProductChangedEvent;
+import com.ecommerce.microcommerce.model.Product;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+/**
+ * Publie les événements "product.changed" à chaque écriture sur le catalogue ou le stock.
+ * Le champ "version" (révision du document, incrémentée par chaque écriture) permet aux caches
+ * consommateurs d'ignorer les événements plus anciens que leur snapshot, quelle que soit l'instance
+ * qui les publie et l'ordre dans lequel ils arrivent.
+ */
+@Service
+public class ProductEventPublisher {
+
+    public static final String PRODUCT_UPDATED = "PRODUCT_UPDATED";
+    public static final String PRODUCT_DELETED = "PRODUCT_DELETED";
+
+    // Template des événements : micro-batching si messaging.publisher.batch-window-ms > 0
+    @Autowired
+    @Qualifier("eventRabbitTemplate")
+    private RabbitTemplate rabbitTemplate;
+
+    public void publishUpdated(Product product) {
+        publish(new ProductChangedEvent(PRODUCT_UPDATED, product.getId(), product.getNom(), product.getPrix(),
+                product.getStock(), product.getRevision(), "product-service"));
+    }
+
+    public void publishDeleted(String productId) {
+        // Une suppression est définitive : elle l'emporte sur toute révision encore en vol
+        publish(new ProductChangedEvent(PRODUCT_DELETED, productId, null, null, null,
+                Long.MAX_VALUE, "product-service"));
+    }
+
+    private void publish(ProductChangedEvent event) {
+        try {
+            rabbitTemplate.convertAndSend(
+                RabbitMQConfig.MICROSERVICE_EXCHANGE,
+                RabbitMQConfig.PRODUCT_CHANGED_ROUTING_KEY,
+                event
+            );
+        } catch (Exception e) {
+            // Un événement perdu n'est pas bloquant : le cache consommateur expire ses entrées
+            System.err.println("❌ Erreur lors de la publication de product.changed: " + e.getMessage());
+        }
+    }
+}
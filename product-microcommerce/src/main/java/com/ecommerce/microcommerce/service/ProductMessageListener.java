@@ -1,66 +1,94 @@
 package com.ecommerce.microcommerce.service;
 
+import com.ecommerce.microcommerce.message.ProductData;
+import com.ecommerce.microcommerce.message.ProductQueryMessage;
+import com.ecommerce.microcommerce.message.ProductQueryResponse;
+import com.ecommerce.microcommerce.message.StockReserveMessage;
+import com.ecommerce.microcommerce.message.StockUpdateMessage;
 import com.ecommerce.microcommerce.model.Product;
-import com.ecommerce.microcommerce.repository.ProductRepository;
 import com.ecommerce.microcommerce.config.RabbitMQConfig;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Address;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class ProductMessageListener {
 
+    // Moteur de stock : écritures conditionnelles Mongo ou compteurs en mémoire (inventory.engine)
     @Autowired
-    private ProductRepository productRepository;
+    private InventoryEngine inventoryEngine;
 
     @Autowired
     private RabbitTemplate rabbitTemplate;
 
+    @Autowired
+    private ProductEventPublisher productEventPublisher;
+
+    @Autowired
+    private StockIdempotencyStore idempotencyStore;
+
+    // Écrivain unique par produit : les opérations concurrentes sur un même produit sont fusionnées,
+    // et chaque lot publie lui-même son événement product.changed
+    @Autowired
+    private StockMailbox stockMailbox;
+
+    @Value("${stock.partitions:4}")
+    private int stockPartitions;
+
+    // Attente maximale de la confirmation du broker avant d'acquitter un message routé
+    @Value("${stock.router.confirm-timeout-ms:5000}")
+    private long routerConfirmTimeoutMs;
+
     @RabbitListener(queues = RabbitMQConfig.PRODUCT_QUERY_QUEUE)
-    public void handleProductQuery(Map<String, Object> message) {
+    public void handleProductQuery(ProductQueryMessage message,
+                                   @Header(name = AmqpHeaders.REPLY_TO, required = false) String replyTo) {
         try {
-            String correlationId = (String) message.get("correlationId");
-            String productId = (String) message.get("productId");
+            String correlationId = message.correlationId();
+            String productId = message.productId();
             
-            System.out.println("📦 Requête produit reçue - ID: " + productId + ", Correlation: " + correlationId);
+            // Requête groupée : une seule lecture et une seule réponse pour toute la commande
+            if (message.productIds() != null) {
+                handleProductBatchQuery(message, replyTo);
+                return;
+            }
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("correlationId", correlationId);
-            response.put("service", "product-service");
+            System.out.println("📦 Requête produit reçue - ID: " + productId + ", Correlation: " + correlationId);
             
+            ProductQueryResponse response;
             if (productId != null) {
-                Optional<Product> product = productRepository.findById(productId);
+                Optional<Product> product = inventoryEngine.findById(productId);
                 if (product.isPresent()) {
-                    Product foundProduct = product.get();
-                    response.put("status", "SUCCESS");
-                    response.put("product", foundProduct);
-                    response.put("productId", foundProduct.getId());
-                    response.put("productName", foundProduct.getNom());
-                    response.put("price", foundProduct.getPrix());
-                    response.put("stock", foundProduct.getStock());
-                    response.put("inStock", foundProduct.isInStock());
-                    System.out.println("✅ Produit trouvé: " + foundProduct.getNom());
+                    response = ProductQueryResponse.found(correlationId, ProductData.from(product.get()));
+                    System.out.println("✅ Produit trouvé: " + product.get().getNom());
                 } else {
-                    response.put("status", "NOT_FOUND");
-                    response.put("message", "Produit non trouvé: " + productId);
+                    response = ProductQueryResponse.failure(correlationId, "NOT_FOUND", "Produit non trouvé: " + productId);
                     System.out.println("❌ Produit non trouvé: " + productId);
                 }
             } else {
-                response.put("status", "ERROR");
-                response.put("message", "ID produit manquant");
+                response = ProductQueryResponse.failure(correlationId, "ERROR", "ID produit manquant");
             }
             
             // Envoyer la réponse
-            rabbitTemplate.convertAndSend(
-                RabbitMQConfig.MICROSERVICE_EXCHANGE,
-                "product.response",
-                response
-            );
+            reply(replyTo, "product.response", response);
             
         } catch (Exception e) {
             System.err.println("❌ Erreur lors du traitement de la requête produit: " + e.getMessage());
@@ -68,19 +96,78 @@ public class ProductMessageListener {
         }
     }
 
+    /**
+     * Traite une requête groupée (champ "productIds") avec un seul findAllById
+     */
+    private void handleProductBatchQuery(ProductQueryMessage message, String replyTo) {
+        String correlationId = message.correlationId();
+        List<String> productIds = message.productIds();
+        
+        System.out.println("📦 Requête produits groupée reçue - " + productIds.size() + " IDs, Correlation: " + correlationId);
+        
+        ProductQueryResponse response;
+        if (productIds.isEmpty()) {
+            response = ProductQueryResponse.failure(correlationId, "ERROR", "Liste d'IDs produits vide");
+        } else {
+            List<ProductData> products = new ArrayList<>();
+            Set<String> foundIds = new HashSet<>();
+            for (Product product : inventoryEngine.findAllById(new LinkedHashSet<>(productIds))) {
+                products.add(ProductData.from(product));
+                foundIds.add(product.getId());
+            }
+            List<String> missingIds = new ArrayList<>();
+            for (String id : productIds) {
+                if (!foundIds.contains(id) && !missingIds.contains(id)) {
+                    missingIds.add(id);
+                }
+            }
+            
+            response = ProductQueryResponse.batch(correlationId, products, missingIds);
+            System.out.println("✅ " + products.size() + " produits trouvés, " + missingIds.size() + " manquants");
+        }
+        
+        reply(replyTo, "product.response", response);
+    }
+
     // ===== NOUVEAU: GESTION DES MISES À JOUR DE STOCK =====
 
-    @RabbitListener(queues = RabbitMQConfig.STOCK_UPDATE_QUEUE)
-    public void handleStockUpdate(Map<String, Object> message) {
+    /**
+     * Routeur des messages publiés sur la routing key historique "stock.update" : la queue est en
+     * single-active-consumer, un seul routeur transmet chaque message tel quel à la partition de son produit,
+     * dans l'ordre d'arrivée. Un producteur qui connaît le nombre de partitions peut publier directement
+     * sur stock.update.<p>.
+     *
+     * Le message source n'est acquitté qu'après la confirmation du broker pour la copie transmise : un nack,
+     * une confirmation absente ou une erreur lèvent une exception, le message est remis dans la queue du routeur.
+     * Au pire une mise à jour est transmise deux fois : avec un commandId ou un correlationId, la seconde
+     * est reconnue comme doublon par sa clé d'opération.
+     */
+    @RabbitListener(queues = RabbitMQConfig.STOCK_UPDATE_ROUTER_QUEUE)
+    public void routeStockUpdate(StockUpdateMessage update, Message message) throws Exception {
+        int partition = RabbitMQConfig.stockPartitionOf(update.productId(), stockPartitions);
+        CorrelationData correlation = new CorrelationData();
+        rabbitTemplate.send(RabbitMQConfig.MICROSERVICE_EXCHANGE, RabbitMQConfig.stockPartitionRoutingKey(partition),
+                message, correlation);
+        CorrelationData.Confirm confirm = correlation.getFuture().get(routerConfirmTimeoutMs, TimeUnit.MILLISECONDS);
+        if (!confirm.isAck()) {
+            throw new AmqpException("Transmission à la partition " + partition + " refusée par le broker: " + confirm.getReason());
+        }
+    }
+
+    /**
+     * Mises à jour unitaires, consommées par partition (queues stock.update.queue.<p> attribuées
+     * par StockPartitionCoordinator) : ordre garanti par produit, produits différents en parallèle
+     */
+    @RabbitListener(id = RabbitMQConfig.STOCK_PARTITION_LISTENER_ID, queues = "#{stockPartitionQueueNames}",
+                    containerFactory = "stockPartitionContainerFactory")
+    public void handleStockUpdate(StockUpdateMessage message,
+                                  @Header(name = AmqpHeaders.REPLY_TO, required = false) String replyTo) {
         try {
-            String correlationId = (String) message.get("correlationId");
-            String productId = (String) message.get("productId");
-            String operation = (String) message.get("operation"); // "REDUCE", "INCREASE", "SET"
-            Integer quantity = null;
-            
-            if (message.get("quantity") != null) {
-                quantity = ((Number) message.get("quantity")).intValue();
-            }
+            String correlationId = message.correlationId();
+            String commandId = message.commandId();
+            String productId = message.productId();
+            String operation = message.operation(); // "REDUCE", "INCREASE", "SET"
+            Integer quantity = message.quantity();
             
             System.out.println("📦 Mise à jour stock reçue - Produit: " + productId + 
                              ", Opération: " + operation + 
@@ -96,115 +183,344 @@ public class ProductMessageListener {
             if (productId == null || operation == null) {
                 response.put("status", "ERROR");
                 response.put("message", "ProductId et operation sont obligatoires");
-                sendStockResponse(response);
+                sendStockResponse(response, replyTo);
                 return;
             }
             
-            Optional<Product> productOpt = productRepository.findById(productId);
-            if (!productOpt.isPresent()) {
-                response.put("status", "NOT_FOUND");
-                response.put("message", "Produit non trouvé: " + productId);
-                sendStockResponse(response);
+            // Message déjà traité (redélivrance, nouvel essai) : rejouer le résultat d'origine sans toucher au produit
+            String operationKey = StockIdempotencyStore.operationKey(commandId, correlationId, productId, operation);
+            if (replayIfDuplicate(operationKey, correlationId, replyTo)) {
                 return;
             }
             
-            Product product = productOpt.get();
-            int oldStock = product.getStock();
+            // Opérations atomiques : la condition, la modification et le marqueur d'opération sont écrits
+            // en une seule opération (findAndModify Mongo ou CAS du ledger), sans lecture préalable
+            Product updatedProduct;
+            int oldStock;
             
-            try {
-                switch (operation.toUpperCase()) {
-                    case "REDUCE":
-                        if (quantity == null || quantity <= 0) {
-                            response.put("status", "ERROR");
-                            response.put("message", "Quantité invalide pour la réduction");
-                            sendStockResponse(response);
-                            return;
-                        }
-                        
-                        if (!product.hasEnoughStock(quantity)) {
-                            response.put("status", "INSUFFICIENT_STOCK");
-                            response.put("message", "Stock insuffisant. Disponible: " + product.getStock() + ", Demandé: " + quantity);
-                            response.put("currentStock", product.getStock());
-                            response.put("requestedQuantity", quantity);
-                            sendStockResponse(response);
+            switch (operation.toUpperCase()) {
+                case "REDUCE":
+                    if (quantity == null || quantity <= 0) {
+                        response.put("status", "ERROR");
+                        response.put("message", "Quantité invalide pour la réduction");
+                        sendStockResponse(response, replyTo);
+                        return;
+                    }
+                    
+                    updatedProduct = stockMailbox.reduceStockIfAvailable(productId, quantity, operationKey);
+                    if (updatedProduct == null) {
+                        // Échec de la condition : distinguer produit absent, opération déjà appliquée et stock insuffisant
+                        Optional<Product> current = inventoryEngine.findById(productId);
+                        if (current.isEmpty()) {
+                            sendProductNotFound(operationKey, response, productId, replyTo);
                             return;
                         }
-                        
-                        product.reduceStock(quantity);
-                        break;
-                        
-                    case "INCREASE":
-                        if (quantity == null || quantity <= 0) {
-                            response.put("status", "ERROR");
-                            response.put("message", "Quantité invalide pour l'augmentation");
-                            sendStockResponse(response);
+                        if (isApplied(current.get(), operationKey)) {
+                            sendAlreadyApplied(operationKey, response, current.get(), quantity, replyTo);
                             return;
                         }
-                        
-                        product.increaseStock(quantity);
-                        break;
-                        
-                    case "SET":
-                        if (quantity == null || quantity < 0) {
-                            response.put("status", "ERROR");
-                            response.put("message", "Quantité invalide pour la définition du stock");
-                            sendStockResponse(response);
+                        response.put("status", "INSUFFICIENT_STOCK");
+                        response.put("message", "Stock insuffisant. Disponible: " + current.get().getStock() + ", Demandé: " + quantity);
+                        response.put("currentStock", current.get().getStock());
+                        response.put("requestedQuantity", quantity);
+                        idempotencyStore.record(operationKey, response);
+                        sendStockResponse(response, replyTo);
+                        return;
+                    }
+                    oldStock = updatedProduct.getStock() + quantity;
+                    break;
+                    
+                case "INCREASE":
+                    if (quantity == null || quantity <= 0) {
+                        response.put("status", "ERROR");
+                        response.put("message", "Quantité invalide pour l'augmentation");
+                        sendStockResponse(response, replyTo);
+                        return;
+                    }
+                    
+                    updatedProduct = stockMailbox.increaseStock(productId, quantity, operationKey);
+                    if (updatedProduct == null) {
+                        Optional<Product> current = inventoryEngine.findById(productId);
+                        if (current.isPresent() && isApplied(current.get(), operationKey)) {
+                            sendAlreadyApplied(operationKey, response, current.get(), quantity, replyTo);
                             return;
                         }
-                        
-                        product.setStock(quantity);
-                        break;
-                        
-                    default:
+                        sendProductNotFound(operationKey, response, productId, replyTo);
+                        return;
+                    }
+                    oldStock = updatedProduct.getStock() - quantity;
+                    break;
+                    
+                case "SET":
+                    if (quantity == null || quantity < 0) {
                         response.put("status", "ERROR");
-                        response.put("message", "Opération non supportée: " + operation);
-                        sendStockResponse(response);
+                        response.put("message", "Quantité invalide pour la définition du stock");
+                        sendStockResponse(response, replyTo);
                         return;
-                }
-                
-                // Sauvegarder le produit mis à jour
-                Product updatedProduct = productRepository.save(product);
-                
-                response.put("status", "SUCCESS");
-                response.put("message", "Stock mis à jour avec succès");
-                response.put("productName", updatedProduct.getNom());
-                response.put("oldStock", oldStock);
-                response.put("newStock", updatedProduct.getStock());
-                response.put("quantity", quantity);
-                response.put("product", updatedProduct);
-                
-                System.out.println("✅ Stock mis à jour: " + updatedProduct.getNom() + 
-                                 " (" + oldStock + " → " + updatedProduct.getStock() + ")");
-                
-            } catch (IllegalArgumentException e) {
-                response.put("status", "ERROR");
-                response.put("message", e.getMessage());
-                response.put("currentStock", product.getStock());
+                    }
+                    
+                    // SET est idempotent par nature : seul le résultat est enregistré
+                    updatedProduct = inventoryEngine.setStock(productId, quantity);
+                    if (updatedProduct == null) {
+                        sendProductNotFound(operationKey, response, productId, replyTo);
+                        return;
+                    }
+                    oldStock = updatedProduct.getStock();
+                    updatedProduct.setStock(quantity);
+                    // Produit relu avant l'écriture, qui a avancé la révision d'une unité
+                    updatedProduct.setRevision(updatedProduct.getRevision() + 1);
+                    productEventPublisher.publishUpdated(updatedProduct);
+                    break;
+                    
+                default:
+                    response.put("status", "ERROR");
+                    response.put("message", "Opération non supportée: " + operation);
+                    sendStockResponse(response, replyTo);
+                    return;
             }
             
-            sendStockResponse(response);
+            response.put("status", "SUCCESS");
+            response.put("message", "Stock mis à jour avec succès");
+            response.put("productName", updatedProduct.getNom());
+            response.put("oldStock", oldStock);
+            response.put("newStock", updatedProduct.getStock());
+            response.put("quantity", quantity);
+            response.put("product", ProductData.from(updatedProduct));
+            
+            System.out.println("✅ Stock mis à jour: " + updatedProduct.getNom() + 
+                             " (" + oldStock + " → " + updatedProduct.getStock() + ")");
+            
+            idempotencyStore.record(operationKey, response);
+            if (!"SET".equalsIgnoreCase(operation)) {
+                inventoryEngine.operationCompleted(operationKey, List.of(productId));
+            }
+            sendStockResponse(response, replyTo);
             
         } catch (Exception e) {
             System.err.println("❌ Erreur lors de la mise à jour du stock: " + e.getMessage());
             e.printStackTrace();
             
             Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("correlationId", message.get("correlationId"));
+            errorResponse.put("correlationId", message.correlationId());
             errorResponse.put("service", "product-service");
             errorResponse.put("status", "ERROR");
             errorResponse.put("message", "Erreur interne: " + e.getMessage());
-            sendStockResponse(errorResponse);
+            sendStockResponse(errorResponse, replyTo);
+        }
+    }
+
+    /**
+     * Réserve en une fois toutes les lignes d'une commande (message "stock.reserve").
+     *
+     * Les lignes sont appliquées par un seul bulk ordonné ; si l'une d'elles échoue, les lignes
+     * déjà appliquées sont compensées, de sorte que la commande est réservée entièrement ou pas du tout.
+     * Le marqueur de réservation rend un message redélivré sans effet sur les lignes déjà appliquées ;
+     * il est retiré une fois le résultat enregistré, qui prend alors le relais pour les doublons.
+     */
+    @RabbitListener(queues = RabbitMQConfig.STOCK_RESERVE_QUEUE, concurrency = "${stock.listener.concurrency:1}")
+    public void handleStockReserve(StockReserveMessage message,
+                                   @Header(name = AmqpHeaders.REPLY_TO, required = false) String replyTo) {
+        String correlationId = message.correlationId();
+        String commandId = message.commandId();
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("correlationId", correlationId);
+        response.put("service", "product-service");
+        response.put("commandId", commandId);
+        
+        String operationKey = StockIdempotencyStore.operationKey(commandId, correlationId, null, "RESERVE");
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        if (operationKey == null) {
+            // Sans identifiant, la réservation ne pourrait être ni dédupliquée ni compensée
+            response.put("status", "ERROR");
+            response.put("message", "commandId ou correlationId obligatoire");
+            sendStockResponse(response, replyTo);
+            return;
+        }
+        try {
+            if (replayIfDuplicate(operationKey, correlationId, replyTo)) {
+                return;
+            }
+            
+            List<StockReserveMessage.Line> lines = message.lines();
+            
+            System.out.println("📦 Réservation de stock reçue - Commande: " + commandId + 
+                             ", Lignes: " + (lines != null ? lines.size() : 0) + 
+                             ", Correlation: " + correlationId);
+            
+            if (lines == null || lines.isEmpty()) {
+                response.put("status", "ERROR");
+                response.put("message", "Aucune ligne à réserver");
+                sendStockResponse(response, replyTo);
+                return;
+            }
+            
+            // Fusionner les lignes d'un même produit : une seule opération par document
+            for (StockReserveMessage.Line line : lines) {
+                if (line.productId() == null || line.quantity() == null || line.quantity() <= 0) {
+                    response.put("status", "ERROR");
+                    response.put("message", "Ligne invalide: " + line);
+                    sendStockResponse(response, replyTo);
+                    return;
+                }
+                quantities.merge(line.productId(), line.quantity(), Integer::sum);
+            }
+            
+            int applied = stockMailbox.reserveStock(operationKey, quantities);
+            
+            Map<String, Product> productsById = new HashMap<>();
+            if (applied < quantities.size()) {
+                // Certaines lignes n'ont pas été modifiées : soit déjà réservées (message redélivré), soit en échec
+                for (Product product : inventoryEngine.findAllById(quantities.keySet())) {
+                    productsById.put(product.getId(), product);
+                }
+            }
+            
+            List<Map<String, Object>> results = new ArrayList<>();
+            boolean allReserved = true;
+            String failureStatus = null;
+            for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+                Map<String, Object> result = new HashMap<>();
+                result.put("productId", entry.getKey());
+                result.put("quantity", entry.getValue());
+                
+                Product product = productsById.get(entry.getKey());
+                if (applied == quantities.size() || isApplied(product, operationKey)) {
+                    result.put("status", "SUCCESS");
+                } else if (product == null) {
+                    result.put("status", "NOT_FOUND");
+                    result.put("message", "Produit non trouvé: " + entry.getKey());
+                    failureStatus = "NOT_FOUND";
+                    allReserved = false;
+                } else {
+                    result.put("status", "INSUFFICIENT_STOCK");
+                    result.put("message", "Stock insuffisant pour " + product.getNom() + 
+                                          ". Disponible: " + product.getStock() + ", Demandé: " + entry.getValue());
+                    result.put("currentStock", product.getStock());
+                    if (failureStatus == null) {
+                        failureStatus = "INSUFFICIENT_STOCK";
+                    }
+                    allReserved = false;
+                }
+                results.add(result);
+            }
+            
+            if (!allReserved) {
+                int released = inventoryEngine.releaseStock(operationKey, quantities);
+                for (Map<String, Object> result : results) {
+                    if ("SUCCESS".equals(result.get("status"))) {
+                        result.put("status", "RELEASED");
+                        result.put("message", "Réservation annulée : une autre ligne de la commande a échoué");
+                    }
+                }
+                System.out.println("↩️ Réservation annulée pour la commande " + commandId + " (" + released + " lignes compensées)");
+            }
+            
+            response.put("status", allReserved ? "SUCCESS" : failureStatus);
+            response.put("message", allReserved ? "Stock réservé avec succès" : "Réservation impossible");
+            response.put("lines", results);
+            idempotencyStore.record(operationKey, response);
+            // Résultat enregistré : le marqueur de réservation ne sert plus, ni aux doublons ni à la compensation
+            inventoryEngine.operationCompleted(operationKey, quantities.keySet());
+            
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors de la réservation du stock: " + e.getMessage());
+            e.printStackTrace();
+            
+            // Ne rien laisser de réservé derrière une réponse en erreur
+            try {
+                inventoryEngine.releaseStock(operationKey, quantities);
+            } catch (Exception releaseError) {
+                System.err.println("❌ Compensation impossible pour " + operationKey + ": " + releaseError.getMessage());
+            }
+            response.put("status", "ERROR");
+            response.put("message", "Erreur interne: " + e.getMessage());
+        }
+        
+        sendStockResponse(response, replyTo);
+        
+        if ("SUCCESS".equals(response.get("status"))) {
+            System.out.println("✅ Stock réservé pour la commande " + commandId + " (" + quantities.size() + " produits)");
+        } else if (!quantities.isEmpty()) {
+            // Les lots des boîtes aux lettres ont publié le stock réservé : publier l'état après compensation
+            publishStockChanges(quantities.keySet());
         }
     }
 
+    /**
+     * Relit les produits compensés pour publier product.changed (après la réponse, hors chemin critique)
+     */
+    private void publishStockChanges(Set<String> productIds) {
+        try {
+            for (Product product : inventoryEngine.findAllById(productIds)) {
+                productEventPublisher.publishUpdated(product);
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors de la publication des changements de stock: " + e.getMessage());
+        }
+    }
+
+    private void sendProductNotFound(String operationKey, Map<String, Object> response, String productId, String replyTo) {
+        response.put("status", "NOT_FOUND");
+        response.put("message", "Produit non trouvé: " + productId);
+        idempotencyStore.record(operationKey, response);
+        sendStockResponse(response, replyTo);
+    }
+
+    /**
+     * Renvoie le résultat enregistré d'une opération déjà traitée. Retourne false si l'opération est nouvelle.
+     */
+    private boolean replayIfDuplicate(String operationKey, String correlationId, String replyTo) {
+        Map<String, Object> previous = idempotencyStore.find(operationKey);
+        if (previous == null) {
+            return false;
+        }
+        previous.put("correlationId", correlationId);
+        previous.put("duplicate", true);
+        System.out.println("♻️ Opération déjà traitée, résultat d'origine renvoyé: " + operationKey);
+        sendStockResponse(previous, replyTo);
+        return true;
+    }
+
+    /**
+     * Le marqueur est présent mais le résultat n'a pas été enregistré (arrêt entre les deux écritures) :
+     * l'opération a bien été appliquée, on reconstitue une réponse de succès sans modifier le stock
+     */
+    private void sendAlreadyApplied(String operationKey, Map<String, Object> response, Product product, int quantity,
+                                    String replyTo) {
+        response.put("status", "SUCCESS");
+        response.put("message", "Opération déjà appliquée");
+        response.put("productName", product.getNom());
+        response.put("newStock", product.getStock());
+        response.put("quantity", quantity);
+        response.put("duplicate", true);
+        idempotencyStore.record(operationKey, response);
+        inventoryEngine.operationCompleted(operationKey, List.of(product.getId()));
+        sendStockResponse(response, replyTo);
+    }
+
+    private boolean isApplied(Product product, String operationKey) {
+        return product != null && operationKey != null && product.getAppliedStockOps() != null
+            && product.getAppliedStockOps().contains(operationKey);
+    }
+
     /**
      * Envoie une réponse de mise à jour de stock
      */
-    private void sendStockResponse(Map<String, Object> response) {
-        rabbitTemplate.convertAndSend(
-            RabbitMQConfig.MICROSERVICE_EXCHANGE,
-            "stock.response",
-            response
-        );
+    private void sendStockResponse(Map<String, Object> response, String replyTo) {
+        reply(replyTo, "stock.response", response);
+    }
+
+    /**
+     * Répond à la queue reply_to de l'instance émettrice ; sans reply_to (émetteur antérieur),
+     * la réponse part sur la routing key partagée
+     */
+    private void reply(String replyTo, String legacyRoutingKey, Object response) {
+        if (replyTo != null && !replyTo.isEmpty()) {
+            Address address = new Address(replyTo);
+            rabbitTemplate.convertAndSend(address.getExchangeName(), address.getRoutingKey(), response);
+        } else {
+            rabbitTemplate.convertAndSend(RabbitMQConfig.MICROSERVICE_EXCHANGE, legacyRoutingKey, response);
+        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,535 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.message.ProductChangedEvent;
+import com.ecommerce.microcommerce.model.Product;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+
+/**
+ * Index de recherche du catalogue en mémoire, pour /produits/search sans parcourir la collection :
+ * - trigrammes du nom (en minuscules) vers les listes de documents, pour la recherche de sous-chaîne ;
+ * - tableau de prix trié (int[] prix, int[] document) pour les fourchettes prixMin/prixMax.
+ *
+ * Tenu à jour par les écritures de ProductDaoImpl et par les événements product.changed (écritures des
+ * autres instances). Un produit renommé ou changé de prix reçoit un nouveau numéro de document, l'ancien
+ * est marqué supprimé ; l'index est compacté quand les documents supprimés dépassent le quart du total.
+ * L'index ne renvoie que des identifiants : le stock est relu à jour par l'appelant.
+ */
+@Component
+public class ProductSearchIndex {
+
+    /**
+     * Ordre des résultats : paramètre sort de l'API ("prix", "-prix", "nom", "-nom")
+     */
+    public enum Order {
+        NONE, PRIX_ASC, PRIX_DESC, NOM_ASC, NOM_DESC;
+
+        public static Order parse(String sort) {
+            if (sort == null || sort.isEmpty()) {
+                return NONE;
+            }
+            return switch (sort) {
+                case "prix" -> PRIX_ASC;
+                case "-prix" -> PRIX_DESC;
+                case "nom" -> NOM_ASC;
+                case "-nom" -> NOM_DESC;
+                default -> throw new IllegalArgumentException("Tri inconnu: " + sort);
+            };
+        }
+    }
+
+    private static final int GRAM = 3;
+    private static final int MIN_COMPACTION_SIZE = 1024;
+    private static final int LOAD_BATCH_SIZE = 10_000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Documents : numéro → identifiant, nom en minuscules, prix
+    private String[] ids = new String[1024];
+    private String[] names = new String[1024];
+    private int[] prices = new int[1024];
+    private final BitSet deleted = new BitSet();
+    private int documentCount;
+    private int deletedCount;
+
+    private final Map<String, Integer> documentById = new HashMap<>();
+    // Révision du document de la dernière écriture appliquée par produit, suppressions comprises
+    // (même numérotation que les événements product.changed)
+    private final Map<String, Long> versionById = new HashMap<>();
+
+    private final Map<Long, IntList> postings = new HashMap<>();
+
+    // Index des prix : documents triés par prix (à prix égal, par numéro de document)
+    private int[] sortedPrices = new int[1024];
+    private int[] documentsByPrice = new int[1024];
+    private int priceCount;
+
+    private volatile boolean ready;
+
+    /**
+     * Chargement initial en tâche de fond ; les recherches passent par Mongo tant qu'il n'est pas terminé
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread loader = new Thread(this::load, "product-search-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void load() {
+        // Chaque document est indexé à sa révision : une écriture plus récente (locale ou événement) l'emporte
+        Query query = new Query().cursorBatchSize(LOAD_BATCH_SIZE);
+        query.fields().include("nom").include("prix").include("revision");
+        long count = 0;
+        try (Stream<Product> products = mongoTemplate.stream(query, Product.class)) {
+            List<Product> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+            for (Product product : (Iterable<Product>) products::iterator) {
+                batch.add(product);
+                if (batch.size() == LOAD_BATCH_SIZE) {
+                    count += batch.size();
+                    upsertAll(batch);
+                    batch.clear();
+                }
+            }
+            count += batch.size();
+            upsertAll(batch);
+            ready = true;
+            System.out.println("🔎 Index de recherche produits chargé: " + count + " produits");
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors du chargement de l'index de recherche: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Écoute les événements product.changed (une queue exclusive par instance)
+     */
+    @RabbitListener(queues = "#{productSearchEventsQueue.name}")
+    public void handleProductChanged(ProductChangedEvent event) {
+        if (ProductEventPublisher.PRODUCT_DELETED.equals(event.eventType())) {
+            remove(event.productId(), event.version());
+        } else if (event.nom() != null && event.prix() != null) {
+            upsert(event.productId(), event.nom(), event.prix(), event.version());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void upsert(String productId, String nom, int prix, long version) {
+        lock.writeLock().lock();
+        try {
+            if (replace(productId, nom, prix, version, true)) {
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Écriture groupée (chargement) : les nouveaux documents sont triés par prix puis fusionnés
+     * en une passe dans l'index des prix, au lieu d'une insertion par produit ; chaque produit à sa révision
+     */
+    public void upsertAll(List<Product> products) {
+        lock.writeLock().lock();
+        try {
+            int firstDocument = documentCount;
+            for (Product product : products) {
+                replace(product.getId(), product.getNom(), product.getPrix(), product.getRevision(), false);
+            }
+            mergeIntoPriceIndex(firstDocument);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remplace le document d'un produit ; retourne false si l'écriture est ignorée (plus ancienne ou sans changement)
+     */
+    private boolean replace(String productId, String nom, int prix, long version, boolean indexPrice) {
+        if (productId == null) {
+            return false;
+        }
+        Long current = versionById.get(productId);
+        if (current != null && version < current) {
+            return false;
+        }
+        versionById.put(productId, version);
+        String name = nom != null ? nom.toLowerCase(Locale.ROOT) : "";
+        Integer document = documentById.get(productId);
+        if (document != null) {
+            if (names[document].equals(name) && prices[document] == prix) {
+                return false;
+            }
+            markDeleted(document);
+        }
+        documentById.put(productId, append(productId, name, prix, indexPrice));
+        return true;
+    }
+
+    public void remove(String productId, long version) {
+        lock.writeLock().lock();
+        try {
+            Long current = versionById.get(productId);
+            if (current != null && version < current) {
+                return;
+            }
+            versionById.put(productId, version);
+            Integer document = documentById.remove(productId);
+            if (document != null) {
+                markDeleted(document);
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Identifiants des produits dont le nom contient nom (sans casse) et dont le prix est dans
+     * [prixMin, prixMax] (filtres facultatifs), dans l'ordre demandé, au plus limit
+     */
+    public List<String> search(String nom, Integer prixMin, Integer prixMax, Order order, int limit) {
+        String query = nom != null ? nom.toLowerCase(Locale.ROOT) : "";
+        int min = prixMin != null ? prixMin : Integer.MIN_VALUE;
+        int max = prixMax != null ? prixMax : Integer.MAX_VALUE;
+        if (limit <= 0 || min > max) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            IntPredicate accepted = document -> !deleted.get(document)
+                    && prices[document] >= min && prices[document] <= max
+                    && (query.isEmpty() || names[document].contains(query));
+
+            if (query.length() >= GRAM) {
+                // Candidats : documents contenant tous les trigrammes, vérifiés ensuite sur le nom complet
+                return collect(candidates(query), accepted, order, limit);
+            }
+            if (prixMin != null || prixMax != null || order == Order.PRIX_ASC || order == Order.PRIX_DESC) {
+                return collectByPrice(min, max, accepted, order, limit);
+            }
+            int[] all = new int[documentCount];
+            for (int document = 0; document < documentCount; document++) {
+                all[document] = document;
+            }
+            return collect(all, accepted, order, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("ready", ready);
+            stats.put("products", documentById.size());
+            stats.put("documents", documentCount);
+            stats.put("deletedDocuments", deletedCount);
+            stats.put("trigrams", postings.size());
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ===== Lecture =====
+
+    private int[] candidates(String query) {
+        List<IntList> lists = new ArrayList<>();
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            IntList list = postings.get(gram(query, i));
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+        int[] result = Arrays.copyOf(lists.get(0).values, lists.get(0).size);
+        int size = result.length;
+        for (int l = 1; l < lists.size() && size > 0; l++) {
+            size = intersect(result, size, lists.get(l));
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Intersection en place de result[0..size) avec une liste triée ; retourne la nouvelle taille
+     */
+    private static int intersect(int[] result, int size, IntList list) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < size && j < list.size; i++) {
+            int document = result[i];
+            while (j < list.size && list.values[j] < document) {
+                j++;
+            }
+            if (j < list.size && list.values[j] == document) {
+                result[kept++] = document;
+            }
+        }
+        return kept;
+    }
+
+    private List<String> collectByPrice(int min, int max, IntPredicate accepted, Order order, int limit) {
+        int from = lowerBound(min);
+        int to = upperBound(max);
+        if (order == Order.NOM_ASC || order == Order.NOM_DESC) {
+            return collect(Arrays.copyOfRange(documentsByPrice, from, to), accepted, order, limit);
+        }
+        // Déjà dans l'ordre des prix : arrêt dès que la limite est atteinte
+        List<String> result = new ArrayList<>(Math.min(limit, Math.max(0, to - from)));
+        if (order == Order.PRIX_DESC) {
+            for (int i = to - 1; i >= from && result.size() < limit; i--) {
+                addIfAccepted(documentsByPrice[i], accepted, result);
+            }
+        } else {
+            for (int i = from; i < to && result.size() < limit; i++) {
+                addIfAccepted(documentsByPrice[i], accepted, result);
+            }
+        }
+        return result;
+    }
+
+    private void addIfAccepted(int document, IntPredicate accepted, List<String> result) {
+        if (accepted.test(document)) {
+            result.add(ids[document]);
+        }
+    }
+
+    private List<String> collect(int[] documents, IntPredicate accepted, Order order, int limit) {
+        if (order == Order.NONE) {
+            List<String> result = new ArrayList<>(Math.min(limit, documents.length));
+            for (int i = 0; i < documents.length && result.size() < limit; i++) {
+                addIfAccepted(documents[i], accepted, result);
+            }
+            return result;
+        }
+
+        // Top-k : le tas garde les limit meilleurs documents, le moins bon en tête
+        Comparator<Integer> comparator = comparator(order);
+        PriorityQueue<Integer> best = new PriorityQueue<>(Math.min(limit, 1024) + 1, comparator.reversed());
+        for (int document : documents) {
+            if (!accepted.test(document)) {
+                continue;
+            }
+            if (best.size() < limit) {
+                best.add(document);
+            } else if (comparator.compare(document, best.peek()) < 0) {
+                best.poll();
+                best.add(document);
+            }
+        }
+        Integer[] sorted = best.toArray(new Integer[0]);
+        Arrays.sort(sorted, comparator);
+        List<String> result = new ArrayList<>(sorted.length);
+        for (Integer document : sorted) {
+            result.add(ids[document]);
+        }
+        return result;
+    }
+
+    private Comparator<Integer> comparator(Order order) {
+        Comparator<Integer> byDocument = Comparator.naturalOrder();
+        return switch (order) {
+            case PRIX_ASC -> Comparator.<Integer>comparingInt(document -> prices[document]).thenComparing(byDocument);
+            case PRIX_DESC -> Comparator.<Integer>comparingInt(document -> prices[document]).reversed().thenComparing(byDocument);
+            case NOM_ASC -> Comparator.<Integer, String>comparing(document -> names[document]).thenComparing(byDocument);
+            case NOM_DESC -> Comparator.<Integer, String>comparing(document -> names[document]).reversed().thenComparing(byDocument);
+            case NONE -> byDocument;
+        };
+    }
+
+    private int lowerBound(int price) {
+        int low = 0;
+        int high = priceCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedPrices[middle] < price) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(int price) {
+        int low = 0;
+        int high = priceCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedPrices[middle] <= price) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // ===== Écriture (sous verrou exclusif) =====
+
+    private int append(String productId, String name, int prix, boolean indexPrice) {
+        if (documentCount == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+        }
+        int document = documentCount++;
+        ids[document] = productId;
+        names[document] = name;
+        prices[document] = prix;
+
+        // Les numéros de documents croissent : chaque liste reste triée
+        for (int i = 0; i + GRAM <= name.length(); i++) {
+            IntList list = postings.computeIfAbsent(gram(name, i), key -> new IntList());
+            if (list.size == 0 || list.values[list.size - 1] != document) {
+                list.add(document);
+            }
+        }
+
+        if (!indexPrice) {
+            return document;
+        }
+        if (priceCount == sortedPrices.length) {
+            sortedPrices = Arrays.copyOf(sortedPrices, priceCount * 2);
+            documentsByPrice = Arrays.copyOf(documentsByPrice, priceCount * 2);
+        }
+        int position = upperBound(prix);
+        System.arraycopy(sortedPrices, position, sortedPrices, position + 1, priceCount - position);
+        System.arraycopy(documentsByPrice, position, documentsByPrice, position + 1, priceCount - position);
+        sortedPrices[position] = prix;
+        documentsByPrice[position] = document;
+        priceCount++;
+        return document;
+    }
+
+    /**
+     * Ajoute à l'index des prix les documents [firstDocument, documentCount) : tri puis fusion linéaire
+     */
+    private void mergeIntoPriceIndex(int firstDocument) {
+        int added = documentCount - firstDocument;
+        if (added == 0) {
+            return;
+        }
+        // Prix dans les 32 bits de poids fort, numéro de document (positif) dans ceux de poids faible
+        long[] batch = new long[added];
+        for (int i = 0; i < added; i++) {
+            int document = firstDocument + i;
+            batch[i] = ((long) prices[document] << 32) | document;
+        }
+        Arrays.sort(batch);
+
+        int total = priceCount + added;
+        int capacity = Math.max(sortedPrices.length, Integer.highestOneBit(total) * 2);
+        int[] mergedPrices = new int[capacity];
+        int[] mergedDocuments = new int[capacity];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < total; k++) {
+            if (j == added || (i < priceCount && sortedPrices[i] <= (int) (batch[j] >> 32))) {
+                mergedPrices[k] = sortedPrices[i];
+                mergedDocuments[k] = documentsByPrice[i++];
+            } else {
+                mergedPrices[k] = (int) (batch[j] >> 32);
+                mergedDocuments[k] = (int) batch[j++];
+            }
+        }
+        sortedPrices = mergedPrices;
+        documentsByPrice = mergedDocuments;
+        priceCount = total;
+    }
+
+    private void markDeleted(int document) {
+        deleted.set(document);
+        deletedCount++;
+    }
+
+    /**
+     * Reconstruit l'index avec les seuls documents vivants, dans leur ordre d'origine
+     */
+    private void compactIfNeeded() {
+        if (documentCount < MIN_COMPACTION_SIZE || deletedCount * 4 < documentCount) {
+            return;
+        }
+        String[] oldIds = ids;
+        String[] oldNames = names;
+        int[] oldPrices = prices;
+        int oldCount = documentCount;
+        BitSet oldDeleted = (BitSet) deleted.clone();
+
+        int capacity = Math.max(1024, Integer.highestOneBit(Math.max(1, oldCount - deletedCount)) * 2);
+        ids = new String[capacity];
+        names = new String[capacity];
+        prices = new int[capacity];
+        sortedPrices = new int[capacity];
+        documentsByPrice = new int[capacity];
+        documentCount = 0;
+        deletedCount = 0;
+        priceCount = 0;
+        deleted.clear();
+        postings.clear();
+        documentById.clear();
+
+        for (int document = 0; document < oldCount; document++) {
+            if (!oldDeleted.get(document)) {
+                documentById.put(oldIds[document], append(oldIds[document], oldNames[document], oldPrices[document], false));
+            }
+        }
+        mergeIntoPriceIndex(0);
+    }
+
+    private static long gram(String name, int offset) {
+        return ((long) name.charAt(offset) << 32) | ((long) name.charAt(offset + 1) << 16) | name.charAt(offset + 2);
+    }
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
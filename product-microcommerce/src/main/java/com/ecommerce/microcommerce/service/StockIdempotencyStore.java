@@ -0,0 +1,113 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.model.StockOperationRecord;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registre d'idempotence des opérations de stock (clé commandId:productId:OPERATION).
+ *
+ * Un cache Caffeine borné sert les doublons récents sans lecture Mongo ; la collection
+ * "stock_operations" (TTL) couvre les redélivrances après redémarrage. Le marqueur écrit dans
+ * le produit avec le stock couvre une panne entre l'écriture et l'enregistrement ; une fois le résultat
+ * enregistré ici, le marqueur est retiré du produit (InventoryEngine.operationCompleted).
+ */
+@Component
+public class StockIdempotencyStore {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${stock.idempotency.ttl-ms:86400000}")
+    private long ttlMs;
+
+    @Value("${stock.idempotency.cache-size:100000}")
+    private long cacheSize;
+
+    private Cache<String, Map<String, Object>> recentResults;
+
+    private final LongAdder duplicates = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        recentResults = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+        mongoTemplate.indexOps(StockOperationRecord.class)
+                .createIndex(new Index("createdAt", Sort.Direction.ASC).expire(ttlMs, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Clé d'idempotence d'une opération ; null si le message ne porte ni commandId ni correlationId
+     */
+    public static String operationKey(String commandId, String correlationId, String productId, String operation) {
+        String requestId = commandId != null ? commandId : correlationId;
+        if (requestId == null) {
+            return null;
+        }
+        return productId != null
+            ? requestId + ":" + productId + ":" + operation.toUpperCase()
+            : requestId + ":" + operation.toUpperCase();
+    }
+
+    /**
+     * Retourne le résultat déjà enregistré pour cette clé, ou null si l'opération n'a pas encore été traitée
+     */
+    public Map<String, Object> find(String key) {
+        if (key == null) {
+            return null;
+        }
+        Map<String, Object> result = recentResults.getIfPresent(key);
+        if (result == null) {
+            StockOperationRecord record = mongoTemplate.findById(key, StockOperationRecord.class);
+            if (record == null) {
+                return null;
+            }
+            result = record.getResponse();
+            recentResults.put(key, result);
+        }
+        duplicates.increment();
+        return new HashMap<>(result);
+    }
+
+    /**
+     * Enregistre le résultat définitif d'une opération (les erreurs internes ne sont pas enregistrées)
+     */
+    public void record(String key, Map<String, Object> response) {
+        if (key == null) {
+            return;
+        }
+        // Le produit complet n'est pas conservé : le statut et les quantités suffisent à rejouer la réponse
+        Map<String, Object> stored = new HashMap<>(response);
+        stored.remove("product");
+        try {
+            mongoTemplate.insert(new StockOperationRecord(key, stored));
+        } catch (DuplicateKeyException e) {
+            // Déjà enregistré par un traitement concurrent du même message
+        }
+        recentResults.put(key, stored);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cachedResults", recentResults.estimatedSize());
+        stats.put("duplicates", duplicates.sum());
+        return stats;
+    }
+}
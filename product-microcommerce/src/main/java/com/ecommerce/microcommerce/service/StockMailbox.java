@@ -0,0 +1,334 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.model.Product;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Boîte aux lettres de stock par produit (acteur) : les opérations REDUCE/INCREASE de tous les threads
+ * sont déposées dans la file du produit, vidée par un seul écrivain à la fois, pris dans un pool partagé.
+ *
+ * Les opérations en attente sur un même produit sont fusionnées en un delta net appliqué par une seule
+ * écriture conditionnelle (stock minimal nécessaire pour que chaque opération réussisse dans l'ordre).
+ * Si cette condition échoue, les opérations du lot sont rejouées une à une, dans l'ordre d'arrivée :
+ * le résultat de chaque opération est celui qu'elle aurait eu seule. Les produits différents
+ * sont écrits en parallèle par les threads du pool.
+ *
+ * Chaque lot publie un seul événement product.changed, avec le stock final et la révision de la
+ * dernière écriture : les appelants n'en publient pas pour les opérations passées par ici.
+ *
+ * Une boîte vide et non planifiée est retirée de la map : seuls les produits en cours d'écriture
+ * y restent. Dépôt et retrait passent par compute sur la clé du produit, donc ne se croisent pas.
+ */
+@Component
+public class StockMailbox {
+
+    private final InventoryEngine inventoryEngine;
+    private final ProductEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final int maxBatch;
+    // Boîtes des produits ayant des opérations en attente ou en cours
+    private final Map<String, ProductMailbox> mailboxes = new ConcurrentHashMap<>();
+    private final Semaphore capacity;
+    private final ExecutorService writers;
+
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder mergedWrites = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    private record StockOperation(int delta, String operationKey, CompletableFuture<Product> result) {
+    }
+
+    /**
+     * File d'un produit ; scheduled garantit qu'un seul écrivain la vide à un instant donné
+     */
+    private static final class ProductMailbox {
+        final String productId;
+        final Queue<StockOperation> queue = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        ProductMailbox(String productId) {
+            this.productId = productId;
+        }
+    }
+
+    public StockMailbox(InventoryEngine inventoryEngine,
+                        ProductEventPublisher eventPublisher,
+                        @Value("${stock.mailbox.enabled:true}") boolean enabled,
+                        @Value("${stock.mailbox.writers:32}") int writerCount,
+                        @Value("${stock.mailbox.queue-capacity:10000}") int queueCapacity,
+                        @Value("${stock.mailbox.max-batch:256}") int maxBatch) {
+        this.inventoryEngine = inventoryEngine;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.capacity = new Semaphore(queueCapacity);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.writers = enabled ? Executors.newFixedThreadPool(writerCount, runnable -> {
+            Thread thread = new Thread(runnable, "stock-mailbox-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (writers != null) {
+            writers.shutdownNow();
+        }
+    }
+
+    public Product reduceStockIfAvailable(String productId, int quantity, String operationKey) {
+        if (!enabled) {
+            return published(inventoryEngine.reduceStockIfAvailable(productId, quantity, operationKey));
+        }
+        return await(submit(productId, -quantity, operationKey));
+    }
+
+    public Product increaseStock(String productId, int quantity, String operationKey) {
+        if (!enabled) {
+            return published(inventoryEngine.increaseStock(productId, quantity, operationKey));
+        }
+        return await(submit(productId, quantity, operationKey));
+    }
+
+    /**
+     * Réservation ligne par ligne via les boîtes aux lettres (même contrat que InventoryEngine.reserveStock) :
+     * les lignes d'une commande sont fusionnées avec celles des commandes concurrentes sur les mêmes produits
+     */
+    public int reserveStock(String operationKey, Map<String, Integer> quantities) {
+        if (!enabled) {
+            int applied = inventoryEngine.reserveStock(operationKey, quantities);
+            if (applied > 0) {
+                inventoryEngine.findAllById(quantities.keySet()).forEach(this::published);
+            }
+            return applied;
+        }
+        List<CompletableFuture<Product>> results = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> results.add(submit(productId, -quantity, operationKey)));
+        int applied = 0;
+        for (CompletableFuture<Product> result : results) {
+            if (await(result) != null) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    private Product published(Product product) {
+        if (product != null) {
+            eventPublisher.publishUpdated(product);
+        }
+        return product;
+    }
+
+    private CompletableFuture<Product> submit(String productId, int delta, String operationKey) {
+        CompletableFuture<Product> result = new CompletableFuture<>();
+        try {
+            // Trop d'opérations en attente : le thread appelant attend (contre-pression sur les listeners)
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return result;
+        }
+        result.whenComplete((product, error) -> capacity.release());
+        operations.increment();
+
+        // Dépôt sous le verrou de la clé : une boîte ne peut pas être retirée entre sa lecture et le dépôt
+        StockOperation operation = new StockOperation(delta, operationKey, result);
+        ProductMailbox mailbox = mailboxes.compute(productId, (id, current) -> {
+            ProductMailbox target = current != null ? current : new ProductMailbox(id);
+            target.queue.add(operation);
+            return target;
+        });
+        schedule(mailbox);
+        return result;
+    }
+
+    private void schedule(ProductMailbox mailbox) {
+        if (mailbox.scheduled.compareAndSet(false, true)) {
+            try {
+                writers.execute(() -> drain(mailbox));
+            } catch (RejectedExecutionException e) {
+                mailbox.scheduled.set(false);
+                StockOperation operation;
+                while ((operation = mailbox.queue.poll()) != null) {
+                    operation.result().completeExceptionally(new IllegalStateException("Boîte aux lettres de stock arrêtée"));
+                }
+            }
+        }
+    }
+
+    private Product await(CompletableFuture<Product> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Vide un lot de la file du produit ; s'il reste des opérations, le produit est replanifié
+     * plutôt que traité en boucle, pour ne pas affamer les autres produits
+     */
+    private void drain(ProductMailbox mailbox) {
+        List<StockOperation> batch = new ArrayList<>();
+        StockOperation operation;
+        while (batch.size() < maxBatch && (operation = mailbox.queue.poll()) != null) {
+            batch.add(operation);
+        }
+        try {
+            if (!batch.isEmpty()) {
+                apply(mailbox.productId, batch);
+            }
+        } finally {
+            mailbox.scheduled.set(false);
+            if (!mailbox.queue.isEmpty()) {
+                schedule(mailbox);
+            } else {
+                retireIfIdle(mailbox);
+            }
+        }
+    }
+
+    /**
+     * Retire la boîte si elle est toujours vide et qu'aucun écrivain ne l'a reprise ; un dépôt concurrent
+     * passe par compute sur la même clé : il a lieu avant (la boîte est gardée) ou après (nouvelle boîte)
+     */
+    private void retireIfIdle(ProductMailbox mailbox) {
+        mailboxes.computeIfPresent(mailbox.productId, (id, current) ->
+            current == mailbox && current.queue.isEmpty() && !current.scheduled.get() ? null : current);
+    }
+
+    /**
+     * Applique les opérations en attente sur un produit : un seul delta net si possible, sinon une à une.
+     * L'état après la dernière écriture réussie du lot est publié une fois, avant les réponses : un appelant
+     * servi ne peut pas recevoir un événement plus ancien que son propre résultat.
+     */
+    private void apply(String productId, List<StockOperation> productOperations) {
+        List<StockOperation> pending = new ArrayList<>();
+        List<StockOperation> duplicates = new ArrayList<>();
+        // Résultats de pending, dans l'ordre ; en cas d'erreur, les opérations sans résultat la reçoivent
+        List<Product> results = new ArrayList<>();
+        Product last = null;
+        RuntimeException failure = null;
+        try {
+            // Une même clé deux fois dans le lot : la seconde est un doublon (redélivrance), traité
+            // après l'originale pour que l'appelant relise un produit portant déjà le marqueur
+            Set<String> keys = new HashSet<>();
+            for (StockOperation operation : productOperations) {
+                if (operation.operationKey() != null && !keys.add(operation.operationKey())) {
+                    duplicates.add(operation);
+                } else {
+                    pending.add(operation);
+                }
+            }
+
+            if (pending.size() == 1) {
+                last = applyOne(productId, pending.get(0));
+                results.add(last);
+                writes.increment();
+                return;
+            }
+
+            int delta = 0;
+            int requiredStock = 0;
+            List<String> operationKeys = new ArrayList<>();
+            for (StockOperation operation : pending) {
+                delta += operation.delta();
+                // Avant chaque opération, le stock doit couvrir tout ce qui a été retiré jusque-là
+                requiredStock = Math.max(requiredStock, -delta);
+                if (operation.operationKey() != null) {
+                    operationKeys.add(operation.operationKey());
+                }
+            }
+
+            Product updated = inventoryEngine.applyStockDelta(productId, delta, requiredStock, operationKeys);
+            writes.increment();
+            if (updated != null) {
+                last = updated;
+                mergedWrites.increment();
+                // Chaque opération reçoit le stock tel qu'il était juste après elle, avec la révision
+                // et les marqueurs de l'écriture fusionnée qui l'a appliquée
+                int stock = updated.getStock() - delta;
+                for (StockOperation operation : pending) {
+                    stock += operation.delta();
+                    Product result = new Product(updated.getId(), updated.getNom(), updated.getPrix(), stock);
+                    result.setRevision(updated.getRevision());
+                    result.setAppliedStockOps(updated.getAppliedStockOps());
+                    results.add(result);
+                }
+                return;
+            }
+
+            // Stock insuffisant pour tout le lot, produit absent ou clé déjà appliquée : une à une, dans l'ordre
+            fallbacks.increment();
+            for (StockOperation operation : pending) {
+                Product result = applyOne(productId, operation);
+                if (result != null) {
+                    last = result;
+                }
+                results.add(result);
+                writes.increment();
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            try {
+                published(last);
+            } finally {
+                for (int i = 0; i < pending.size(); i++) {
+                    if (i < results.size()) {
+                        pending.get(i).result().complete(results.get(i));
+                    } else {
+                        pending.get(i).result().completeExceptionally(failure != null ? failure
+                            : new IllegalStateException("Lot de stock interrompu"));
+                    }
+                }
+                duplicates.forEach(operation -> operation.result().complete(null));
+            }
+        }
+    }
+
+    private Product applyOne(String productId, StockOperation operation) {
+        return operation.delta() < 0
+            ? inventoryEngine.reduceStockIfAvailable(productId, -operation.delta(), operation.operationKey())
+            : inventoryEngine.increaseStock(productId, operation.delta(), operation.operationKey());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("products", mailboxes.size());
+        stats.put("operations", operations.sum());
+        stats.put("writes", writes.sum());
+        stats.put("mergedWrites", mergedWrites.sum());
+        stats.put("fallbacks", fallbacks.sum());
+        return stats;
+    }
+}
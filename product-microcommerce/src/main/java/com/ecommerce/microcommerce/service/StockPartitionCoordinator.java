@@ -0,0 +1,185 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.config.RabbitMQConfig;
+import com.ecommerce.microcommerce.model.StockPartitionMember;
+import jakarta.annotation.PreDestroy;
+import org.springframework.amqp.rabbit.listener.DirectMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Répartit les partitions stock.update entre les instances product-service vivantes.
+ *
+ * Chaque instance publie un heartbeat dans "stock_partition_members" ; la partition p revient à l'instance
+ * de rang p % n parmi les n instances vivantes triées par identifiant. Quand une instance arrive ou part,
+ * chacune ajoute ou retire les queues concernées de son conteneur au heartbeat suivant.
+ *
+ * Les queues étant en single-active-consumer, une partition brièvement consommée par deux instances
+ * pendant une transition n'a toujours qu'un consommateur actif ; un message en cours au moment du transfert
+ * est redélivré au nouveau consommateur et absorbé par l'idempotence des opérations de stock.
+ */
+@Component
+public class StockPartitionCoordinator {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private RabbitListenerEndpointRegistry listenerRegistry;
+
+    @Value("${stock.partitions:4}")
+    private int partitions;
+
+    @Value("${stock.partitions.heartbeat-ms:5000}")
+    private long heartbeatMs;
+
+    @Value("${stock.partitions.member-timeout-ms:15000}")
+    private long memberTimeoutMs;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private volatile Set<Integer> assignedPartitions = Collections.emptySet();
+    private volatile int memberCount;
+
+    private ScheduledExecutorService heartbeat;
+
+    /**
+     * Démarre après l'initialisation des conteneurs de listeners (le conteneur des partitions n'a pas d'autoStartup)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        mongoTemplate.indexOps(StockPartitionMember.class)
+                .createIndex(new Index("lastSeen", Sort.Direction.ASC).expire(memberTimeoutMs * 4, TimeUnit.MILLISECONDS));
+
+        heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-partitions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::rebalance, 0, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Se retire de la liste des membres pour que les autres instances reprennent ses partitions sans attendre l'expiration
+     */
+    @PreDestroy
+    public void stop() {
+        if (heartbeat == null) {
+            return;
+        }
+        heartbeat.shutdownNow();
+        try {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(instanceId)), StockPartitionMember.class);
+        } catch (Exception e) {
+            System.err.println("❌ Impossible de retirer l'instance des partitions de stock: " + e.getMessage());
+        }
+    }
+
+    private void rebalance() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            mongoTemplate.upsert(Query.query(Criteria.where("_id").is(instanceId)),
+                    new Update().set("lastSeen", now), StockPartitionMember.class);
+
+            Query alive = Query.query(Criteria.where("lastSeen").gte(now.minusNanos(memberTimeoutMs * 1_000_000)));
+            alive.fields().include("_id");
+            List<String> members = new ArrayList<>();
+            for (StockPartitionMember member : mongoTemplate.find(alive, StockPartitionMember.class)) {
+                members.add(member.getId());
+            }
+
+            apply(assign(partitions, members, instanceId), members.size());
+        } catch (Exception e) {
+            // Les partitions déjà attribuées restent consommées ; nouvel essai au prochain heartbeat
+            System.err.println("❌ Erreur de répartition des partitions de stock: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Partitions attribuées à une instance : celles dont le numéro modulo le nombre d'instances vaut son rang
+     */
+    static Set<Integer> assign(int partitions, List<String> members, String instanceId) {
+        List<String> sorted = new ArrayList<>(new TreeSet<>(members));
+        if (!sorted.contains(instanceId)) {
+            // Heartbeat pas encore visible : l'instance se compte quand même pour ne pas tout lâcher
+            sorted.add(instanceId);
+            Collections.sort(sorted);
+        }
+        int rank = sorted.indexOf(instanceId);
+
+        Set<Integer> assigned = new TreeSet<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            if (partition % sorted.size() == rank) {
+                assigned.add(partition);
+            }
+        }
+        return assigned;
+    }
+
+    private synchronized void apply(Set<Integer> target, int members) {
+        memberCount = members;
+        if (target.equals(assignedPartitions)) {
+            return;
+        }
+
+        DirectMessageListenerContainer container = (DirectMessageListenerContainer)
+                listenerRegistry.getListenerContainer(RabbitMQConfig.STOCK_PARTITION_LISTENER_ID);
+
+        if (target.isEmpty()) {
+            container.stop();
+        } else if (!container.isRunning()) {
+            container.setQueueNames(queueNames(target));
+            container.start();
+        } else {
+            Set<Integer> removed = new TreeSet<>(assignedPartitions);
+            removed.removeAll(target);
+            Set<Integer> added = new TreeSet<>(target);
+            added.removeAll(assignedPartitions);
+            if (!removed.isEmpty()) {
+                container.removeQueueNames(queueNames(removed));
+            }
+            if (!added.isEmpty()) {
+                container.addQueueNames(queueNames(added));
+            }
+        }
+
+        System.out.println("🔀 Partitions stock.update attribuées: " + target + " (" + members + " instances)");
+        assignedPartitions = target;
+    }
+
+    private String[] queueNames(Set<Integer> partitionNumbers) {
+        return partitionNumbers.stream().map(RabbitMQConfig::stockPartitionQueue).toArray(String[]::new);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("instanceId", instanceId);
+        stats.put("partitions", partitions);
+        stats.put("members", memberCount);
+        stats.put("assigned", assignedPartitions);
+        return stats;
+    }
+}
@@ -0,0 +1,85 @@
+package com.ecommerce.microcommerce.benchmark;
+
+import com.ecommerce.microcommerce.config.RabbitMQConfig;
+import com.ecommerce.microcommerce.message.ProductData;
+import com.ecommerce.microcommerce.message.ProductQueryResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût d'encodage/décodage JSON vs CBOR d'une réponse "product.response" groupée.
+ * La taille des charges utiles est affichée au démarrage de chaque configuration.
+ *
+ * Lancement : mvn test-compile puis
+ * java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)"
+ *      com.ecommerce.microcommerce.benchmark.MessageCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    @Param({"json", "cbor"})
+    private String codec;
+
+    @Param({"1", "20"})
+    private int products;
+
+    private MessageConverter converter;
+    private ProductQueryResponse response;
+    private Message encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        converter = new RabbitMQConfig().messageConverter(codec);
+
+        List<ProductData> data = new ArrayList<>();
+        for (int i = 0; i < products; i++) {
+            data.add(new ProductData("6650f1c2a3b4c5d6e7f8" + String.format("%04d", i), "Produit de test " + i, 100 + i, 25, true, i));
+        }
+        response = ProductQueryResponse.batch("9b2f6c1e-7d3a-4c55-9a0e-2f1b8c7d6e5f", data, List.of());
+
+        encoded = converter.toMessage(response, new MessageProperties());
+        encoded.getMessageProperties().setInferredArgumentType(ProductQueryResponse.class);
+        System.out.println("📏 " + codec + ", " + products + " produits : " + encoded.getBody().length + " octets");
+    }
+
+    @Benchmark
+    public Message encode() {
+        return converter.toMessage(response, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object decode() {
+        return converter.fromMessage(encoded);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MessageCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,131 @@
+package com.ecommerce.microcommerce.benchmark;
+
+import com.ecommerce.microcommerce.model.Product;
+import com.ecommerce.microcommerce.service.ProductSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /produits/search : filtrage du catalogue complet en mémoire (chemin d'origine, findAll non compté)
+ * contre l'index trigrammes + prix (limit 100), sur un catalogue généré de 100 000 et 1 000 000 produits.
+ *
+ * Lancement : mvn test-compile puis
+ * java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)"
+ *      com.ecommerce.microcommerce.benchmark.ProductSearchBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class ProductSearchBenchmark {
+
+    private static final String[] NOUNS = {"ordinateur", "souris", "clavier", "écran", "casque", "webcam", "tapis",
+            "disque", "chargeur", "câble", "enceinte", "micro", "tablette", "imprimante", "routeur", "lampe",
+            "batterie", "manette", "station", "support"};
+    private static final String[] QUALIFIERS = {"portable", "sans fil", "mécanique", "gamer", "pro", "compact",
+            "USB-C", "HD", "4K", "externe", "bluetooth", "ergonomique", "rétroéclairé", "silencieux", "noir",
+            "blanc", "premium", "mini", "double", "rapide"};
+    private static final int LIMIT = 100;
+
+    @Param({"100000", "1000000"})
+    private int products;
+
+    // nom : sous-chaîne seule ; nomEtPrix : sous-chaîne + fourchette triée par prix ; prix : fourchette étroite triée
+    @Param({"nom", "nomEtPrix", "prix"})
+    private String query;
+
+    private List<Product> catalogue;
+    private ProductSearchIndex index;
+    private String nom;
+    private Integer prixMin;
+    private Integer prixMax;
+    private ProductSearchIndex.Order order;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        catalogue = new ArrayList<>(products);
+        for (int i = 0; i < products; i++) {
+            String name = NOUNS[random.nextInt(NOUNS.length)] + " " + QUALIFIERS[random.nextInt(QUALIFIERS.length)]
+                    + " " + random.nextInt(10_000);
+            catalogue.add(new Product(Integer.toHexString(i), name, 1 + random.nextInt(2_000), 10));
+        }
+        index = new ProductSearchIndex();
+        for (int from = 0; from < products; from += 10_000) {
+            index.upsertAll(catalogue.subList(from, Math.min(products, from + 10_000)));
+        }
+
+        switch (query) {
+            case "nom" -> {
+                nom = "souris";
+                order = ProductSearchIndex.Order.NONE;
+            }
+            case "nomEtPrix" -> {
+                nom = "Souris Sans";
+                prixMin = 100;
+                prixMax = 500;
+                order = ProductSearchIndex.Order.PRIX_ASC;
+            }
+            default -> {
+                prixMin = 1_000;
+                prixMax = 1_010;
+                order = ProductSearchIndex.Order.PRIX_ASC;
+            }
+        }
+    }
+
+    /**
+     * Chemin d'origine du contrôleur : trois filtres successifs sur la liste complète, sans tri ni limite
+     */
+    @Benchmark
+    public List<Product> streamFilter() {
+        List<Product> result = catalogue;
+        if (nom != null && !nom.isEmpty()) {
+            result = result.stream()
+                    .filter(p -> p.getNom().toLowerCase().contains(nom.toLowerCase()))
+                    .toList();
+        }
+        if (prixMin != null) {
+            result = result.stream()
+                    .filter(p -> p.getPrix() >= prixMin)
+                    .toList();
+        }
+        if (prixMax != null) {
+            result = result.stream()
+                    .filter(p -> p.getPrix() <= prixMax)
+                    .toList();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<String> indexSearch() {
+        return index.search(nom, prixMin, prixMax, order, LIMIT);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProductSearchBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
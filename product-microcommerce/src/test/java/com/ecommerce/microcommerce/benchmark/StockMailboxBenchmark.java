@@ -0,0 +1,86 @@
+package com.ecommerce.microcommerce.benchmark;
+
+import com.ecommerce.microcommerce.service.RecordingEventPublisher;
+import com.ecommerce.microcommerce.service.SimulatedInventoryEngine;
+import com.ecommerce.microcommerce.service.StockMailbox;
+import com.ecommerce.microcommerce.service.ZipfianGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit des réductions de stock sous distribution de Zipf : appels directs au moteur (un verrou
+ * par document, latence d'écriture simulée) contre boîtes aux lettres fusionnant les opérations.
+ *
+ * Lancement : mvn test-compile puis
+ * java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)"
+ *      com.ecommerce.microcommerce.benchmark.StockMailboxBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class StockMailboxBenchmark {
+
+    private static final int PRODUCTS = 1_000;
+
+    @Param({"false", "true"})
+    private boolean mailboxEnabled;
+
+    // Exposant de Zipf : 0.99 concentre environ un tiers des commandes sur une dizaine de produits
+    @Param({"0.99", "1.2"})
+    private double skew;
+
+    @Param({"200"})
+    private long writeLatencyMicros;
+
+    private SimulatedInventoryEngine engine;
+    private StockMailbox mailbox;
+    private ZipfianGenerator zipf;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new SimulatedInventoryEngine(TimeUnit.MICROSECONDS.toNanos(writeLatencyMicros));
+        for (int i = 0; i < PRODUCTS; i++) {
+            engine.put("p" + i, Integer.MAX_VALUE / 2);
+        }
+        mailbox = new StockMailbox(engine, new RecordingEventPublisher(), mailboxEnabled, 32, 10_000, 256);
+        zipf = new ZipfianGenerator(PRODUCTS, skew);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println("✍️ écritures: " + engine.writes() + " " + mailbox.getStats());
+        mailbox.stop();
+    }
+
+    @Benchmark
+    public Object reduce() {
+        return mailbox.reduceStockIfAvailable("p" + zipf.next(), 1, null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StockMailboxBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,96 @@
+package com.ecommerce.microcommerce.config;
+
+import com.ecommerce.microcommerce.message.ProductChangedEvent;
+import com.ecommerce.microcommerce.message.StockReserveMessage;
+import com.ecommerce.microcommerce.message.StockUpdateMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.core.ParameterizedTypeReference;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Négociation JSON / CBOR du convertisseur RabbitMQ (sans broker)
+ */
+class MessageCodecTests {
+
+    private final MessageConverter jsonConverter = new RabbitMQConfig().messageConverter("json");
+    private final MessageConverter cborConverter = new RabbitMQConfig().messageConverter("cbor");
+
+    @Test
+    void cborRoundTripToTypedRecord() {
+        StockUpdateMessage sent = new StockUpdateMessage("corr-1", "cmd-1", "prod-1", "REDUCE", 3);
+
+        Message message = cborConverter.toMessage(sent, new MessageProperties());
+        assertEquals(CborMessageConverter.CONTENT_TYPE_CBOR, message.getMessageProperties().getContentType());
+
+        message.getMessageProperties().setInferredArgumentType(StockUpdateMessage.class);
+        assertEquals(sent, cborConverter.fromMessage(message));
+    }
+
+    @Test
+    void jsonMapFromLegacyProducerIsDecodedByCborConsumer() {
+        // Message "stock.reserve" tel que l'envoie le Command Service (Map sérialisée en JSON)
+        Map<String, Object> line = new HashMap<>();
+        line.put("productId", "prod-1");
+        line.put("quantity", 2);
+        Map<String, Object> legacy = new HashMap<>();
+        legacy.put("correlationId", "corr-2");
+        legacy.put("commandId", "cmd-2");
+        legacy.put("lines", List.of(line));
+        legacy.put("service", "command-service");
+
+        Message message = jsonConverter.toMessage(legacy, new MessageProperties());
+        assertEquals(MessageProperties.CONTENT_TYPE_JSON, message.getMessageProperties().getContentType());
+
+        message.getMessageProperties().setInferredArgumentType(StockReserveMessage.class);
+        StockReserveMessage decoded = (StockReserveMessage) cborConverter.fromMessage(message);
+        assertEquals("cmd-2", decoded.commandId());
+        assertEquals(List.of(new StockReserveMessage.Line("prod-1", 2)), decoded.lines());
+    }
+
+    @Test
+    void cborMapWithExtraFieldsIsDecodedToRecord() {
+        Map<String, Object> sent = new HashMap<>();
+        sent.put("correlationId", "corr-3");
+        sent.put("productId", "prod-3");
+        sent.put("operation", "INCREASE");
+        sent.put("quantity", 5);
+        sent.put("service", "command-service");
+        sent.put("timestamp", 1L);
+
+        Message message = cborConverter.toMessage(sent, new MessageProperties());
+        message.getMessageProperties().setInferredArgumentType(StockUpdateMessage.class);
+        assertEquals(new StockUpdateMessage("corr-3", null, "prod-3", "INCREASE", 5), cborConverter.fromMessage(message));
+    }
+
+    @Test
+    void recordIsDecodedAsMapByConsumerWithoutTheClass() {
+        ProductChangedEvent event = new ProductChangedEvent("PRODUCT_UPDATED", "prod-1", "Clavier", 120, 7, 42L, "product-service");
+
+        Message message = cborConverter.toMessage(event, new MessageProperties());
+        message.getMessageProperties().setInferredArgumentType(new ParameterizedTypeReference<Map<String, Object>>() { }.getType());
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> decoded = (Map<String, Object>) cborConverter.fromMessage(message);
+        assertEquals("prod-1", decoded.get("productId"));
+        assertEquals(7, ((Number) decoded.get("stock")).intValue());
+    }
+
+    @Test
+    void cborPayloadIsSmallerThanJson() {
+        ProductChangedEvent event = new ProductChangedEvent("PRODUCT_UPDATED", "6650f1c2a3b4c5d6e7f80912", "Ordinateur portable",
+                800, 25, System.currentTimeMillis(), "product-service");
+
+        int jsonSize = jsonConverter.toMessage(event, new MessageProperties()).getBody().length;
+        int cborSize = cborConverter.toMessage(event, new MessageProperties()).getBody().length;
+        assertTrue(cborSize < jsonSize, "CBOR " + cborSize + " octets, JSON " + jsonSize + " octets");
+    }
+}
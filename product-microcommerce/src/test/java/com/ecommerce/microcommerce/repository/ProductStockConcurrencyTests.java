@@ -0,0 +1,90 @@
+package com.ecommerce.microcommerce.repository;
+
+import com.ecommerce.microcommerce.model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Test de charge sur le décrément conditionnel : nécessite une base MongoDB (-Dit.mongo=true)
+ */
+@DataMongoTest
+@EnabledIfSystemProperty(named = "it.mongo", matches = "true")
+class ProductStockConcurrencyTests {
+
+    private static final int CONSUMERS = 64;
+    private static final int ATTEMPTS_PER_CONSUMER = 20;
+    private static final int INITIAL_STOCK = 500;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Test
+    void parallelReductionsNeverOversell() throws Exception {
+        Product product = productRepository.save(new Product("Stress test stock", 10, INITIAL_STOCK));
+        ExecutorService consumers = Executors.newFixedThreadPool(CONSUMERS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger successes = new AtomicInteger();
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CONSUMERS; i++) {
+                futures.add(consumers.submit(() -> {
+                    start.await();
+                    for (int attempt = 0; attempt < ATTEMPTS_PER_CONSUMER; attempt++) {
+                        if (productRepository.reduceStockIfAvailable(product.getId(), 1, null) != null) {
+                            successes.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            // 1280 tentatives pour 500 unités : exactement 500 réussites et un stock final à 0
+            assertEquals(INITIAL_STOCK, successes.get());
+            assertEquals(0, productRepository.findById(product.getId()).orElseThrow().getStock());
+        } finally {
+            consumers.shutdownNow();
+            productRepository.deleteById(product.getId());
+        }
+    }
+
+    @Test
+    void reservationMarkerSurvivesOperationsUntilItIsForgotten() {
+        Product product = productRepository.save(new Product("Produit très demandé", 10, INITIAL_STOCK));
+        String reservation = "cmd-1:RESERVE";
+        try {
+            assertEquals(1, productRepository.reserveStock(reservation, Map.of(product.getId(), 5)));
+            // Plus d'opérations que l'ancienne fenêtre de 100 marqueurs avant la compensation
+            for (int i = 0; i < 150; i++) {
+                productRepository.reduceStockIfAvailable(product.getId(), 1, "cmd-" + (i + 2) + ":" + product.getId() + ":REDUCE");
+            }
+
+            assertEquals(1, productRepository.releaseStock(reservation, Map.of(product.getId(), 5)));
+            assertEquals(INITIAL_STOCK - 150, productRepository.findById(product.getId()).orElseThrow().getStock());
+
+            productRepository.forgetOperations(Map.of(product.getId(), List.of("cmd-2:" + product.getId() + ":REDUCE")));
+            assertFalse(productRepository.findById(product.getId()).orElseThrow().getAppliedStockOps()
+                    .contains("cmd-2:" + product.getId() + ":REDUCE"));
+        } finally {
+            productRepository.deleteById(product.getId());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.dao.BulkInsertResult;
+import com.ecommerce.microcommerce.model.Product;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Import en masse : découpage en lots, positions des erreurs dans le tableau reçu, parallélisme borné
+ * (writer simulé, sans Mongo)
+ */
+class BulkIngestServiceTests {
+
+    private final BulkIngestService service = new BulkIngestService(new ObjectMapper(), 3, 2, 5);
+
+    @AfterEach
+    void stop() {
+        service.stop();
+    }
+
+    @Test
+    void insertsInChunksAndReportsArrayIndices() throws IOException {
+        // 0..9 : "doublon" refusé par le writer (index 4 et 8), prix de type invalide (6), nom vide (2), null (9)
+        String body = "[" + String.join(",",
+                product("a", 1), product("b", 2), product("", 3), product("c", 4), product("doublon", 5),
+                product("d", 6), "{\"nom\":\"e\",\"prix\":\"cher\"}", product("f", 8), product("doublon", 9),
+                "null") + "]";
+        List<Integer> chunkSizes = new ArrayList<>();
+
+        BulkIngestService.Summary summary = service.ingest(stream(body), Product.class, this::validate,
+                chunk -> {
+                    synchronized (chunkSizes) {
+                        chunkSizes.add(chunk.size());
+                    }
+                    return rejectDuplicates(chunk);
+                });
+
+        assertNull(summary.error());
+        assertEquals(10, summary.received());
+        assertEquals(5, summary.inserted());
+        assertEquals(5, summary.failed());
+        // 7 éléments valides : lots de 3, 3 et 1 (terminés dans un ordre quelconque)
+        assertEquals(3, summary.chunks());
+        chunkSizes.sort(null);
+        assertEquals(List.of(1, 3, 3), chunkSizes);
+        // Les 5 premières erreurs, par position croissante quel que soit l'ordre de fin des lots
+        assertEquals(List.of(2L, 4L, 6L, 8L, 9L),
+                summary.errors().stream().map(BulkIngestService.ItemError::index).toList());
+        assertEquals("Nom obligatoire", summary.errors().get(0).message());
+        assertEquals("Doublon", summary.errors().get(1).message());
+    }
+
+    @Test
+    void writesElementsReadBeforeASyntaxError() throws IOException {
+        String body = "[" + product("a", 1) + "," + product("b", 2) + ",{\"nom\": ]";
+        AtomicInteger written = new AtomicInteger();
+
+        BulkIngestService.Summary summary = service.ingest(stream(body), Product.class, this::validate,
+                chunk -> {
+                    written.addAndGet(chunk.size());
+                    return new BulkInsertResult<>(chunk, Map.of());
+                });
+
+        assertNotNull(summary.error());
+        assertEquals(2, summary.inserted());
+        assertEquals(2, written.get());
+
+        BulkIngestService.Summary truncated = service.ingest(stream("[" + product("a", 1) + ","), Product.class,
+                this::validate, chunk -> new BulkInsertResult<>(chunk, Map.of()));
+        assertNotNull(truncated.error());
+        assertEquals(1, truncated.inserted());
+    }
+
+    @Test
+    void rejectsBodiesThatAreNotArrays() {
+        assertThrows(IllegalArgumentException.class, () -> service.ingest(stream(product("a", 1)), Product.class,
+                this::validate, chunk -> new BulkInsertResult<>(chunk, Map.of())));
+    }
+
+    @Test
+    void failsTheWholeChunkWhenTheWriterThrows() throws IOException {
+        String body = "[" + String.join(",", product("a", 1), product("b", 2), product("c", 3), product("d", 4)) + "]";
+        Function<List<Product>, BulkInsertResult<Product>> writer = chunk -> {
+            if (chunk.get(0).getNom().equals("a")) {
+                throw new IllegalStateException("Mongo indisponible");
+            }
+            return new BulkInsertResult<>(chunk, Map.of());
+        };
+
+        BulkIngestService.Summary summary = service.ingest(stream(body), Product.class, this::validate, writer);
+
+        assertEquals(1, summary.inserted());
+        assertEquals(3, summary.failed());
+        assertEquals(List.of(0L, 1L, 2L), summary.errors().stream().map(BulkIngestService.ItemError::index).toList());
+    }
+
+    @Test
+    void keepsAtMostParallelismChunksInFlight() throws IOException {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < 300; i++) {
+            body.append(i == 0 ? "" : ",").append(product("p" + i, i));
+        }
+        body.append(']');
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        BulkIngestService.Summary summary = service.ingest(stream(body.toString()), Product.class, this::validate,
+                chunk -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    threads.add(Thread.currentThread().getName());
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    inFlight.decrementAndGet();
+                    return new BulkInsertResult<>(chunk, Map.of());
+                });
+
+        assertEquals(300, summary.inserted());
+        assertEquals(100, summary.chunks());
+        assertTrue(maxInFlight.get() <= 2, "lots simultanés: " + maxInFlight.get());
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("product-bulk-")));
+    }
+
+    private String validate(Product product) {
+        return product.getNom() == null || product.getNom().isEmpty() ? "Nom obligatoire" : null;
+    }
+
+    private static BulkInsertResult<Product> rejectDuplicates(List<Product> chunk) {
+        List<Product> inserted = new ArrayList<>();
+        Map<Integer, String> errors = new HashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            if (chunk.get(i).getNom().equals("doublon")) {
+                errors.put(i, "Doublon");
+            } else {
+                inserted.add(chunk.get(i));
+            }
+        }
+        return new BulkInsertResult<>(inserted, errors);
+    }
+
+    private static String product(String nom, int prix) {
+        return "{\"nom\":\"" + nom + "\",\"prix\":" + prix + ",\"stock\":1}";
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
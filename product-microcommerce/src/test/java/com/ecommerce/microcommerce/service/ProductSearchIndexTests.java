@@ -0,0 +1,161 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.message.ProductChangedEvent;
+import com.ecommerce.microcommerce.model.Product;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Index de recherche des produits : mêmes résultats que le filtrage du catalogue complet (sans Mongo)
+ */
+class ProductSearchIndexTests {
+
+    @Test
+    void findsSubstringsIgnoringCase() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        index.upsert("1", "Souris sans fil", 25, 1);
+        index.upsert("2", "Tapis de souris", 15, 1);
+        index.upsert("3", "Clavier mécanique", 120, 1);
+
+        assertEquals(List.of("1", "2"), index.search("SOURIS", null, null, ProductSearchIndex.Order.NONE, 10));
+        assertEquals(List.of("2"), index.search("is de so", null, null, ProductSearchIndex.Order.NONE, 10));
+        assertEquals(List.of("3"), index.search("méca", null, null, ProductSearchIndex.Order.NONE, 10));
+        // Moins de trois caractères : pas de trigramme, parcours vérifié sur le nom
+        assertEquals(List.of("1", "3"), index.search("i", 20, null, ProductSearchIndex.Order.NONE, 10));
+        assertEquals(List.of(), index.search("écran", null, null, ProductSearchIndex.Order.NONE, 10));
+    }
+
+    @Test
+    void filtersOnPriceRangeAndSorts() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        index.upsert("a", "Webcam HD", 60, 1);
+        index.upsert("b", "Casque audio", 80, 1);
+        index.upsert("c", "Disque dur externe", 90, 1);
+        index.upsert("d", "Chargeur USB-C", 30, 1);
+
+        assertEquals(List.of("a", "b", "c"), index.search(null, 60, 90, ProductSearchIndex.Order.PRIX_ASC, 10));
+        assertEquals(List.of("c", "b"), index.search(null, 60, 90, ProductSearchIndex.Order.PRIX_DESC, 2));
+        assertEquals(List.of("b", "c", "a"), index.search(null, 60, null, ProductSearchIndex.Order.NOM_ASC, 10));
+        assertEquals(List.of("c", "b"), index.search("que", null, null, ProductSearchIndex.Order.NOM_DESC, 10));
+        assertEquals(List.of(), index.search(null, 100, 50, ProductSearchIndex.Order.NONE, 10));
+    }
+
+    @Test
+    void updatesDeletesAndStaleVersions() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        index.upsert("1", "Écran 24 pouces", 250, 10);
+        index.upsert("1", "Écran 27 pouces", 300, 20);
+        // Événement plus ancien que l'écriture déjà appliquée : ignoré
+        index.upsert("1", "Écran 24 pouces", 250, 15);
+
+        assertEquals(List.of(), index.search("24 pouces", null, null, ProductSearchIndex.Order.NONE, 10));
+        assertEquals(List.of("1"), index.search("27 pouces", 300, 300, ProductSearchIndex.Order.NONE, 10));
+
+        index.remove("1", 30);
+        index.upsert("1", "Écran 27 pouces", 300, 25);
+        assertEquals(List.of(), index.search("écran", null, null, ProductSearchIndex.Order.NONE, 10));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void remoteEventUpdatesAnEntrySeededByTheInitialLoad() {
+        Product loaded = new Product("1", "Écran 24 pouces", 250, 5);
+        loaded.setRevision(7);
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.stream(any(Query.class), eq(Product.class))).thenReturn(Stream.of(loaded));
+        ProductSearchIndex index = new ProductSearchIndex();
+        ReflectionTestUtils.setField(index, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.invokeMethod(index, "load");
+        assertTrue(index.isReady());
+
+        // Écriture d'une autre instance : révision suivante du document
+        index.handleProductChanged(new ProductChangedEvent(ProductEventPublisher.PRODUCT_UPDATED, "1",
+                "Écran 27 pouces", 300, 5, 8, "product-service"));
+        assertEquals(List.of("1"), index.search("27 pouces", null, null, ProductSearchIndex.Order.NONE, 10));
+
+        // Événement antérieur au chargement : ignoré
+        index.handleProductChanged(new ProductChangedEvent(ProductEventPublisher.PRODUCT_UPDATED, "1",
+                "Écran 22 pouces", 200, 5, 6, "product-service"));
+        assertEquals(List.of(), index.search("22 pouces", null, null, ProductSearchIndex.Order.NONE, 10));
+    }
+
+    @Test
+    void matchesFullScanAfterRandomWritesAndCompactions() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        Map<String, Product> catalogue = new HashMap<>();
+        Random random = new Random(42);
+        String[] words = {"souris", "clavier", "écran", "casque", "webcam", "chargeur", "disque", "tapis"};
+
+        // Chargement groupé (fusion dans l'index des prix) puis écritures unitaires
+        List<Product> initial = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            Product product = new Product("p" + i, words[random.nextInt(words.length)] + " " + i, random.nextInt(1_000), 0);
+            initial.add(product);
+            catalogue.put(product.getId(), product);
+        }
+        index.upsertAll(initial.subList(0, 1_000));
+        index.upsertAll(initial.subList(1_000, 2_000));
+
+        long version = 0;
+        for (int i = 0; i < 20_000; i++) {
+            String id = "p" + random.nextInt(3_000);
+            if (random.nextInt(5) == 0) {
+                index.remove(id, ++version);
+                catalogue.remove(id);
+            } else {
+                String nom = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)] + " " + random.nextInt(100);
+                int prix = random.nextInt(1_000);
+                index.upsert(id, nom, prix, ++version);
+                catalogue.put(id, new Product(id, nom, prix, 0));
+            }
+        }
+        assertTrue((int) index.getStats().get("documents") < 20_000, "compaction attendue");
+        assertEquals(catalogue.size(), index.size());
+
+        for (int i = 0; i < 200; i++) {
+            String nom = random.nextBoolean() ? words[random.nextInt(words.length)].substring(random.nextInt(3)) : "";
+            Integer prixMin = random.nextBoolean() ? random.nextInt(500) : null;
+            Integer prixMax = random.nextBoolean() ? 500 + random.nextInt(500) : null;
+
+            List<String> expected = catalogue.values().stream()
+                    .filter(p -> p.getNom().toLowerCase(Locale.ROOT).contains(nom))
+                    .filter(p -> prixMin == null || p.getPrix() >= prixMin)
+                    .filter(p -> prixMax == null || p.getPrix() <= prixMax)
+                    .sorted(Comparator.comparingInt(Product::getPrix))
+                    .map(p -> p.getPrix() + "")
+                    .limit(50)
+                    .toList();
+            List<String> actual = new ArrayList<>();
+            for (String id : index.search(nom, prixMin, prixMax, ProductSearchIndex.Order.PRIX_ASC, 50)) {
+                actual.add(catalogue.get(id).getPrix() + "");
+            }
+            assertEquals(expected, actual, "nom=" + nom + " prixMin=" + prixMin + " prixMax=" + prixMax);
+        }
+    }
+
+    @Test
+    void rejectsUnknownSort() {
+        assertEquals(ProductSearchIndex.Order.PRIX_DESC, ProductSearchIndex.Order.parse("-prix"));
+        assertEquals(ProductSearchIndex.Order.NONE, ProductSearchIndex.Order.parse(null));
+        assertThrows(IllegalArgumentException.class, () -> ProductSearchIndex.Order.parse("stock"));
+    }
+}
@@ -0,0 +1,37 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.model.Product;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publication product.changed sans RabbitMQ pour les tests et benchmarks : compte les événements
+ * et garde le dernier publié par produit
+ */
+public class RecordingEventPublisher extends ProductEventPublisher {
+
+    private final Map<String, Product> lastPublished = new ConcurrentHashMap<>();
+    private final LongAdder events = new LongAdder();
+
+    @Override
+    public void publishUpdated(Product product) {
+        events.increment();
+        lastPublished.put(product.getId(), product);
+    }
+
+    @Override
+    public void publishDeleted(String productId) {
+        events.increment();
+        lastPublished.remove(productId);
+    }
+
+    public long events() {
+        return events.sum();
+    }
+
+    public Product lastPublished(String productId) {
+        return lastPublished.get(productId);
+    }
+}
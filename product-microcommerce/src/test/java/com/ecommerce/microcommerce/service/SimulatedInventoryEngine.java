@@ -0,0 +1,172 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.model.Product;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moteur de stock en mémoire pour les tests et benchmarks : chaque écriture verrouille le produit
+ * pendant une latence simulée, comme un findAndModify sur un document Mongo très sollicité
+ */
+public class SimulatedInventoryEngine implements InventoryEngine {
+
+    private final Map<String, Product> products = new ConcurrentHashMap<>();
+    private final long writeLatencyNanos;
+    private final LongAdder writes = new LongAdder();
+
+    public SimulatedInventoryEngine(long writeLatencyNanos) {
+        this.writeLatencyNanos = writeLatencyNanos;
+    }
+
+    public void put(String productId, int stock) {
+        Product product = new Product(productId, "Produit " + productId, 10, stock);
+        product.setAppliedStockOps(new ArrayList<>());
+        products.put(productId, product);
+    }
+
+    public int stock(String productId) {
+        Product product = products.get(productId);
+        synchronized (product) {
+            return product.getStock();
+        }
+    }
+
+    public long writes() {
+        return writes.sum();
+    }
+
+    @Override
+    public Product reduceStockIfAvailable(String productId, int quantity, String operationKey) {
+        return applyStockDelta(productId, -quantity, quantity, operationKey != null ? List.of(operationKey) : List.of());
+    }
+
+    @Override
+    public Product increaseStock(String productId, int quantity, String operationKey) {
+        return applyStockDelta(productId, quantity, Integer.MIN_VALUE, operationKey != null ? List.of(operationKey) : List.of());
+    }
+
+    @Override
+    public Product applyStockDelta(String productId, int delta, int requiredStock, List<String> operationKeys) {
+        Product product = products.get(productId);
+        if (product == null) {
+            return null;
+        }
+        synchronized (product) {
+            writes.increment();
+            LockSupport.parkNanos(writeLatencyNanos);
+            if (product.getStock() < requiredStock || operationKeys.stream().anyMatch(product.getAppliedStockOps()::contains)) {
+                return null;
+            }
+            product.setStock(product.getStock() + delta);
+            product.setRevision(product.getRevision() + 1);
+            product.getAppliedStockOps().addAll(operationKeys);
+            return copy(product);
+        }
+    }
+
+    @Override
+    public Product setStock(String productId, int stock) {
+        Product product = products.get(productId);
+        if (product == null) {
+            return null;
+        }
+        synchronized (product) {
+            Product previous = copy(product);
+            product.setStock(stock);
+            product.setRevision(product.getRevision() + 1);
+            return previous;
+        }
+    }
+
+    @Override
+    public int reserveStock(String operationKey, Map<String, Integer> quantities) {
+        int applied = 0;
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            if (reduceStockIfAvailable(line.getKey(), line.getValue(), operationKey) != null) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public int releaseStock(String operationKey, Map<String, Integer> quantities) {
+        int released = 0;
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            Product product = products.get(line.getKey());
+            if (product == null) {
+                continue;
+            }
+            synchronized (product) {
+                if (product.getAppliedStockOps().remove(operationKey)) {
+                    product.setStock(product.getStock() + line.getValue());
+                    product.setRevision(product.getRevision() + 1);
+                    released++;
+                }
+            }
+        }
+        return released;
+    }
+
+    @Override
+    public void operationCompleted(String operationKey, Collection<String> productIds) {
+        for (String productId : productIds) {
+            Product product = products.get(productId);
+            if (product != null) {
+                synchronized (product) {
+                    product.getAppliedStockOps().remove(operationKey);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Optional<Product> findById(String productId) {
+        Product product = products.get(productId);
+        if (product == null) {
+            return Optional.empty();
+        }
+        synchronized (product) {
+            Product copy = copy(product);
+            copy.setAppliedStockOps(new ArrayList<>(product.getAppliedStockOps()));
+            return Optional.of(copy);
+        }
+    }
+
+    @Override
+    public List<Product> findAllById(Collection<String> productIds) {
+        List<Product> found = new ArrayList<>();
+        productIds.forEach(id -> findById(id).ifPresent(found::add));
+        return found;
+    }
+
+    @Override
+    public void productSaved(Product product) {
+    }
+
+    @Override
+    public void productDeleted(String productId) {
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("engine", "simulated");
+        stats.put("writes", writes.sum());
+        return stats;
+    }
+
+    private Product copy(Product product) {
+        Product copy = new Product(product.getId(), product.getNom(), product.getPrix(), product.getStock());
+        copy.setRevision(product.getRevision());
+        return copy;
+    }
+}
@@ -0,0 +1,243 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Boîtes aux lettres de stock : fusion des opérations concurrentes et résultats identiques
+ * à une application une par une (moteur simulé, sans Mongo)
+ */
+class StockMailboxTests {
+
+    @Test
+    void concurrentReductionsOnAHotProductAreMerged() throws Exception {
+        SimulatedInventoryEngine engine = new SimulatedInventoryEngine(TimeUnit.MICROSECONDS.toNanos(200));
+        engine.put("hot", 100_000);
+        RecordingEventPublisher publisher = new RecordingEventPublisher();
+        StockMailbox mailbox = new StockMailbox(engine, publisher, true, 4, 10_000, 256);
+
+        int threads = 64;
+        int reductionsPerThread = 50;
+        runConcurrently(threads, () -> {
+            for (int i = 0; i < reductionsPerThread; i++) {
+                assertNotNull(mailbox.reduceStockIfAvailable("hot", 1, null));
+            }
+        });
+        mailbox.stop();
+
+        assertEquals(100_000 - threads * reductionsPerThread, engine.stock("hot"));
+        assertTrue(engine.writes() < threads * reductionsPerThread / 4, "écritures: " + engine.writes());
+        // Un événement par lot, le dernier porte le stock final et la révision de la dernière écriture
+        assertEquals(engine.writes(), publisher.events());
+        assertEquals(engine.stock("hot"), publisher.lastPublished("hot").getStock());
+        assertEquals(engine.findById("hot").orElseThrow().getRevision(), publisher.lastPublished("hot").getRevision());
+    }
+
+    @Test
+    void hotProductIsNeverOversold() throws Exception {
+        SimulatedInventoryEngine engine = new SimulatedInventoryEngine(TimeUnit.MICROSECONDS.toNanos(50));
+        engine.put("hot", 500);
+        StockMailbox mailbox = new StockMailbox(engine, new RecordingEventPublisher(), true, 4, 10_000, 256);
+
+        AtomicInteger successes = new AtomicInteger();
+        runConcurrently(64, () -> {
+            for (int i = 0; i < 20; i++) {
+                if (mailbox.reduceStockIfAvailable("hot", 1, null) != null) {
+                    successes.incrementAndGet();
+                }
+            }
+        });
+        mailbox.stop();
+
+        assertEquals(500, successes.get());
+        assertEquals(0, engine.stock("hot"));
+    }
+
+    @Test
+    void zipfianLoadConservesStock() throws Exception {
+        int productCount = 200;
+        int initialStock = 50;
+        SimulatedInventoryEngine engine = new SimulatedInventoryEngine(TimeUnit.MICROSECONDS.toNanos(20));
+        for (int i = 0; i < productCount; i++) {
+            engine.put("p" + i, initialStock);
+        }
+        StockMailbox mailbox = new StockMailbox(engine, new RecordingEventPublisher(), true, 8, 10_000, 256);
+        ZipfianGenerator zipf = new ZipfianGenerator(productCount, 0.99);
+
+        Map<String, LongAdder> netChange = new ConcurrentHashMap<>();
+        AtomicInteger sequence = new AtomicInteger();
+        runConcurrently(32, () -> {
+            for (int i = 0; i < 500; i++) {
+                String productId = "p" + zipf.next();
+                int quantity = 1 + ThreadLocalRandom.current().nextInt(3);
+                String operationKey = "op-" + sequence.incrementAndGet();
+                boolean increase = ThreadLocalRandom.current().nextInt(10) == 0;
+                Product result = increase
+                    ? mailbox.increaseStock(productId, quantity, operationKey)
+                    : mailbox.reduceStockIfAvailable(productId, quantity, operationKey);
+                if (result != null) {
+                    assertTrue(result.getStock() >= 0);
+                    netChange.computeIfAbsent(productId, id -> new LongAdder()).add(increase ? quantity : -quantity);
+                }
+            }
+        });
+        mailbox.stop();
+
+        for (int i = 0; i < productCount; i++) {
+            String productId = "p" + i;
+            LongAdder change = netChange.get(productId);
+            int stock = engine.stock(productId);
+            assertTrue(stock >= 0);
+            assertEquals(initialStock + (change != null ? change.sum() : 0), stock, productId);
+        }
+    }
+
+    @Test
+    void batchThatCannotBeSatisfiedFallsBackToOneByOne() throws Exception {
+        SimulatedInventoryEngine engine = new SimulatedInventoryEngine(TimeUnit.MILLISECONDS.toNanos(100));
+        engine.put("busy", 10);
+        engine.put("p", 5);
+        RecordingEventPublisher publisher = new RecordingEventPublisher();
+        StockMailbox mailbox = new StockMailbox(engine, publisher, true, 1, 100, 256);
+        ExecutorService callers = Executors.newCachedThreadPool();
+        try {
+            // Occupe l'unique écrivain du pool pendant que les trois réductions s'accumulent dans la file
+            callers.submit(() -> mailbox.reduceStockIfAvailable("busy", 1, null));
+            Thread.sleep(20);
+            List<Future<Product>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                results.add(callers.submit(() -> mailbox.reduceStockIfAvailable("p", 3, null)));
+                Thread.sleep(10);
+            }
+
+            assertEquals(2, results.get(0).get(5, TimeUnit.SECONDS).getStock());
+            assertNull(results.get(1).get(5, TimeUnit.SECONDS));
+            assertNull(results.get(2).get(5, TimeUnit.SECONDS));
+            assertEquals(2, engine.stock("p"));
+            assertEquals(2, publisher.lastPublished("p").getStock());
+        } finally {
+            callers.shutdownNow();
+            mailbox.stop();
+        }
+    }
+
+    @Test
+    void duplicateKeyInABatchIsAppliedOnce() throws Exception {
+        SimulatedInventoryEngine engine = new SimulatedInventoryEngine(TimeUnit.MILLISECONDS.toNanos(100));
+        engine.put("busy", 10);
+        engine.put("p", 10);
+        StockMailbox mailbox = new StockMailbox(engine, new RecordingEventPublisher(), true, 1, 100, 256);
+        ExecutorService callers = Executors.newCachedThreadPool();
+        try {
+            callers.submit(() -> mailbox.reduceStockIfAvailable("busy", 1, null));
+            Thread.sleep(20);
+            Future<Product> original = callers.submit(() -> mailbox.reduceStockIfAvailable("p", 2, "cmd-1:p:REDUCE"));
+            Thread.sleep(10);
+            Future<Product> redelivered = callers.submit(() -> mailbox.reduceStockIfAvailable("p", 2, "cmd-1:p:REDUCE"));
+
+            assertEquals(8, original.get(5, TimeUnit.SECONDS).getStock());
+            assertNull(redelivered.get(5, TimeUnit.SECONDS));
+            assertEquals(8, engine.stock("p"));
+        } finally {
+            callers.shutdownNow();
+            mailbox.stop();
+        }
+    }
+
+    @Test
+    void mergedResultsCarryTheRevisionOfTheirWrite() throws Exception {
+        SimulatedInventoryEngine engine = new SimulatedInventoryEngine(TimeUnit.MICROSECONDS.toNanos(200));
+        engine.put("hot", 100_000);
+        StockMailbox mailbox = new StockMailbox(engine, new RecordingEventPublisher(), true, 4, 10_000, 256);
+        LongAdder withoutRevision = new LongAdder();
+
+        runConcurrently(32, () -> {
+            for (int i = 0; i < 20; i++) {
+                if (mailbox.reduceStockIfAvailable("hot", 1, null).getRevision() == 0) {
+                    withoutRevision.increment();
+                }
+            }
+        });
+        mailbox.stop();
+
+        assertTrue(((Number) mailbox.getStats().get("mergedWrites")).longValue() > 0);
+        assertEquals(0, withoutRevision.sum());
+    }
+
+    @Test
+    void idleMailboxesAreRetired() throws Exception {
+        SimulatedInventoryEngine engine = new SimulatedInventoryEngine(0);
+        for (int i = 0; i < 100; i++) {
+            engine.put("p" + i, 10);
+        }
+        StockMailbox mailbox = new StockMailbox(engine, new RecordingEventPublisher(), true, 4, 10_000, 256);
+        try {
+            runConcurrently(8, () -> {
+                for (int i = 0; i < 100; i++) {
+                    mailbox.increaseStock("p" + i, 1, null);
+                }
+            });
+
+            // La boîte est retirée par l'écrivain juste après les réponses du dernier lot
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!Integer.valueOf(0).equals(mailbox.getStats().get("products")) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, mailbox.getStats().get("products"));
+            assertEquals(18, engine.stock("p42"));
+        } finally {
+            mailbox.stop();
+        }
+    }
+
+    @Test
+    void disabledMailboxCallsTheEngineDirectly() {
+        SimulatedInventoryEngine engine = new SimulatedInventoryEngine(0);
+        engine.put("p", 3);
+        StockMailbox mailbox = new StockMailbox(engine, new RecordingEventPublisher(), false, 0, 100, 256);
+
+        assertEquals(1, mailbox.reduceStockIfAvailable("p", 2, null).getStock());
+        assertNull(mailbox.reduceStockIfAvailable("p", 2, null));
+        assertEquals(1, mailbox.reserveStock("cmd-1:RESERVE", Map.of("p", 1)));
+        assertEquals(0, engine.stock("p"));
+    }
+
+    private void runConcurrently(int threads, Runnable task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.config.RabbitMQConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Répartition des partitions stock.update entre instances (sans broker ni base)
+ */
+class StockPartitionCoordinatorTests {
+
+    @Test
+    void everyPartitionHasExactlyOneOwner() {
+        List<String> members = List.of("c", "a", "b");
+        Set<Integer> seen = new HashSet<>();
+        int total = 0;
+        for (String member : members) {
+            Set<Integer> assigned = StockPartitionCoordinator.assign(8, members, member);
+            seen.addAll(assigned);
+            total += assigned.size();
+        }
+        assertEquals(8, total);
+        assertEquals(8, seen.size());
+    }
+
+    @Test
+    void partitionsAreRebalancedWhenAnInstanceLeaves() {
+        assertEquals(Set.of(0, 2), StockPartitionCoordinator.assign(4, List.of("a", "b"), "a"));
+        assertEquals(Set.of(0, 1, 2, 3), StockPartitionCoordinator.assign(4, List.of("a"), "a"));
+    }
+
+    @Test
+    void instanceNotYetVisibleStillCountsItself() {
+        assertEquals(Set.of(1, 3), StockPartitionCoordinator.assign(4, List.of("a"), "b"));
+    }
+
+    @Test
+    void extraInstancesStayOnStandby() {
+        assertTrue(StockPartitionCoordinator.assign(2, List.of("a", "b", "c"), "c").isEmpty());
+    }
+
+    @Test
+    void productPartitionIsStableAndInRange() {
+        String productId = "6867affef596063526aff95f";
+        int partition = RabbitMQConfig.stockPartitionOf(productId, 4);
+        assertEquals(partition, RabbitMQConfig.stockPartitionOf(productId, 4));
+        assertTrue(partition >= 0 && partition < 4);
+        assertEquals(0, RabbitMQConfig.stockPartitionOf(null, 4));
+    }
+}
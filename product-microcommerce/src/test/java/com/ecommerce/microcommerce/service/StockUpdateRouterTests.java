@@ -0,0 +1,68 @@
+package com.ecommerce.microcommerce.service;
+
+import com.ecommerce.microcommerce.config.RabbitMQConfig;
+import com.ecommerce.microcommerce.message.StockUpdateMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Routeur stock.update : le message source n'est acquitté (retour sans exception) qu'après
+ * la confirmation du broker pour la copie transmise à la partition (RabbitMQ simulé)
+ */
+class StockUpdateRouterTests {
+
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final ProductMessageListener listener = new ProductMessageListener();
+    private final StockUpdateMessage update = new StockUpdateMessage("c-1", "cmd-1", "p1", "REDUCE", 1);
+    private final Message message = new Message(new byte[0], new MessageProperties());
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(listener, "rabbitTemplate", rabbitTemplate);
+        ReflectionTestUtils.setField(listener, "stockPartitions", 4);
+        ReflectionTestUtils.setField(listener, "routerConfirmTimeoutMs", 100L);
+    }
+
+    @Test
+    void confirmedCopyLetsTheSourceBeAcked() {
+        confirmWith(new CorrelationData.Confirm(true, null));
+
+        assertDoesNotThrow(() -> listener.routeStockUpdate(update, message));
+    }
+
+    @Test
+    void nackedCopyRequeuesTheSource() {
+        confirmWith(new CorrelationData.Confirm(false, "queue pleine"));
+
+        assertThrows(AmqpException.class, () -> listener.routeStockUpdate(update, message));
+    }
+
+    @Test
+    void missingConfirmRequeuesTheSource() {
+        // Aucune confirmation : send ne complète pas la CorrelationData
+        assertThrows(TimeoutException.class, () -> listener.routeStockUpdate(update, message));
+    }
+
+    private void confirmWith(CorrelationData.Confirm confirm) {
+        String routingKey = RabbitMQConfig.stockPartitionRoutingKey(RabbitMQConfig.stockPartitionOf("p1", 4));
+        doAnswer(invocation -> {
+            invocation.<CorrelationData>getArgument(3).getFuture().complete(confirm);
+            return null;
+        }).when(rabbitTemplate).send(eq(RabbitMQConfig.MICROSERVICE_EXCHANGE), eq(routingKey), eq(message), any(CorrelationData.class));
+    }
+}
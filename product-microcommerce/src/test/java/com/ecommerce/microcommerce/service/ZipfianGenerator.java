@@ -0,0 +1,38 @@
+package com.ecommerce.microcommerce.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tirage d'indices selon une loi de Zipf : quelques produits concentrent l'essentiel des commandes
+ */
+public class ZipfianGenerator {
+
+    private final double[] cumulative;
+
+    public ZipfianGenerator(int items, double exponent) {
+        cumulative = new double[items];
+        double sum = 0;
+        for (int i = 0; i < items; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < items; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    public int next() {
+        double target = ThreadLocalRandom.current().nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}